@@ -41,6 +41,7 @@ import static org.restheart.ConfigurationKeys.AJP_HOST_KEY;
 import static org.restheart.ConfigurationKeys.AJP_LISTENER_KEY;
 import static org.restheart.ConfigurationKeys.AJP_PORT_KEY;
 import static org.restheart.ConfigurationKeys.ALLOW_UNESCAPED_CHARACTERS_IN_URL;
+import static org.restheart.ConfigurationKeys.EXECUTION_MODE_KEY;
 import static org.restheart.ConfigurationKeys.ANSI_CONSOLE_KEY;
 import static org.restheart.ConfigurationKeys.AUTHENTICATORS_KEY;
 import static org.restheart.ConfigurationKeys.AUTHORIZERS_KEY;
@@ -161,6 +162,7 @@ public class Configuration {
         defaultConf.put(REQUESTS_LIMIT_KEY, 100);
         defaultConf.put(IO_THREADS_KEY, 2);
         defaultConf.put(WORKER_THREADS_KEY, 32);
+        defaultConf.put(EXECUTION_MODE_KEY, EXECUTION_MODE.WORKER_THREADS.name());
         defaultConf.put(BUFFER_SIZE_KEY, 16384);
         defaultConf.put(DIRECT_BUFFERS_KEY, true);
         defaultConf.put(FORCE_GZIP_ENCODING_KEY, false);
@@ -347,6 +349,7 @@ public class Configuration {
     private final int requestsLimit;
     private final int ioThreads;
     private final int workerThreads;
+    private final EXECUTION_MODE executionMode;
     private final int bufferSize;
     private final boolean directBuffers;
     private final boolean forceGzipEncoding;
@@ -515,6 +518,25 @@ public class Configuration {
         requestsLimit = getAsInteger(conf, REQUESTS_LIMIT_KEY, 100);
         ioThreads = getAsInteger(conf, IO_THREADS_KEY, 2);
         workerThreads = getAsInteger(conf, WORKER_THREADS_KEY, 32);
+
+        String _executionMode = getAsString(conf, EXECUTION_MODE_KEY,
+                EXECUTION_MODE.WORKER_THREADS.name());
+
+        EXECUTION_MODE mode;
+
+        try {
+            mode = EXECUTION_MODE.valueOf(_executionMode.trim()
+                    .toUpperCase().replaceAll("-", "_"));
+        } catch (Exception e) {
+            if (!silent) {
+                LOGGER.info("wrong value for parameter {}: {}. using its default value {}",
+                        EXECUTION_MODE_KEY, _executionMode, "worker-threads");
+            }
+            mode = EXECUTION_MODE.WORKER_THREADS;
+        }
+
+        executionMode = mode;
+
         bufferSize = getAsInteger(conf, BUFFER_SIZE_KEY, 16384);
         directBuffers = getAsBoolean(conf, DIRECT_BUFFERS_KEY, true);
         forceGzipEncoding = getAsBoolean(conf, FORCE_GZIP_ENCODING_KEY, false);
@@ -556,6 +578,7 @@ public class Configuration {
                 + ", requestsLimit=" + requestsLimit
                 + ", ioThreads=" + ioThreads
                 + ", workerThreads=" + workerThreads
+                + ", executionMode=" + executionMode
                 + ", bufferSize=" + bufferSize
                 + ", directBuffers=" + directBuffers
                 + ", forceGzipEncoding=" + forceGzipEncoding
@@ -844,6 +867,30 @@ public class Configuration {
         return allowUnescapedCharactersInUrl;
     }
 
+    /**
+     * @return the executionMode
+     */
+    public EXECUTION_MODE getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * defines the threads that execute the requests pipelines
+     */
+    public enum EXECUTION_MODE {
+        /**
+         * requests are dispatched to the undertow worker threads pool, whose
+         * size is set by worker-threads
+         */
+        WORKER_THREADS,
+        /**
+         * each request is executed by a new virtual thread; requires a Java
+         * runtime that supports virtual threads (Java 21+), otherwise
+         * WORKER_THREADS is used
+         */
+        VIRTUAL_THREADS
+    }
+
     /**
      *
      * @return the base URL of restheart proxy identified by proxy configuration
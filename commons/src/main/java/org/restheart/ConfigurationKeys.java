@@ -143,6 +143,11 @@ public interface ConfigurationKeys {
      */
     public static final String WORKER_THREADS_KEY = "worker-threads";
 
+    /**
+     * the key for the execution-mode property.
+     */
+    public static final String EXECUTION_MODE_KEY = "execution-mode";
+
     /**
      * the key for the io-threads property.
      */
@@ -243,6 +248,51 @@ public interface ConfigurationKeys {
      */
     public static final String PROXY_PROBLEM_SERVER_RETRY = "problem-server-retry";
 
+    /**
+     * the key for the keep-upstream-encoding property.
+     */
+    public static final String PROXY_KEEP_UPSTREAM_ENCODING = "keep-upstream-encoding";
+
+    /**
+     * the key for the cache-enabled property.
+     */
+    public static final String PROXY_CACHE_ENABLED = "cache-enabled";
+
+    /**
+     * the key for the cache-max-entries property.
+     */
+    public static final String PROXY_CACHE_MAX_ENTRIES = "cache-max-entries";
+
+    /**
+     * the key for the cache-max-entry-size property.
+     */
+    public static final String PROXY_CACHE_MAX_ENTRY_SIZE = "cache-max-entry-size";
+
+    /**
+     * the key for the cache-max-size property.
+     */
+    public static final String PROXY_CACHE_MAX_SIZE = "cache-max-size";
+
+    /**
+     * the key for the load-balancing-policy property.
+     */
+    public static final String PROXY_LOAD_BALANCING_POLICY = "load-balancing-policy";
+
+    /**
+     * the key for the outlier-ejection-time property.
+     */
+    public static final String PROXY_OUTLIER_EJECTION_TIME = "outlier-ejection-time";
+
+    /**
+     * the key for the outlier-max-error-rate property.
+     */
+    public static final String PROXY_OUTLIER_MAX_ERROR_RATE = "outlier-max-error-rate";
+
+    /**
+     * the key for the outlier-max-latency-factor property.
+     */
+    public static final String PROXY_OUTLIER_MAX_LATENCY_FACTOR = "outlier-max-latency-factor";
+
     /**
      * the key for the static-resources-mounts property.
      */
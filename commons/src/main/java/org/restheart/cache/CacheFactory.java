@@ -23,6 +23,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import org.restheart.cache.impl.GuavaCache;
 import org.restheart.cache.impl.GuavaLoadingCache;
 
@@ -71,6 +72,20 @@ public class CacheFactory {
         return new GuavaCache<>(size, expirePolicy, ttl, remover);
     }
 
+    /**
+     * 
+     * @param <K> the type of the cache keys.
+     * @param <V> the type of the cached values.
+     * @param maxWeight the maximum total weight of the cached values.
+     * @param weigher computes the weight of a value, e.g. its size in bytes.
+     * @param expirePolicy specifies how and when each entry should be automatically removed from the cache.
+     * @param ttl Time To Live in milliseconds.
+     * @return the cache.
+    */
+    public static <K,V> Cache<K,V> createLocalCache(long maxWeight, ToIntFunction<V> weigher, Cache.EXPIRE_POLICY expirePolicy, long ttl) {
+        return new GuavaCache<>(maxWeight, weigher, expirePolicy, ttl);
+    }
+
     private CacheFactory() {
     }
 }
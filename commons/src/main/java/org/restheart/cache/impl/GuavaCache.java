@@ -22,10 +22,12 @@ package org.restheart.cache.impl;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 import org.restheart.cache.Cache.EXPIRE_POLICY;
 
 /**
@@ -52,6 +54,24 @@ public class GuavaCache<K, V> implements org.restheart.cache.Cache<K, V> {
         wrapped = builder.build();
     }
 
+    public GuavaCache(long maxWeight, ToIntFunction<V> weigher, EXPIRE_POLICY expirePolicy, long ttl) {
+        CacheBuilder builder = CacheBuilder.newBuilder();
+
+        Weigher<K, Optional<V>> _weigher = (key, value) -> value.isPresent()
+                ? weigher.applyAsInt(value.get())
+                : 0;
+
+        builder.maximumWeight(maxWeight).weigher(_weigher);
+
+        if (ttl > 0 && expirePolicy == EXPIRE_POLICY.AFTER_WRITE) {
+            builder.expireAfterWrite(ttl, TimeUnit.MILLISECONDS);
+        } else if (ttl > 0 && expirePolicy == EXPIRE_POLICY.AFTER_READ) {
+            builder.expireAfterAccess(ttl, TimeUnit.MILLISECONDS);
+        }
+
+        wrapped = builder.build();
+    }
+
     public GuavaCache(long size, EXPIRE_POLICY expirePolicy, long ttl, Consumer<Map.Entry<K, Optional<V>>> remover) {
         CacheBuilder builder = CacheBuilder.newBuilder();
 
@@ -14,11 +14,13 @@ import io.undertow.server.HttpServerExchange;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Deque;
 import java.util.List;
-import java.util.Optional;
-import java.util.Scanner;
+import java.util.function.Consumer;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.BsonNull;
@@ -29,12 +31,15 @@ import org.bson.json.JsonParseException;
 import static org.restheart.exchange.Exchange.LOGGER;
 import static org.restheart.exchange.ServiceRequest.of;
 import org.restheart.utils.ChannelReader;
+import org.restheart.utils.CsvTokenizer;
 import org.restheart.utils.JsonUtils;
 
 /**
  * ServiceRequest implementation backed by BsonValue and initialized from csv
  * data. Two query parameters controls the conversion: 'id', the the index of
- * the _id property and 'sep', the separator char
+ * the _id property and 'sep', the separator char. With the query parameter
+ * 'stream', the content is not read at initialization time but parsed from
+ * the request channel by streamDocuments()
  *
  * @author Andrea Di Cesare <andrea@softinstigate.com>
  */
@@ -44,22 +49,28 @@ public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
      */
     public static final String CVS_CONTENT_TYPE = "text/csv";
 
+    private final CsvRequestParams params;
+
     private BsonFromCsvRequest(HttpServerExchange exchange) {
         super(exchange);
+        this.params = new CsvRequestParams(exchange);
     }
 
     public static BsonFromCsvRequest init(HttpServerExchange exchange) {
         var ret = new BsonFromCsvRequest(exchange);
 
         if (checkContentType(exchange)) {
-            try {
-                ret.injectContent(exchange);
-            } catch (IOException ex) {
-                LOGGER.warn("error parsing CSV", ex);
-                ret.setInError(true);
-            } catch (Throwable ieo) {
-                LOGGER.warn("error initializing request", ieo);
-                ret.setInError(true);
+            // in streaming mode the content is parsed by streamDocuments()
+            if (!ret.isStreaming()) {
+                try {
+                    ret.injectContent(exchange);
+                } catch (IOException ex) {
+                    LOGGER.warn("error parsing CSV", ex);
+                    ret.setInError(true);
+                } catch (Throwable ieo) {
+                    LOGGER.warn("error initializing request", ieo);
+                    ret.setInError(true);
+                }
             }
         } else {
             LOGGER.warn("error initializing request, "
@@ -75,10 +86,45 @@ public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
     }
 
     public void injectContent(HttpServerExchange exchange) throws IOException {
-        final var params = new CsvRequestParams(exchange);
         final var csv = ChannelReader.read(exchange.getRequestChannel());
 
-        setContent(parseCsv(params, csv));
+        var bson = new BsonArray();
+
+        parseCsv(new StringReader(csv), doc -> bson.add(doc));
+
+        setContent(bson);
+    }
+
+    /**
+     * @return true if the query parameter stream=true is specified; in this
+     * case the content is not read at initialization time, getContent()
+     * returns null and the documents must be read with streamDocuments()
+     */
+    public boolean isStreaming() {
+        return params.stream;
+    }
+
+    /**
+     * Reads the csv from the request channel and passes the documents to the
+     * consumer as they are parsed. The content is never fully held in memory
+     * and it is not limited to MAX_CONTENT_SIZE.
+     *
+     * Must be invoked from a worker thread, since it blocks while waiting
+     * for the content.
+     *
+     * @param consumer
+     * @throws IOException
+     */
+    public void streamDocuments(Consumer<BsonDocument> consumer)
+            throws IOException {
+        var exchange = getExchange();
+
+        if (!exchange.isBlocking()) {
+            exchange.startBlocking();
+        }
+
+        parseCsv(new InputStreamReader(exchange.getInputStream(),
+                StandardCharsets.UTF_8), consumer);
     }
 
     private static boolean checkContentType(HttpServerExchange exchange) {
@@ -92,72 +138,56 @@ public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
                         || ct.startsWith(CVS_CONTENT_TYPE.concat(";")));
     }
 
-    private BsonArray parseCsv(CsvRequestParams params, String csv)
+    private void parseCsv(Reader csv, Consumer<BsonDocument> consumer)
             throws IOException {
-        var bson = new BsonArray();
+        var tokenizer = new CsvTokenizer(csv, params.sep);
 
-        boolean isHeader = true;
+        // the first record is the header
+        List<String> cols = tokenizer.next();
+        List<String> vals;
 
-        List<String> cols = null;
+        while ((vals = tokenizer.next()) != null) {
+            var doc = new BsonDocument("_etag", new BsonObjectId());
 
-        try (Scanner scanner = new Scanner(csv)) {
-            while (scanner.hasNext()) {
-                String line = scanner.nextLine();
+            int unnamedProps = 0;
 
-                // split on the separator only if that comma has zero,
-                // or an even number of quotes ahead of it.
-                List<String> vals = Arrays.asList(line.split(params.sep + "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1));
+            for (int idx = 0; idx < vals.size(); idx++) {
+                if (idx == params.idIdx) {
+                    var _v = vals.get(params.idIdx);
 
-                if (isHeader) {
-                    cols = vals;
-                } else {
-                    var doc = new BsonDocument("_etag", new BsonObjectId());
-
-                    int unnamedProps = 0;
-
-                    for (int idx = 0; idx < vals.size(); idx++) {
-                        if (idx == params.idIdx) {
-                            var _v = vals.get(params.idIdx);
-
-                            if (_v != null) {
-                                // quote empty string
-                                if ("".equals(_v.trim())) {
-                                    _v = "\"".concat(_v).concat("\"");
-                                }
-
-                                doc.append("_id", getBsonValue(_v));
-                            }
-                        } else {
-                            String propname;
-
-                            if (cols == null || cols.size() <= idx) {
-                                propname = "unnamed_" + unnamedProps;
-                                unnamedProps++;
-                            } else {
-                                propname = cols.get(idx);
-                            }
-
-                            var _v = vals.get(idx);
-
-                            // quote empty string
-                            if ("".equals(_v.trim())) {
-                                _v = "\"".concat(_v).concat("\"");
-                            }
-
-                            if (_v != null) {
-                                doc.append(propname, getBsonValue(_v));
-                            }
+                    if (_v != null) {
+                        // quote empty string
+                        if ("".equals(_v.trim())) {
+                            _v = "\"".concat(_v).concat("\"");
                         }
+
+                        doc.append("_id", getBsonValue(_v));
                     }
+                } else {
+                    String propname;
 
-                    bson.add(doc);
-                }
+                    if (cols == null || cols.size() <= idx) {
+                        propname = "unnamed_" + unnamedProps;
+                        unnamedProps++;
+                    } else {
+                        propname = cols.get(idx);
+                    }
+
+                    var _v = vals.get(idx);
 
-                isHeader = false;
+                    // quote empty string
+                    if ("".equals(_v.trim())) {
+                        _v = "\"".concat(_v).concat("\"");
+                    }
+
+                    if (_v != null) {
+                        doc.append(propname, getBsonValue(_v));
+                    }
+                }
             }
-        }
 
-        return bson;
+            consumer.accept(doc);
+        }
     }
 
     private BsonValue getBsonValue(String raw) {
@@ -172,14 +202,23 @@ public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
         private static final String ID_IDX_QPARAM_NAME = "id";
         private static final String SEPARATOR_QPARAM_NAME = "sep";
 
+        private static final String STREAM_QPARAM_NAME = "stream";
+
         public final int idIdx;
         public final String sep;
+        public final boolean stream;
 
         CsvRequestParams(HttpServerExchange exchange) {
             Deque<String> _sep = exchange.getQueryParameters().get(SEPARATOR_QPARAM_NAME);
             Deque<String> _id = exchange.getQueryParameters().get(ID_IDX_QPARAM_NAME);
+            Deque<String> _stream = exchange.getQueryParameters().get(STREAM_QPARAM_NAME);
+
+            sep = _sep != null && _sep.size() > 0 && !_sep.getFirst().isEmpty()
+                    ? _sep.getFirst()
+                    : ",";
 
-            sep = _sep != null ? _sep.size() > 0 ? _sep.getFirst() : "" : ",";
+            stream = _stream != null
+                    && (_stream.isEmpty() || "true".equalsIgnoreCase(_stream.getFirst()));
             String _idIdx = _id != null ? _id.size() > 0 ? _id.getFirst() : "-1" : "-1";
 
             try {
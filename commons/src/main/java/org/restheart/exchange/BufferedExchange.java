@@ -21,6 +21,8 @@ package org.restheart.exchange;
 
 import io.undertow.connector.PooledByteBuffer;
 import java.io.IOException;
+import java.io.InputStream;
+import org.restheart.utils.PooledByteBuffersInputStream;
 
 /**
  *
@@ -53,4 +55,14 @@ public interface BufferedExchange<T> {
     public void setBuffer(PooledByteBuffer[] raw);
 
     public boolean isContentAvailable();
+
+    /**
+     * Returns a read-only view over the buffered content. It allows decoding
+     * the content without coalescing the pooled buffers.
+     *
+     * @return an InputStream reading from the buffered content
+     */
+    public default InputStream getContentStream() {
+        return new PooledByteBuffersInputStream(getBuffer());
+    }
 }
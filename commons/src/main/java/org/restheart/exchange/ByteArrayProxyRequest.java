@@ -20,14 +20,9 @@
 package org.restheart.exchange;
 
 import com.google.common.reflect.TypeToken;
-import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
-import io.undertow.util.Headers;
 import java.io.IOException;
 import java.lang.reflect.Type;
-import java.nio.ByteBuffer;
-import static org.restheart.exchange.Exchange.MAX_BUFFERS;
-import org.restheart.utils.BuffersUtils;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -55,37 +50,41 @@ public class ByteArrayProxyRequest extends ProxyRequest<byte[]> {
     }
 
     /**
-     * @return the content as Json
+     * The content is cached: later calls, also from other ByteArrayProxyRequest
+     * of the same exchange, return the same array, that must not be modified.
+     * Modifications must be applied via writeContent().
+     *
+     * @return the content as byte array
      * @throws java.io.IOException
      */
     @Override
     public byte[] readContent()
             throws IOException {
-        return BuffersUtils.toByteArray(getBuffer());
+        var cached = getCachedContent(byte[].class);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        var content = readContentBytes();
+
+        cacheContent(content, c -> (byte[]) c, false);
+
+        return content;
     }
 
+    /**
+     * Sets the content. The buffer is updated once, before the request is proxied.
+     *
+     * @param content
+     * @throws IOException
+     */
     @Override
     public void writeContent(byte[] content) throws IOException {
         if (content == null) {
             setBuffer(null);
         } else {
-            PooledByteBuffer[] dest;
-            if (isContentAvailable()) {
-                dest = getBuffer();
-            } else {
-                dest = new PooledByteBuffer[MAX_BUFFERS];
-                setBuffer(dest);
-            }
-
-            int copied = BuffersUtils.transfer(
-                    ByteBuffer.wrap(content),
-                    dest,
-                    wrapped);
-
-            // updated request content length
-            // this is not needed in Response.writeContent() since done
-            // by ModificableContentSinkConduit.updateContentLenght();
-            getWrappedExchange().getRequestHeaders().put(Headers.CONTENT_LENGTH, copied);
+            cacheContent(content, c -> (byte[]) c, true);
         }
     }
 }
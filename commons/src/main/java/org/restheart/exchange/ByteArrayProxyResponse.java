@@ -23,15 +23,11 @@ import com.google.common.reflect.TypeToken;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
-import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.Type;
-import java.nio.ByteBuffer;
-import static org.restheart.exchange.Exchange.MAX_BUFFERS;
-import org.restheart.utils.BuffersUtils;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -59,32 +55,41 @@ public class ByteArrayProxyResponse extends ProxyResponse<byte[]> {
     }
 
     /**
-     * @return the content as Json
+     * The content is cached: later calls, also from other ByteArrayProxyResponse
+     * of the same exchange, return the same array, that must not be modified.
+     * Modifications must be applied via writeContent().
+     *
+     * @return the content as byte array
      * @throws java.io.IOException
      */
     @Override
     public byte[] readContent()
             throws IOException {
-        return BuffersUtils.toByteArray(getBuffer());
+        var cached = getCachedContent(byte[].class);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        var content = readContentBytes();
+
+        cacheContent(content, c -> (byte[]) c, false);
+
+        return content;
     }
 
+    /**
+     * Sets the content. The buffer is updated once, when the response is sent.
+     *
+     * @param content
+     * @throws IOException
+     */
     @Override
     public void writeContent(byte[] content) throws IOException {
         if (content == null) {
             setBuffer(null);
         } else {
-            PooledByteBuffer[] dest;
-            if (isContentAvailable()) {
-                dest = getBuffer();
-            } else {
-                dest = new PooledByteBuffer[MAX_BUFFERS];
-                setBuffer(dest);
-            }
-
-            BuffersUtils.transfer(
-                    ByteBuffer.wrap(content),
-                    dest,
-                    wrapped);
+            cacheContent(content, c -> (byte[]) c, true);
         }
     }
 
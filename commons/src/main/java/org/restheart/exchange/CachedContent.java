@@ -0,0 +1,74 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2020 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.exchange;
+
+import java.util.function.Function;
+
+/**
+ * The content of a proxied request or response, as parsed by the last
+ * readContent() or set by the last writeContent(), cached in an exchange
+ * attachment.
+ *
+ * The first reader parses the buffered bytes and later readers of the same
+ * type get the same object. writeContent() only replaces the cached object
+ * and marks it as modified: its bytes are generated once, when the buffer is
+ * accessed, i.e. when the exchange is proxied or sent.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+class CachedContent {
+    private final Object content;
+    private final Function<Object, byte[]> serializer;
+    private boolean modified;
+
+    /**
+     * @param content the parsed content
+     * @param serializer the function that converts content to bytes
+     * @param modified true if the buffer does not contain the content yet
+     */
+    CachedContent(Object content,
+            Function<Object, byte[]> serializer,
+            boolean modified) {
+        this.content = content;
+        this.serializer = serializer;
+        this.modified = modified;
+    }
+
+    /**
+     * @param <V>
+     * @param type
+     * @return the content if it is an instance of type, null otherwise
+     */
+    <V> V getContent(Class<V> type) {
+        return type.isInstance(content) ? type.cast(content) : null;
+    }
+
+    byte[] toBytes() {
+        return serializer.apply(content);
+    }
+
+    boolean isModified() {
+        return modified;
+    }
+
+    void setModified(boolean modified) {
+        this.modified = modified;
+    }
+}
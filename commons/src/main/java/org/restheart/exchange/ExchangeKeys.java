@@ -36,6 +36,11 @@ public interface ExchangeKeys {
      */
     public static final String PAGESIZE_QPARAM_KEY = "pagesize";
 
+    /**
+     *
+     */
+    public static final String PAGE_TOKEN_QPARAM_KEY = "page_token";
+
     /**
      *
      */
@@ -126,6 +131,16 @@ public interface ExchangeKeys {
      */
     public static final String NO_CACHE_QPARAM_KEY = "nocache";
 
+    /**
+     *
+     */
+    public static final String STREAM_QPARAM_KEY = "stream";
+
+    /**
+     *
+     */
+    public static final String RESUME_AFTER_QPARAM_KEY = "resumeAfter";
+
     // matadata
 
     /**
@@ -661,4 +676,20 @@ public interface ExchangeKeys {
          */
         NONE
     }
+
+    /**
+     * the format of streamed responses, see the stream query parameter
+     */
+    public enum STREAM_FORMAT {
+
+        /**
+         * a json array of documents sent with chunked transfer encoding
+         */
+        JSON,
+
+        /**
+         * newline delimited json, one document per line
+         */
+        NDJSON
+    }
 }
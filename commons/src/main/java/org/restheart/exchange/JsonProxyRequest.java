@@ -20,14 +20,13 @@
 package org.restheart.exchange;
 
 import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
-import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import static org.restheart.exchange.Exchange.LOGGER;
 import org.restheart.utils.BuffersUtils;
@@ -51,6 +50,10 @@ public class JsonProxyRequest extends ProxyRequest<JsonElement> {
     }
 
     /**
+     * The parsed content is cached: later calls, also from other
+     * JsonProxyRequest of the same exchange, return the same JsonElement.
+     * Modifications to it must be applied via writeContent().
+     *
      * @return the content as Json
      * @throws java.io.IOException
      */
@@ -61,21 +64,44 @@ public class JsonProxyRequest extends ProxyRequest<JsonElement> {
             return null;
         }
 
-        if (getWrappedExchange().getAttachment(getRawContentKey()) == null) {
-            return JsonNull.INSTANCE;
-        } else {
-            try {
-                return JsonParser.parseString(BuffersUtils.toString(getBuffer(),
-                        StandardCharsets.UTF_8));
-            } catch (JsonParseException ex) {
-                // dump bufferd content
-                BuffersUtils.dump("Error parsing content", getBuffer());
+        var cached = getCachedContent(JsonElement.class);
 
-                throw new IOException("Error parsing json", ex);
-            }
+        if (cached != null) {
+            return cached;
         }
+
+        JsonElement content;
+
+        try {
+            // the content might have been cached by a reader of another type
+            var bytes = getCachedContent(Object.class) != null
+                    ? readContentBytes()
+                    : null;
+
+            content = JsonParser.parseReader(new InputStreamReader(
+                    bytes == null
+                            ? getContentStream()
+                            : new ByteArrayInputStream(bytes),
+                    StandardCharsets.UTF_8));
+        } catch (JsonParseException ex) {
+            // dump bufferd content
+            BuffersUtils.dump("Error parsing content", getBuffer());
+
+            throw new IOException("Error parsing json", ex);
+        }
+
+        cacheContent(content, JsonProxyRequest::toBytes, false);
+
+        return content;
     }
 
+    /**
+     * Sets the content. The buffer and the Content-Length header are updated
+     * once, before the request is proxied.
+     *
+     * @param content
+     * @throws IOException
+     */
     @Override
     public void writeContent(JsonElement content) throws IOException {
         setContentTypeAsJson();
@@ -83,24 +109,11 @@ public class JsonProxyRequest extends ProxyRequest<JsonElement> {
             setBuffer(null);
             getWrappedExchange().getRequestHeaders().remove(Headers.CONTENT_LENGTH);
         } else {
-            PooledByteBuffer[] dest;
-            if (isContentAvailable()) {
-                dest = getBuffer();
-            } else {
-                dest = new PooledByteBuffer[MAX_BUFFERS];
-                setBuffer(dest);
-            }
-
-            int copied = BuffersUtils.transfer(
-                    ByteBuffer.wrap(content.toString().getBytes()),
-                    dest,
-                    wrapped);
-
-            // updated request content length
-            // this is not needed in Response.writeContent() since done
-            // by ModificableContentSinkConduit.updateContentLenght();
-            getWrappedExchange().getRequestHeaders().put(Headers.CONTENT_LENGTH, 
-                    copied);
+            cacheContent(content, JsonProxyRequest::toBytes, true);
         }
     }
+
+    static byte[] toBytes(Object content) {
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
 }
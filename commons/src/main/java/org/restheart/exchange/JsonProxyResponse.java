@@ -21,19 +21,17 @@ package org.restheart.exchange;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
-import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import org.restheart.utils.BuffersUtils;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -54,6 +52,10 @@ public class JsonProxyResponse extends ProxyResponse<JsonElement> {
     }
 
     /**
+     * The parsed content is cached: later calls, also from other
+     * JsonProxyResponse of the same exchange, return the same JsonElement.
+     * Modifications to it must be applied via writeContent().
+     *
      * @return the content as Json
      * @throws java.io.IOException
      */
@@ -64,39 +66,48 @@ public class JsonProxyResponse extends ProxyResponse<JsonElement> {
             return null;
         }
 
-        if (getWrappedExchange().getAttachment(getRawContentKey()) == null) {
-            return JsonNull.INSTANCE;
-        } else {
-            try {
-                String rawContentAsString = BuffersUtils.toString(
-                        getBuffer(),
-                        StandardCharsets.UTF_8);
+        var cached = getCachedContent(JsonElement.class);
 
-                return JsonParser.parseString(rawContentAsString);
-            } catch (JsonParseException ex) {
-                throw new IOException("Error parsing json", ex);
-            }
+        if (cached != null) {
+            return cached;
+        }
+
+        JsonElement content;
+
+        try {
+            // the content might have been cached by a reader of another type
+            var bytes = getCachedContent(Object.class) != null
+                    ? readContentBytes()
+                    : null;
+
+            content = JsonParser.parseReader(new InputStreamReader(
+                    bytes == null
+                            ? getContentStream()
+                            : new ByteArrayInputStream(bytes),
+                    StandardCharsets.UTF_8));
+        } catch (JsonParseException ex) {
+            throw new IOException("Error parsing json", ex);
         }
+
+        cacheContent(content, JsonProxyRequest::toBytes, false);
+
+        return content;
     }
 
+    /**
+     * Sets the content. The buffer is updated once, when the response is
+     * sent.
+     *
+     * @param content
+     * @throws IOException
+     */
     @Override
     public void writeContent(JsonElement content) throws IOException {
         setContentTypeAsJson();
         if (content == null) {
             setBuffer(null);
         } else {
-            PooledByteBuffer[] dest;
-            if (isContentAvailable()) {
-                dest = getBuffer();
-            } else {
-                dest = new PooledByteBuffer[MAX_BUFFERS];
-                setBuffer(dest);
-            }
-
-            BuffersUtils.transfer(
-                    ByteBuffer.wrap(content.toString().getBytes()),
-                    dest,
-                    wrapped);
+            cacheContent(content, JsonProxyRequest::toBytes, true);
         }
     }
 
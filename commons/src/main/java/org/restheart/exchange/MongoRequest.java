@@ -45,6 +45,7 @@ import org.restheart.exchange.ExchangeKeys.DOC_ID_TYPE;
 import org.restheart.exchange.ExchangeKeys.EAGER_CURSOR_ALLOCATION_POLICY;
 import org.restheart.exchange.ExchangeKeys.HAL_MODE;
 import org.restheart.exchange.ExchangeKeys.REPRESENTATION_FORMAT;
+import org.restheart.exchange.ExchangeKeys.STREAM_FORMAT;
 import org.restheart.exchange.ExchangeKeys.TYPE;
 import org.restheart.mongodb.db.sessions.ClientSessionImpl;
 import org.restheart.utils.URLUtils;
@@ -75,6 +76,8 @@ public class MongoRequest extends BsonRequest {
 
     private int page = 1;
     private int pagesize = 100;
+    private String pageToken = null;
+    private STREAM_FORMAT streamFormat = null;
     private boolean count = false;
     private boolean etagCheckRequired = false;
     private EAGER_CURSOR_ALLOCATION_POLICY cursorAllocationPolicy;
@@ -749,6 +752,39 @@ public class MongoRequest extends BsonRequest {
         this.pagesize = pagesize;
     }
 
+    /**
+     * @return the page_token query parameter, i.e. the opaque continuation
+     * token for keyset pagination; null if not specified
+     */
+    public String getPageToken() {
+        return pageToken;
+    }
+
+    /**
+     * @param pageToken the pageToken to set
+     */
+    public void setPageToken(String pageToken) {
+        this.pageToken = pageToken;
+    }
+
+    /**
+     * @return the format of the streamed response, as specified by the stream
+     * query parameter; null if the response is not streamed. It only applies
+     * to GET collection and GET aggregation requests. Streamed responses are
+     * not paged with HAL representation nor include _size and _total_pages;
+     * their content is not available to response interceptors
+     */
+    public STREAM_FORMAT getStreamFormat() {
+        return streamFormat;
+    }
+
+    /**
+     * @param streamFormat the streamFormat to set
+     */
+    public void setStreamFormat(STREAM_FORMAT streamFormat) {
+        this.streamFormat = streamFormat;
+    }
+
     /**
      * @return the representationFormat
      */
@@ -1515,6 +1551,24 @@ public class MongoRequest extends BsonRequest {
                 || isSchemaStore()));
     }
 
+    /**
+     * helper method to check if the request is a POST to a collection with
+     * Content-Type application/x-ndjson, i.e. a bulk POST whose documents are
+     * read from the request channel one per line. The content of these
+     * requests is not injected, getContent() returns an empty document.
+     *
+     * @return true if the request is a POST to a collection with ndjson
+     * content
+     */
+    public boolean isNdjsonPost() {
+        var contentType = getContentType();
+
+        return isPost()
+                && isCollection()
+                && contentType != null
+                && contentType.startsWith(Exchange.NDJSON_MEDIA_TYPE);
+    }
+
     /**
      * @return the isETagCheckRequired
      */
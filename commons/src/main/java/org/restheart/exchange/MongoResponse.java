@@ -23,6 +23,7 @@ import com.google.common.reflect.TypeToken;
 import com.mongodb.MongoClient;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
@@ -30,9 +31,14 @@ import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.result.UpdateResult;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -45,9 +51,12 @@ import org.bson.BsonValue;
 import org.bson.conversions.Bson;
 import org.bson.json.JsonParseException;
 import static org.restheart.exchange.Exchange.LOGGER;
+import org.restheart.exchange.ExchangeKeys.STREAM_FORMAT;
 import org.restheart.utils.HttpStatus;
 import org.restheart.utils.JsonUtils;
+import org.restheart.utils.StreamingJsonEncoder;
 import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
 
 /**
  *
@@ -70,6 +79,8 @@ public class MongoResponse extends BsonResponse {
 
     private long count = -1;
 
+    private MongoCursor<BsonDocument> contentStream = null;
+
     protected MongoResponse(HttpServerExchange exchange) {
         super(exchange);
     }
@@ -92,18 +103,157 @@ public class MongoResponse extends BsonResponse {
     @Override
     public String readContent() {
         var request = MongoRequest.of(wrapped);
-        BsonValue tosend;
+        var tosend = contentToSend(request);
 
-        if (!request.isGet() && (content == null || content.isDocument())) {
-            tosend = addWarnings(content == null ? null : content.asDocument());
+        if (tosend != null) {
+            return JsonUtils.toJson(tosend, request.getJsonMode());
         } else {
-            tosend = content;
+            return null;
         }
+    }
+
+    /**
+     * Sends the content to the client encoding it straight to the exchange
+     * output stream with StreamingJsonEncoder, i.e. without rendering it
+     * to an intermediate String as readContent() does.
+     *
+     * It is meant to be used as custom sender, see setCustomerSender(), and
+     * requires the exchange to be in blocking mode.
+     *
+     * @throws IOException
+     */
+    public void streamContent() throws IOException {
+        var request = MongoRequest.of(wrapped);
+        var tosend = contentToSend(request);
 
         if (tosend != null) {
-            return JsonUtils.toJson(tosend, request.getJsonMode());
+            if (!wrapped.isBlocking()) {
+                wrapped.startBlocking();
+            }
+
+            try (var out = wrapped.getOutputStream()) {
+                StreamingJsonEncoder.encode(tosend, request.getJsonMode(), out);
+            }
+        }
+    }
+
+    /**
+     * Sets the content as a stream of documents that are pulled from the
+     * cursor and sent to the client, in the given format, by the custom sender.
+     * Only the documents of the current cursor batch are kept in memory and,
+     * since the output stream is blocking, the cursor is not iterated while
+     * the client is not reading.
+     *
+     * The streamed content is not available to response interceptors, i.e.
+     * getContent() returns null. If the response is set in error, the cursor
+     * is closed and the error is sent as usual.
+     *
+     * @param cursor the cursor, it is closed after the last document is sent
+     * or anyway when the exchange completes
+     * @param format the stream format
+     */
+    public void setContentStream(MongoCursor<BsonDocument> cursor,
+            STREAM_FORMAT format) {
+        this.contentStream = cursor;
+
+        // the custom sender might not be invoked, e.g. if an interceptor
+        // throws an exception
+        wrapped.addExchangeCompleteListener((exchange, nextListener) -> {
+            try {
+                cursor.close();
+            } finally {
+                nextListener.proceed();
+            }
+        });
+
+        setContentType(format == STREAM_FORMAT.NDJSON
+                ? Exchange.NDJSON_MEDIA_TYPE
+                : Exchange.JSON_MEDIA_TYPE);
+
+        setCustomerSender(() -> {
+            try {
+                sendContentStream(format);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+    }
+
+    /**
+     * @return true if the content is streamed, see setContentStream()
+     */
+    public boolean isContentStreamed() {
+        return contentStream != null;
+    }
+
+    private void sendContentStream(STREAM_FORMAT format) throws IOException {
+        var cursor = this.contentStream;
+
+        if (isInError()) {
+            cursor.close();
+
+            var error = readContent();
+
+            if (error != null) {
+                wrapped.getResponseSender().send(error);
+            }
+
+            return;
+        }
+
+        var request = MongoRequest.of(wrapped);
+        var mode = request.getJsonMode();
+        var ndjson = format == STREAM_FORMAT.NDJSON;
+
+        if (!wrapped.isBlocking()) {
+            wrapped.startBlocking();
+        }
+
+        // no Content-Length, the response is sent with chunked encoding;
+        // the writer is flushed only when its buffer is full
+        var out = new OutputStreamWriter(wrapped.getOutputStream(),
+                StandardCharsets.UTF_8);
+
+        try (cursor) {
+            if (!ndjson) {
+                out.write('[');
+            }
+
+            var writer = new NotFlushingWriter(out);
+            var first = true;
+
+            while (cursor.hasNext()) {
+                if (!ndjson && !first) {
+                    out.write(',');
+                }
+
+                StreamingJsonEncoder.encode(cursor.next(), mode, writer);
+
+                if (ndjson) {
+                    out.write('\n');
+                }
+
+                first = false;
+            }
+
+            if (!ndjson) {
+                out.write(']');
+            }
+
+            out.close();
+        } catch (RuntimeException re) {
+            // the status code has already been sent: close the connection
+            // so that the client gets a truncated response
+            LOGGER.error("error streaming response content", re);
+            IoUtils.safeClose(wrapped.getConnection());
+        }
+    }
+
+    private BsonValue contentToSend(MongoRequest request) {
+        if (!request.isGet() && (content == null || content.isDocument())) {
+            return addWarnings(content == null ? null : content.asDocument());
         } else {
-            return null;
+            return content;
         }
     }
 
@@ -410,4 +560,29 @@ public class MongoResponse extends BsonResponse {
 
         return result.getModifiedCount() == 1;
     }
+
+    /**
+     * StreamingJsonEncoder flushes the writer after each document, this
+     * avoids writing to the socket once per document
+     */
+    private static class NotFlushingWriter extends Writer {
+        private final Writer out;
+
+        NotFlushingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
@@ -22,8 +22,12 @@ package org.restheart.exchange;
 import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.AttachmentKey;
+import io.undertow.util.Headers;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+import org.restheart.utils.BuffersUtils;
 
 /**
  *
@@ -31,11 +35,19 @@ import java.lang.reflect.Field;
  *
  * It stores the response content in the BUFFERED_REQUEST_DATA attachment
  * of the HttpServerExchange.
+ *
+ * The content, as parsed by readContent() or set by writeContent(), is also
+ * cached in an attachment: later reads of the same type return the same object
+ * and the buffer is updated once, on syncBuffer(), i.e. before the request is
+ * proxied.
  * 
  * @author Andrea Di Cesare <andrea@softinstigate.com>
  * @param <T>
  */
 public abstract class ProxyRequest<T> extends Request<T> implements BufferedExchange<T> {
+    private static final AttachmentKey<CachedContent> CACHED_CONTENT_KEY
+            = AttachmentKey.create(CachedContent.class);
+
     public ProxyRequest(HttpServerExchange exchange) {
         super(exchange);
     }
@@ -66,9 +78,83 @@ public abstract class ProxyRequest<T> extends Request<T> implements BufferedExch
 
     @Override
     public void setBuffer(PooledByteBuffer[] raw) {
+        getWrappedExchange().removeAttachment(CACHED_CONTENT_KEY);
         getWrappedExchange().putAttachment(getRawContentKey(), raw);
     }
 
+    /**
+     * @param <V>
+     * @param type
+     * @return the cached content if it is an instance of type, null otherwise
+     */
+    protected <V> V getCachedContent(Class<V> type) {
+        var cached = getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+
+        return cached == null ? null : cached.getContent(type);
+    }
+
+    /**
+     * @return the content bytes, generated from the cached content if any
+     * (without updating the buffer) or otherwise read from the buffer
+     * @throws IOException
+     */
+    protected byte[] readContentBytes() throws IOException {
+        var cached = getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+
+        return cached == null
+                ? BuffersUtils.toByteArray(getBuffer())
+                : cached.toBytes();
+    }
+
+    /**
+     * caches the content
+     *
+     * @param content
+     * @param serializer the function that converts content to bytes
+     * @param modified true if content must be written to the buffer
+     */
+    protected void cacheContent(Object content,
+            Function<Object, byte[]> serializer,
+            boolean modified) {
+        var previous = getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+
+        getWrappedExchange().putAttachment(CACHED_CONTENT_KEY,
+                new CachedContent(content, serializer,
+                        modified || (previous != null && previous.isModified())));
+    }
+
+    /**
+     * writes the cached content to the buffer, if it has been modified by
+     * writeContent(), and updates the Content-Length header
+     */
+    public void syncBuffer() {
+        var cached = getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+
+        if (cached == null || !cached.isModified()) {
+            return;
+        }
+
+        var dest = getWrappedExchange().getAttachment(getRawContentKey());
+
+        if (dest == null) {
+            dest = new PooledByteBuffer[MAX_BUFFERS];
+            getWrappedExchange().putAttachment(getRawContentKey(), dest);
+        }
+
+        int copied = BuffersUtils.transfer(
+                ByteBuffer.wrap(cached.toBytes()),
+                dest,
+                wrapped);
+
+        // updated request content length
+        // this is not needed in Response since done
+        // by ModificableContentSinkConduit.updateContentLenght();
+        getWrappedExchange().getRequestHeaders().put(Headers.CONTENT_LENGTH,
+                copied);
+
+        cached.setModified(false);
+    }
+
     @Override
     public PooledByteBuffer[] getBuffer() {
         if (!isContentAvailable()) {
@@ -78,11 +164,14 @@ public abstract class ProxyRequest<T> extends Request<T> implements BufferedExch
                     + "the content available.");
         }
 
+        syncBuffer();
+
         return getWrappedExchange().getAttachment(getRawContentKey());
     }
 
     @Override
     public boolean isContentAvailable() {
-        return null != getWrappedExchange().getAttachment(getRawContentKey());
+        return null != getWrappedExchange().getAttachment(getRawContentKey())
+                || null != getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
     }
 }
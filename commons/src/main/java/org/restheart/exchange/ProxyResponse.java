@@ -24,6 +24,9 @@ import io.undertow.server.HttpServerExchange;
 import io.undertow.util.AttachmentKey;
 import io.undertow.util.Headers;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+import org.restheart.utils.BuffersUtils;
 import org.restheart.utils.HttpStatus;
 
 /**
@@ -32,6 +35,10 @@ import org.restheart.utils.HttpStatus;
  * It stores the response content in the BUFFERED_RESPONSE_DATA_KEY attachment
  * of the HttpServerExchange.
  *
+ * The content, as parsed by readContent() or set by writeContent(), is also
+ * cached in an attachment: later reads of the same type return the same object
+ * and the buffer is updated once, when it is accessed to send the response.
+ *
  * @author Andrea Di Cesare <andrea@softinstigate.com>
  * @param <T>
  */
@@ -40,6 +47,9 @@ public abstract class ProxyResponse<T> extends Response<T>
     public static final AttachmentKey<PooledByteBuffer[]> BUFFERED_RESPONSE_DATA_KEY
             = AttachmentKey.create(PooledByteBuffer[].class);
 
+    private static final AttachmentKey<CachedContent> CACHED_CONTENT_KEY
+            = AttachmentKey.create(CachedContent.class);
+
     protected ProxyResponse(HttpServerExchange exchange) {
         super(exchange);
     }
@@ -64,17 +74,89 @@ public abstract class ProxyResponse<T> extends Response<T>
                     + "the content available.");
         }
 
+        syncBuffer();
+
         return getWrappedExchange().getAttachment(getRawContentKey());
     }
 
     @Override
     public void setBuffer(PooledByteBuffer[] raw) {
+        getWrappedExchange().removeAttachment(CACHED_CONTENT_KEY);
         getWrappedExchange().putAttachment(getRawContentKey(), raw);
     }
 
     @Override
     public boolean isContentAvailable() {
-        return null != getWrappedExchange().getAttachment(getRawContentKey());
+        return null != getWrappedExchange().getAttachment(getRawContentKey())
+                || null != getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+    }
+
+    /**
+     * @param <V>
+     * @param type
+     * @return the cached content if it is an instance of type, null otherwise
+     */
+    protected <V> V getCachedContent(Class<V> type) {
+        var cached = getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+
+        return cached == null ? null : cached.getContent(type);
+    }
+
+    /**
+     * @return the content bytes, generated from the cached content if any
+     * (without updating the buffer) or otherwise read from the buffer
+     * @throws IOException
+     */
+    protected byte[] readContentBytes() throws IOException {
+        var cached = getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+
+        return cached == null
+                ? BuffersUtils.toByteArray(getBuffer())
+                : cached.toBytes();
+    }
+
+    /**
+     * caches the content
+     *
+     * @param content
+     * @param serializer the function that converts content to bytes
+     * @param modified true if content must be written to the buffer
+     */
+    protected void cacheContent(Object content,
+            Function<Object, byte[]> serializer,
+            boolean modified) {
+        var previous = getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+
+        getWrappedExchange().putAttachment(CACHED_CONTENT_KEY,
+                new CachedContent(content, serializer,
+                        modified || (previous != null && previous.isModified())));
+    }
+
+    /**
+     * writes the cached content to the buffer, if it has been modified by
+     * writeContent(). The Content-Length header is updated by
+     * ModificableContentSinkConduit
+     */
+    public void syncBuffer() {
+        var cached = getWrappedExchange().getAttachment(CACHED_CONTENT_KEY);
+
+        if (cached == null || !cached.isModified()) {
+            return;
+        }
+
+        var dest = getWrappedExchange().getAttachment(getRawContentKey());
+
+        if (dest == null) {
+            dest = new PooledByteBuffer[MAX_BUFFERS];
+            getWrappedExchange().putAttachment(getRawContentKey(), dest);
+        }
+
+        BuffersUtils.transfer(
+                ByteBuffer.wrap(cached.toBytes()),
+                dest,
+                wrapped);
+
+        cached.setModified(false);
     }
 
     protected void setContentLength(int length) {
@@ -40,48 +40,66 @@ public class BuffersUtils {
 
     /**
      * @param srcs
-     * @return
-     * @throws IOException
+     * @return the number of bytes stored in srcs
      */
-    public static ByteBuffer toByteBuffer(final PooledByteBuffer[] srcs)
-            throws IOException {
+    public static int size(final PooledByteBuffer[] srcs) {
         if (srcs == null) {
-            return null;
+            return 0;
         }
 
-        ByteBuffer dst = ByteBuffer.allocate(MAX_CONTENT_SIZE);
+        int size = 0;
 
-        for (int i = 0; i < srcs.length; i++) {
-            PooledByteBuffer src = srcs[i];
+        for (PooledByteBuffer src : srcs) {
             if (src != null) {
-                final ByteBuffer srcBuffer = src.getBuffer();
-
-                if (srcBuffer.remaining() > dst.remaining()) {
-                    LOGGER.error("Request content exceeeded {} bytes limit",
-                            MAX_CONTENT_SIZE);
-                    throw new IOException("Request content exceeeded "
-                            + MAX_CONTENT_SIZE + " bytes limit");
-                }
+                size += src.getBuffer().remaining();
+            }
+        }
 
-                if (srcBuffer.hasRemaining()) {
-                    Buffers.copy(dst, srcBuffer);
+        return size;
+    }
 
-                    // very important, I lost a day for this!
-                    srcBuffer.flip();
-                }
-            }
+    /**
+     * Copies the data stored in srcs to a new heap ByteBuffer, sized exactly.
+     *
+     * Use a PooledByteBuffersInputStream to decode the data without
+     * coalescing the buffers.
+     *
+     * @param srcs
+     * @return
+     * @throws IOException if the data exceeds MAX_CONTENT_SIZE
+     */
+    public static ByteBuffer toByteBuffer(final PooledByteBuffer[] srcs)
+            throws IOException {
+        if (srcs == null) {
+            return null;
         }
 
-        return dst.flip();
+        return ByteBuffer.wrap(toByteArray(srcs));
     }
 
+    /**
+     * Copies the data stored in srcs to a new byte array, sized exactly.
+     *
+     * @param srcs
+     * @return
+     * @throws IOException if the data exceeds MAX_CONTENT_SIZE
+     */
     public static byte[] toByteArray(final PooledByteBuffer[] srcs)
             throws IOException {
-        ByteBuffer content = toByteBuffer(srcs);
+        final int size = size(srcs);
 
-        byte[] ret = new byte[content.limit()];
+        if (size > MAX_CONTENT_SIZE) {
+            LOGGER.error("Request content exceeeded {} bytes limit",
+                    MAX_CONTENT_SIZE);
+            throw new IOException("Request content exceeeded "
+                    + MAX_CONTENT_SIZE + " bytes limit");
+        }
+
+        byte[] ret = new byte[size];
 
-        content.get(ret);
+        if (size > 0) {
+            new PooledByteBuffersInputStream(srcs).read(ret, 0, size);
+        }
 
         return ret;
     }
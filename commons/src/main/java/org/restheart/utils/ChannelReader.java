@@ -43,6 +43,16 @@ public class ChannelReader {
      * @throws IOException
      */
     public static String read(StreamSourceChannel channel) throws IOException {
+        return new String(readBytes(channel), CHARSET);
+    }
+
+    /**
+     *
+     * @param channel
+     * @return the bytes read from the channel, in an array sized exactly
+     * @throws IOException
+     */
+    public static byte[] readBytes(StreamSourceChannel channel) throws IOException {
         final int capacity = 1024;
 
         ByteArrayOutputStream os = new ByteArrayOutputStream(capacity);
@@ -54,6 +64,6 @@ public class ChannelReader {
             os.write(buf.array(), 0, buf.remaining());
             buf.clear();
         }
-        return new String(os.toByteArray(), CHARSET);
+        return os.toByteArray();
     }
 }
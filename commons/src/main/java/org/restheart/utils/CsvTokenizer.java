@@ -0,0 +1,166 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2020 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single pass csv tokenizer that reads the records one by one from a Reader
+ *
+ * Fields are split on the separator only outside double quotes; quoted fields
+ * can contain separators and line breaks. The fields are returned verbatim,
+ * i.e. the enclosing quotes are not removed, so that they can be parsed as
+ * json strings. Empty lines are skipped.
+ *
+ * Records are terminated by \n, \r\n or \r. Not thread safe.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CsvTokenizer {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] separator;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * @param reader
+     * @param separator the fields separator, one or more chars
+     */
+    public CsvTokenizer(Reader reader, String separator) {
+        if (separator == null || separator.isEmpty()) {
+            throw new IllegalArgumentException("empty separator");
+        }
+
+        this.reader = reader;
+        this.separator = separator.toCharArray();
+    }
+
+    /**
+     * @return the fields of the next record, null at the end of the input
+     * @throws IOException
+     */
+    public List<String> next() throws IOException {
+        List<String> fields = null;
+        boolean quoted = false;
+
+        field.setLength(0);
+
+        int c;
+
+        while ((c = read()) != -1) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (c == '\n' || c == '\r')) {
+                if (c == '\r' && peek() == '\n') {
+                    pos++;
+                }
+
+                if (fields == null && field.length() == 0) {
+                    // empty line
+                    continue;
+                }
+
+                break;
+            }
+
+            field.append((char) c);
+
+            if (!quoted && endsWithSeparator()) {
+                field.setLength(field.length() - separator.length);
+
+                if (fields == null) {
+                    fields = new ArrayList<>();
+                }
+
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+        }
+
+        if (fields == null && field.length() == 0) {
+            return null;
+        }
+
+        if (fields == null) {
+            fields = new ArrayList<>();
+        }
+
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    private boolean endsWithSeparator() {
+        int len = field.length();
+
+        if (len < separator.length) {
+            return false;
+        }
+
+        for (int i = 0; i < separator.length; i++) {
+            if (field.charAt(len - separator.length + i) != separator[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+
+        return buffer[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+
+        do {
+            n = reader.read(buffer, 0, BUFFER_SIZE);
+        } while (n == 0);
+
+        if (n < 0) {
+            return false;
+        }
+
+        pos = 0;
+        limit = n;
+
+        return true;
+    }
+}
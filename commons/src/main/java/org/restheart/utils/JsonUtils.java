@@ -24,6 +24,7 @@ import com.mongodb.MongoClient;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -64,6 +65,29 @@ public class JsonUtils {
             CodecRegistries.fromProviders(
                     new BsonValueCodecProvider()));
 
+    private static final JsonWriterSettings DEFAULT_WRITER_SETTINGS
+            = JsonWriterSettings.builder()
+                    .indent(false)
+                    .dateTimeConverter(new Converter<Long>() {
+                        @Override
+                        public void convert(Long t, StrictJsonWriter writer) {
+                            writer.writeRaw("{\"$date\": " + t + " }");
+                        }
+                    })
+                    .build();
+
+    private static final Map<JsonMode, JsonWriterSettings> MODES_WRITER_SETTINGS
+            = new EnumMap<>(JsonMode.class);
+
+    static {
+        for (var mode : JsonMode.values()) {
+            MODES_WRITER_SETTINGS.put(mode, JsonWriterSettings.builder()
+                    .outputMode(mode)
+                    .indent(false)
+                    .build());
+        }
+    }
+
     private static final String ESCAPED_DOLLAR = "_$";
     private static final String ESCAPED_DOT = "::";
     private static final String DOLLAR = "$";
@@ -673,6 +697,17 @@ public class JsonUtils {
                 .get("x");
     }
 
+    /**
+     * @param mode the JsonMode, null means the default mode that renders
+     * dates as {"$date": <millis> }
+     * @return the (shared and immutable) JsonWriterSettings for mode
+     */
+    public static JsonWriterSettings jsonWriterSettings(JsonMode mode) {
+        return mode == null
+                ? DEFAULT_WRITER_SETTINGS
+                : MODES_WRITER_SETTINGS.get(mode);
+    }
+
     /**
      * @param bson either a BsonDocument or a BsonArray
      * @return the minified string representation of the bson value
@@ -695,20 +730,7 @@ public class JsonUtils {
             return null;
         }
 
-        var settings = mode != null
-                ? JsonWriterSettings.builder()
-                        .outputMode(mode)
-                        .indent(false)
-                        .build()
-                : JsonWriterSettings.builder()
-                        .indent(false)
-                        .dateTimeConverter(new Converter<Long>() {
-                            @Override
-                            public void convert(Long t, StrictJsonWriter writer) {
-                                writer.writeRaw("{\"$date\": " + t + " }");
-                            }
-                        })
-                        .build();
+        var settings = jsonWriterSettings(mode);
 
         if (bson.isDocument()) {
             return minify(bson.asDocument().toJson(settings));
@@ -0,0 +1,138 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2020 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.utils;
+
+import io.undertow.connector.PooledByteBuffer;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A composite, read-only view over the data stored in a PooledByteBuffer[],
+ * as the content of a BufferedExchange.
+ *
+ * It allows decoding the content without coalescing the buffers. Reading from
+ * the stream does not modify the position and the limit of the pooled
+ * buffers.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class PooledByteBuffersInputStream extends InputStream {
+    private final ByteBuffer[] buffers;
+    private int idx = 0;
+
+    /**
+     * @param srcs the pooled buffers, null elements are skipped
+     */
+    public PooledByteBuffersInputStream(PooledByteBuffer[] srcs) {
+        if (srcs == null) {
+            this.buffers = new ByteBuffer[0];
+        } else {
+            int count = 0;
+
+            for (var src : srcs) {
+                if (src != null) {
+                    count++;
+                }
+            }
+
+            this.buffers = new ByteBuffer[count];
+
+            int i = 0;
+
+            for (var src : srcs) {
+                if (src != null) {
+                    this.buffers[i++] = src.getBuffer().duplicate();
+                }
+            }
+        }
+    }
+
+    private ByteBuffer current() {
+        while (idx < buffers.length && !buffers[idx].hasRemaining()) {
+            idx++;
+        }
+
+        return idx < buffers.length ? buffers[idx] : null;
+    }
+
+    @Override
+    public int read() {
+        var current = current();
+
+        return current == null ? -1 : current.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+
+        int read = 0;
+
+        while (read < len) {
+            var current = current();
+
+            if (current == null) {
+                break;
+            }
+
+            int n = Math.min(len - read, current.remaining());
+            current.get(b, off + read, n);
+            read += n;
+        }
+
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = 0;
+
+        while (skipped < n) {
+            var current = current();
+
+            if (current == null) {
+                break;
+            }
+
+            int s = (int) Math.min(n - skipped, current.remaining());
+            current.position(current.position() + s);
+            skipped += s;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * @return the number of bytes that can be still read, i.e. the exact
+     * content size before reading
+     */
+    @Override
+    public int available() {
+        int ret = 0;
+
+        for (int i = idx; i < buffers.length; i++) {
+            ret += buffers[i].remaining();
+        }
+
+        return ret;
+    }
+}
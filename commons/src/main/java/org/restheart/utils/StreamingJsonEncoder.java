@@ -0,0 +1,265 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2020 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+
+/**
+ * Encodes a BsonValue to json writing it straight to a Writer or an
+ * OutputStream.
+ *
+ * The output is the same of JsonUtils.toJson() but it is generated in a single
+ * pass without rendering the whole json to an intermediate String: minification
+ * happens while writing and non document values (arrays and scalars) are
+ * unwrapped on the fly.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class StreamingJsonEncoder {
+    private static final BsonDocumentCodec CODEC = new BsonDocumentCodec();
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext
+            .builder()
+            .build();
+
+    /**
+     * the key used to wrap non document values, since JsonWriter can only
+     * write documents at root level
+     */
+    private static final String WRAP_KEY = "x";
+
+    /**
+     * the length of the minified wrapping prefix {"x":
+     */
+    private static final int WRAP_PREFIX_LENGTH = WRAP_KEY.length() + 4;
+
+    private StreamingJsonEncoder() {
+    }
+
+    /**
+     * Encodes bson as UTF-8 json to out. out is flushed but not closed.
+     *
+     * @param bson
+     * @param mode the JsonMode, null for the default mode
+     * @param out
+     * @throws IOException
+     */
+    public static void encode(BsonValue bson, JsonMode mode, OutputStream out)
+            throws IOException {
+        var writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        encode(bson, mode, writer);
+        writer.flush();
+    }
+
+    /**
+     * Encodes bson as json to out. out is flushed but not closed.
+     *
+     * @param bson
+     * @param mode the JsonMode, null for the default mode
+     * @param out
+     * @throws IOException
+     */
+    public static void encode(BsonValue bson, JsonMode mode, Writer out)
+            throws IOException {
+        if (bson == null) {
+            return;
+        }
+
+        var wrap = !bson.isDocument();
+
+        var minifier = new MinifyingWriter(out, wrap);
+
+        var doc = wrap
+                ? new BsonDocument(WRAP_KEY, bson)
+                : bson.asDocument();
+
+        CODEC.encode(new JsonWriter(minifier,
+                JsonUtils.jsonWriterSettings(mode)),
+                doc,
+                ENCODER_CONTEXT);
+
+        minifier.finish();
+    }
+
+    /**
+     * A Writer that removes insignificant whitespaces as JsonUtils.minify()
+     * does and, if unwrap is true, drops the wrapping {"x": and the closing }
+     *
+     * Buffers the output in a char array and writes it to the underlying
+     * Writer in chunks. Not thread safe.
+     */
+    private static class MinifyingWriter extends Writer {
+        private static final int BUFFER_SIZE = 4096;
+
+        private final Writer out;
+        private final boolean unwrap;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int pos = 0;
+
+        private int skipped = 0;
+        private boolean inString = false;
+        private boolean inRegex = false;
+        private boolean escaped = false;
+        private boolean pendingSpace = false;
+        private char last = 0;
+
+        // when unwrapping, the last char is held back since it might be the
+        // closing } of the wrapping document
+        private boolean hasHeld = false;
+        private char held = 0;
+
+        MinifyingWriter(Writer out, boolean unwrap) {
+            this.out = out;
+            this.unwrap = unwrap;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write0(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write0(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            write0((char) c);
+        }
+
+        private void write0(char c) throws IOException {
+            if (inString || inRegex) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (inString && c == '"') {
+                    inString = false;
+                } else if (inRegex && c == '/') {
+                    inRegex = false;
+                }
+
+                emit(c);
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+            } else {
+                // like jsmin, keep a space between alphanumeric chars
+                // e.g. new Date(...) in JsonMode.SHELL
+                if (pendingSpace && isAlphanum(last) && isAlphanum(c)) {
+                    emit(' ');
+                }
+
+                pendingSpace = false;
+
+                if (c == '"') {
+                    inString = true;
+                } else if (c == '/' && isRegexOpener(last)) {
+                    // regular expression literal, e.g. /^a b/i in JsonMode.SHELL
+                    inRegex = true;
+                }
+
+                emit(c);
+            }
+        }
+
+        private void emit(char c) throws IOException {
+            last = c;
+
+            if (unwrap) {
+                if (skipped < WRAP_PREFIX_LENGTH) {
+                    skipped++;
+                    return;
+                }
+
+                if (hasHeld) {
+                    buffer(held);
+                }
+
+                held = c;
+                hasHeld = true;
+            } else {
+                buffer(c);
+            }
+        }
+
+        private void buffer(char c) throws IOException {
+            if (pos == BUFFER_SIZE) {
+                flushBuffer();
+            }
+
+            buffer[pos++] = c;
+        }
+
+        private void flushBuffer() throws IOException {
+            if (pos > 0) {
+                out.write(buffer, 0, pos);
+                pos = 0;
+            }
+        }
+
+        private static boolean isAlphanum(char c) {
+            return (c >= 'a' && c <= 'z')
+                    || (c >= '0' && c <= '9')
+                    || (c >= 'A' && c <= 'Z')
+                    || c == '_' || c == '$' || c == '\\' || c > 126;
+        }
+
+        private static boolean isRegexOpener(char c) {
+            return c == ':' || c == ',' || c == '[' || c == '(';
+        }
+
+        /**
+         * writes the buffered chars to the underlying writer, discarding the
+         * held back closing } of the wrapping document
+         *
+         * @throws IOException
+         */
+        void finish() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // JsonWriter flushes after each root document; chars are written
+            // to out only on buffer full or finish()
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+    }
+}
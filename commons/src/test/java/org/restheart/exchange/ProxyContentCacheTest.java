@@ -0,0 +1,123 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2020 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.exchange;
+
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ProxyContentCacheTest {
+
+    private static PooledByteBuffer pooled(String data) {
+        var buffer = ByteBuffer.allocate(1024);
+        buffer.put(data.getBytes(StandardCharsets.UTF_8));
+        buffer.flip();
+
+        return new PooledByteBuffer() {
+            @Override
+            public ByteBuffer getBuffer() {
+                return buffer;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+        };
+    }
+
+    private static HttpServerExchange exchange(String content) {
+        var exchange = new HttpServerExchange();
+
+        var buffers = new PooledByteBuffer[Exchange.MAX_BUFFERS];
+        buffers[0] = pooled(content);
+
+        exchange.putAttachment(ProxyResponse.BUFFERED_RESPONSE_DATA_KEY,
+                buffers);
+
+        return exchange;
+    }
+
+    @Test
+    public void testContentIsParsedOnce() throws IOException {
+        var exchange = exchange("{\"a\":1}");
+
+        var first = JsonProxyResponse.of(exchange).readContent();
+        var second = JsonProxyResponse.of(exchange).readContent();
+
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void testWriteContentIsCopiedOnBufferAccess() throws IOException {
+        var exchange = exchange("{\"a\":1}");
+        var response = ByteArrayProxyResponse.of(exchange);
+
+        var content = "{\"a\":1,\"b\":\"è\"}".getBytes(StandardCharsets.UTF_8);
+        response.writeContent(content);
+
+        // the buffer is not updated yet
+        var buffer = exchange
+                .getAttachment(ProxyResponse.BUFFERED_RESPONSE_DATA_KEY)[0]
+                .getBuffer();
+
+        Assert.assertEquals(7, buffer.limit());
+
+        // readers of the same type get the same object
+        Assert.assertSame(content, response.readContent());
+
+        // readers of other types see the modified content
+        Assert.assertEquals("è", JsonProxyResponse.of(exchange).readContent()
+                .getAsJsonObject().get("b").getAsString());
+
+        // accessing the buffer writes the content to it
+        response.getBuffer();
+
+        Assert.assertEquals("{\"a\":1,\"b\":\"è\"}",
+                StandardCharsets.UTF_8.decode(buffer.duplicate()).toString());
+    }
+
+    @Test
+    public void testSetBufferInvalidatesCache() throws IOException {
+        var exchange = exchange("{\"a\":1}");
+        var response = ByteArrayProxyResponse.of(exchange);
+
+        response.writeContent("{}".getBytes(StandardCharsets.UTF_8));
+
+        var buffers = new PooledByteBuffer[Exchange.MAX_BUFFERS];
+        buffers[0] = pooled("{\"c\":3}");
+        response.setBuffer(buffers);
+
+        Assert.assertEquals(3, JsonProxyResponse.of(exchange).readContent()
+                .getAsJsonObject().get("c").getAsInt());
+    }
+}
@@ -0,0 +1,94 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2020 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.utils;
+
+import io.undertow.connector.PooledByteBuffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class BuffersUtilsTest {
+
+    private static PooledByteBuffer pooled(String data) {
+        var buffer = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+
+        return new PooledByteBuffer() {
+            @Override
+            public ByteBuffer getBuffer() {
+                return buffer;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+        };
+    }
+
+    private static PooledByteBuffer[] content() {
+        return new PooledByteBuffer[]{
+            pooled("{\"a\":"), pooled("1,\"b\""), null, pooled(":\"è\"}"), null
+        };
+    }
+
+    @Test
+    public void testToByteArrayIsSizedExactly() throws IOException {
+        var srcs = content();
+
+        var bytes = BuffersUtils.toByteArray(srcs);
+
+        Assert.assertEquals(BuffersUtils.size(srcs), bytes.length);
+        Assert.assertEquals("{\"a\":1,\"b\":\"è\"}",
+                new String(bytes, StandardCharsets.UTF_8));
+
+        // reading does not consume the pooled buffers
+        Assert.assertArrayEquals(bytes, BuffersUtils.toByteArray(srcs));
+    }
+
+    @Test
+    public void testInputStreamView() throws IOException {
+        var srcs = content();
+        var is = new PooledByteBuffersInputStream(srcs);
+
+        Assert.assertEquals(BuffersUtils.size(srcs), is.available());
+        Assert.assertEquals('{', is.read());
+        Assert.assertEquals(5, is.skip(5));
+
+        var rest = is.readAllBytes();
+
+        Assert.assertEquals(",\"b\":\"è\"}",
+                new String(rest, StandardCharsets.UTF_8));
+        Assert.assertEquals(-1, is.read());
+        Assert.assertEquals(0, is.available());
+
+        // the view does not modify the pooled buffers
+        Assert.assertEquals(0, srcs[0].getBuffer().position());
+    }
+}
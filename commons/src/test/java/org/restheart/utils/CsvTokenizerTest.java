@@ -0,0 +1,71 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2020 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CsvTokenizerTest {
+
+    @Test
+    public void testRecords() throws IOException {
+        var t = new CsvTokenizer(new StringReader(
+                "a,b,c\r\n1,\"x, \"\"y\"\"\",\n\n2,\"multi\nline\",{\"k\":1}\r3"),
+                ",");
+
+        Assert.assertEquals(List.of("a", "b", "c"), t.next());
+        Assert.assertEquals(List.of("1", "\"x, \"\"y\"\"\"", ""), t.next());
+        Assert.assertEquals(List.of("2", "\"multi\nline\"", "{\"k\":1}"), t.next());
+        Assert.assertEquals(List.of("3"), t.next());
+        Assert.assertNull(t.next());
+    }
+
+    @Test
+    public void testSeparator() throws IOException {
+        var t = new CsvTokenizer(new StringReader("a;;b\"c;;d\";;\n"), ";;");
+
+        Assert.assertEquals(List.of("a", "b\"c;;d\"", ""), t.next());
+        Assert.assertNull(t.next());
+    }
+
+    @Test
+    public void testLongLine() throws IOException {
+        var sb = new StringBuilder();
+
+        for (int i = 0; i < 20_000; i++) {
+            sb.append("\"").append(i).append("\",");
+        }
+
+        sb.append("last");
+
+        var record = new CsvTokenizer(new StringReader(sb.toString()), ",").next();
+
+        Assert.assertEquals(20_001, record.size());
+        Assert.assertEquals("\"19999\"", record.get(19_999));
+        Assert.assertEquals("last", record.get(20_000));
+    }
+}
@@ -0,0 +1,116 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2020 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import org.bson.BsonArray;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.json.JsonMode;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class StreamingJsonEncoderTest {
+
+    private static BsonDocument doc() {
+        return new BsonDocument("_id", new BsonObjectId())
+                .append("s", new BsonString("a \"quoted\" string, with: spaces { }"))
+                .append("n", new BsonInt32(1))
+                .append("l", new BsonInt64(2))
+                .append("d", new BsonDateTime(1577836800000L))
+                .append("old", new BsonDateTime(-99999999999999L))
+                .append("r", new BsonRegularExpression("^a b$", "i"))
+                .append("a", new BsonArray());
+    }
+
+    private static String encode(BsonValue bson, JsonMode mode) throws IOException {
+        var sw = new StringWriter();
+        StreamingJsonEncoder.encode(bson, mode, sw);
+        return sw.toString();
+    }
+
+    private static void assertSameAsToJson(BsonValue bson) throws IOException {
+        Assert.assertEquals(JsonUtils.toJson(bson, null), encode(bson, null));
+
+        for (var mode : JsonMode.values()) {
+            Assert.assertEquals("mode " + mode,
+                    JsonUtils.toJson(bson, mode),
+                    encode(bson, mode));
+        }
+    }
+
+    @Test
+    public void testDocument() throws IOException {
+        assertSameAsToJson(doc());
+    }
+
+    @Test
+    public void testArray() throws IOException {
+        var array = new BsonArray();
+
+        for (int i = 0; i < 2000; i++) {
+            array.add(doc());
+        }
+
+        array.add(new BsonArray());
+        array.add(new BsonString("}"));
+
+        assertSameAsToJson(array);
+        assertSameAsToJson(new BsonArray());
+    }
+
+    @Test
+    public void testScalars() throws IOException {
+        assertSameAsToJson(new BsonString("foo"));
+        assertSameAsToJson(new BsonInt32(1));
+        assertSameAsToJson(new BsonDateTime(0));
+    }
+
+    @Test
+    public void testUnicode() throws IOException {
+        var bson = new BsonDocument("u", new BsonString("àèìòù €"));
+
+        Assert.assertEquals("{\"u\":\"àèìòù €\"}", encode(bson, null));
+    }
+
+    @Test
+    public void testOutputStream() throws IOException {
+        var bson = doc();
+        var out = new ByteArrayOutputStream();
+
+        StreamingJsonEncoder.encode(bson, null, out);
+
+        Assert.assertEquals(JsonUtils.toJson(bson),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
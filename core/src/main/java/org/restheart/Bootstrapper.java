@@ -36,6 +36,7 @@ import static io.undertow.Handlers.resource;
 import io.undertow.Undertow;
 import io.undertow.Undertow.Builder;
 import io.undertow.UndertowOptions;
+import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.AllowedMethodsHandler;
 import io.undertow.server.handlers.BlockingHandler;
 import io.undertow.server.handlers.GracefulShutdownHandler;
@@ -70,6 +71,7 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -77,6 +79,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
@@ -85,6 +89,7 @@ import static org.fusesource.jansi.Ansi.Color.MAGENTA;
 import static org.fusesource.jansi.Ansi.Color.RED;
 import static org.fusesource.jansi.Ansi.ansi;
 import org.fusesource.jansi.AnsiConsole;
+import org.restheart.Configuration.EXECUTION_MODE;
 import static org.restheart.ConfigurationKeys.STATIC_RESOURCES_MOUNT_EMBEDDED_KEY;
 import static org.restheart.ConfigurationKeys.STATIC_RESOURCES_MOUNT_WELCOME_FILE_KEY;
 import static org.restheart.ConfigurationKeys.STATIC_RESOURCES_MOUNT_WHAT_KEY;
@@ -99,9 +104,12 @@ import static org.restheart.exchange.PipelineInfo.PIPELINE_TYPE.STATIC_RESOURCE;
 import org.restheart.handlers.CORSHandler;
 import org.restheart.handlers.ConfigurableEncodingHandler;
 import org.restheart.handlers.ErrorHandler;
+import org.restheart.handlers.ExecutorBlockingHandler;
+import org.restheart.handlers.LatencyAwareProxyClient;
 import org.restheart.handlers.PipelinedHandler;
 import static org.restheart.handlers.PipelinedHandler.pipe;
 import org.restheart.handlers.PipelinedWrappingHandler;
+import org.restheart.handlers.ProxyCacheHandler;
 import org.restheart.handlers.QueryStringRebuilder;
 import org.restheart.handlers.RequestInterceptorsExecutor;
 import org.restheart.handlers.RequestLogger;
@@ -989,7 +997,7 @@ public class Bootstrapper {
                 new RequestLimitingHandler(
                         new RequestLimit(configuration.getRequestsLimit()),
                         new AllowedMethodsHandler(
-                                new BlockingHandler(
+                                blockingHandler(
                                         new ErrorHandler(
                                                 new HttpContinueAcceptingHandler(
                                                         PluginsRegistryImpl
@@ -1004,6 +1012,51 @@ public class Bootstrapper {
                                 HttpString.tryFromString(ExchangeKeys.METHOD.OPTIONS.name()))));
     }
 
+    /**
+     * Wraps next in the handler that dispatches the requests to the threads
+     * set by the execution-mode configuration option.
+     *
+     * With virtual-threads each request is executed by a new virtual thread,
+     * so blocking calls (e.g. db queries) don't hold the worker threads; the
+     * number of concurrent requests is still limited by requests-limit.
+     *
+     * @param next
+     * @return the blocking handler
+     */
+    private static HttpHandler blockingHandler(HttpHandler next) {
+        if (configuration.getExecutionMode() == EXECUTION_MODE.VIRTUAL_THREADS) {
+            var executor = virtualThreadsExecutor();
+
+            if (executor != null) {
+                LOGGER.info("Requests are executed by virtual threads");
+                return new ExecutorBlockingHandler(executor, next);
+            } else {
+                LOGGER.warn("Execution mode virtual-threads requires Java 21 "
+                        + "or later, falling back to worker-threads");
+            }
+        }
+
+        return new BlockingHandler(next);
+    }
+
+    /**
+     * Since the build targets Java 11, the virtual threads executor is created
+     * via reflection
+     *
+     * @return Executors.newVirtualThreadPerTaskExecutor() or null if the Java
+     * runtime does not support virtual threads
+     */
+    private static Executor virtualThreadsExecutor() {
+        try {
+            return (Executor) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Virtual threads not supported", e);
+            return null;
+        }
+    }
+
     /**
      * plug services
      *
@@ -1095,17 +1148,19 @@ public class Bootstrapper {
                     new ServiceExchangeInitializer(),
                     new CORSHandler(),
                     new XPoweredByInjector(),
-                    new RequestInterceptorsExecutor(REQUEST_BEFORE_AUTH),
+                    new RequestInterceptorsExecutor(srv.getInstance(),
+                            REQUEST_BEFORE_AUTH),
                     new QueryStringRebuilder(),
                     securityHandler,
-                    new RequestInterceptorsExecutor(REQUEST_AFTER_AUTH),
+                    new RequestInterceptorsExecutor(srv.getInstance(),
+                            REQUEST_AFTER_AUTH),
                     new QueryStringRebuilder(),
                     PipelinedWrappingHandler
                             .wrap(new ConfigurableEncodingHandler(
                                     PipelinedWrappingHandler
                                             .wrap(srv.getInstance()),
                                     configuration.isForceGzipEncoding())),
-                    new ResponseInterceptorsExecutor(),
+                    new ResponseInterceptorsExecutor(srv.getInstance()),
                     new ResponseSender()
             );
 
@@ -1182,6 +1237,43 @@ public class Bootstrapper {
                     ConfigurationKeys.PROXY_NAME, null,
                     true);
 
+            boolean keepUpstreamEncoding = Configuration.getOrDefault(proxies,
+                    ConfigurationKeys.PROXY_KEEP_UPSTREAM_ENCODING, false,
+                    true);
+
+            boolean cacheEnabled = Configuration.getOrDefault(proxies,
+                    ConfigurationKeys.PROXY_CACHE_ENABLED, false,
+                    true);
+
+            Integer cacheMaxEntries = Configuration.getOrDefault(proxies,
+                    ConfigurationKeys.PROXY_CACHE_MAX_ENTRIES, 1000,
+                    true);
+
+            Integer cacheMaxEntrySize = Configuration.getOrDefault(proxies,
+                    ConfigurationKeys.PROXY_CACHE_MAX_ENTRY_SIZE, 1024 * 1024,
+                    true);
+
+            Integer cacheMaxSize = Configuration.getOrDefault(proxies,
+                    ConfigurationKeys.PROXY_CACHE_MAX_SIZE, 64 * 1024 * 1024,
+                    true);
+
+            var loadBalancingPolicy = LatencyAwareProxyClient.policy(
+                    Configuration.getOrDefault(proxies,
+                            ConfigurationKeys.PROXY_LOAD_BALANCING_POLICY, null,
+                            true));
+
+            Integer outlierEjectionTime = Configuration.getOrDefault(proxies,
+                    ConfigurationKeys.PROXY_OUTLIER_EJECTION_TIME, 30,
+                    true);
+
+            Number outlierMaxErrorRate = Configuration.getOrDefault(proxies,
+                    ConfigurationKeys.PROXY_OUTLIER_MAX_ERROR_RATE, 0.5,
+                    true);
+
+            Number outlierMaxLatencyFactor = Configuration.getOrDefault(proxies,
+                    ConfigurationKeys.PROXY_OUTLIER_MAX_LATENCY_FACTOR, 3,
+                    true);
+
             final Xnio xnio = Xnio.getInstance();
 
             final OptionMap optionMap = OptionMap.create(
@@ -1200,7 +1292,11 @@ public class Bootstrapper {
 
             try {
                 LoadBalancingProxyClient proxyClient
-                        = new LoadBalancingProxyClient()
+                        = new LatencyAwareProxyClient(location,
+                                loadBalancingPolicy,
+                                outlierEjectionTime,
+                                outlierMaxErrorRate.doubleValue(),
+                                outlierMaxLatencyFactor.doubleValue())
                                 .setConnectionsPerThread(connectionsPerThread)
                                 .setSoftMaxConnectionsPerThread(softMaxConnectionsPerThread)
                                 .setMaxQueueSize(maxQueueSize)
@@ -1230,7 +1326,7 @@ public class Bootstrapper {
                         .setProxyClient(proxyClient)
                         .build();
 
-                var proxy = pipe(
+                var handlers = new ArrayList<PipelinedHandler>(List.of(
                         new PipelineInfoInjector(),
                         new TracingInstrumentationHandler(),
                         new RequestLogger(),
@@ -1247,11 +1343,24 @@ public class Bootstrapper {
                         new RequestContentInjector(ON_REQUIRES_CONTENT_AFTER_AUTH),
                         new RequestInterceptorsExecutor(REQUEST_AFTER_AUTH),
                         new QueryStringRebuilder(),
-                        new ConduitInjector(),
-                        PipelinedWrappingHandler.wrap(
-                                new ConfigurableEncodingHandler( // Must be after ConduitInjector
-                                        proxyHandler,
-                                        configuration.isForceGzipEncoding())));
+                        new ConduitInjector(keepUpstreamEncoding)));
+
+                if (cacheEnabled) {
+                    // after ConduitInjector so that response interceptors
+                    // are executed also for cached responses
+                    handlers.add(new ProxyCacheHandler(location,
+                            cacheMaxEntries,
+                            cacheMaxEntrySize,
+                            cacheMaxSize));
+                }
+
+                handlers.add(PipelinedWrappingHandler.wrap(
+                        new ConfigurableEncodingHandler( // Must be after ConduitInjector
+                                proxyHandler,
+                                configuration.isForceGzipEncoding())));
+
+                var proxy = pipe(handlers.toArray(new PipelinedHandler[0]));
+
                 PluginsRegistryImpl
                         .getInstance()
                         .plugPipeline(location, proxy,
@@ -0,0 +1,197 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.Consumer;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.ConduitWritableByteChannel;
+import org.xnio.conduits.Conduits;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * A conduit used by ProxyCacheHandler that either
+ *
+ * - copies the data written to the next conduit, up to a maximum size, passing
+ * it to a consumer on terminateWrites(), in order to cache it
+ *
+ * - or discards the data written to it and writes a cached content to the next
+ * conduit on flush() after terminateWrites(), without blocking, in order to
+ * send a revalidated cached response in place of the 304 response of the
+ * backend
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CachingSinkConduit
+        extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+    private final ByteArrayOutputStream copy;
+    private final long maxSize;
+    private final Consumer<byte[]> consumer;
+
+    private final byte[] replacement;
+
+    private boolean overflow = false;
+
+    /**
+     * the part of replacement still to be written after terminateWrites()
+     */
+    private ByteBuffer pending = null;
+
+    private boolean terminated = false;
+
+    /**
+     * Creates a conduit that copies the written data
+     *
+     * @param next
+     * @param maxSize the maximum size of the data, if exceeded the consumer is
+     * not invoked
+     * @param consumer the consumer of the data
+     */
+    public CachingSinkConduit(StreamSinkConduit next,
+            long maxSize,
+            Consumer<byte[]> consumer) {
+        super(next);
+        this.copy = new ByteArrayOutputStream();
+        this.maxSize = maxSize;
+        this.consumer = consumer;
+        this.replacement = null;
+    }
+
+    /**
+     * Creates a conduit that discards the written data and writes
+     * replacement
+     *
+     * @param next
+     * @param replacement
+     */
+    public CachingSinkConduit(StreamSinkConduit next, byte[] replacement) {
+        super(next);
+        this.copy = null;
+        this.maxSize = 0;
+        this.consumer = null;
+        this.replacement = replacement;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (replacement != null) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        var dup = src.duplicate();
+        int n = next.write(src);
+
+        if (n > 0 && !overflow) {
+            if (copy.size() + n > maxSize) {
+                overflow = true;
+                copy.reset();
+            } else {
+                var data = new byte[n];
+                dup.get(data);
+                copy.write(data, 0, n);
+            }
+        }
+
+        return n;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offs, int len) throws IOException {
+        long ret = 0;
+
+        for (int i = offs; i < offs + len; ++i) {
+            if (srcs[i].hasRemaining()) {
+                int n = write(srcs[i]);
+                ret += n;
+
+                if (srcs[i].hasRemaining()) {
+                    break;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    @Override
+    public long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
+        return src.transferTo(position, count, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public long transferFrom(final StreamSourceChannel source, final long count, final ByteBuffer throughBuffer) throws IOException {
+        return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public int writeFinal(ByteBuffer src) throws IOException {
+        return Conduits.writeFinalBasic(this, src);
+    }
+
+    @Override
+    public long writeFinal(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return Conduits.writeFinalBasic(this, srcs, offset, length);
+    }
+
+    @Override
+    public void terminateWrites() throws IOException {
+        if (terminated) {
+            return;
+        }
+
+        terminated = true;
+
+        if (replacement != null) {
+            // written by flush(), that is invoked until it returns true,
+            // without blocking the IO thread if next is not writable
+            pending = ByteBuffer.wrap(replacement);
+            return;
+        } else if (!overflow) {
+            consumer.accept(copy.toByteArray());
+        }
+
+        next.terminateWrites();
+    }
+
+    @Override
+    public boolean flush() throws IOException {
+        if (pending != null) {
+            while (pending.hasRemaining()) {
+                if (next.write(pending) == 0) {
+                    return false;
+                }
+            }
+
+            pending = null;
+            next.terminateWrites();
+        }
+
+        return next.flush();
+    }
+}
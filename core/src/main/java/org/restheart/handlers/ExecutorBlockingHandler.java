@@ -0,0 +1,58 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import java.util.concurrent.Executor;
+
+/**
+ * Like io.undertow.server.handlers.BlockingHandler, puts the exchange in
+ * blocking mode and dispatches it, but to the given Executor rather than to
+ * the undertow worker threads pool.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ExecutorBlockingHandler implements HttpHandler {
+    private final Executor executor;
+    private final HttpHandler next;
+
+    /**
+     *
+     * @param executor the executor the exchanges are dispatched to
+     * @param next
+     */
+    public ExecutorBlockingHandler(Executor executor, HttpHandler next) {
+        this.executor = executor;
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        exchange.startBlocking();
+
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(executor, next);
+        } else {
+            next.handleRequest(exchange);
+        }
+    }
+}
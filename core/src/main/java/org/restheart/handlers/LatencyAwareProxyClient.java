@@ -0,0 +1,479 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import io.undertow.client.UndertowClient;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.proxy.LoadBalancingProxyClient;
+import io.undertow.util.AttachmentKey;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A LoadBalancingProxyClient that selects the host according to the observed
+ * latencies and number of outstanding requests.
+ *
+ * The policies are:
+ *
+ * - ROUND_ROBIN: the hosts are selected in turn, as LoadBalancingProxyClient
+ * does by default
+ *
+ * - LEAST_OUTSTANDING: the host with less outstanding requests is selected
+ * among two random ones
+ *
+ * - PEAK_EWMA: the host with the lower cost is selected among two random
+ * ones; the cost is the exponentially weighted moving average of the latency,
+ * that immediately takes the value of a latency peak, multiplied by the
+ * number of outstanding requests plus one
+ *
+ * With LEAST_OUTSTANDING and PEAK_EWMA, a host whose error rate exceeds
+ * maxErrorRate or whose average latency exceeds maxLatencyFactor times the
+ * median of the hosts is ejected for ejectionTime seconds. If all the hosts are
+ * ejected, they are all selectable.
+ *
+ * The latency is the time until the response headers are received from the
+ * host, so that it does not depend on the size of the response content nor on
+ * how fast the client reads it; the completion of the exchange only accounts
+ * the errors and the outstanding requests.
+ *
+ * The latency of each host is registered in the default metrics registry as
+ * the proxy.{location}.{host}.latency timer, the 5xx responses as the
+ * proxy.{location}.{host}.errors meter.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class LatencyAwareProxyClient extends LoadBalancingProxyClient {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(LatencyAwareProxyClient.class);
+
+    public enum POLICY {
+        ROUND_ROBIN, LEAST_OUTSTANDING, PEAK_EWMA
+    }
+
+    private static final String METRICS_REGISTRY_NAME = "default";
+
+    private static final AttachmentKey<Request> REQUEST_KEY
+            = AttachmentKey.create(Request.class);
+
+    /**
+     * the decay time of the moving averages
+     */
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * the minimum number of responses to evaluate a host for ejection
+     */
+    private static final int MIN_SAMPLES = 10;
+
+    private final Balancer balancer;
+
+    /**
+     * @param location the proxy location, used to name the metrics
+     * @param policy
+     * @param ejectionTime seconds a host is ejected for, 0 disables ejection
+     * @param maxErrorRate the error rate above which a host is ejected
+     * @param maxLatencyFactor the ratio between the average latency of a
+     * host and the median of the hosts above which a host is ejected
+     */
+    public LatencyAwareProxyClient(String location,
+            POLICY policy,
+            int ejectionTime,
+            double maxErrorRate,
+            double maxLatencyFactor) {
+        this(new Balancer(location,
+                policy,
+                TimeUnit.SECONDS.toNanos(ejectionTime),
+                maxErrorRate,
+                maxLatencyFactor));
+    }
+
+    private LatencyAwareProxyClient(Balancer balancer) {
+        super(UndertowClient.getInstance(), null, balancer);
+        this.balancer = balancer;
+    }
+
+    /**
+     * @param policy the policy name, e.g. peak-ewma
+     * @return the policy, ROUND_ROBIN if policy is null or invalid
+     */
+    public static POLICY policy(String policy) {
+        if (policy == null) {
+            return POLICY.ROUND_ROBIN;
+        }
+
+        try {
+            return POLICY.valueOf(policy.toUpperCase(Locale.ROOT)
+                    .replaceAll("-", "_"));
+        } catch (IllegalArgumentException iae) {
+            LOGGER.warn("Invalid load balancing policy {}, using round-robin",
+                    policy);
+            return POLICY.ROUND_ROBIN;
+        }
+    }
+
+    @Override
+    protected Host selectHost(HttpServerExchange exchange) {
+        var host = super.selectHost(exchange);
+
+        if (host != null) {
+            balancer.started(exchange, host.getUri());
+        }
+
+        return host;
+    }
+
+    /**
+     * The request to a host
+     */
+    private static class Request {
+        private final HostStats host;
+        private final long start;
+        // set when the response headers are received
+        private volatile long rtt = -1;
+
+        Request(HostStats host, long start) {
+            this.host = host;
+            this.start = start;
+        }
+    }
+
+    /**
+     * The statistics of a host
+     */
+    private static class HostStats {
+        private final AtomicInteger outstanding = new AtomicInteger(0);
+        private final Timer latency;
+        private final Meter errors;
+
+        // guarded by this
+        private double ewma = 0;
+        private double errorRate = 0;
+        private long lastUpdate = System.nanoTime();
+        private int samples = 0;
+
+        private volatile long ejectedUntil = 0;
+
+        HostStats(MetricRegistry registry, String location, URI uri) {
+            this.latency = registry.timer(MetricRegistry.name("proxy",
+                    location, uri.toString(), "latency"));
+            this.errors = registry.meter(MetricRegistry.name("proxy",
+                    location, uri.toString(), "errors"));
+        }
+
+        synchronized void update(long now, long rtt, boolean error) {
+            var w = Math.exp(-(double) (now - lastUpdate) / DECAY_NANOS);
+            lastUpdate = now;
+
+            // peak sensitive: latency increases are taken immediately
+            ewma = rtt > ewma ? rtt : ewma * w + rtt * (1 - w);
+            errorRate = errorRate * w + (error ? 1 - w : 0);
+            samples++;
+        }
+
+        synchronized double ewma() {
+            return ewma;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+
+        synchronized int samples() {
+            return samples;
+        }
+
+        synchronized void reset() {
+            ewma = 0;
+            errorRate = 0;
+            samples = 0;
+        }
+
+        boolean isEjected(long now) {
+            return ejectedUntil - now > 0;
+        }
+
+        /**
+         * @return the cost of the host for PEAK_EWMA, the latency is at
+         * least 1ms to avoid hosts without samples to be always selected
+         */
+        double cost() {
+            return Math.max(ewma(), TimeUnit.MILLISECONDS.toNanos(1))
+                    * (outstanding.get() + 1);
+        }
+    }
+
+    /**
+     * The HostSelector that implements the policies
+     */
+    static class Balancer implements HostSelector {
+        private final String location;
+        private final POLICY policy;
+        private final long ejectionTime;
+        private final double maxErrorRate;
+        private final double maxLatencyFactor;
+
+        private final MetricRegistry registry;
+        private final Map<URI, HostStats> hosts = new ConcurrentHashMap<>();
+        private final AtomicInteger next = new AtomicInteger(0);
+
+        Balancer(String location,
+                POLICY policy,
+                long ejectionTime,
+                double maxErrorRate,
+                double maxLatencyFactor) {
+            this.location = location;
+            this.policy = policy;
+            this.ejectionTime = ejectionTime;
+            this.maxErrorRate = maxErrorRate;
+            this.maxLatencyFactor = maxLatencyFactor;
+
+            if (SharedMetricRegistries.tryGetDefault() == null) {
+                SharedMetricRegistries.setDefault(METRICS_REGISTRY_NAME);
+            }
+
+            this.registry = SharedMetricRegistries.tryGetDefault();
+        }
+
+        private HostStats stats(URI uri) {
+            return hosts.computeIfAbsent(uri,
+                    u -> new HostStats(registry, location, u));
+        }
+
+        @Override
+        public int selectHost(Host[] availableHosts) {
+            var uris = new URI[availableHosts.length];
+
+            for (int i = 0; i < availableHosts.length; i++) {
+                uris[i] = availableHosts[i].getUri();
+            }
+
+            return select(uris, System.nanoTime());
+        }
+
+        /**
+         * @param uris the URIs of the available hosts
+         * @param now the current value of System.nanoTime()
+         * @return the index of the selected host
+         */
+        int select(URI[] uris, long now) {
+            if (uris.length == 1
+                    || policy == POLICY.ROUND_ROBIN) {
+                return next.getAndIncrement() % uris.length;
+            }
+
+            var candidates = new int[uris.length];
+            int count = 0;
+
+            for (int i = 0; i < uris.length; i++) {
+                if (!stats(uris[i]).isEjected(now)) {
+                    candidates[count++] = i;
+                }
+            }
+
+            if (count == 0) {
+                // all ejected, don't leave the proxy without hosts
+                for (int i = 0; i < uris.length; i++) {
+                    candidates[i] = i;
+                }
+
+                count = uris.length;
+            }
+
+            if (count == 1) {
+                return candidates[0];
+            }
+
+            // power of two choices
+            var random = ThreadLocalRandom.current();
+
+            int a = candidates[random.nextInt(count)];
+            int b = candidates[random.nextInt(count - 1)];
+
+            if (b == a) {
+                b = candidates[count - 1];
+            }
+
+            var sa = stats(uris[a]);
+            var sb = stats(uris[b]);
+
+            if (policy == POLICY.LEAST_OUTSTANDING) {
+                return sa.outstanding.get() <= sb.outstanding.get() ? a : b;
+            } else {
+                return sa.cost() <= sb.cost() ? a : b;
+            }
+        }
+
+        void started(HttpServerExchange exchange, URI uri) {
+            if (exchange.getAttachment(REQUEST_KEY) == null) {
+                // the proxy creates the response channel once it has
+                // received the response headers
+                exchange.addResponseWrapper((factory, ex) -> {
+                    responded(ex, System.nanoTime());
+                    return factory.create();
+                });
+
+                exchange.addExchangeCompleteListener((ex, nextListener) -> {
+                    try {
+                        finished(ex, System.nanoTime());
+                    } finally {
+                        nextListener.proceed();
+                    }
+                });
+            }
+
+            start(exchange, uri, System.nanoTime());
+        }
+
+        /**
+         * @param exchange
+         * @param uri the URI of the selected host
+         * @param now the current value of System.nanoTime()
+         */
+        void start(HttpServerExchange exchange, URI uri, long now) {
+            var previous = exchange.getAttachment(REQUEST_KEY);
+
+            if (previous != null) {
+                // the request is retried on another host
+                completed(previous, now, true);
+            }
+
+            var stats = stats(uri);
+            stats.outstanding.incrementAndGet();
+            exchange.putAttachment(REQUEST_KEY, new Request(stats, now));
+        }
+
+        /**
+         * stops the latency clock, the response headers have been received
+         *
+         * @param exchange
+         * @param now the current value of System.nanoTime()
+         */
+        void responded(HttpServerExchange exchange, long now) {
+            var request = exchange.getAttachment(REQUEST_KEY);
+
+            if (request != null && request.rtt < 0) {
+                request.rtt = now - request.start;
+            }
+        }
+
+        /**
+         * records the response when the exchange completes
+         *
+         * @param exchange
+         * @param now the current value of System.nanoTime()
+         */
+        void finished(HttpServerExchange exchange, long now) {
+            var request = exchange.removeAttachment(REQUEST_KEY);
+
+            if (request != null) {
+                completed(request, now, exchange.getStatusCode() >= 500);
+            }
+        }
+
+        private void completed(Request request, long now, boolean error) {
+            request.host.outstanding.decrementAndGet();
+
+            // without response headers, e.g. if the connection failed,
+            // the latency is the time until the failure
+            var rtt = request.rtt >= 0 ? request.rtt : now - request.start;
+
+            completed(request.host, now, rtt, error);
+        }
+
+        /**
+         * records the response of a host
+         *
+         * @param uri the URI of the host
+         * @param now the current value of System.nanoTime()
+         * @param rtt the latency in nanoseconds
+         * @param error true if the response is an error
+         */
+        void completed(URI uri, long now, long rtt, boolean error) {
+            completed(stats(uri), now, rtt, error);
+        }
+
+        private void completed(HostStats stats, long now, long rtt, boolean error) {
+            stats.latency.update(rtt, TimeUnit.NANOSECONDS);
+
+            if (error) {
+                stats.errors.mark();
+            }
+
+            stats.update(now, rtt, error);
+
+            if (policy != POLICY.ROUND_ROBIN && ejectionTime > 0) {
+                checkOutlier(stats, now);
+            }
+        }
+
+        private void checkOutlier(HostStats stats, long now) {
+            if (stats.isEjected(now) || stats.samples() < MIN_SAMPLES
+                    || hosts.size() < 2) {
+                return;
+            }
+
+            var ejectForErrors = stats.errorRate() > maxErrorRate;
+
+            var latencies = hosts.values().stream()
+                    .mapToDouble(HostStats::ewma)
+                    .sorted()
+                    .toArray();
+
+            var median = latencies[latencies.length / 2];
+
+            var ejectForLatency = median > 0
+                    && stats.ewma() > median * maxLatencyFactor;
+
+            if (ejectForErrors || ejectForLatency) {
+                LOGGER.warn("Ejecting host {} of proxy {} for {} seconds, "
+                        + "error rate {}, average latency {}ms, median latency {}ms",
+                        hostOf(stats),
+                        location,
+                        TimeUnit.NANOSECONDS.toSeconds(ejectionTime),
+                        String.format("%.2f", stats.errorRate()),
+                        TimeUnit.NANOSECONDS.toMillis((long) stats.ewma()),
+                        TimeUnit.NANOSECONDS.toMillis((long) median));
+
+                stats.ejectedUntil = now + ejectionTime;
+                stats.reset();
+            }
+        }
+
+        private URI hostOf(HostStats stats) {
+            return hosts.entrySet().stream()
+                    .filter(e -> e.getValue() == stats)
+                    .map(Map.Entry::getKey)
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+}
@@ -24,14 +24,22 @@ import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.protocol.http.ServerFixedLengthStreamSinkConduit;
 import io.undertow.util.Headers;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 import org.restheart.exchange.ByteArrayProxyResponse;
 import static org.restheart.exchange.Exchange.MAX_BUFFERS;
 import org.restheart.exchange.ProxyResponse;
 import org.restheart.utils.BuffersUtils;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.PooledByteBuffersInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnio.IoUtils;
@@ -47,6 +55,14 @@ import org.xnio.conduits.StreamSinkConduit;
  * It is also responsible of executing response interceptors. terminateWrites()
  * is called
  *
+ * If the response content is compressed with gzip or deflate, it is inflated
+ * before executing the interceptors; the original compressed content is sent
+ * if they don't modify it, otherwise the modified content is compressed again
+ * with the same encoding. If the content cannot be inflated, because it is
+ * corrupted or exceeds the maximum size, the interceptors cannot inspect it:
+ * the response fails closed with 502 Bad Gateway and the upstream content is
+ * never sent.
+ *
  * @author Andrea Di Cesare <andrea@softinstigate.com>
  */
 public class ModifiableContentSinkConduit
@@ -54,6 +70,24 @@ public class ModifiableContentSinkConduit
 
     static final Logger LOGGER = LoggerFactory.getLogger(ModifiableContentSinkConduit.class);
 
+    /**
+     * ServerFixedLengthStreamSinkConduit.reset(), looked up once
+     */
+    private static final Method RESET;
+
+    static {
+        try {
+            RESET = ServerFixedLengthStreamSinkConduit.class.getDeclaredMethod(
+                    "reset",
+                    long.class,
+                    HttpServerExchange.class);
+            RESET.setAccessible(true);
+        } catch (NoSuchMethodException | SecurityException ex) {
+            LOGGER.error("could not find ServerFixedLengthStreamSinkConduit.reset method", ex);
+            throw new RuntimeException("could not find ServerFixedLengthStreamSinkConduit.reset method", ex);
+        }
+    }
+
     //private ByteBuffer data = null;
     private final HttpServerExchange exchange;
 
@@ -82,8 +116,8 @@ public class ModifiableContentSinkConduit
      */
     private void resetBufferPool(HttpServerExchange exchange) {
         var buffers = new PooledByteBuffer[MAX_BUFFERS];
-        exchange.putAttachment(ProxyResponse.BUFFERED_RESPONSE_DATA_KEY,
-                buffers);
+        // setBuffer() also invalidates the cached content, if any
+        ByteArrayProxyResponse.of(exchange).setBuffer(buffers);
     }
 
     @Override
@@ -125,15 +159,91 @@ public class ModifiableContentSinkConduit
 
     @Override
     public void terminateWrites() throws IOException {
+        var response = ByteArrayProxyResponse.of(exchange);
+
+        // if the backend sent compressed content, inflate it for the
+        // interceptors, see ConduitInjector keepUpstreamEncoding
+        var encoding = exchange.getResponseHeaders()
+                .getFirst(Headers.CONTENT_ENCODING);
+
+        PooledByteBuffer[] encoded = null;
+        byte[] decoded = null;
+
+        if (isSupportedEncoding(encoding)) {
+            encoded = response.getBuffer();
+
+            var maxSize = MAX_BUFFERS * exchange.getConnection()
+                    .getByteBufferPool().getBufferSize();
+
+            try {
+                decoded = decode(encoding, encoded, maxSize);
+
+                if (decoded == null) {
+                    LOGGER.warn("inflated response content exceeds maximum size "
+                            + "of {} bytes, responding with 502",
+                            maxSize);
+                }
+            } catch (IOException ioe) {
+                LOGGER.warn("cannot inflate {} response content, "
+                        + "responding with 502", encoding, ioe);
+            }
+
+            if (decoded == null) {
+                // the interceptors cannot inspect the content: never send
+                // it uninspected nor partially inflated
+                response.setBuffer(new PooledByteBuffer[MAX_BUFFERS]);
+                exchange.getResponseHeaders().remove(Headers.CONTENT_ENCODING);
+                response.setInError(HttpStatus.SC_BAD_GATEWAY,
+                        "the response content cannot be processed "
+                        + "by the response interceptors");
+                forward(response.getBuffer());
+                return;
+            }
+
+            var inflated = new PooledByteBuffer[MAX_BUFFERS];
+
+            BuffersUtils.transfer(ByteBuffer.wrap(decoded),
+                    inflated,
+                    exchange);
+
+            response.setBuffer(inflated);
+            exchange.getResponseHeaders().remove(Headers.CONTENT_ENCODING);
+        }
+
         try {
             interceptorsExecutor.handleRequest(exchange);
         } catch (Exception e) {
             throw new IOException(e);
         }
 
-        PooledByteBuffer[] dests = ByteArrayProxyResponse.of(exchange)
-                .getBuffer();
+        if (encoded != null) {
+            var content = BuffersUtils.toByteArray(response.getBuffer());
+
+            // send the original compressed content unless the interceptors
+            // modified it, otherwise compress it again with the same encoding
+            if (Arrays.equals(decoded, content)) {
+                response.setBuffer(encoded);
+                exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, encoding);
+            } else {
+                var reencoded = encode(encoding, content);
+                var compressed = new PooledByteBuffer[MAX_BUFFERS];
+
+                int copied = BuffersUtils.transfer(ByteBuffer.wrap(reencoded),
+                        compressed,
+                        exchange);
+
+                // if it does not fit the buffers, send it uncompressed
+                if (copied == reencoded.length) {
+                    response.setBuffer(compressed);
+                    exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, encoding);
+                }
+            }
+        }
+
+        forward(response.getBuffer());
+    }
 
+    private void forward(PooledByteBuffer[] dests) throws IOException {
         updateContentLenght(exchange, dests);
 
         for (PooledByteBuffer dest : dests) {
@@ -145,6 +255,41 @@ public class ModifiableContentSinkConduit
         next.terminateWrites();
     }
 
+    private static boolean isSupportedEncoding(String encoding) {
+        return Headers.GZIP.toString().equalsIgnoreCase(encoding)
+                || Headers.DEFLATE.toString().equalsIgnoreCase(encoding);
+    }
+
+    /**
+     * @return the inflated content or null if it exceeds maxSize bytes
+     */
+    private static byte[] decode(String encoding,
+            PooledByteBuffer[] src,
+            int maxSize) throws IOException {
+        var is = new PooledByteBuffersInputStream(src);
+
+        try (var decoder = Headers.GZIP.toString().equalsIgnoreCase(encoding)
+                ? new GZIPInputStream(is)
+                : new InflaterInputStream(is)) {
+            var decoded = decoder.readNBytes(maxSize + 1);
+
+            return decoded.length > maxSize ? null : decoded;
+        }
+    }
+
+    private static byte[] encode(String encoding, byte[] src)
+            throws IOException {
+        var os = new ByteArrayOutputStream(src.length / 4 + 64);
+
+        try (var encoder = Headers.GZIP.toString().equalsIgnoreCase(encoding)
+                ? new GZIPOutputStream(os)
+                : new DeflaterOutputStream(os)) {
+            encoder.write(src);
+        }
+
+        return os.toByteArray();
+    }
+
     private void updateContentLenght(HttpServerExchange exchange, PooledByteBuffer[] dests) {
         long length = 0;
 
@@ -158,21 +303,8 @@ public class ModifiableContentSinkConduit
 
         // need also to update lenght of ServerFixedLengthStreamSinkConduit
         if (next instanceof ServerFixedLengthStreamSinkConduit) {
-            Method m;
-
-            try {
-                m = ServerFixedLengthStreamSinkConduit.class.getDeclaredMethod(
-                        "reset",
-                        long.class,
-                        HttpServerExchange.class);
-                m.setAccessible(true);
-            } catch (NoSuchMethodException | SecurityException ex) {
-                LOGGER.error("could not find ServerFixedLengthStreamSinkConduit.reset method", ex);
-                throw new RuntimeException("could not find ServerFixedLengthStreamSinkConduit.reset method", ex);
-            }
-
             try {
-                m.invoke(next, length, exchange);
+                RESET.invoke(next, length, exchange);
             } catch (Throwable ex) {
                 LOGGER.error("could not access BUFFERED_REQUEST_DATA field", ex);
                 throw new RuntimeException("could not access BUFFERED_REQUEST_DATA field", ex);
@@ -0,0 +1,582 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.DateUtils;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+import org.restheart.utils.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * Caches the responses of proxied GET requests.
+ *
+ * Responses are cached according to the upstream Cache-Control, Expires,
+ * ETag and Last-Modified headers: a response is fresh for s-maxage, max-age or
+ * Expires - Date; stale responses with a validator are revalidated sending
+ * a conditional request to the backend and served from the cache if it
+ * responds 304 Not Modified.
+ *
+ * The key of the cache is the request method and URI, the Accept-Encoding
+ * header and the authenticated account; for each key the values of the request
+ * headers listed in the Vary response header are also checked. Responses
+ * marked private are cached only for authenticated requests.
+ *
+ * The cache holds up to maxEntries responses, each one smaller than
+ * maxEntrySize bytes, and up to maxSize bytes of responses in total; when a
+ * limit is exceeded the least recently used responses are evicted.
+ *
+ * The hits, misses and revalidations counters are registered in the default
+ * metrics registry as proxy-cache.{location}.{counter}
+ *
+ * It must be placed in the proxy pipeline after ConduitInjector, so that
+ * response interceptors are executed also for cached responses.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ProxyCacheHandler extends PipelinedHandler {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(ProxyCacheHandler.class);
+
+    private static final String METRICS_REGISTRY_NAME = "default";
+
+    private static final AttachmentKey<Entry> REVALIDATING_KEY
+            = AttachmentKey.create(Entry.class);
+
+    /**
+     * hop-by-hop and per-response headers that are not cached, Set-Cookie
+     * included: it is specific to the client that got the response
+     */
+    private static final Set<HttpString> NOT_CACHED_HEADERS = Set.of(
+            Headers.CONNECTION,
+            Headers.KEEP_ALIVE,
+            Headers.TRANSFER_ENCODING,
+            Headers.CONTENT_LENGTH,
+            Headers.DATE,
+            Headers.AGE,
+            Headers.SET_COOKIE);
+
+    private final Cache<String, Entry> cache;
+
+    private final long maxEntrySize;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter revalidations;
+
+    /**
+     * @param location the proxy location, used to name the metrics
+     * @param maxEntries the maximum number of cached responses
+     * @param maxEntrySize the maximum size in bytes of a cached response
+     * @param maxSize the maximum size in bytes of all cached responses
+     */
+    public ProxyCacheHandler(String location,
+            long maxEntries,
+            long maxEntrySize,
+            long maxSize) {
+        this(null, location, maxEntries, maxEntrySize, maxSize);
+    }
+
+    /**
+     * @param next
+     * @param location the proxy location, used to name the metrics
+     * @param maxEntries the maximum number of cached responses
+     * @param maxEntrySize the maximum size in bytes of a cached response
+     * @param maxSize the maximum size in bytes of all cached responses
+     */
+    public ProxyCacheHandler(PipelinedHandler next,
+            String location,
+            long maxEntries,
+            long maxEntrySize,
+            long maxSize) {
+        super(next);
+
+        // the cache is bounded by weight: each response weighs its size but
+        // at least maxSize/maxEntries, so that also maxEntries is enforced
+        var minWeight = (int) Math.min(Integer.MAX_VALUE,
+                maxSize / Math.max(1, maxEntries));
+
+        this.cache = CacheFactory.createLocalCache(maxSize,
+                (Entry entry) -> entry.weight(minWeight),
+                Cache.EXPIRE_POLICY.NEVER, -1);
+        this.maxEntrySize = maxEntrySize;
+
+        if (SharedMetricRegistries.tryGetDefault() == null) {
+            SharedMetricRegistries.setDefault(METRICS_REGISTRY_NAME);
+        }
+
+        var registry = SharedMetricRegistries.tryGetDefault();
+
+        this.hits = registry.counter(MetricRegistry.name("proxy-cache", location, "hits"));
+        this.misses = registry.counter(MetricRegistry.name("proxy-cache", location, "misses"));
+        this.revalidations = registry.counter(MetricRegistry.name("proxy-cache", location, "revalidations"));
+    }
+
+    /**
+     *
+     * @param exchange
+     * @throws Exception
+     */
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        var requestCacheControl = CacheControl.of(exchange.getRequestHeaders());
+
+        if (!Methods.GET.equals(exchange.getRequestMethod())
+                || requestCacheControl.noStore) {
+            next(exchange);
+            return;
+        }
+
+        var key = key(exchange);
+        var entry = cache.get(key).orElse(null);
+
+        if (entry != null && !entry.matches(exchange.getRequestHeaders())) {
+            entry = null;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (entry != null
+                && !requestCacheControl.noCache
+                && requestCacheControl.maxAge != 0
+                && entry.isFresh(now)) {
+            hits.inc();
+            sendCached(exchange, entry, now);
+            return;
+        }
+
+        if (entry != null && entry.hasValidators()
+                && !exchange.getRequestHeaders().contains(Headers.IF_NONE_MATCH)
+                && !exchange.getRequestHeaders().contains(Headers.IF_MODIFIED_SINCE)) {
+            // stale, revalidate it with a conditional request
+            revalidations.inc();
+
+            if (entry.etag != null) {
+                exchange.getRequestHeaders().put(Headers.IF_NONE_MATCH, entry.etag);
+            }
+
+            if (entry.lastModified != null) {
+                exchange.getRequestHeaders().put(Headers.IF_MODIFIED_SINCE, entry.lastModified);
+            }
+
+            exchange.putAttachment(REVALIDATING_KEY, entry);
+        } else {
+            misses.inc();
+        }
+
+        var authenticated = identity(exchange) != null;
+
+        exchange.addResponseWrapper((ConduitFactory<StreamSinkConduit> factory,
+                HttpServerExchange cexchange) -> {
+            var revalidating = cexchange.getAttachment(REVALIDATING_KEY);
+
+            if (revalidating != null
+                    && cexchange.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                // the cached response is still valid
+                var updated = revalidating.refresh(cexchange.getResponseHeaders(),
+                        System.currentTimeMillis());
+
+                var setCookie = cexchange.getResponseHeaders().get(Headers.SET_COOKIE);
+                var cookies = setCookie == null
+                        ? null
+                        : new ArrayList<>(setCookie);
+
+                if (cookies == null) {
+                    cache.put(key, updated);
+                } else {
+                    // the 304 response sets cookies: the entry is not
+                    // shared anymore, the cookies go to this client only
+                    cache.invalidate(key);
+                }
+
+                setResponse(cexchange, updated, System.currentTimeMillis());
+
+                if (cookies != null) {
+                    cexchange.getResponseHeaders().addAll(Headers.SET_COOKIE, cookies);
+                }
+
+                return new CachingSinkConduit(factory.create(), updated.body);
+            }
+
+            var toCache = storable(cexchange, authenticated);
+
+            if (toCache) {
+                var requestHeaders = cexchange.getRequestHeaders();
+                var responseHeaders = copy(cexchange.getResponseHeaders());
+                var status = cexchange.getStatusCode();
+
+                return new CachingSinkConduit(factory.create(),
+                        maxEntrySize,
+                        body -> cache.put(key, Entry.of(status,
+                                responseHeaders,
+                                body,
+                                requestHeaders,
+                                System.currentTimeMillis())));
+            } else {
+                return factory.create();
+            }
+        });
+
+        next(exchange);
+    }
+
+    private static String identity(HttpServerExchange exchange) {
+        var sc = exchange.getSecurityContext();
+
+        if (sc != null && sc.getAuthenticatedAccount() != null
+                && sc.getAuthenticatedAccount().getPrincipal() != null) {
+            return sc.getAuthenticatedAccount().getPrincipal().getName();
+        } else {
+            return null;
+        }
+    }
+
+    private static String key(HttpServerExchange exchange) {
+        var sb = new StringBuilder();
+
+        sb.append(exchange.getRequestMethod())
+                .append(' ')
+                .append(exchange.getRequestURI());
+
+        if (exchange.getQueryString() != null
+                && !exchange.getQueryString().isEmpty()) {
+            sb.append('?').append(exchange.getQueryString());
+        }
+
+        sb.append(' ')
+                .append(exchange.getRequestHeaders().get(Headers.ACCEPT_ENCODING))
+                .append(' ')
+                .append(identity(exchange));
+
+        return sb.toString();
+    }
+
+    /**
+     * Responses to requests with the Authorization header are shared only if
+     * the request is authenticated, since the cache key includes the identity,
+     * or if the response explicitly allows it with public, s-maxage or
+     * must-revalidate (RFC 7234, section 3.2)
+     *
+     * @param exchange
+     * @param authenticated
+     * @return true if the response can be cached
+     */
+    static boolean storable(HttpServerExchange exchange,
+            boolean authenticated) {
+        if (exchange.getStatusCode() != HttpStatus.SC_OK) {
+            return false;
+        }
+
+        var headers = exchange.getResponseHeaders();
+        var cc = CacheControl.of(headers);
+
+        if (cc.noStore || (cc.isPrivate && !authenticated)
+                || headers.contains(Headers.SET_COOKIE)) {
+            return false;
+        }
+
+        if (!authenticated
+                && exchange.getRequestHeaders().contains(Headers.AUTHORIZATION)
+                && !cc.isPublic && cc.sMaxAge < 0 && !cc.mustRevalidate) {
+            return false;
+        }
+
+        var vary = headers.get(Headers.VARY);
+
+        if (vary != null && vary.stream().anyMatch(v -> v.contains("*"))) {
+            return false;
+        }
+
+        return Entry.freshness(headers, cc, System.currentTimeMillis()) > 0
+                || headers.contains(Headers.ETAG)
+                || headers.contains(Headers.LAST_MODIFIED);
+    }
+
+    private static HeaderMap copy(HeaderMap headers) {
+        var ret = new HeaderMap();
+
+        headers.forEach(hv -> {
+            if (!NOT_CACHED_HEADERS.contains(hv.getHeaderName())) {
+                ret.putAll(hv.getHeaderName(), hv);
+            }
+        });
+
+        return ret;
+    }
+
+    private static void setResponse(HttpServerExchange exchange,
+            Entry entry,
+            long now) {
+        exchange.setStatusCode(entry.status);
+
+        var headers = exchange.getResponseHeaders();
+
+        headers.clear();
+
+        entry.headers.forEach(hv -> headers.putAll(hv.getHeaderName(), hv));
+
+        headers.put(Headers.DATE, DateUtils.toDateString(new Date(now)));
+        headers.put(Headers.AGE, Math.max(0, (now - entry.storedAt) / 1000));
+        headers.put(Headers.CONTENT_LENGTH, entry.body.length);
+    }
+
+    private static void sendCached(HttpServerExchange exchange,
+            Entry entry,
+            long now) {
+        var ifNoneMatch = exchange.getRequestHeaders()
+                .getFirst(Headers.IF_NONE_MATCH);
+
+        if (ifNoneMatch != null && entry.etag != null
+                && (ifNoneMatch.contains(entry.etag) || "*".equals(ifNoneMatch.trim()))) {
+            setResponse(exchange, entry, now);
+            exchange.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+            exchange.getResponseHeaders().remove(Headers.CONTENT_LENGTH);
+            exchange.endExchange();
+            return;
+        }
+
+        setResponse(exchange, entry, now);
+        exchange.getResponseSender().send(ByteBuffer.wrap(entry.body));
+    }
+
+    /**
+     * A cached response
+     */
+    static class Entry {
+        private final int status;
+        private final HeaderMap headers;
+        private final byte[] body;
+        private final Map<HttpString, String> varyValues;
+        private final String etag;
+        private final String lastModified;
+        private final long storedAt;
+        private final long freshFor;
+
+        private Entry(int status,
+                HeaderMap headers,
+                byte[] body,
+                Map<HttpString, String> varyValues,
+                long storedAt) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.varyValues = varyValues;
+            this.etag = headers.getFirst(Headers.ETAG);
+            this.lastModified = headers.getFirst(Headers.LAST_MODIFIED);
+            this.storedAt = storedAt;
+            this.freshFor = freshness(headers, CacheControl.of(headers), storedAt);
+        }
+
+        static Entry of(int status,
+                HeaderMap headers,
+                byte[] body,
+                HeaderMap requestHeaders,
+                long now) {
+            var varyValues = new HashMap<HttpString, String>();
+            var vary = headers.get(Headers.VARY);
+
+            if (vary != null) {
+                vary.stream()
+                        .flatMap(v -> Arrays.stream(v.split(",")))
+                        .map(String::trim)
+                        .filter(h -> !h.isEmpty())
+                        .map(HttpString::new)
+                        .forEach(h -> varyValues.put(h, values(requestHeaders.get(h))));
+            }
+
+            return new Entry(status, headers, body, varyValues, now);
+        }
+
+        /**
+         * @param notModifiedHeaders the headers of the 304 response
+         * @param now
+         * @return a copy of this entry, updated with the headers of the
+         * 304 response
+         */
+        Entry refresh(HeaderMap notModifiedHeaders, long now) {
+            var updated = copy(this.headers);
+
+            copy(notModifiedHeaders).forEach(hv -> {
+                if (!Headers.CONTENT_ENCODING.equals(hv.getHeaderName())
+                        && !Headers.CONTENT_TYPE.equals(hv.getHeaderName())) {
+                    updated.putAll(hv.getHeaderName(), hv);
+                }
+            });
+
+            return new Entry(status, updated, body, varyValues, now);
+        }
+
+        boolean matches(HeaderMap requestHeaders) {
+            return varyValues.entrySet().stream()
+                    .allMatch(e -> Objects.equals(e.getValue(),
+                    values(requestHeaders.get(e.getKey()))));
+        }
+
+        boolean isFresh(long now) {
+            return now - storedAt < freshFor;
+        }
+
+        HeaderMap getHeaders() {
+            return headers;
+        }
+
+        boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        /**
+         * @param minWeight
+         * @return the weight of the entry in the cache, i.e. the size of the
+         * body in bytes, but at least minWeight
+         */
+        int weight(int minWeight) {
+            return Math.max(body.length, minWeight);
+        }
+
+        /**
+         * @return the freshness lifetime in milliseconds from s-maxage,
+         * max-age or Expires - Date
+         */
+        static long freshness(HeaderMap headers, CacheControl cc, long now) {
+            if (cc.noCache) {
+                return 0;
+            } else if (cc.sMaxAge >= 0) {
+                return cc.sMaxAge * 1000;
+            } else if (cc.maxAge >= 0) {
+                return cc.maxAge * 1000;
+            }
+
+            var expires = headers.getFirst(Headers.EXPIRES);
+
+            if (expires != null) {
+                var _expires = DateUtils.parseDate(expires);
+
+                if (_expires == null) {
+                    // invalid dates, e.g. 0, mean already expired
+                    return 0;
+                }
+
+                var _date = headers.contains(Headers.DATE)
+                        ? DateUtils.parseDate(headers.getFirst(Headers.DATE))
+                        : null;
+
+                return Math.max(0, _expires.getTime()
+                        - (_date == null ? now : _date.getTime()));
+            }
+
+            return 0;
+        }
+
+        private static String values(HeaderValues values) {
+            return values == null ? null : String.join(",", values);
+        }
+    }
+
+    /**
+     * The Cache-Control directives relevant to caching
+     */
+    static class CacheControl {
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean isPrivate = false;
+        boolean isPublic = false;
+        boolean mustRevalidate = false;
+        long maxAge = -1;
+        long sMaxAge = -1;
+
+        static CacheControl of(HeaderMap headers) {
+            var ret = new CacheControl();
+            var values = headers.get(Headers.CACHE_CONTROL);
+
+            if (values == null) {
+                return ret;
+            }
+
+            for (var value : values) {
+                for (var directive : value.split(",")) {
+                    var nv = directive.trim().toLowerCase(Locale.ROOT).split("=", 2);
+
+                    switch (nv[0]) {
+                        case "no-store":
+                            ret.noStore = true;
+                            break;
+                        case "no-cache":
+                            ret.noCache = true;
+                            break;
+                        case "private":
+                            ret.isPrivate = true;
+                            break;
+                        case "public":
+                            ret.isPublic = true;
+                            break;
+                        case "must-revalidate":
+                            ret.mustRevalidate = true;
+                            break;
+                        case "max-age":
+                            ret.maxAge = seconds(nv);
+                            break;
+                        case "s-maxage":
+                            ret.sMaxAge = seconds(nv);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+
+            return ret;
+        }
+
+        private static long seconds(String[] nv) {
+            if (nv.length < 2) {
+                return 0;
+            }
+
+            try {
+                return Math.max(0, Long.parseLong(nv[1].replace("\"", "").trim()));
+            } catch (NumberFormatException nfe) {
+                return 0;
+            }
+        }
+    }
+}
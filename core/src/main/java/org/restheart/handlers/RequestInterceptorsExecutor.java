@@ -21,7 +21,6 @@
 package org.restheart.handlers;
 
 import io.undertow.server.HttpServerExchange;
-import java.util.Arrays;
 import org.restheart.exchange.ByteArrayProxyRequest;
 import org.restheart.exchange.ByteArrayProxyResponse;
 import org.restheart.exchange.Exchange;
@@ -30,13 +29,12 @@ import org.restheart.exchange.Response;
 import org.restheart.exchange.ServiceRequest;
 import org.restheart.exchange.ServiceResponse;
 import org.restheart.plugins.InterceptPoint;
+import org.restheart.plugins.Interceptor;
 import org.restheart.plugins.PluginsRegistryImpl;
+import org.restheart.plugins.Service;
 import org.restheart.utils.HttpStatus;
 import org.restheart.utils.LambdaUtils;
 import org.restheart.utils.PluginUtils;
-import static org.restheart.utils.PluginUtils.cachedRequestType;
-import static org.restheart.utils.PluginUtils.cachedResponseType;
-import static org.restheart.utils.PluginUtils.interceptPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,13 +51,16 @@ public class RequestInterceptorsExecutor extends PipelinedHandler {
 
     private final InterceptPoint interceptPoint;
 
+    private final Service service;
+
+    private final PluginsRegistryImpl registry = PluginsRegistryImpl.getInstance();
+
     /**
      *
      * @param interceptPoint
      */
     public RequestInterceptorsExecutor(InterceptPoint interceptPoint) {
-        super(null);
-        this.interceptPoint = interceptPoint;
+        this(null, null, interceptPoint);
     }
 
     /**
@@ -68,7 +69,32 @@ public class RequestInterceptorsExecutor extends PipelinedHandler {
      */
     public RequestInterceptorsExecutor(PipelinedHandler next,
             InterceptPoint interceptPoint) {
+        this(next, null, interceptPoint);
+    }
+
+    /**
+     * Creates an executor for the pipeline of a Service, that can skip the
+     * lookup of the handling service on each request
+     *
+     * @param service the Service handling the requests
+     * @param interceptPoint
+     */
+    public RequestInterceptorsExecutor(Service service,
+            InterceptPoint interceptPoint) {
+        this(null, service, interceptPoint);
+    }
+
+    /**
+     * @param next
+     * @param service the Service handling the requests, if null it is looked
+     * up on each request from the PipelineInfo
+     * @param interceptPoint
+     */
+    public RequestInterceptorsExecutor(PipelinedHandler next,
+            Service service,
+            InterceptPoint interceptPoint) {
         super(next);
+        this.service = service;
         this.interceptPoint = interceptPoint;
     }
 
@@ -78,24 +104,14 @@ public class RequestInterceptorsExecutor extends PipelinedHandler {
      * @throws Exception
      */
     @Override
-    @SuppressWarnings("unchecked")
+    @SuppressWarnings({"rawtypes", "unchecked"})
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-        // if the request is handled by a service set to not execute interceptors
-        // at this interceptPoint, skip interceptors execution
-        var vip = PluginUtils.dontIntercept(
-                PluginsRegistryImpl.getInstance(), exchange);
-
-        if (Arrays.stream(vip).anyMatch(interceptPoint::equals)) {
-            next(exchange);
-            return;
-        }
-
         Request request;
         Response response;
 
-        var handlingService = PluginUtils.handlingService(
-                PluginsRegistryImpl.getInstance(),
-                exchange);
+        var handlingService = this.service != null
+                ? this.service
+                : PluginUtils.handlingService(registry, exchange);
 
         if (handlingService != null) {
             request = ServiceRequest.of(exchange, ServiceRequest.class);
@@ -105,56 +121,50 @@ public class RequestInterceptorsExecutor extends PipelinedHandler {
             response = ByteArrayProxyResponse.of(exchange);
         }
 
-        PluginsRegistryImpl
-                .getInstance()
-                .getInterceptors()
-                .stream()
-                .filter(ri -> ri.isEnabled())
-                .map(ri -> ri.getInstance())
-                // IMPORTANT: An interceptor can intercept 
-                // - requests handled by a Service when its request and response 
-                //   types are equal to the ones declared by the Service
-                // - request handled by a Proxy when its request and response 
-                //   are ByteArrayProxyRequest and ByteArrayProxyResponse
-                .filter(ri
-                        -> (handlingService == null
-                && cachedRequestType(ri).equals(ByteArrayProxyRequest.type())
-                && cachedResponseType(ri).equals(ByteArrayProxyResponse.type()))
-                || (handlingService != null
-                && cachedRequestType(ri).equals(cachedRequestType(handlingService))
-                && cachedResponseType(ri).equals(cachedResponseType(handlingService))))
-                .filter(ri -> interceptPoint == interceptPoint(ri))
-                .filter(ri -> {
-                    try {
-                        return ri.resolve(request, response);
-                    } catch (Exception e) {
-                        LOGGER.warn("Error resolving interceptor {} for {} on intercept point {}",
-                                ri.getClass().getSimpleName(),
-                                exchange.getRequestPath(),
-                                interceptPoint,
-                                e);
-
-                        return false;
-                    }
-                })
-                .forEachOrdered(ri -> {
-                    try {
-                        LOGGER.debug("Executing interceptor {} for {} on intercept point {}",
-                                ri.getClass().getSimpleName(),
-                                exchange.getRequestPath(),
-                                interceptPoint);
-
-                        ri.handle(request, response);
-                    } catch (Exception ex) {
-                        LOGGER.error("Error executing interceptor {} for {} on intercept point {}",
-                                ri.getClass().getSimpleName(),
-                                exchange.getRequestPath(),
-                                interceptPoint,
-                                ex);
-                        Exchange.setInError(exchange);
-                        LambdaUtils.throwsSneakyExcpetion(ex);
-                    }
-                });
+        var chain = registry.getInterceptorsChain(handlingService,
+                interceptPoint, false);
+
+        // if the request is handled by a service set to not execute interceptors
+        // at this interceptPoint, skip interceptors execution
+        if (chain == null) {
+            next(exchange);
+            return;
+        }
+
+        for (Interceptor ri : chain) {
+            boolean resolved;
+
+            try {
+                resolved = ri.resolve(request, response);
+            } catch (Exception e) {
+                LOGGER.warn("Error resolving interceptor {} for {} on intercept point {}",
+                        ri.getClass().getSimpleName(),
+                        exchange.getRequestPath(),
+                        interceptPoint,
+                        e);
+
+                resolved = false;
+            }
+
+            if (resolved) {
+                try {
+                    LOGGER.debug("Executing interceptor {} for {} on intercept point {}",
+                            ri.getClass().getSimpleName(),
+                            exchange.getRequestPath(),
+                            interceptPoint);
+
+                    ri.handle(request, response);
+                } catch (Exception ex) {
+                    LOGGER.error("Error executing interceptor {} for {} on intercept point {}",
+                            ri.getClass().getSimpleName(),
+                            exchange.getRequestPath(),
+                            interceptPoint,
+                            ex);
+                    Exchange.setInError(exchange);
+                    LambdaUtils.throwsSneakyExcpetion(ex);
+                }
+            }
+        }
 
         // If an interceptor sets the response as errored
         // stop processing the request and send the response
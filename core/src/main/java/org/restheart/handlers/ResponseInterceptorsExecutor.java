@@ -21,7 +21,6 @@
 package org.restheart.handlers;
 
 import io.undertow.server.HttpServerExchange;
-import java.util.Arrays;
 import org.restheart.exchange.ByteArrayProxyRequest;
 import org.restheart.exchange.ByteArrayProxyResponse;
 import org.restheart.exchange.Exchange;
@@ -30,14 +29,11 @@ import org.restheart.exchange.Response;
 import org.restheart.exchange.ServiceRequest;
 import org.restheart.exchange.ServiceResponse;
 import org.restheart.plugins.InterceptPoint;
+import org.restheart.plugins.Interceptor;
 import org.restheart.plugins.PluginsRegistryImpl;
 import org.restheart.plugins.Service;
 import org.restheart.utils.LambdaUtils;
 import org.restheart.utils.PluginUtils;
-import static org.restheart.utils.PluginUtils.cachedRequestType;
-import static org.restheart.utils.PluginUtils.cachedResponseType;
-import static org.restheart.utils.PluginUtils.interceptPoint;
-import static org.restheart.utils.PluginUtils.requiresContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,24 +50,54 @@ public class ResponseInterceptorsExecutor
 
     private final boolean filterRequiringContent;
 
+    private final Service service;
+
+    private final PluginsRegistryImpl registry = PluginsRegistryImpl.getInstance();
+
     public ResponseInterceptorsExecutor() {
-        this(null, false);
+        this(null, null, false);
     }
 
     public ResponseInterceptorsExecutor(boolean filterRequiringContent) {
-        this(null, filterRequiringContent);
+        this(null, null, filterRequiringContent);
+    }
+
+    /**
+     * Creates an executor for the pipeline of a Service, that can skip the
+     * lookup of the handling service on each request
+     *
+     * @param service the Service handling the requests
+     */
+    public ResponseInterceptorsExecutor(Service service) {
+        this(null, service, false);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param next
+     * @param filterRequiringContent if true does not execute the interceptors
+     * that require content
+     */
+    public ResponseInterceptorsExecutor(PipelinedHandler next,
+            boolean filterRequiringContent) {
+        this(next, null, filterRequiringContent);
     }
 
     /**
      * Construct a new instance.
      *
      * @param next
+     * @param service the Service handling the requests, if null it is looked
+     * up on each request from the PipelineInfo
      * @param filterRequiringContent if true does not execute the interceptors
      * that require content
      */
     public ResponseInterceptorsExecutor(PipelinedHandler next,
+            Service service,
             boolean filterRequiringContent) {
         super(next);
+        this.service = service;
         this.filterRequiringContent = filterRequiringContent;
     }
 
@@ -80,9 +106,9 @@ public class ResponseInterceptorsExecutor
         Request request;
         Response response;
 
-        var handlingService = PluginUtils.handlingService(
-                PluginsRegistryImpl.getInstance(),
-                exchange);
+        var handlingService = this.service != null
+                ? this.service
+                : PluginUtils.handlingService(registry, exchange);
 
         if (handlingService != null) {
             request = ServiceRequest.of(exchange, ServiceRequest.class);
@@ -101,139 +127,104 @@ public class ResponseInterceptorsExecutor
         next(exchange);
     }
 
-    @SuppressWarnings("unchecked")
+    @SuppressWarnings({"rawtypes", "unchecked"})
     private void executeResponseInterceptor(HttpServerExchange exchange,
             Service handlingService,
             Request request,
             Response response) {
+        var chain = registry.getInterceptorsChain(handlingService,
+                InterceptPoint.RESPONSE,
+                this.filterRequiringContent);
+
         // if the request is handled by a service set to not execute interceptors
         // at this interceptPoint, skip interceptors execution
-        var vip = PluginUtils.dontIntercept(
-                PluginsRegistryImpl.getInstance(), exchange);
-
-        if (Arrays.stream(vip).anyMatch(InterceptPoint.RESPONSE::equals)) {
+        if (chain == null) {
             return;
         }
 
-        Exchange.setResponseInterceptorsExecuted(exchange);
-        PluginsRegistryImpl.getInstance()
-                .getInterceptors()
-                .stream()
-                .filter(i -> interceptPoint(i.getInstance())
-                == InterceptPoint.RESPONSE)
-                .filter(ri -> ri.isEnabled())
-                .map(ri -> ri.getInstance())
-                // IMPORTANT: An interceptor can intercept 
-                // - requests handled by a Service when its request and response 
-                //   types are equal to the ones declared by the Service
-                // - request handled by a Proxy when its request and response 
-                //   are ByteArrayProxyRequest and ByteArrayProxyResponse
-                .filter(ri -> (handlingService == null
-                && cachedRequestType(ri).equals(ByteArrayProxyRequest.type())
-                && cachedResponseType(ri).equals(ByteArrayProxyResponse.type()))
-                || (handlingService != null && cachedRequestType(ri).equals(cachedRequestType(handlingService))
-                && cachedResponseType(ri).equals(cachedResponseType(handlingService))))
-                .filter(ri -> !this.filterRequiringContent || !requiresContent(ri))
-                .filter(ri -> {
-                    try {
-                        return ri.resolve(request, response);
-                    } catch (Exception e) {
-                        LOGGER.warn("Error resolving interceptor {} for {} on intercept point {}",
-                                ri.getClass().getSimpleName(),
-                                exchange.getRequestPath(),
-                                InterceptPoint.RESPONSE,
-                                e);
-
-                        return false;
-                    }
-                })
-                .forEachOrdered(ri -> {
-                    LOGGER.debug("Executing interceptor {} for {} on intercept point {}",
-                            ri.getClass().getSimpleName(),
-                            exchange.getRequestPath(),
-                            InterceptPoint.RESPONSE);
-
-                    try {
-                        ri.handle(request, response);
-                    } catch (Exception ex) {
-                        LOGGER.error("Error executing interceptor {} for {} on intercept point {}",
-                                ri.getClass().getSimpleName(),
-                                exchange.getRequestPath(),
-                                InterceptPoint.RESPONSE,
-                                ex);
-
-                        Exchange.setInError(exchange);
-                        LambdaUtils.throwsSneakyExcpetion(ex);
-                    }
-                });
+        for (Interceptor ri : chain) {
+            if (!resolve(exchange, ri, request, response, InterceptPoint.RESPONSE)) {
+                continue;
+            }
+
+            LOGGER.debug("Executing interceptor {} for {} on intercept point {}",
+                    ri.getClass().getSimpleName(),
+                    exchange.getRequestPath(),
+                    InterceptPoint.RESPONSE);
+
+            try {
+                ri.handle(request, response);
+            } catch (Exception ex) {
+                LOGGER.error("Error executing interceptor {} for {} on intercept point {}",
+                        ri.getClass().getSimpleName(),
+                        exchange.getRequestPath(),
+                        InterceptPoint.RESPONSE,
+                        ex);
+
+                Exchange.setInError(exchange);
+                LambdaUtils.throwsSneakyExcpetion(ex);
+            }
+        }
     }
 
-    @SuppressWarnings("unchecked")
+    @SuppressWarnings({"rawtypes", "unchecked"})
     private void executeAsyncResponseInterceptor(HttpServerExchange exchange,
             Service handlingService,
             Request request,
             Response response) {
+        var chain = registry.getInterceptorsChain(handlingService,
+                InterceptPoint.RESPONSE_ASYNC,
+                this.filterRequiringContent);
+
         // if the request is handled by a service set to not execute interceptors
         // at this interceptPoint, skip interceptors execution
-        var vip = PluginUtils.dontIntercept(
-                PluginsRegistryImpl.getInstance(), exchange);
-
-        if (Arrays.stream(vip).anyMatch(InterceptPoint.RESPONSE_ASYNC::equals)) {
+        if (chain == null) {
             return;
         }
 
-        Exchange.setResponseInterceptorsExecuted(exchange);
-        PluginsRegistryImpl.getInstance()
-                .getInterceptors()
-                .stream()
-                .filter(i -> interceptPoint(
-                i.getInstance()) == InterceptPoint.RESPONSE_ASYNC)
-                .filter(ri -> ri.isEnabled())
-                .map(ri -> ri.getInstance())
-                // IMPORTANT: An interceptor can intercept 
-                // - requests handled by a Service when its request and response 
-                //   types are equal to the ones declared by the Service
-                // - request handled by a Proxy when its request and response 
-                //   are ByteArrayProxyRequest and ByteArrayProxyResponse
-                .filter(ri -> (handlingService == null
-                && cachedRequestType(ri).equals(ByteArrayProxyRequest.type())
-                && cachedResponseType(ri).equals(ByteArrayProxyResponse.type()))
-                || (handlingService != null && cachedRequestType(ri).equals(cachedRequestType(handlingService))
-                && ri.responseType().equals(cachedResponseType(handlingService))))
-                .filter(ri -> !this.filterRequiringContent || !requiresContent(ri))
-                .filter(ri -> {
-                    try {
-                        return ri.resolve(request, response);
-                    } catch (Exception e) {
-                        LOGGER.warn("Error resolving interceptor {} for {} on intercept point {}",
-                                ri.getClass().getSimpleName(),
-                                exchange.getRequestPath(),
-                                InterceptPoint.RESPONSE_ASYNC);
-
-                        return false;
-                    }
-                })
-                .forEachOrdered(ri -> {
-                    exchange.getConnection().getWorker().execute(() -> {
-                        LOGGER.debug("Executing interceptor {} for {} on intercept point {}",
-                                ri.getClass().getSimpleName(),
-                                exchange.getRequestPath(),
-                                InterceptPoint.RESPONSE_ASYNC);
-
-                        try {
-                            ri.handle(request, response);
-                        } catch (Exception ex) {
-                            LOGGER.error("Error executing interceptor {} for {} on intercept point {}",
-                                    ri.getClass().getSimpleName(),
-                                    exchange.getRequestPath(),
-                                    InterceptPoint.RESPONSE_ASYNC,
-                                    ex);
-
-                            Exchange.setInError(exchange);
-                            LambdaUtils.throwsSneakyExcpetion(ex);
-                        }
-                    });
-                });
+        for (Interceptor ri : chain) {
+            if (!resolve(exchange, ri, request, response, InterceptPoint.RESPONSE_ASYNC)) {
+                continue;
+            }
+
+            exchange.getConnection().getWorker().execute(() -> {
+                LOGGER.debug("Executing interceptor {} for {} on intercept point {}",
+                        ri.getClass().getSimpleName(),
+                        exchange.getRequestPath(),
+                        InterceptPoint.RESPONSE_ASYNC);
+
+                try {
+                    ri.handle(request, response);
+                } catch (Exception ex) {
+                    LOGGER.error("Error executing interceptor {} for {} on intercept point {}",
+                            ri.getClass().getSimpleName(),
+                            exchange.getRequestPath(),
+                            InterceptPoint.RESPONSE_ASYNC,
+                            ex);
+
+                    Exchange.setInError(exchange);
+                    LambdaUtils.throwsSneakyExcpetion(ex);
+                }
+            });
+        }
     }
 
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static boolean resolve(HttpServerExchange exchange,
+            Interceptor ri,
+            Request request,
+            Response response,
+            InterceptPoint interceptPoint) {
+        try {
+            return ri.resolve(request, response);
+        } catch (Exception e) {
+            LOGGER.warn("Error resolving interceptor {} for {} on intercept point {}",
+                    ri.getClass().getSimpleName(),
+                    exchange.getRequestPath(),
+                    interceptPoint,
+                    e);
+
+            return false;
+        }
+    }
 }
@@ -30,12 +30,11 @@ import org.restheart.exchange.ByteArrayProxyResponse;
 import org.restheart.handlers.ContentStreamSinkConduit;
 import org.restheart.handlers.ModifiableContentSinkConduit;
 import org.restheart.handlers.PipelinedHandler;
+import org.restheart.plugins.InterceptPoint;
 import static org.restheart.plugins.InterceptPoint.RESPONSE;
 import static org.restheart.plugins.InterceptPoint.RESPONSE_ASYNC;
+import org.restheart.plugins.Interceptor;
 import org.restheart.plugins.PluginsRegistryImpl;
-import static org.restheart.utils.PluginUtils.cachedRequestType;
-import static org.restheart.utils.PluginUtils.cachedResponseType;
-import static org.restheart.utils.PluginUtils.interceptPoint;
 import static org.restheart.utils.PluginUtils.requiresContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +46,10 @@ import org.xnio.conduits.StreamSinkConduit;
  * response from the backend to make it accessible to them whose
  * requiresResponseContent() returns true
  *
+ * The decision is taken once, when the request is handled: when no interceptor
+ * requiring the content resolves it, the response is streamed to the client
+ * without buffering.
+ *
  * Note that getting the content has significant performance overhead for
  * proxied resources. To mitigate DoS attacks the injector limits the size of
  * the content to ModificableContentSinkConduit.MAX_CONTENT_SIZE bytes
@@ -63,18 +66,86 @@ public class ConduitInjector extends PipelinedHandler {
     public static final AttachmentKey<HeaderMap> ORIGINAL_ACCEPT_ENCODINGS_KEY
             = AttachmentKey.create(HeaderMap.class);
 
+    private final boolean keepUpstreamEncoding;
+
     /**
      *
      */
     public ConduitInjector() {
-        super();
+        this(null, false);
+    }
+
+    /**
+     * @param keepUpstreamEncoding if true the Accept-Encoding header is not
+     * forced to identity when the response must be buffered; compressed
+     * responses are inflated by ModifiableContentSinkConduit
+     */
+    public ConduitInjector(boolean keepUpstreamEncoding) {
+        this(null, keepUpstreamEncoding);
     }
 
     /**
      * @param next
      */
     public ConduitInjector(PipelinedHandler next) {
+        this(next, false);
+    }
+
+    /**
+     * @param next
+     * @param keepUpstreamEncoding if true the Accept-Encoding header is not
+     * forced to identity when the response must be buffered; compressed
+     * responses are inflated by ModifiableContentSinkConduit
+     */
+    public ConduitInjector(PipelinedHandler next, boolean keepUpstreamEncoding) {
         super(next);
+        this.keepUpstreamEncoding = keepUpstreamEncoding;
+    }
+
+    /**
+     * Decides, once per request, if any response interceptor that requires
+     * the content resolves the request. Only the precompiled proxy
+     * interceptors chains are checked and resolve() is invoked only for the
+     * interceptors that require the content.
+     *
+     * @param exchange
+     * @return true if the response content must be buffered
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static boolean responseContentRequired(HttpServerExchange exchange) {
+        var registry = PluginsRegistryImpl.getInstance();
+
+        for (var ip : new InterceptPoint[]{RESPONSE, RESPONSE_ASYNC}) {
+            // IMPORTANT: An interceptor can intercept
+            // - request handled by a Proxy when its request and response
+            //   are ByteArrayProxyRequest and ByteArrayProxyResponse
+            var chain = registry.getInterceptorsChain(null, ip, false);
+
+            if (chain == null) {
+                continue;
+            }
+
+            for (Interceptor ri : chain) {
+                if (!requiresContent(ri)) {
+                    continue;
+                }
+
+                try {
+                    if (ri.resolve(ByteArrayProxyRequest.of(exchange),
+                            ByteArrayProxyResponse.of(exchange))) {
+                        return true;
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Error resolving interceptor {} for {} on intercept point {}",
+                            ri.getClass().getSimpleName(),
+                            exchange.getRequestPath(),
+                            ip,
+                            e);
+                }
+            }
+        }
+
+        return false;
     }
 
     /**
@@ -84,66 +155,43 @@ public class ConduitInjector extends PipelinedHandler {
      *
      * @param exchange
      */
-    @SuppressWarnings("unchecked")
     private static void forceIdentityEncodingForInterceptors(
             HttpServerExchange exchange) {
+        var _before = exchange.getRequestHeaders()
+                .get(Headers.ACCEPT_ENCODING);
 
-        if (PluginsRegistryImpl.getInstance()
-                .getInterceptors()
-                .stream()
-                .filter(ri -> ri.isEnabled())
-                .map(ri -> ri.getInstance())
-                // IMPORTANT: An interceptor can intercept
-                // - request handled by a Proxy when its request and response
-                //   are ByteArrayProxyRequest and ByteArrayProxyResponse
-                .filter(ri -> cachedRequestType(ri).equals(ByteArrayProxyRequest.type())
-                        && cachedResponseType(ri).equals(ByteArrayProxyResponse.type()))
-                .filter(ri -> {
-                    try {
-                        return ri.resolve(
-                                ByteArrayProxyRequest.of(exchange),
-                                ByteArrayProxyResponse.of(exchange));
-                    } catch (Exception e) {
-                        LOGGER.warn("Error resolving interceptor {} for {}",
-                                ri.getClass().getSimpleName(),
-                                exchange.getRequestPath(),
-                                e);
-
-                        return false;
-                    }
-                })
-                .anyMatch(ri -> requiresContent(ri))) {
-            var _before = exchange.getRequestHeaders()
-                    .get(Headers.ACCEPT_ENCODING);
-
-            var before = new HeaderMap();
+        var before = new HeaderMap();
 
+        if (_before != null) {
             _before.forEach((value) -> {
                 before.add(Headers.ACCEPT_ENCODING, value);
             });
+        }
 
-            exchange.putAttachment(ORIGINAL_ACCEPT_ENCODINGS_KEY, before);
+        exchange.putAttachment(ORIGINAL_ACCEPT_ENCODINGS_KEY, before);
 
-            LOGGER.debug("{} "
-                    + "setting encoding to identity because request involves "
-                    + "response interceptors.", before);
+        LOGGER.debug("{} "
+                + "setting encoding to identity because request involves "
+                + "response interceptors.", before);
 
-            exchange.getRequestHeaders().put(
-                    Headers.ACCEPT_ENCODING,
-                    "identity");
-        }
+        exchange.getRequestHeaders().put(
+                Headers.ACCEPT_ENCODING,
+                "identity");
     }
 
     /**
+     * Installs the ModifiableContentSinkConduit, that buffers the response
+     * from the backend, only if a response interceptor requiring the
+     * content resolves the request; otherwise the ContentStreamSinkConduit
+     * streams the response to the client without copying it.
      *
      * @param exchange
      * @throws Exception
      */
     @Override
-    @SuppressWarnings("unchecked")
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-        // of the response buffering it if any interceptor resolvers the request
-        // and requires the content from the backend
+        var buffer = responseContentRequired(exchange);
+
         exchange.addResponseWrapper((ConduitFactory<StreamSinkConduit> factory,
                 HttpServerExchange cexchange) -> {
             // restore MDC context
@@ -156,35 +204,7 @@ public class ConduitInjector extends PipelinedHandler {
                 MDC.setContextMap(mdcCtx);
             }
 
-            if (PluginsRegistryImpl.getInstance()
-                    .getInterceptors()
-                    .stream()
-                    .filter(ri -> ri.isEnabled())
-                    .map(ri -> ri.getInstance())
-                    .filter(ri -> interceptPoint(ri) == RESPONSE
-                    || interceptPoint(ri) == RESPONSE_ASYNC)
-                    // IMPORTANT: An interceptor can intercept
-                    // - request handled by a Proxy when its request and response
-                    //   are ByteArrayProxyRequest and ByteArrayProxyResponse
-                    .filter(ri -> cachedRequestType(ri).equals(ByteArrayProxyRequest.type())
-                    && cachedResponseType(ri).equals(ByteArrayProxyResponse.type()))
-                    .filter(ri -> {
-                        try {
-                            return ri.resolve(
-                                    ByteArrayProxyRequest.of(exchange),
-                                    ByteArrayProxyResponse.of(exchange));
-                        } catch (Exception e) {
-                            LOGGER.warn("Error resolving interceptor {} for {} on intercept point {}",
-                                    ri.getClass().getSimpleName(),
-                                    exchange.getRequestPath(),
-                                    interceptPoint(ri),
-                                    e);
-
-                            return false;
-                        }
-                    })
-                    .anyMatch(ri -> requiresContent(ri))) {
-
+            if (buffer) {
                 var mcsc = new ModifiableContentSinkConduit(factory.create(),
                         cexchange);
                 cexchange.putAttachment(MCSC_KEY, mcsc);
@@ -195,7 +215,17 @@ public class ConduitInjector extends PipelinedHandler {
             }
         });
 
-        forceIdentityEncodingForInterceptors(exchange);
+        if (buffer && !keepUpstreamEncoding) {
+            forceIdentityEncodingForInterceptors(exchange);
+        }
+
+        // request interceptors might have modified the content: write it
+        // to the buffer, once, before proxying the request
+        var request = ByteArrayProxyRequest.of(exchange);
+
+        if (request.isContentAvailable()) {
+            request.syncBuffer();
+        }
 
         next(exchange);
     }
@@ -20,15 +20,25 @@
  */
 package org.restheart.plugins;
 
+import com.google.common.collect.ForwardingIterator;
+import com.google.common.collect.ForwardingSet;
 import static io.undertow.Handlers.path;
 import io.undertow.predicate.Predicate;
 import io.undertow.server.handlers.PathHandler;
 import io.undertow.util.PathMatcher;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.restheart.ConfigurationException;
+import org.restheart.exchange.ByteArrayProxyRequest;
+import org.restheart.exchange.ByteArrayProxyResponse;
 import org.restheart.exchange.PipelineInfo;
 import org.restheart.handlers.PipelinedHandler;
 import org.restheart.plugins.RegisterPlugin.MATCH_POLICY;
@@ -36,6 +46,11 @@ import org.restheart.plugins.security.AuthMechanism;
 import org.restheart.plugins.security.Authenticator;
 import org.restheart.plugins.security.Authorizer;
 import org.restheart.plugins.security.TokenManager;
+import static org.restheart.utils.PluginUtils.cachedRequestType;
+import static org.restheart.utils.PluginUtils.cachedResponseType;
+import static org.restheart.utils.PluginUtils.dontIntercept;
+import static org.restheart.utils.PluginUtils.interceptPoint;
+import static org.restheart.utils.PluginUtils.requiresContent;
 
 /**
  *
@@ -71,6 +86,14 @@ public class PluginsRegistryImpl implements PluginsRegistry {
 
     private final Set<Predicate> globalSecurityPredicates = new LinkedHashSet<>();
 
+    // marks the chains of intercept points that a Service declares in
+    // dontIntercept, since ConcurrentHashMap does not allow null values
+    @SuppressWarnings("rawtypes")
+    private static final Interceptor[] DONT_INTERCEPT = new Interceptor[0];
+
+    @SuppressWarnings("rawtypes")
+    private final Map<ChainKey, Interceptor[]> chains = new ConcurrentHashMap<>();
+
     private PluginsRegistryImpl() {
     }
 
@@ -177,16 +200,81 @@ public class PluginsRegistryImpl implements PluginsRegistry {
         return Collections.unmodifiableSet(this.initializers);
     }
 
+    /**
+     * @return the interceptors; modifying the returned set invalidates the
+     * compiled interceptors chains
+     */
     @Override
     public Set<PluginRecord<Interceptor>> getInterceptors() {
         if (this.interceptors == null) {
-            this.interceptors = new LinkedHashSet<>();
-            this.interceptors.addAll(PluginsFactory.getInstance().interceptors());
+            var _interceptors = new LinkedHashSet<PluginRecord<Interceptor>>();
+            _interceptors.addAll(PluginsFactory.getInstance().interceptors());
+            this.interceptors = new ChainsInvalidatingSet<>(_interceptors);
         }
 
         return this.interceptors;
     }
 
+    /**
+     * Returns the enabled interceptors that apply to the requests handled by a
+     * Service or by a proxy at an intercept point, in registration order.
+     *
+     * Chains are compiled on first use and cached until the interceptors set
+     * changes, so that the interceptors executors don't need to check the
+     * RegisterPlugin annotation and the exchange types of each interceptor on
+     * every request.
+     *
+     * An interceptor applies to
+     * - requests handled by a Service when its request and response types are
+     * equal to the ones declared by the Service, unless the Service
+     * declares the intercept point in dontIntercept
+     * - requests handled by a Proxy when its request and response are
+     * ByteArrayProxyRequest and ByteArrayProxyResponse
+     *
+     * @param srv the service handling the requests, null for proxies
+     * @param interceptPoint
+     * @param excludeRequiringContent if true the interceptors that require
+     * content are not included
+     * @return the interceptors chain, the array must not be modified; null
+     * if srv declares interceptPoint in dontIntercept
+     */
+    @SuppressWarnings("rawtypes")
+    public Interceptor[] getInterceptorsChain(Service srv,
+            InterceptPoint interceptPoint,
+            boolean excludeRequiringContent) {
+        var chain = chains.computeIfAbsent(new ChainKey(srv, interceptPoint,
+                excludeRequiringContent), this::compileChain);
+
+        return chain == DONT_INTERCEPT ? null : chain;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private Interceptor[] compileChain(ChainKey key) {
+        if (key.srv != null && Arrays.stream(dontIntercept(key.srv))
+                .anyMatch(key.interceptPoint::equals)) {
+            return DONT_INTERCEPT;
+        }
+
+        var requestType = key.srv == null
+                ? ByteArrayProxyRequest.type()
+                : cachedRequestType(key.srv);
+
+        var responseType = key.srv == null
+                ? ByteArrayProxyResponse.type()
+                : cachedResponseType(key.srv);
+
+        return getInterceptors()
+                .stream()
+                .filter(ri -> ri.isEnabled())
+                .map(ri -> ri.getInstance())
+                .filter(ri -> interceptPoint(ri) == key.interceptPoint)
+                .filter(ri -> cachedRequestType(ri).equals(requestType)
+                && cachedResponseType(ri).equals(responseType))
+                .filter(ri -> !key.excludeRequiringContent
+                || !requiresContent(ri))
+                .toArray(Interceptor[]::new);
+    }
+
     /**
      * @return the services
      */
@@ -233,4 +321,113 @@ public class PluginsRegistryImpl implements PluginsRegistry {
 
         return m.getValue();
     }
+
+    private static class ChainKey {
+        private final Service srv;
+        private final InterceptPoint interceptPoint;
+        private final boolean excludeRequiringContent;
+
+        ChainKey(Service srv,
+                InterceptPoint interceptPoint,
+                boolean excludeRequiringContent) {
+            this.srv = srv;
+            this.interceptPoint = interceptPoint;
+            this.excludeRequiringContent = excludeRequiringContent;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(srv, interceptPoint, excludeRequiringContent);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof ChainKey)) {
+                return false;
+            }
+
+            var other = (ChainKey) obj;
+
+            return srv == other.srv
+                    && interceptPoint == other.interceptPoint
+                    && excludeRequiringContent == other.excludeRequiringContent;
+        }
+    }
+
+    /**
+     * A Set that clears the compiled interceptors chains when modified
+     */
+    private class ChainsInvalidatingSet<E> extends ForwardingSet<E> {
+        private final Set<E> delegate;
+
+        ChainsInvalidatingSet(Set<E> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected Set<E> delegate() {
+            return delegate;
+        }
+
+        @Override
+        public boolean add(E element) {
+            return invalidate(delegate.add(element));
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends E> collection) {
+            return invalidate(delegate.addAll(collection));
+        }
+
+        @Override
+        public boolean remove(Object object) {
+            return invalidate(delegate.remove(object));
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> collection) {
+            return invalidate(delegate.removeAll(collection));
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> collection) {
+            return invalidate(delegate.retainAll(collection));
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+            invalidate(true);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            var it = delegate.iterator();
+
+            return new ForwardingIterator<E>() {
+                @Override
+                protected Iterator<E> delegate() {
+                    return it;
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                    invalidate(true);
+                }
+            };
+        }
+
+        private boolean invalidate(boolean modified) {
+            if (modified) {
+                chains.clear();
+            }
+
+            return modified;
+        }
+    }
 }
@@ -0,0 +1,189 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import io.undertow.server.HttpServerExchange;
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.restheart.handlers.LatencyAwareProxyClient.Balancer;
+import org.restheart.handlers.LatencyAwareProxyClient.POLICY;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class LatencyAwareProxyClientTest {
+
+    private static final long EJECTION_TIME = TimeUnit.SECONDS.toNanos(30);
+
+    private static final URI A = URI.create("http://a:8080");
+    private static final URI B = URI.create("http://b:8080");
+    private static final URI C = URI.create("http://c:8080");
+
+    @Test
+    public void testPolicy() {
+        var _default = Locale.getDefault();
+
+        try {
+            // toUpperCase() maps i to a dotted capital I with the turkish locale
+            Locale.setDefault(new Locale("tr", "TR"));
+
+            assertEquals(POLICY.LEAST_OUTSTANDING,
+                    LatencyAwareProxyClient.policy("least-outstanding"));
+            assertEquals(POLICY.PEAK_EWMA,
+                    LatencyAwareProxyClient.policy("peak-ewma"));
+            assertEquals(POLICY.ROUND_ROBIN,
+                    LatencyAwareProxyClient.policy("invalid"));
+            assertEquals(POLICY.ROUND_ROBIN,
+                    LatencyAwareProxyClient.policy(null));
+        } finally {
+            Locale.setDefault(_default);
+        }
+    }
+
+    @Test
+    public void testPeakEwmaSelection() {
+        var balancer = balancer("peak-ewma-selection");
+        var hosts = new URI[]{A, B};
+        var now = System.nanoTime();
+
+        for (int i = 0; i < 5; i++) {
+            now += TimeUnit.SECONDS.toNanos(1);
+            balancer.completed(A, now, millis(10), false);
+            balancer.completed(B, now, millis(50), false);
+        }
+
+        // with two hosts both are compared, the faster one is selected
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, balancer.select(hosts, now));
+        }
+
+        // a latency peak is taken immediately
+        balancer.completed(A, now, millis(200), false);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, balancer.select(hosts, now));
+        }
+    }
+
+    @Test
+    public void testLatencyUntilResponseHeaders() {
+        var balancer = balancer("latency-until-response-headers");
+        var hosts = new URI[]{A, B};
+        var now = System.nanoTime();
+
+        for (int i = 0; i < 5; i++) {
+            now += TimeUnit.SECONDS.toNanos(1);
+
+            // A sends the headers after 10ms and a large content
+            var a = new HttpServerExchange();
+            balancer.start(a, A, now);
+            balancer.responded(a, now + millis(10));
+            balancer.finished(a, now + millis(500));
+
+            // B sends the headers after 50ms and a small content
+            var b = new HttpServerExchange();
+            balancer.start(b, B, now);
+            balancer.responded(b, now + millis(50));
+            balancer.finished(b, now + millis(60));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, balancer.select(hosts, now));
+        }
+
+        // an error response still counts as an error
+        now += TimeUnit.SECONDS.toNanos(1);
+
+        var failed = new HttpServerExchange();
+        balancer.start(failed, A, now);
+        failed.setStatusCode(503);
+        balancer.finished(failed, now + millis(400));
+
+        // without response headers, the latency is until the failure
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, balancer.select(hosts, now));
+        }
+    }
+
+    @Test
+    public void testLatencyOutlierEjection() {
+        var balancer = balancer("latency-outlier-ejection");
+        var hosts = new URI[]{A, B, C};
+        var now = System.nanoTime();
+
+        for (int i = 0; i < 10; i++) {
+            now += TimeUnit.SECONDS.toNanos(1);
+            balancer.completed(A, now, millis(2), false);
+            balancer.completed(B, now, millis(2), false);
+            balancer.completed(C, now, millis(100), false);
+        }
+
+        // C exceeds 3 times the median latency and is ejected
+        for (int i = 0; i < 100; i++) {
+            assertNotEquals(2, balancer.select(hosts, now));
+        }
+
+        // after the ejection time C recovers, without samples it is cheaper
+        var after = now + EJECTION_TIME;
+        var selected = false;
+
+        for (int i = 0; i < 100 && !selected; i++) {
+            selected = balancer.select(hosts, after) == 2;
+        }
+
+        assertTrue(selected);
+    }
+
+    @Test
+    public void testErrorsOutlierEjection() {
+        var balancer = balancer("errors-outlier-ejection");
+        var hosts = new URI[]{A, B};
+        var now = System.nanoTime();
+
+        for (int i = 0; i < 10; i++) {
+            now += TimeUnit.SECONDS.toNanos(1);
+            balancer.completed(A, now, millis(10), true);
+            balancer.completed(B, now, millis(10), false);
+        }
+
+        // the error rate of A exceeds 0.5
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, balancer.select(hosts, now));
+        }
+
+        // after the ejection time A recovers, without samples it is cheaper
+        assertEquals(0, balancer.select(hosts, now + EJECTION_TIME));
+    }
+
+    private static Balancer balancer(String location) {
+        return new Balancer(location, POLICY.PEAK_EWMA, EJECTION_TIME, 0.5, 3);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
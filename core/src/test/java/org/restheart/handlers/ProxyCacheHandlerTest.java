@@ -0,0 +1,236 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.DateUtils;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import java.util.Date;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.restheart.handlers.ProxyCacheHandler.CacheControl;
+import org.restheart.handlers.ProxyCacheHandler.Entry;
+import org.restheart.utils.HttpStatus;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ProxyCacheHandlerTest {
+
+    private static final byte[] BODY = "{\"a\":1}".getBytes();
+
+    @Test
+    public void testCacheControl() {
+        var cc = CacheControl.of(headers(Headers.CACHE_CONTROL,
+                "Private, max-age=60, s-maxage=\"120\""));
+
+        assertTrue(cc.isPrivate);
+        assertFalse(cc.noStore);
+        assertFalse(cc.noCache);
+        assertEquals(60, cc.maxAge);
+        assertEquals(120, cc.sMaxAge);
+
+        cc = CacheControl.of(headers(Headers.CACHE_CONTROL, "no-store, no-cache"));
+
+        assertTrue(cc.noStore);
+        assertTrue(cc.noCache);
+        assertFalse(cc.isPublic);
+        assertFalse(cc.mustRevalidate);
+        assertEquals(-1, cc.maxAge);
+
+        cc = CacheControl.of(headers(Headers.CACHE_CONTROL, "public, must-revalidate"));
+
+        assertTrue(cc.isPublic);
+        assertTrue(cc.mustRevalidate);
+
+        cc = CacheControl.of(headers(Headers.CACHE_CONTROL, "max-age=invalid"));
+
+        assertEquals(0, cc.maxAge);
+
+        cc = CacheControl.of(new HeaderMap());
+
+        assertFalse(cc.noStore);
+        assertEquals(-1, cc.maxAge);
+        assertEquals(-1, cc.sMaxAge);
+    }
+
+    @Test
+    public void testFreshness() {
+        long now = System.currentTimeMillis();
+
+        var entry = Entry.of(HttpStatus.SC_OK,
+                headers(Headers.CACHE_CONTROL, "max-age=10"),
+                BODY, new HeaderMap(), now);
+
+        assertTrue(entry.isFresh(now + 9_999));
+        assertFalse(entry.isFresh(now + 10_000));
+        assertFalse(entry.hasValidators());
+
+        // s-maxage wins over max-age
+        var sh = headers(Headers.CACHE_CONTROL, "max-age=10, s-maxage=20");
+        assertEquals(20_000, Entry.freshness(sh, CacheControl.of(sh), now));
+
+        // Expires - Date
+        var eh = headers(Headers.DATE, DateUtils.toDateString(new Date(now)));
+        eh.put(Headers.EXPIRES, DateUtils.toDateString(new Date(now + 30_000)));
+        assertEquals(30_000, Entry.freshness(eh, CacheControl.of(eh), now), 1000);
+
+        // invalid Expires means already expired
+        var ih = headers(Headers.EXPIRES, "0");
+        assertEquals(0, Entry.freshness(ih, CacheControl.of(ih), now));
+    }
+
+    @Test
+    public void testRefresh() {
+        long now = System.currentTimeMillis();
+
+        var headers = headers(Headers.CACHE_CONTROL, "max-age=10");
+        headers.put(Headers.ETAG, "\"v1\"");
+        headers.put(Headers.CONTENT_TYPE, "application/json");
+
+        var entry = Entry.of(HttpStatus.SC_OK, headers, BODY, new HeaderMap(), now);
+
+        assertTrue(entry.hasValidators());
+        assertFalse(entry.isFresh(now + 20_000));
+
+        var notModified = headers(Headers.CACHE_CONTROL, "max-age=60");
+        notModified.put(Headers.SET_COOKIE, "id=1");
+
+        var refreshed = entry.refresh(notModified, now + 20_000);
+
+        // freshness is computed again from the headers of the 304 response
+        assertTrue(refreshed.isFresh(now + 20_000 + 59_000));
+        assertFalse(refreshed.isFresh(now + 20_000 + 60_000));
+        assertTrue(refreshed.hasValidators());
+        assertEquals(entry.weight(0), refreshed.weight(0));
+
+        // the cached entry is not modified
+        assertFalse(entry.isFresh(now + 20_000));
+
+        // the cookies of the 304 response are not cached
+        assertFalse(refreshed.getHeaders().contains(Headers.SET_COOKIE));
+    }
+
+    @Test
+    public void testVaryMatching() {
+        long now = System.currentTimeMillis();
+
+        var requestHeaders = headers(Headers.ACCEPT, "application/json");
+
+        var entry = Entry.of(HttpStatus.SC_OK,
+                headers(Headers.VARY, "Accept, Accept-Language"),
+                BODY, requestHeaders, now);
+
+        assertTrue(entry.matches(headers(Headers.ACCEPT, "application/json")));
+        assertFalse(entry.matches(headers(Headers.ACCEPT, "text/html")));
+
+        var withLanguage = headers(Headers.ACCEPT, "application/json");
+        withLanguage.put(Headers.ACCEPT_LANGUAGE, "it");
+
+        assertFalse(entry.matches(withLanguage));
+    }
+
+    @Test
+    public void testWeight() {
+        var entry = Entry.of(HttpStatus.SC_OK, new HeaderMap(), BODY,
+                new HeaderMap(), System.currentTimeMillis());
+
+        assertEquals(BODY.length, entry.weight(0));
+        assertEquals(1024, entry.weight(1024));
+    }
+
+    @Test
+    public void testStorable() {
+        assertTrue(ProxyCacheHandler.storable(
+                exchange(HttpStatus.SC_OK, Headers.CACHE_CONTROL, "max-age=10"),
+                false));
+
+        assertTrue(ProxyCacheHandler.storable(
+                exchange(HttpStatus.SC_OK, Headers.ETAG, "\"v1\""),
+                false));
+
+        // no freshness nor validators
+        assertFalse(ProxyCacheHandler.storable(
+                exchange(HttpStatus.SC_OK, Headers.CONTENT_TYPE, "application/json"),
+                false));
+
+        assertFalse(ProxyCacheHandler.storable(
+                exchange(HttpStatus.SC_NOT_FOUND, Headers.CACHE_CONTROL, "max-age=10"),
+                false));
+
+        assertFalse(ProxyCacheHandler.storable(
+                exchange(HttpStatus.SC_OK, Headers.CACHE_CONTROL, "max-age=10, no-store"),
+                false));
+
+        // private responses only for authenticated requests
+        assertFalse(ProxyCacheHandler.storable(
+                exchange(HttpStatus.SC_OK, Headers.CACHE_CONTROL, "private, max-age=10"),
+                false));
+
+        assertTrue(ProxyCacheHandler.storable(
+                exchange(HttpStatus.SC_OK, Headers.CACHE_CONTROL, "private, max-age=10"),
+                true));
+
+        var withCookie = exchange(HttpStatus.SC_OK, Headers.CACHE_CONTROL, "max-age=10");
+        withCookie.getResponseHeaders().put(Headers.SET_COOKIE, "id=1");
+
+        assertFalse(ProxyCacheHandler.storable(withCookie, false));
+
+        // requests with credentials not bound to the cache key
+        var withAuthorization = exchange(HttpStatus.SC_OK, Headers.CACHE_CONTROL, "max-age=10");
+        withAuthorization.getRequestHeaders().put(Headers.AUTHORIZATION, "Basic YTpi");
+
+        assertFalse(ProxyCacheHandler.storable(withAuthorization, false));
+        assertTrue(ProxyCacheHandler.storable(withAuthorization, true));
+
+        for (var cc : new String[]{"public, max-age=10", "s-maxage=10", "max-age=10, must-revalidate"}) {
+            var allowed = exchange(HttpStatus.SC_OK, Headers.CACHE_CONTROL, cc);
+            allowed.getRequestHeaders().put(Headers.AUTHORIZATION, "Basic YTpi");
+
+            assertTrue(cc, ProxyCacheHandler.storable(allowed, false));
+        }
+
+        var varyAll = exchange(HttpStatus.SC_OK, Headers.CACHE_CONTROL, "max-age=10");
+        varyAll.getResponseHeaders().put(Headers.VARY, "*");
+
+        assertFalse(ProxyCacheHandler.storable(varyAll, false));
+    }
+
+    private static HeaderMap headers(HttpString name, String value) {
+        var ret = new HeaderMap();
+        ret.put(name, value);
+        return ret;
+    }
+
+    private static HttpServerExchange exchange(int status,
+            HttpString name,
+            String value) {
+        var exchange = new HttpServerExchange();
+        exchange.setStatusCode(status);
+        exchange.getResponseHeaders().put(name, value);
+        return exchange;
+    }
+}
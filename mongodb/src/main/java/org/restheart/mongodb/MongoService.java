@@ -25,6 +25,8 @@ import static io.undertow.Handlers.pathTemplate;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.PathTemplateHandler;
 import io.undertow.util.PathMatcher;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -38,6 +40,7 @@ import org.restheart.exchange.MongoResponse;
 import org.restheart.exchange.Request;
 import org.restheart.handlers.PipelinedHandler;
 import org.restheart.handlers.PipelinedWrappingHandler;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.MONGO_MOUNT_STREAMING_JSON_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.MONGO_MOUNT_WHAT_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.MONGO_MOUNT_WHERE_KEY;
 import org.restheart.mongodb.db.MongoClientSingleton;
@@ -49,6 +52,7 @@ import org.restheart.mongodb.handlers.OptionsHandler;
 import org.restheart.mongodb.handlers.RequestDispatcherHandler;
 import org.restheart.mongodb.handlers.injectors.ClientSessionInjector;
 import org.restheart.mongodb.handlers.injectors.ETagPolicyInjector;
+import org.restheart.mongodb.utils.ContentInterceptors;
 import org.restheart.mongodb.utils.URLUtils;
 import org.restheart.plugins.InjectPluginsRegistry;
 import org.restheart.plugins.PluginsRegistry;
@@ -86,6 +90,8 @@ public class MongoService implements Service<MongoRequest, MongoResponse> {
 
     @InjectPluginsRegistry
     public void init(PluginsRegistry registry) {
+        ContentInterceptors.init(registry);
+
         this.myURI = myURI();
         this.pipeline = getBasePipeline();
 
@@ -204,7 +210,22 @@ public class MongoService implements Service<MongoRequest, MongoResponse> {
     @Override
     public Consumer<HttpServerExchange> responseInitializer() {
         return e -> {
-            MongoResponse.init(e);
+            var response = MongoResponse.init(e);
+
+            var mmm = mongoMounts.match(e.getRequestPath());
+
+            if (mmm != null
+                    && mmm.getValue() != null
+                    && mmm.getValue().streamingJson) {
+                // encode the content straight to the response output stream
+                response.setCustomerSender(() -> {
+                    try {
+                        response.streamContent();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                });
+            }
 
             // BsonRequestPropsInjector and BsonRequestContentInjector requires 
             // that both MongoRequest and MongoResponse are initialized
@@ -232,7 +253,8 @@ public class MongoService implements Service<MongoRequest, MongoResponse> {
                 .forEachOrdered(e -> {
                     ret.add(new MongoMount(
                             (String) e.get(MONGO_MOUNT_WHAT_KEY),
-                            resolveURI((String) e.get(MONGO_MOUNT_WHERE_KEY))));
+                            resolveURI((String) e.get(MONGO_MOUNT_WHERE_KEY)),
+                            Boolean.TRUE.equals(e.get(MONGO_MOUNT_STREAMING_JSON_KEY))));
                 });
 
         return ret;
@@ -288,8 +310,9 @@ public class MongoService implements Service<MongoRequest, MongoResponse> {
     private static class MongoMount {
         public String resource;
         public String uri;
+        public boolean streamingJson;
 
-        public MongoMount(String resource, String uri) {
+        public MongoMount(String resource, String uri, boolean streamingJson) {
             if (uri == null) {
                 throw new IllegalArgumentException("'where' cannot be null. check your 'mongo-mounts'.");
             }
@@ -308,11 +331,13 @@ public class MongoService implements Service<MongoRequest, MongoResponse> {
 
             this.resource = resource;
             this.uri = org.restheart.utils.URLUtils.removeTrailingSlashes(uri);
+            this.streamingJson = streamingJson;
         }
 
         @Override
         public String toString() {
-            return "MongoMount(" + uri + " -> " + resource + ")";
+            return "MongoMount(" + uri + " -> " + resource
+                    + (streamingJson ? ", streaming-json" : "") + ")";
         }
     }
 
@@ -94,6 +94,19 @@ public class MongoServiceConfiguration {
     private final int defaultPagesize;
     private final int maxPagesize;
     private final METRICS_GATHERING_LEVEL metricsGatheringLevel;
+    private final boolean parallelCount;
+    private final long countCacheTtl;
+    private final int changeStreamsQueueSize;
+    private final CHANGE_STREAMS_OVERFLOW_POLICY changeStreamsOverflowPolicy;
+    private final boolean requestCoalescing;
+    private final int ndjsonBatchSize;
+    private final int changeStreamsReplayBufferSize;
+    private final CHANGE_STREAMS_RESUME_TOKENS_STORE changeStreamsResumeTokensStore;
+    private final String changeStreamsResumeTokensFile;
+    private final String changeStreamsResumeTokensDb;
+    private final int parallelCountPoolSize;
+    private final int csvLoaderPoolSize;
+    private final int csvLoaderMaxBatchSize;
 
     public static MongoServiceConfiguration get() {
         return INSTANCE;
@@ -330,6 +343,39 @@ public class MongoServiceConfiguration {
         maxPagesize = getAsIntegerOrDefault(conf, MAX_PAGESIZE_KEY,
                 DEFAULT_MAX_PAGESIZE);
 
+        parallelCount = getAsBooleanOrDefault(conf, PARALLEL_COUNT_KEY,
+                false);
+
+        countCacheTtl = getAsLongOrDefault(conf, COUNT_CACHE_TTL_KEY,
+                (long) 0);
+
+        changeStreamsQueueSize = getAsIntegerOrDefault(conf, CHANGE_STREAMS_QUEUE_SIZE_KEY,
+                1000);
+
+        requestCoalescing = getAsBooleanOrDefault(conf, REQUEST_COALESCING_KEY,
+                false);
+
+        ndjsonBatchSize = getAsIntegerOrDefault(conf, NDJSON_BATCH_SIZE_KEY,
+                1000);
+
+        changeStreamsReplayBufferSize = getAsIntegerOrDefault(conf, CHANGE_STREAMS_REPLAY_BUFFER_SIZE_KEY,
+                1000);
+
+        changeStreamsResumeTokensFile = getAsStringOrDefault(conf, CHANGE_STREAMS_RESUME_TOKENS_FILE_KEY,
+                null);
+
+        changeStreamsResumeTokensDb = getAsStringOrDefault(conf, CHANGE_STREAMS_RESUME_TOKENS_DB_KEY,
+                "restheart");
+
+        parallelCountPoolSize = getAsIntegerOrDefault(conf, PARALLEL_COUNT_POOL_SIZE_KEY,
+                16);
+
+        csvLoaderPoolSize = getAsIntegerOrDefault(conf, CSV_LOADER_POOL_SIZE_KEY,
+                8);
+
+        csvLoaderMaxBatchSize = getAsIntegerOrDefault(conf, CSV_LOADER_MAX_BATCH_SIZE_KEY,
+                10000);
+
         {
             METRICS_GATHERING_LEVEL mglevel;
             try {
@@ -342,6 +388,33 @@ public class MongoServiceConfiguration {
             }
             metricsGatheringLevel = mglevel;
         }
+
+        {
+            CHANGE_STREAMS_OVERFLOW_POLICY policy;
+            try {
+                String value = getAsStringOrDefault(conf,
+                        CHANGE_STREAMS_OVERFLOW_POLICY_KEY, "DROP_OLDEST");
+                policy = CHANGE_STREAMS_OVERFLOW_POLICY.valueOf(value
+                        .toUpperCase(Locale.getDefault())
+                        .replace('-', '_'));
+            } catch (IllegalArgumentException iae) {
+                policy = CHANGE_STREAMS_OVERFLOW_POLICY.DROP_OLDEST;
+            }
+            changeStreamsOverflowPolicy = policy;
+        }
+
+        {
+            CHANGE_STREAMS_RESUME_TOKENS_STORE store;
+            try {
+                String value = getAsStringOrDefault(conf,
+                        CHANGE_STREAMS_RESUME_TOKENS_STORE_KEY, "MEMORY");
+                store = CHANGE_STREAMS_RESUME_TOKENS_STORE.valueOf(value
+                        .toUpperCase(Locale.getDefault()));
+            } catch (IllegalArgumentException iae) {
+                store = CHANGE_STREAMS_RESUME_TOKENS_STORE.MEMORY;
+            }
+            changeStreamsResumeTokensStore = store;
+        }
     }
 
     @Override
@@ -375,6 +448,19 @@ public class MongoServiceConfiguration {
                 + ", cursorBatchSize=" + cursorBatchSize
                 + ", defaultPagesize=" + defaultPagesize
                 + ", maxPagesize=" + maxPagesize
+                + ", parallelCount=" + parallelCount
+                + ", countCacheTtl=" + countCacheTtl
+                + ", changeStreamsQueueSize=" + changeStreamsQueueSize
+                + ", changeStreamsOverflowPolicy=" + changeStreamsOverflowPolicy
+                + ", requestCoalescing=" + requestCoalescing
+                + ", ndjsonBatchSize=" + ndjsonBatchSize
+                + ", changeStreamsReplayBufferSize=" + changeStreamsReplayBufferSize
+                + ", changeStreamsResumeTokensStore=" + changeStreamsResumeTokensStore
+                + ", changeStreamsResumeTokensFile=" + changeStreamsResumeTokensFile
+                + ", changeStreamsResumeTokensDb=" + changeStreamsResumeTokensDb
+                + ", parallelCountPoolSize=" + parallelCountPoolSize
+                + ", csvLoaderPoolSize=" + csvLoaderPoolSize
+                + ", csvLoaderMaxBatchSize=" + csvLoaderMaxBatchSize
                 + ", configurationFileMap=" + configurationFileMap
                 + '}';
     }
@@ -933,6 +1019,97 @@ public class MongoServiceConfiguration {
         return getMetricsGatheringLevel().compareTo(level) >= 0;
     }
 
+    /**
+     * @return the parallelCount
+     */
+    public boolean isParallelCount() {
+        return parallelCount;
+    }
+
+    /**
+     * @return the countCacheTtl
+     */
+    public long getCountCacheTtl() {
+        return countCacheTtl;
+    }
+
+    /**
+     * @return the changeStreamsQueueSize
+     */
+    public int getChangeStreamsQueueSize() {
+        return changeStreamsQueueSize;
+    }
+
+    /**
+     * @return the changeStreamsOverflowPolicy
+     */
+    public CHANGE_STREAMS_OVERFLOW_POLICY getChangeStreamsOverflowPolicy() {
+        return changeStreamsOverflowPolicy;
+    }
+
+    /**
+     * @return the requestCoalescing
+     */
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    /**
+     * @return the ndjsonBatchSize
+     */
+    public int getNdjsonBatchSize() {
+        return ndjsonBatchSize;
+    }
+
+    /**
+     * @return the changeStreamsReplayBufferSize
+     */
+    public int getChangeStreamsReplayBufferSize() {
+        return changeStreamsReplayBufferSize;
+    }
+
+    /**
+     * @return the changeStreamsResumeTokensStore
+     */
+    public CHANGE_STREAMS_RESUME_TOKENS_STORE getChangeStreamsResumeTokensStore() {
+        return changeStreamsResumeTokensStore;
+    }
+
+    /**
+     * @return the changeStreamsResumeTokensFile
+     */
+    public String getChangeStreamsResumeTokensFile() {
+        return changeStreamsResumeTokensFile;
+    }
+
+    /**
+     * @return the changeStreamsResumeTokensDb
+     */
+    public String getChangeStreamsResumeTokensDb() {
+        return changeStreamsResumeTokensDb;
+    }
+
+    /**
+     * @return the parallelCountPoolSize
+     */
+    public int getParallelCountPoolSize() {
+        return parallelCountPoolSize;
+    }
+
+    /**
+     * @return the csvLoaderPoolSize
+     */
+    public int getCsvLoaderPoolSize() {
+        return csvLoaderPoolSize;
+    }
+
+    /**
+     * @return the csvLoaderMaxBatchSize
+     */
+    public int getCsvLoaderMaxBatchSize() {
+        return csvLoaderMaxBatchSize;
+    }
+
     /**
      *
      */
@@ -956,4 +1133,44 @@ public class MongoServiceConfiguration {
          */
         COLLECTION
     }
+
+    /**
+     * what to do when the notifications queue of a change stream websocket
+     * session is full, i.e. the client is slower than the stream
+     */
+    public enum CHANGE_STREAMS_OVERFLOW_POLICY {
+        /**
+         * discard the oldest queued notification
+         */
+        DROP_OLDEST,
+        /**
+         * close the websocket session
+         */
+        DISCONNECT,
+        /**
+         * replace the queued notification of the same document, if any, or
+         * otherwise discard the oldest queued notification
+         */
+        COALESCE
+    }
+
+    /**
+     * where the resume tokens of the upstream change streams are persisted
+     */
+    public enum CHANGE_STREAMS_RESUME_TOKENS_STORE {
+        /**
+         * keep the resume tokens in memory: change streams are resumed after
+         * an error, but not after a restart
+         */
+        MEMORY,
+        /**
+         * persist the resume tokens in the change-streams-resume-tokens-file
+         */
+        FILE,
+        /**
+         * persist the resume tokens in a collection of the
+         * change-streams-resume-tokens-db
+         */
+        MONGO
+    }
 }
@@ -143,6 +143,11 @@ public interface MongoServiceConfigurationKeys {
      */
     public static final String MONGO_MOUNT_WHERE_KEY = "where";
     
+    /**
+     * the key for the streaming-json mongo-mount property.
+     */
+    public static final String MONGO_MOUNT_STREAMING_JSON_KEY = "streaming-json";
+
     /**
      * the default value for the where mongo-mount property.
      */
@@ -238,4 +243,69 @@ public interface MongoServiceConfigurationKeys {
      * The key for specifying the cursor batch size
      */
     public static final String CURSOR_BATCH_SIZE_KEY = "cursor-batch-size";
+
+    /**
+     * The key for executing the count and the data query of GET collection requests in parallel
+     */
+    public static final String PARALLEL_COUNT_KEY = "parallel-count";
+
+    /**
+     * The key for the TTL in milliseconds of the cached collection counts, 0 disables the cache
+     */
+    public static final String COUNT_CACHE_TTL_KEY = "count-cache-ttl";
+
+    /**
+     * The key for the max number of notifications queued for each change stream websocket session
+     */
+    public static final String CHANGE_STREAMS_QUEUE_SIZE_KEY = "change-streams-queue-size";
+
+    /**
+     * The key for the policy applied when the notifications queue of a change stream websocket session is full
+     */
+    public static final String CHANGE_STREAMS_OVERFLOW_POLICY_KEY = "change-streams-overflow-policy";
+
+    /**
+     * the key for the request-coalescing property.
+     */
+    public static final String REQUEST_COALESCING_KEY = "request-coalescing";
+
+    /**
+     * the key for the ndjson-batch-size property.
+     */
+    public static final String NDJSON_BATCH_SIZE_KEY = "ndjson-batch-size";
+
+    /**
+     * The key for the number of recent change events kept in memory for each change stream to replay them to resuming clients
+     */
+    public static final String CHANGE_STREAMS_REPLAY_BUFFER_SIZE_KEY = "change-streams-replay-buffer-size";
+
+    /**
+     * The key for the store of the change streams resume tokens: MEMORY, FILE or MONGO
+     */
+    public static final String CHANGE_STREAMS_RESUME_TOKENS_STORE_KEY = "change-streams-resume-tokens-store";
+
+    /**
+     * The key for the file where the change streams resume tokens are persisted with the FILE store
+     */
+    public static final String CHANGE_STREAMS_RESUME_TOKENS_FILE_KEY = "change-streams-resume-tokens-file";
+
+    /**
+     * The key for the db where the change streams resume tokens are persisted with the MONGO store
+     */
+    public static final String CHANGE_STREAMS_RESUME_TOKENS_DB_KEY = "change-streams-resume-tokens-db";
+
+    /**
+     * The key for the number of threads executing the parallel counts, also the max number of counts waiting for a thread
+     */
+    public static final String PARALLEL_COUNT_POOL_SIZE_KEY = "parallel-count-pool-size";
+
+    /**
+     * the key for the csv-loader-pool-size property.
+     */
+    public static final String CSV_LOADER_POOL_SIZE_KEY = "csv-loader-pool-size";
+
+    /**
+     * the key for the csv-loader-max-batch-size property.
+     */
+    public static final String CSV_LOADER_MAX_BATCH_SIZE_KEY = "csv-loader-max-batch-size";
 }
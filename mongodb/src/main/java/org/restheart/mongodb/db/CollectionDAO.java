@@ -163,6 +163,29 @@ class CollectionDAO {
                         .getQueryTimeLimit(), TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Returns the cursor of the documents of the requested page, to stream
+     * them without collecting the whole page in memory. Cursors are not
+     * pooled, since the returned one is iterated until the end.
+     *
+     * @return the cursor, its first batch has been already fetched
+     */
+    MongoCursor<BsonDocument> getCollectionDataCursor(
+            final ClientSession cs,
+            final MongoCollection<BsonDocument> coll,
+            final int page,
+            final int pagesize,
+            final BsonDocument sortBy,
+            final BsonDocument filters,
+            final BsonDocument hint,
+            final BsonDocument keys)
+            throws JsonParseException {
+        return getFindIterable(cs, coll, sortBy, filters, hint, keys)
+                .skip(pagesize * (page - 1))
+                .limit(pagesize)
+                .iterator();
+    }
+
     BsonArray getCollectionData(
             final ClientSession cs,
             final MongoCollection<BsonDocument> coll,
@@ -189,8 +212,8 @@ class CollectionDAO {
                             coll,
                             sortBy,
                             filters,
-                            hint,
                             keys,
+                            hint,
                             toskip,
                             0),
                     eager);
@@ -247,7 +270,7 @@ class CollectionDAO {
         // the pool is populated here because, skipping with cursor.next() is heavy operation
         // and we want to minimize the chances that pool cursors are allocated in parallel
         CursorPool.getInstance().populateCache(
-                new CursorPoolEntryKey(cs, coll, sortBy, filters, hint, keys, toskip, 0),
+                new CursorPoolEntryKey(cs, coll, sortBy, filters, keys, hint, toskip, 0),
                 eager);
 
         return ret;
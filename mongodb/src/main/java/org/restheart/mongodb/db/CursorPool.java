@@ -20,34 +20,51 @@
  */
 package org.restheart.mongodb.db;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.FindIterable;
 import static java.lang.Thread.MIN_PRIORITY;
 import java.util.Comparator;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.bson.BsonDocument;
 import static org.fusesource.jansi.Ansi.Color.GREEN;
 import static org.fusesource.jansi.Ansi.Color.RED;
 import static org.fusesource.jansi.Ansi.Color.YELLOW;
 import static org.fusesource.jansi.Ansi.ansi;
-import org.restheart.cache.Cache;
 import org.restheart.cache.CacheFactory;
 import org.restheart.cache.LoadingCache;
 import org.restheart.exchange.ExchangeKeys.EAGER_CURSOR_ALLOCATION_POLICY;
 import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.handlers.metrics.SharedMetricRegistryProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * The pool of db cursors used by the eager cursor allocation engine.
+ *
+ * Cursors are indexed per query (namespace, filter, sort, keys and hint) in a
+ * ConcurrentHashMap whose values are ConcurrentSkipListMaps ordered by the
+ * number of skipped documents. Finding the cursor with the closest skips to a
+ * request is a floor lookup, i.e. O(log n), and concurrent requests do not
+ * block each other.
+ *
+ * The pool occupancy is exposed via the default metrics registry with the
+ * gauges cursor-pool.size and cursor-pool.queries and the counters
+ * cursor-pool.hits and cursor-pool.misses
  *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
@@ -82,6 +99,14 @@ public class CursorPool {
                             .build()
             );
 
+    /**
+     * orders the cursors of a query by skips; cursorId makes keys with the
+     * same skips distinct
+     */
+    private static final Comparator<CursorPoolEntryKey> BY_SKIPS
+            = Comparator.comparingInt(CursorPoolEntryKey::getSkipped)
+                    .thenComparingLong(CursorPoolEntryKey::getCursorId);
+
     /**
      *
      * @return
@@ -89,7 +114,7 @@ public class CursorPool {
     public static CursorPool getInstance() {
         return DBCursorPoolSingletonHolder.INSTANCE;
     }
-    
+
     private final DatabaseImpl dbsDAO;
 
     private final int SKIP_SLICE_LINEAR_DELTA
@@ -107,17 +132,19 @@ public class CursorPool {
     private final int SKIP_SLICE_RND_MAX_CURSORS
             = MongoServiceConfiguration.get().getEagerRndMaxCursors();
 
-    private final Cache<CursorPoolEntryKey, FindIterable<BsonDocument>> cache;
+    private final ConcurrentMap<QueryKey, ConcurrentNavigableMap<CursorPoolEntryKey, PooledCursor>> index
+            = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger(0);
+
     private final LoadingCache<CursorPoolEntryKey, Long> collSizes;
 
+    private final Counter hits;
+    private final Counter misses;
+
     private CursorPool(DatabaseImpl dbsDAO) {
         this.dbsDAO = dbsDAO;
 
-        cache = CacheFactory.createLocalCache(
-                POOL_SIZE,
-                Cache.EXPIRE_POLICY.AFTER_READ,
-                TTL);
-
         collSizes = CacheFactory.createLocalLoadingCache(100,
                 org.restheart.cache.Cache.EXPIRE_POLICY.AFTER_WRITE,
                 60 * 1000,
@@ -129,19 +156,32 @@ public class CursorPool {
                 }
         );
 
-        if (LOGGER.isDebugEnabled()) {
-            // print stats every 1 minute
-            Executors.newSingleThreadScheduledExecutor()
-                    .scheduleAtFixedRate(() -> {
+        MetricRegistry registry = new SharedMetricRegistryProxy().registry();
+
+        registry.gauge("cursor-pool.size", () -> (Gauge<Integer>) size::get);
+        registry.gauge("cursor-pool.queries", () -> (Gauge<Integer>) index::size);
+        this.hits = registry.counter("cursor-pool.hits");
+        this.misses = registry.counter("cursor-pool.misses");
+
+        // evict expired cursors every 1 minute
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("cursor-pool-evictor-%d")
+                .build())
+                .scheduleAtFixedRate(() -> {
+                    evictExpired();
+
+                    if (LOGGER.isDebugEnabled()) {
                         getCacheSizes().forEach((s, c) -> {
                             LOGGER.debug("db cursor pool size: {}\t{}", s, c);
                         });
+                    }
 
-                        LOGGER.trace(""
-                                + "db cursor pool entries: {}",
-                                cache.asMap().keySet());
-                    }, 1, 1, TimeUnit.MINUTES);
-        }
+                    if (LOGGER.isTraceEnabled()) {
+                        LOGGER.trace("db cursor pool entries: {}",
+                                index.values());
+                    }
+                }, 1, 1, TimeUnit.MINUTES);
     }
 
     /**
@@ -150,7 +190,7 @@ public class CursorPool {
      * @param allocationPolicy
      * @return
      */
-    public synchronized SkippedFindIterable get(
+    public SkippedFindIterable get(
             CursorPoolEntryKey key,
             EAGER_CURSOR_ALLOCATION_POLICY allocationPolicy) {
         if (key.getSkipped() < SKIP_SLICE_LINEAR_WIDTH) {
@@ -161,43 +201,49 @@ public class CursorPool {
             return null;
         }
 
-        // return the dbcursor with the closest skips to the request
-        Optional<CursorPoolEntryKey> _bestKey = cache.asMap().keySet().stream()
-                .filter(cursorsPoolFilterGte(key))
-                .sorted(Comparator.comparingInt(CursorPoolEntryKey::getSkipped).reversed())
-                .findFirst();
-
-        SkippedFindIterable ret;
-
-        if (_bestKey.isPresent()) {
-            Optional<FindIterable<BsonDocument>> _dbcur
-                    = cache.get(_bestKey.get());
-
-            if (_dbcur != null && _dbcur.isPresent()) {
-                ret = new SkippedFindIterable(
-                        _dbcur.get(),
-                        _bestKey.get().getSkipped());
-                cache.invalidate(_bestKey.get());
-
-                LOGGER.debug("{} cursor in pool. id {}, saving {} skips",
-                        ansi().fg(GREEN).bold().a("found").reset().toString(),
-                        _bestKey.get().getCursorId(),
-                        key.getSkipped(),
-                        _bestKey.get().getSkipped());
-            } else {
-                ret = null;
-
-                LOGGER.debug("{} cursor in pool.",
-                        ansi().fg(RED).bold().a("no").reset().toString());
-            }
-        } else {
-            ret = null;
+        var cursors = index.get(new QueryKey(key));
+
+        if (cursors != null) {
+            // return the dbcursor with the closest skips to the request
+            var bound = sliceBound(key, key.getSkipped(), Long.MAX_VALUE);
+
+            var minSkips = key.getSkipped()
+                    - MIN_SKIP_DISTANCE_PERCENTAGE * key.getSkipped();
+
+            var now = System.currentTimeMillis();
+
+            for (var entry = cursors.floorEntry(bound);
+                    entry != null && entry.getKey().getSkipped() >= minSkips;
+                    entry = cursors.floorEntry(bound)) {
+                // remove() claims the cursor atomically; if it fails
+                // a concurrent request got it first, try the next one
+                if (cursors.remove(entry.getKey(), entry.getValue())) {
+                    size.decrementAndGet();
 
-            LOGGER.debug(ansi().fg(RED).bold().a("no").reset().toString()
-                    + " cursor in pool.");
+                    if (entry.getValue().isExpired(now)) {
+                        continue;
+                    }
+
+                    hits.inc();
+
+                    LOGGER.debug("{} cursor in pool. id {}, saving {} skips",
+                            ansi().fg(GREEN).bold().a("found").reset().toString(),
+                            entry.getKey().getCursorId(),
+                            entry.getKey().getSkipped());
+
+                    return new SkippedFindIterable(
+                            entry.getValue().cursor,
+                            entry.getKey().getSkipped());
+                }
+            }
         }
 
-        return ret;
+        misses.inc();
+
+        LOGGER.debug(ansi().fg(RED).bold().a("no").reset().toString()
+                + " cursor in pool.");
+
+        return null;
     }
 
     void populateCache(
@@ -226,18 +272,7 @@ public class CursorPool {
                             = slice * SKIP_SLICE_LINEAR_WIDTH
                             - SKIP_SLICE_LINEAR_DELTA;
 
-                    CursorPoolEntryKey sliceKey
-                            = new CursorPoolEntryKey(
-                                    key.getSession(),
-                                    key.getCollection(),
-                                    key.getSort(),
-                                    key.getFilter(),
-                                    key.getKeys(),
-                                    key.getHint(),
-                                    sliceSkips,
-                                    -1);
-
-                    long existing = getSliceHeight(sliceKey);
+                    long existing = getSliceHeight(key, sliceSkips);
 
                     long tocreate = tohave - existing;
 
@@ -263,12 +298,14 @@ public class CursorPool {
                                 key.getCollection(),
                                 key.getSort(),
                                 key.getFilter(),
-                                key.getHint(),
                                 key.getKeys(),
+                                key.getHint(),
                                 sliceSkips,
                                 System.nanoTime());
 
-                        cache.put(newkey, cursor);
+                        if (!put(newkey, cursor)) {
+                            return;
+                        }
 
                         LOGGER.debug("{} cursor in pool: {}",
                                 ansi().fg(YELLOW).bold().a("new").reset()
@@ -308,14 +345,7 @@ public class CursorPool {
                 for (int slice = 1; slice < slices; slice++) {
                     int sliceSkips = slice * sliceWidht;
 
-                    CursorPoolEntryKey sliceKey = new CursorPoolEntryKey(key);
-
-                    LOGGER.debug("{} cursor in pool: {}",
-                            ansi().fg(YELLOW).bold().a("new").reset()
-                                    .toString(),
-                            sliceKey);
-
-                    long existing = getSliceHeight(sliceKey);
+                    long existing = getSliceHeight(key, sliceSkips);
 
                     if (existing == 0) {
                         FindIterable<BsonDocument> cursor = dbsDAO
@@ -336,16 +366,19 @@ public class CursorPool {
                                 key.getCollection(),
                                 key.getSort(),
                                 key.getFilter(),
-                                key.getHint(),
                                 key.getKeys(),
+                                key.getHint(),
                                 sliceSkips,
                                 System.nanoTime());
-                        cache.put(newkey, cursor);
 
-                        LOGGER.debug("{} cursor in pool (copied): {}",
+                        if (!put(newkey, cursor)) {
+                            return;
+                        }
+
+                        LOGGER.debug("{} cursor in pool: {}",
                                 ansi().fg(YELLOW).bold().a("new").reset()
                                         .toString(),
-                                sliceKey);
+                                newkey);
                     }
                 }
             });
@@ -356,58 +389,154 @@ public class CursorPool {
 
     }
 
-    private long getSliceHeight(CursorPoolEntryKey key) {
-        long ret = cache.asMap().keySet().stream()
-                .filter(cursorsPoolFilterEq(key))
-                .count();
+    /**
+     * adds a cursor to the pool
+     *
+     * @param key
+     * @param cursor
+     * @return false if the pool is full and the cursor was not added
+     */
+    private boolean put(CursorPoolEntryKey key, FindIterable<BsonDocument> cursor) {
+        if (size.incrementAndGet() > POOL_SIZE) {
+            size.decrementAndGet();
+
+            LOGGER.trace("cursor pool is full ({} cursors), "
+                    + "new cursor not added", POOL_SIZE);
+
+            return false;
+        }
+
+        // compute() serializes with the removal of empty queries in evictExpired()
+        index.compute(new QueryKey(key), (k, cursors) -> {
+            var ret = cursors == null
+                    ? new ConcurrentSkipListMap<CursorPoolEntryKey, PooledCursor>(BY_SKIPS)
+                    : cursors;
+
+            ret.put(key, new PooledCursor(cursor));
+
+            return ret;
+        });
+
+        return true;
+    }
+
+    private void evictExpired() {
+        var now = System.currentTimeMillis();
+
+        index.forEach((query, cursors) -> {
+            cursors.forEach((key, cursor) -> {
+                if (cursor.isExpired(now) && cursors.remove(key, cursor)) {
+                    size.decrementAndGet();
+                }
+            });
+
+            index.computeIfPresent(query, (k, v) -> v.isEmpty() ? null : v);
+        });
+    }
+
+    private long getSliceHeight(CursorPoolEntryKey key, int skips) {
+        var cursors = index.get(new QueryKey(key));
+
+        long ret = cursors == null
+                ? 0
+                : cursors.subMap(
+                        sliceBound(key, skips, Long.MIN_VALUE), true,
+                        sliceBound(key, skips, Long.MAX_VALUE), true)
+                        .size();
 
         LOGGER.trace(
                 "cursor in pool with skips {} are {}",
-                key.getSkipped(),
+                skips,
                 ret);
 
         return ret;
     }
 
-    private Predicate<? super CursorPoolEntryKey> cursorsPoolFilterEq(
-            CursorPoolEntryKey requestCursor) {
-        return poolCursor
-                -> Objects.equals(poolCursor.getCollection()
-                        .getNamespace(),
-                        requestCursor.getCollection().getNamespace())
-                && Objects.equals(poolCursor.getFilter(),
-                        requestCursor.getFilter())
-                && Objects.equals(poolCursor.getSort(),
-                        requestCursor.getSort())
-                && Objects.equals(poolCursor.getKeys(),
-                        requestCursor.getKeys())
-                && poolCursor.getSkipped() == requestCursor.getSkipped();
+    private static CursorPoolEntryKey sliceBound(CursorPoolEntryKey key,
+            int skips,
+            long cursorId) {
+        return new CursorPoolEntryKey(
+                key.getSession(),
+                key.getCollection(),
+                key.getSort(),
+                key.getFilter(),
+                key.getKeys(),
+                key.getHint(),
+                skips,
+                cursorId);
     }
 
-    private Predicate<? super CursorPoolEntryKey> cursorsPoolFilterGte(
-            CursorPoolEntryKey requestCursor) {
-        return poolCursor
-                -> Objects.equals(poolCursor.getCollection().getNamespace(),
-                        requestCursor.getCollection().getNamespace())
-                && Objects.equals(poolCursor.getFilter(),
-                        requestCursor.getFilter())
-                && Objects.equals(poolCursor.getSort(),
-                        requestCursor.getSort())
-                && Objects.equals(poolCursor.getKeys(),
-                        requestCursor.getKeys())
-                && poolCursor.getSkipped() <= requestCursor.getSkipped()
-                && requestCursor.getSkipped() - poolCursor.getSkipped()
-                <= MIN_SKIP_DISTANCE_PERCENTAGE
-                * requestCursor.getSkipped();
+    private TreeMap<String, Long> getCacheSizes() {
+        var ret = new TreeMap<String, Long>();
+
+        index.values().forEach(cursors -> cursors.keySet()
+                .forEach(key -> ret.merge(key.getCacheStatsGroup(), 1L, Long::sum)));
+
+        return ret;
     }
 
-    private TreeMap<String, Long> getCacheSizes() {
-        return new TreeMap<>(cache.asMap()
-                .keySet()
-                .stream()
-                .collect(Collectors.groupingBy(
-                        CursorPoolEntryKey::getCacheStatsGroup,
-                        Collectors.counting())));
+    /**
+     * identifies the query of a pooled cursor, i.e. all the properties of a
+     * CursorPoolEntryKey but skipped and cursorId
+     */
+    private static class QueryKey {
+        private final ClientSession session;
+        private final String namespace;
+        private final BsonDocument filter;
+        private final BsonDocument sort;
+        private final BsonDocument keys;
+        private final BsonDocument hint;
+        private final int hash;
+
+        QueryKey(CursorPoolEntryKey key) {
+            this.session = key.getSession();
+            this.namespace = key.getCollection().getNamespace().getFullName();
+            this.filter = key.getFilter();
+            this.sort = key.getSort();
+            this.keys = key.getKeys();
+            this.hint = key.getHint();
+            this.hash = Objects.hash(session, namespace, filter, sort, keys, hint);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+
+            var other = (QueryKey) obj;
+
+            return hash == other.hash
+                    && Objects.equals(session, other.session)
+                    && Objects.equals(namespace, other.namespace)
+                    && Objects.equals(filter, other.filter)
+                    && Objects.equals(sort, other.sort)
+                    && Objects.equals(keys, other.keys)
+                    && Objects.equals(hint, other.hint);
+        }
+    }
+
+    private static class PooledCursor {
+        private final FindIterable<BsonDocument> cursor;
+        private final long expires;
+
+        PooledCursor(FindIterable<BsonDocument> cursor) {
+            this.cursor = cursor;
+            this.expires = System.currentTimeMillis() + TTL;
+        }
+
+        boolean isExpired(long now) {
+            return now > expires;
+        }
     }
 
     private static class DBCursorPoolSingletonHolder {
@@ -115,6 +115,18 @@ public class DAOUtils {
     public final static FindOneAndReplaceOptions FOR_AFTER_NOT_UPSERT_OPS = new FindOneAndReplaceOptions()
             .upsert(false).returnDocument(ReturnDocument.AFTER);
 
+    /**
+     * upsert returning the old document, used by the conditional writes
+     */
+    public final static FindOneAndUpdateOptions FAU_BEFORE_UPSERT_OPS = new FindOneAndUpdateOptions()
+            .upsert(true).returnDocument(ReturnDocument.BEFORE);
+
+    /**
+     * upsert returning the old document, used by the conditional writes
+     */
+    public final static FindOneAndReplaceOptions FOR_BEFORE_UPSERT_OPS = new FindOneAndReplaceOptions()
+            .upsert(true).returnDocument(ReturnDocument.BEFORE);
+
     /**
      *
      */
@@ -23,6 +23,7 @@ package org.restheart.mongodb.db;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import java.util.List;
 import org.bson.BsonArray;
@@ -126,6 +127,28 @@ public interface Database {
             final BsonDocument keys,
             final EAGER_CURSOR_ALLOCATION_POLICY cursorAllocationPolicy);
 
+    /**
+     *
+     * @param cs the client session
+     * @param collection
+     * @param page
+     * @param pagesize
+     * @param sortBy
+     * @param filter
+     * @param hint
+     * @param keys
+     * @return the cursor of the Collection Data, to stream it
+     */
+    MongoCursor<BsonDocument> getCollectionDataCursor(
+            final ClientSession cs,
+            final MongoCollection<BsonDocument> collection,
+            final int page,
+            final int pagesize,
+            final BsonDocument sortBy,
+            final BsonDocument filter,
+            final BsonDocument hint,
+            final BsonDocument keys);
+
     /**
      *
      * @param cs the client session
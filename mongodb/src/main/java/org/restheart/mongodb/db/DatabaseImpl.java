@@ -24,6 +24,7 @@ import com.mongodb.MongoClient;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import static com.mongodb.client.model.Filters.eq;
 import java.util.ArrayList;
@@ -570,6 +571,39 @@ public class DatabaseImpl implements Database {
         return collectionDAO.getCollectionSize(cs, coll, filters);
     }
 
+    /**
+     *
+     * @param cs the client session
+     * @param coll
+     * @param page
+     * @param pagesize
+     * @param sortBy
+     * @param filter
+     * @param hint
+     * @param keys
+     * @return
+     */
+    @Override
+    public MongoCursor<BsonDocument> getCollectionDataCursor(
+            final ClientSession cs,
+            final MongoCollection<BsonDocument> coll,
+            final int page,
+            final int pagesize,
+            final BsonDocument sortBy,
+            final BsonDocument filter,
+            final BsonDocument hint,
+            final BsonDocument keys) {
+        return collectionDAO.getCollectionDataCursor(
+                cs,
+                coll,
+                page,
+                pagesize,
+                sortBy,
+                filter,
+                hint,
+                keys);
+    }
+
     /**
      *
      * @param cs the client session
@@ -21,12 +21,14 @@
 package org.restheart.mongodb.db;
 
 import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.DeleteManyModel;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
 import com.mongodb.client.model.UpdateManyModel;
 import com.mongodb.client.model.WriteModel;
 import java.util.ArrayList;
@@ -43,6 +45,7 @@ import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.restheart.exchange.OperationResult;
 import static org.restheart.mongodb.db.DAOUtils.BAD_VALUE_KEY_ERROR;
+import static org.restheart.mongodb.db.DAOUtils.DUPLICATE_KEY_ERROR;
 import org.restheart.mongodb.utils.ResponseHelper;
 import org.restheart.utils.HttpStatus;
 
@@ -122,6 +125,19 @@ public class DocumentDAO implements DocumentRepository {
 
         content.put("_etag", new BsonObjectId(newEtag));
 
+        if (checkEtag) {
+            return conditionalUpsert(
+                    cs,
+                    mcoll,
+                    documentId,
+                    filter,
+                    shardKeys,
+                    content,
+                    newEtag,
+                    requestEtag,
+                    !patching);
+        }
+
         OperationResult updateResult = DAOUtils.updateDocument(
                 cs,
                 mcoll,
@@ -139,17 +155,6 @@ public class DocumentDAO implements DocumentRepository {
                         updateResult.getHttpCode() > 0
                         ? updateResult.getHttpCode()
                         : HttpStatus.SC_CREATED, newEtag, null, updateResult.getNewData());
-            } else if (checkEtag) {
-                // check the old etag (in case restore the old document version)
-                return optimisticCheckEtag(
-                        cs,
-                        mcoll,
-                        shardKeys,
-                        oldDocument,
-                        newEtag,
-                        requestEtag,
-                        HttpStatus.SC_OK,
-                        false);
             } else {
                 var query = eq("_id", documentId);
                 BsonDocument newDocument = cs == null
@@ -160,17 +165,6 @@ public class DocumentDAO implements DocumentRepository {
                         ? updateResult.getHttpCode()
                         : HttpStatus.SC_OK, newEtag, oldDocument, newDocument);
             }
-        } else if (oldDocument != null && checkEtag) { // upsertDocument
-            // check the old etag (in case restore the old document)
-            return optimisticCheckEtag(
-                    cs,
-                    mcoll,
-                    shardKeys,
-                    oldDocument,
-                    newEtag,
-                    requestEtag,
-                    HttpStatus.SC_OK,
-                    false);
         } else if (oldDocument != null) {  // insert
             BsonDocument newDocument = mcoll.find(
                     eq("_id", documentId)).first();
@@ -228,6 +222,19 @@ public class DocumentDAO implements DocumentRepository {
             documentId = Optional.empty(); // key _id is not present
         }
 
+        if (checkEtag && !(documentId instanceof Optional)) {
+            return conditionalUpsert(
+                    cs,
+                    mcoll,
+                    documentId,
+                    filter,
+                    shardKeys,
+                    content,
+                    newEtag,
+                    requestEtag,
+                    true);
+        }
+
         // new document since the id is missing ()
         OperationResult updateResult = DAOUtils.updateDocument(
                 cs,
@@ -249,17 +256,6 @@ public class DocumentDAO implements DocumentRepository {
                     newEtag,
                     null,
                     newDocument);
-        } else if (checkEtag) {  // upsertDocument
-            // check the old etag (in case restore the old document version)
-            return optimisticCheckEtag(
-                    cs,
-                    mcoll,
-                    shardKeys,
-                    oldDocument,
-                    newEtag,
-                    requestEtag,
-                    HttpStatus.SC_OK,
-                    false);
         } else {
             return new OperationResult(updateResult.getHttpCode() > 0
                     ? updateResult.getHttpCode()
@@ -334,26 +330,26 @@ public class DocumentDAO implements DocumentRepository {
     ) {
         var mcoll = collectionDAO.getCollection(dbName, collName);
 
+        // with checkEtag, the document is deleted only if its _etag matches
+        var query = checkEtag
+                ? and(getIdFilter(documentId, filter, shardedKeys),
+                        etagCondition(requestEtag))
+                : getIdFilter(documentId, filter, shardedKeys);
+
         BsonDocument oldDocument = cs == null
-                ? mcoll.findOneAndDelete(
-                        getIdFilter(documentId, filter, shardedKeys))
-                : mcoll.findOneAndDelete(cs,
-                        getIdFilter(documentId, filter, shardedKeys));
+                ? mcoll.findOneAndDelete(query)
+                : mcoll.findOneAndDelete(cs, query);
 
-        if (oldDocument == null) {
-            return new OperationResult(HttpStatus.SC_NOT_FOUND);
+        if (oldDocument != null) {
+            return new OperationResult(HttpStatus.SC_NO_CONTENT, oldDocument, null);
         } else if (checkEtag) {
-            // check the old etag (in case restore the old document version)
-            return optimisticCheckEtag(
-                    cs,
+            return etagCheckFailed(cs,
                     mcoll,
-                    null,
-                    oldDocument,
-                    null,
+                    getIdFilter(documentId, null, shardedKeys),
                     requestEtag,
-                    HttpStatus.SC_NO_CONTENT, true);
+                    HttpStatus.SC_NOT_FOUND);
         } else {
-            return new OperationResult(HttpStatus.SC_NO_CONTENT, oldDocument, null);
+            return new OperationResult(HttpStatus.SC_NOT_FOUND);
         }
     }
 
@@ -465,93 +461,179 @@ public class DocumentDAO implements DocumentRepository {
         }
     }
 
-    private OperationResult optimisticCheckEtag(
+    /**
+     * Writes the document in a single findOneAndReplace or findOneAndUpdate
+     * whose filter includes the expected _etag, i.e. requestEtag or, if
+     * null, no _etag at all. If the document exists but does not match, the
+     * upsert fails with a duplicate key error and nothing is written.
+     *
+     * @param cs the client session
+     * @param coll
+     * @param documentId
+     * @param filter
+     * @param shardKeys
+     * @param content
+     * @param newEtag
+     * @param requestEtag
+     * @param replace
+     * @return the OperationResult
+     */
+    private OperationResult conditionalUpsert(
             final ClientSession cs,
             final MongoCollection<BsonDocument> coll,
+            final Object documentId,
+            final BsonDocument filter,
             final BsonDocument shardKeys,
-            final BsonDocument oldDocument,
-            final Object newEtag,
+            final BsonDocument content,
+            final ObjectId newEtag,
             final String requestEtag,
-            final int httpStatusIfOk,
-            final boolean deleting
-    ) {
+            final boolean replace) {
+        Bson idQuery = eq("_id", documentId);
+
+        if (shardKeys != null) {
+            idQuery = and(idQuery, shardKeys);
+        }
+
+        Bson query = and(idQuery, etagCondition(requestEtag));
 
-        BsonValue oldEtag = oldDocument.get("_etag");
-
-        if (oldEtag != null && requestEtag == null) {
-            // oopps, we need to restore old document
-            // they call it optimistic lock strategy
-            if (deleting) {
-                DAOUtils.updateDocument(
-                        cs,
-                        coll,
-                        oldDocument.get("_id"),
-                        null,
-                        shardKeys,
-                        oldDocument,
-                        true);
+        if (filter != null && !filter.isEmpty()) {
+            query = and(query, filter);
+        }
+
+        BsonDocument oldDocument;
+        BsonDocument replacement = null;
+
+        try {
+            if (replace) {
+                replacement = DAOUtils.getReplaceDocument(content);
+
+                oldDocument = cs == null
+                        ? coll.findOneAndReplace(query, replacement,
+                                DAOUtils.FOR_BEFORE_UPSERT_OPS)
+                        : coll.findOneAndReplace(cs, query, replacement,
+                                DAOUtils.FOR_BEFORE_UPSERT_OPS);
             } else {
-                DAOUtils.restoreDocument(
-                        cs,
-                        coll,
-                        oldDocument.get("_id"),
-                        shardKeys,
-                        oldDocument,
-                        newEtag,
-                        "_etag");
+                oldDocument = cs == null
+                        ? coll.findOneAndUpdate(query,
+                                DAOUtils.getUpdateDocument(content),
+                                DAOUtils.FAU_BEFORE_UPSERT_OPS)
+                        : coll.findOneAndUpdate(cs, query,
+                                DAOUtils.getUpdateDocument(content),
+                                DAOUtils.FAU_BEFORE_UPSERT_OPS);
+            }
+        } catch (IllegalArgumentException iae) {
+            return new OperationResult(HttpStatus.SC_BAD_REQUEST);
+        } catch (MongoCommandException mce) {
+            switch (mce.getErrorCode()) {
+                case DUPLICATE_KEY_ERROR:
+                    if (mce.getErrorMessage().contains("_id_ dup key")) {
+                        // the document exists but does not match
+                        // the _etag condition or the filter
+                        return etagCheckFailed(cs,
+                                coll,
+                                idQuery,
+                                requestEtag,
+                                ResponseHelper.getHttpStatusFromErrorCode(
+                                        mce.getErrorCode()));
+                    } else {
+                        return new OperationResult(HttpStatus.SC_CONFLICT);
+                    }
+                case BAD_VALUE_KEY_ERROR:
+                    return new OperationResult(ResponseHelper
+                            .getHttpStatusFromErrorCode(mce.getErrorCode()));
+                default:
+                    throw mce;
             }
-
-            return new OperationResult(
-                    HttpStatus.SC_CONFLICT, oldEtag, oldDocument, null);
         }
 
-        BsonValue _requestEtag;
+        BsonDocument newDocument;
 
-        if (ObjectId.isValid(requestEtag)) {
-            _requestEtag = new BsonObjectId(new ObjectId(requestEtag));
+        if (replace) {
+            // the replacement is the new document
+            newDocument = new BsonDocument();
+
+            if (documentId instanceof BsonValue) {
+                newDocument.put("_id", (BsonValue) documentId);
+            }
+
+            newDocument.putAll(replacement);
         } else {
-            // restheart generates ObjectId etags, but here we support
-            // strings as well
-            _requestEtag = new BsonString(requestEtag);
+            newDocument = cs == null
+                    ? coll.find(idQuery).first()
+                    : coll.find(cs, idQuery).first();
         }
 
-        if (Objects.equals(_requestEtag, oldEtag)) {
-            var query = eq("_id", oldDocument.get("_id"));
+        return new OperationResult(oldDocument == null
+                ? HttpStatus.SC_CREATED
+                : HttpStatus.SC_OK,
+                newEtag,
+                oldDocument,
+                newDocument);
+    }
 
-            BsonDocument newDocument = cs == null
-                    ? coll.find(query).first()
-                    : coll.find(cs, query).first();
+    /**
+     * Tells apart why a conditional write did not match the document
+     *
+     * @param cs the client session
+     * @param coll
+     * @param idQuery the query that identifies the document
+     * @param requestEtag
+     * @param httpStatusIfEtagMatches the status to return if the _etag
+     * matches, i.e. the document does not match the filter
+     * @return the OperationResult with status 409 if the document has an
+     * _etag but the request has not, 412 if the _etag does not match,
+     * httpStatusIfEtagMatches otherwise
+     */
+    private OperationResult etagCheckFailed(
+            final ClientSession cs,
+            final MongoCollection<BsonDocument> coll,
+            final Bson idQuery,
+            final String requestEtag,
+            final int httpStatusIfEtagMatches) {
+        var current = cs == null
+                ? coll.find(idQuery).first()
+                : coll.find(cs, idQuery).first();
 
-            return new OperationResult(
-                    httpStatusIfOk, newEtag, oldDocument, newDocument);
-        } else {
-            // oopps, we need to restore old document
-            // they call it optimistic lock strategy
-            if (deleting) {
-                DAOUtils.updateDocument(
-                        cs,
-                        coll,
-                        oldDocument.get("_id"),
-                        shardKeys,
-                        null,
-                        oldDocument,
-                        true);
-            } else {
-                DAOUtils.restoreDocument(
-                        cs,
-                        coll,
-                        oldDocument.get("_id"),
-                        shardKeys,
-                        oldDocument,
-                        newEtag,
-                        "_etag");
-            }
+        if (current == null) {
+            return new OperationResult(HttpStatus.SC_NOT_FOUND);
+        }
+
+        var currentEtag = current.get("_etag");
 
+        if (requestEtag == null) {
+            if (currentEtag != null) {
+                return new OperationResult(
+                        HttpStatus.SC_CONFLICT, currentEtag, current, null);
+            }
+        } else if (!Objects.equals(etag(requestEtag), currentEtag)) {
             return new OperationResult(
                     HttpStatus.SC_PRECONDITION_FAILED,
-                    oldEtag,
-                    oldDocument,
+                    currentEtag,
+                    current,
                     null);
         }
+
+        return new OperationResult(httpStatusIfEtagMatches, current, null);
+    }
+
+    /**
+     * @param requestEtag
+     * @return the condition on the _etag field: equal to requestEtag or not
+     * existing if null
+     */
+    private static Bson etagCondition(final String requestEtag) {
+        return requestEtag == null
+                ? exists("_etag", false)
+                : eq("_etag", etag(requestEtag));
+    }
+
+    private static BsonValue etag(final String requestEtag) {
+        if (ObjectId.isValid(requestEtag)) {
+            return new BsonObjectId(new ObjectId(requestEtag));
+        } else {
+            // restheart generates ObjectId etags, but here we support
+            // strings as well
+            return new BsonString(requestEtag);
+        }
     }
 }
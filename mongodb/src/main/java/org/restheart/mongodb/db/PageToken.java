@@ -0,0 +1,321 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.stream.Collectors;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+/**
+ * The continuation token of keyset pagination.
+ *
+ * It records the sort keys and the values of those keys in the last document
+ * of a page. The next page is then retrieved with a range filter on the sort
+ * keys rather than skipping the documents of the previous pages, so that its
+ * cost does not depend on how deep the page is.
+ *
+ * The _id is always used as the last sort key to break ties. Sort keys whose
+ * values have different types across documents or are arrays are not
+ * supported, since the range filter cannot reproduce the mongodb sort order
+ * in those cases.
+ *
+ * The token is the BSON encoding of {s: sort, v: [values]} as url safe Base64
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class PageToken {
+    private static final String SORT_KEY = "s";
+    private static final String VALUES_KEY = "v";
+
+    private static final BsonDocumentCodec CODEC = new BsonDocumentCodec();
+
+    private final BsonDocument sort;
+    private final BsonArray values;
+
+    private PageToken(BsonDocument sort, BsonArray values) {
+        this.sort = sort;
+        this.values = values;
+    }
+
+    /**
+     * @param sort the sort document of the request
+     * @return the sort document with _id appended as tie breaker, or null if
+     * sort cannot be used for keyset pagination, e.g. it sorts by
+     * {$meta: "textScore"} or $natural
+     */
+    public static BsonDocument keysetSort(BsonDocument sort) {
+        if (sort == null) {
+            return null;
+        }
+
+        var ret = new BsonDocument();
+
+        for (var key : sort.keySet()) {
+            var direction = sort.get(key);
+
+            if (key.startsWith("$") || !direction.isNumber()) {
+                return null;
+            }
+
+            ret.put(key, new BsonInt32(direction.asNumber().intValue() < 0
+                    ? -1 : 1));
+        }
+
+        if (!ret.containsKey("_id")) {
+            ret.put("_id", new BsonInt32(1));
+        }
+
+        return ret;
+    }
+
+    /**
+     * @param sort the sort document of the request
+     * @param keys the projection of the request, can be null
+     * @param last the last document of the page
+     * @return the token to get the page following the document last, or null
+     * if keyset pagination is not possible for the request
+     */
+    public static PageToken after(BsonDocument sort,
+            BsonDocument keys,
+            BsonDocument last) {
+        var _sort = keysetSort(sort);
+
+        if (_sort == null || last == null || !projects(keys, _sort)) {
+            return null;
+        }
+
+        var values = new BsonArray();
+
+        for (var key : _sort.keySet()) {
+            var value = valueAt(last, key);
+
+            if (value.isArray()) {
+                return null;
+            }
+
+            values.add(value);
+        }
+
+        return new PageToken(_sort, values);
+    }
+
+    /**
+     * @param token the encoded token
+     * @return the decoded token
+     * @throws IllegalArgumentException if token is not a valid page token
+     */
+    public static PageToken decode(String token)
+            throws IllegalArgumentException {
+        try {
+            var doc = new RawBsonDocument(Base64.getUrlDecoder().decode(token))
+                    .decode(CODEC);
+
+            var sort = doc.getDocument(SORT_KEY);
+            var values = doc.getArray(VALUES_KEY);
+
+            if (sort.isEmpty()
+                    || sort.size() != values.size()
+                    || !sameKeys(sort, keysetSort(sort))) {
+                throw new IllegalArgumentException("invalid page token");
+            }
+
+            return new PageToken(sort, values);
+        } catch (IllegalArgumentException iae) {
+            throw iae;
+        } catch (RuntimeException re) {
+            throw new IllegalArgumentException("invalid page token", re);
+        }
+    }
+
+    /**
+     * @return the encoded token
+     */
+    public String encode() {
+        var doc = new BsonDocument(SORT_KEY, sort).append(VALUES_KEY, values);
+
+        ByteBuffer buffer = new RawBsonDocument(doc, CODEC)
+                .getByteBuffer()
+                .asNIO();
+
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * @return the sort document, including the _id tie breaker, the next
+     * page must be retrieved with
+     */
+    public BsonDocument getSort() {
+        return sort;
+    }
+
+    /**
+     * @param sort the sort document of the request
+     * @return true if the token was generated for the given sort
+     */
+    public boolean matches(BsonDocument sort) {
+        return sameKeys(this.sort, keysetSort(sort));
+    }
+
+    /**
+     * BsonDocument.equals() ignores the order of the keys, that matters for
+     * the sort
+     *
+     * @return true if the sort documents have the same keys and directions in
+     * the same order
+     */
+    private static boolean sameKeys(BsonDocument sort, BsonDocument other) {
+        return sort != null && other != null
+                && new ArrayList<>(sort.entrySet())
+                        .equals(new ArrayList<>(other.entrySet()));
+    }
+
+    /**
+     * Returns the range filter that selects the documents following the token
+     * position, i.e. for sort {a:1, b:-1, _id:1}
+     *
+     * {$or: [{a:{$gt:va}}, {a:va, b:{$lt:vb}}, {a:va, b:null},
+     * {a:va, b:vb, _id:{$gt:vid}}]}
+     *
+     * Null and missing values sort before any other value: they follow the
+     * token position on descending keys and precede it on ascending ones.
+     *
+     * @param filters the filters of the request, can be null or empty
+     * @return the range filter in $and with filters
+     */
+    public BsonDocument filter(BsonDocument filters) {
+        var keys = sort.keySet().toArray(new String[sort.size()]);
+        var branches = new BsonArray();
+
+        for (int i = 0; i < keys.length; i++) {
+            var value = values.get(i);
+            var asc = sort.get(keys[i]).asNumber().intValue() > 0;
+
+            // null sorts before any other value: nothing is less than it
+            // and what is greater than it is any non null value
+            if (value.isNull()) {
+                if (asc) {
+                    branches.add(branch(keys, i,
+                            new BsonDocument("$ne", BsonNull.VALUE)));
+                }
+            } else if (asc) {
+                branches.add(branch(keys, i, new BsonDocument("$gt", value)));
+            } else {
+                branches.add(branch(keys, i, new BsonDocument("$lt", value)));
+                // $lt does not match null and missing values, that follow
+                branches.add(branch(keys, i, new BsonDocument("$eq", BsonNull.VALUE)));
+            }
+        }
+
+        var range = branches.size() == 1
+                ? branches.get(0).asDocument()
+                : new BsonDocument("$or", branches);
+
+        if (filters == null || filters.isEmpty()) {
+            return range;
+        } else {
+            var and = new BsonArray();
+            and.add(filters);
+            and.add(range);
+
+            return new BsonDocument("$and", and);
+        }
+    }
+
+    /**
+     * @return the branch of the range filter with the keys before the i-th
+     * equal to the token values and the i-th in range
+     */
+    private BsonDocument branch(String[] keys, int i, BsonDocument range) {
+        var branch = new BsonDocument();
+
+        for (int j = 0; j < i; j++) {
+            branch.put(keys[j], new BsonDocument("$eq", values.get(j)));
+        }
+
+        branch.put(keys[i], range);
+
+        return branch;
+    }
+
+    /**
+     * @return true if the projection keys returns all the sort keys
+     */
+    private static boolean projects(BsonDocument keys, BsonDocument sort) {
+        if (keys == null || keys.isEmpty()) {
+            return true;
+        }
+
+        // in exclusion projections all values but _id are false or 0
+        var others = keys.entrySet().stream()
+                .filter(e -> !"_id".equals(e.getKey()))
+                .map(e -> e.getValue())
+                .collect(Collectors.toList());
+
+        var exclusion = others.isEmpty()
+                ? isFalse(keys.get("_id"))
+                : others.stream().allMatch(v -> isFalse(v));
+
+        return sort.keySet().stream().allMatch(key -> {
+            var projected = keys.get(key);
+
+            if ("_id".equals(key)) {
+                return projected == null || !isFalse(projected);
+            } else if (exclusion) {
+                return projected == null;
+            } else {
+                return projected != null && !isFalse(projected);
+            }
+        });
+    }
+
+    private static boolean isFalse(BsonValue value) {
+        return (value.isBoolean() && !value.asBoolean().getValue())
+                || (value.isNumber() && value.asNumber().intValue() == 0);
+    }
+
+    /**
+     * @return the value at the dot notation path, BsonNull if missing
+     */
+    private static BsonValue valueAt(BsonDocument doc, String path) {
+        BsonValue current = doc;
+
+        for (var key : path.split("\\.")) {
+            if (current == null || !current.isDocument()) {
+                return BsonNull.VALUE;
+            }
+
+            current = current.asDocument().get(key);
+        }
+
+        return current == null ? BsonNull.VALUE : current;
+    }
+}
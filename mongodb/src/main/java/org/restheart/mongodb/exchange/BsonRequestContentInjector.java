@@ -245,6 +245,13 @@ public class BsonRequestContentInjector {
             return;
         }
 
+        if (request.isNdjsonPost()) {
+            // the documents are read from the request channel, one per line,
+            // by BulkPostCollectionHandler
+            request.setContent(new BsonDocument());
+            return;
+        }
+
         BsonValue content;
 
         final HeaderValues contentType = exchange.getRequestHeaders().get(Headers.CONTENT_TYPE);
@@ -39,11 +39,14 @@ import static org.restheart.exchange.ExchangeKeys.HINT_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.KEYS_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.PAGESIZE_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.PAGE_QPARAM_KEY;
+import static org.restheart.exchange.ExchangeKeys.PAGE_TOKEN_QPARAM_KEY;
 import org.restheart.exchange.ExchangeKeys.REPRESENTATION_FORMAT;
 import static org.restheart.exchange.ExchangeKeys.REPRESENTATION_FORMAT_KEY;
 import static org.restheart.exchange.ExchangeKeys.SHARDKEY_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.SORT_BY_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.SORT_QPARAM_KEY;
+import org.restheart.exchange.ExchangeKeys.STREAM_FORMAT;
+import static org.restheart.exchange.ExchangeKeys.STREAM_QPARAM_KEY;
 import org.restheart.exchange.ExchangeKeys.TYPE;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
@@ -208,6 +211,46 @@ public class BsonRequestPropsInjector {
             request.setPage(page);
         }
 
+        Deque<String> __pageToken = exchange.getQueryParameters()
+                .get(PAGE_TOKEN_QPARAM_KEY);
+
+        if (__pageToken != null && !(__pageToken.isEmpty())) {
+            var _pageToken = __pageToken.getFirst();
+
+            if (_pageToken == null || _pageToken.isEmpty()) {
+                response.setInError(
+                        HttpStatus.SC_BAD_REQUEST,
+                        "illegal page_token paramenter (empty)");
+                return;
+            }
+
+            request.setPageToken(_pageToken.trim());
+        }
+
+        // get and check stream parameter; streaming must be explicitly
+        // requested since it changes the representation of the response
+        Deque<String> __stream = exchange.getQueryParameters()
+                .get(STREAM_QPARAM_KEY);
+
+        if (__stream != null && !__stream.isEmpty()) {
+            var _stream = __stream.getFirst();
+
+            if (_stream == null || _stream.isEmpty()) {
+                // ?stream defaults to a json array
+                request.setStreamFormat(STREAM_FORMAT.JSON);
+            } else {
+                try {
+                    request.setStreamFormat(STREAM_FORMAT
+                            .valueOf(_stream.trim().toUpperCase()));
+                } catch (IllegalArgumentException iae) {
+                    response.setInError(
+                            HttpStatus.SC_BAD_REQUEST,
+                            "illegal stream paramenter (must be JSON or NDJSON)");
+                    return;
+                }
+            }
+        }
+
         Deque<String> __count = exchange.getQueryParameters().get("count");
 
         if (__count != null) {
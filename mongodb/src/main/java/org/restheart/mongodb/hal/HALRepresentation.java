@@ -86,6 +86,7 @@ public class HALRepresentation implements MongoInterceptor {
     @Override
     public boolean resolve(MongoRequest request, MongoResponse response) {
         return !request.isInError()
+                && !response.isContentStreamed()
                 && !request.isDbMeta()
                 && !request.isDbSize()
                 && !request.isCollectionMeta()
@@ -55,10 +55,12 @@ public class NormalOrBulkDispatcherHandler extends PipelinedHandler {
      */
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-        BsonValue content = MongoRequest.of(exchange).getContent();
+        var request = MongoRequest.of(exchange);
+        BsonValue content = request.getContent();
 
-        if (content != null 
-                && content.isArray()) {
+        if ((content != null
+                && content.isArray())
+                || request.isNdjsonPost()) {
             nextBulk.handleRequest(exchange);
         } else {
             nextNormal.handleRequest(exchange);
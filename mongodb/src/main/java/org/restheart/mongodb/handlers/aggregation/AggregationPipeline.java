@@ -28,7 +28,6 @@ import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.exchange.InvalidMetadataException;
 import org.restheart.exchange.QueryVariableNotBoundException;
-import org.restheart.utils.JsonUtils;
 
 /**
  * represents a map reduce.
@@ -48,6 +47,7 @@ public class AggregationPipeline extends AbstractAggregationOperation {
     public static final String ALLOW_DISK_USER_ELEMENT_NAME = "allowDiskUse";
     
     private final BsonArray stages;
+    private final AggregationTemplate stagesTemplate;
     private final BsonBoolean allowDiskUse;
 
     /**
@@ -98,7 +98,8 @@ public class AggregationPipeline extends AbstractAggregationOperation {
         }
         
         this.stages = _stages.asArray();
-        
+        this.stagesTemplate = AggregationTemplate.compile(this.stages);
+
         BsonValue _allowDiskUse = properties.get(ALLOW_DISK_USER_ELEMENT_NAME);
 
         if (_allowDiskUse != null && !_allowDiskUse.isBoolean()) {
@@ -128,9 +129,7 @@ public class AggregationPipeline extends AbstractAggregationOperation {
      */
     public List<BsonDocument> getResolvedStagesAsList(BsonDocument avars)
             throws InvalidMetadataException, QueryVariableNotBoundException {
-        BsonArray replacedStages = bindAggregationVariables(
-                JsonUtils.unescapeKeys(stages), avars)
-                .asArray();
+        BsonArray replacedStages = stagesTemplate.bind(avars).asArray();
 
         List<BsonDocument> ret = new ArrayList<>();
 
@@ -0,0 +1,208 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.aggregation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.restheart.exchange.InvalidMetadataException;
+import org.restheart.exchange.QueryVariableNotBoundException;
+import org.restheart.utils.JsonUtils;
+
+/**
+ * A compiled aggregation template, i.e. the escaped stages or query of an
+ * aggregation operation, unescaped once and turned into a tree whose
+ * variable slots ({"$var": "name"}) are bound on each request.
+ *
+ * Subtrees that don't contain variables are not copied when binding: the
+ * bound value shares them with the template, so they must not be modified.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AggregationTemplate {
+    private final Node root;
+    private final List<String> variables;
+
+    private AggregationTemplate(Node root, List<String> variables) {
+        this.root = root;
+        this.variables = variables;
+    }
+
+    /**
+     * @param escaped the stages or the query with underscore escaped
+     * operators as stored in the collection properties
+     * @return the compiled template
+     */
+    public static AggregationTemplate compile(BsonValue escaped) {
+        var variables = new ArrayList<String>();
+
+        var root = compile(JsonUtils.unescapeKeys(escaped), variables);
+
+        return new AggregationTemplate(root, variables);
+    }
+
+    /**
+     * @param aVars the aggregation variables
+     * @return the unescaped value with the variables replaced by the values
+     * defined in aVars
+     * @throws InvalidMetadataException if a variable name is not a string
+     * @throws QueryVariableNotBoundException if a variable is not bound
+     */
+    public BsonValue bind(BsonDocument aVars)
+            throws InvalidMetadataException, QueryVariableNotBoundException {
+        return root == null ? null : root.bind(aVars);
+    }
+
+    /**
+     * @return the names of the variables in the template
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    private static Node compile(BsonValue obj, List<String> variables) {
+        if (obj == null) {
+            return null;
+        }
+
+        if (obj.isDocument()) {
+            var _obj = obj.asDocument();
+
+            if (_obj.size() == 1 && _obj.get("$var") != null) {
+                var varName = _obj.get("$var");
+
+                if (!varName.isString()) {
+                    // the error is raised on binding, as for any other
+                    // problem with the aggregation definition
+                    return aVars -> {
+                        throw new InvalidMetadataException("wrong variable name "
+                                + varName.toString());
+                    };
+                }
+
+                var name = varName.asString().getValue();
+                variables.add(name);
+
+                return aVars -> {
+                    var value = aVars == null ? null : aVars.get(name);
+
+                    if (value == null) {
+                        throw new QueryVariableNotBoundException("variable "
+                                + name + " not bound");
+                    }
+
+                    return value;
+                };
+            }
+
+            var children = new LinkedHashMap<String, Node>();
+            var hasVariables = false;
+
+            for (var entry : _obj.entrySet()) {
+                var child = compile(entry.getValue(), variables);
+                children.put(entry.getKey(), child);
+                hasVariables = hasVariables || !(child instanceof Constant);
+            }
+
+            return hasVariables
+                    ? new DocumentNode(children)
+                    : new Constant(_obj);
+        } else if (obj.isArray()) {
+            var elements = new ArrayList<Node>();
+            var hasVariables = false;
+
+            for (var el : obj.asArray()) {
+                var child = compile(el, variables);
+                elements.add(child);
+                hasVariables = hasVariables || !(child instanceof Constant);
+            }
+
+            return hasVariables
+                    ? new ArrayNode(elements)
+                    : new Constant(obj);
+        } else {
+            return new Constant(obj);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Node {
+        BsonValue bind(BsonDocument aVars)
+                throws InvalidMetadataException, QueryVariableNotBoundException;
+    }
+
+    private static class Constant implements Node {
+        private final BsonValue value;
+
+        Constant(BsonValue value) {
+            this.value = value;
+        }
+
+        @Override
+        public BsonValue bind(BsonDocument aVars) {
+            return value;
+        }
+    }
+
+    private static class DocumentNode implements Node {
+        private final Map<String, Node> children;
+
+        DocumentNode(Map<String, Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        public BsonValue bind(BsonDocument aVars)
+                throws InvalidMetadataException, QueryVariableNotBoundException {
+            var ret = new BsonDocument();
+
+            for (var child : children.entrySet()) {
+                ret.put(child.getKey(), child.getValue().bind(aVars));
+            }
+
+            return ret;
+        }
+    }
+
+    private static class ArrayNode implements Node {
+        private final List<Node> elements;
+
+        ArrayNode(List<Node> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public BsonValue bind(BsonDocument aVars)
+                throws InvalidMetadataException, QueryVariableNotBoundException {
+            var ret = new BsonArray(new ArrayList<>(elements.size()));
+
+            for (var el : elements) {
+                ret.add(el.bind(aVars));
+            }
+
+            return ret;
+        }
+    }
+}
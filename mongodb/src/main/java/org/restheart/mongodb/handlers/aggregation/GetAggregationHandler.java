@@ -23,14 +23,16 @@ package org.restheart.mongodb.handlers.aggregation;
 import com.mongodb.MongoCommandException;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MapReduceIterable;
+import com.mongodb.client.MongoCursor;
 import io.undertow.server.HttpServerExchange;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.BsonInt32;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
 import org.restheart.exchange.IllegalQueryParamenterException;
 import org.restheart.exchange.InvalidMetadataException;
 import org.restheart.exchange.MongoRequest;
@@ -39,6 +41,7 @@ import org.restheart.exchange.QueryVariableNotBoundException;
 import org.restheart.handlers.PipelinedHandler;
 import org.restheart.mongodb.MongoServiceConfiguration;
 import org.restheart.mongodb.db.DatabaseImpl;
+import org.restheart.mongodb.utils.ContentInterceptors;
 import org.restheart.utils.HttpStatus;
 
 /**
@@ -48,6 +51,21 @@ import org.restheart.utils.HttpStatus;
 public class GetAggregationHandler extends PipelinedHandler {
     private final DatabaseImpl dbsDAO = new DatabaseImpl();
 
+    private static final int BATCH_SIZE = MongoServiceConfiguration
+            .get()
+            .getCursorBatchSize();
+
+    /**
+     * caches the aggregation operations, with their compiled templates, by
+     * db, collection and _etag of the collection properties. Since updating
+     * the collection properties changes the _etag, stale entries are never
+     * hit and just expire.
+     */
+    private static final Cache<String, List<AbstractAggregationOperation>> OPERATIONS_CACHE
+            = CacheFactory.createLocalCache(1_000,
+                    Cache.EXPIRE_POLICY.AFTER_READ,
+                    10 * 60 * 1_000);
+
     /**
      * Default ctor
      */
@@ -79,11 +97,16 @@ public class GetAggregationHandler extends PipelinedHandler {
             return;
         }
 
+        if (request.getStreamFormat() != null
+                && !ContentInterceptors.checkStreamable(request, response)) {
+            next(exchange);
+            return;
+        }
+
         String queryUri = request.getAggregationOperation();
 
         List<AbstractAggregationOperation> aggregations
-                = AbstractAggregationOperation
-                        .getFromJson(request.getCollectionProps());
+                = getAggregations(request);
 
         Optional<AbstractAggregationOperation> _query
                 = aggregations.stream().filter(q
@@ -96,7 +119,8 @@ public class GetAggregationHandler extends PipelinedHandler {
             return;
         }
 
-        ArrayList<BsonDocument> _data = new ArrayList<>();
+        var data = new BsonArray();
+        MongoCursor<BsonDocument> stream = null;
 
         AbstractAggregationOperation query = _query.get();
 
@@ -132,7 +156,12 @@ public class GetAggregationHandler extends PipelinedHandler {
                                         mapReduce.getResolvedQuery(avars))
                                 .maxTime(MongoServiceConfiguration.get()
                                         .getAggregationTimeLimit(),
-                                        TimeUnit.MILLISECONDS);
+                                        TimeUnit.MILLISECONDS)
+                                .batchSize(BATCH_SIZE);
+
+                        if (request.getStreamFormat() != null) {
+                            stream = mrOutput.iterator();
+                        }
                     } catch (MongoCommandException | InvalidMetadataException ex) {
                         response.setInError(
                                 HttpStatus.SC_INTERNAL_SERVER_ERROR,
@@ -148,8 +177,10 @@ public class GetAggregationHandler extends PipelinedHandler {
                         return;
                     }
                     // ***** get data
-                    for (BsonDocument obj : mrOutput) {
-                        _data.add(obj);
+                    if (stream == null) {
+                        for (BsonDocument obj : mrOutput) {
+                            data.add(obj);
+                        }
                     }
                     break;
                 case AGGREGATION_PIPELINE:
@@ -165,7 +196,12 @@ public class GetAggregationHandler extends PipelinedHandler {
                                         .getAggregationTimeLimit(),
                                         TimeUnit.MILLISECONDS)
                                 .allowDiskUse(pipeline
-                                        .getAllowDiskUse().getValue());
+                                        .getAllowDiskUse().getValue())
+                                .batchSize(BATCH_SIZE);
+
+                        if (request.getStreamFormat() != null) {
+                            stream = agrOutput.iterator();
+                        }
                     } catch (MongoCommandException
                             | InvalidMetadataException ex) {
                         response.setInError(
@@ -182,8 +218,10 @@ public class GetAggregationHandler extends PipelinedHandler {
                         return;
                     }
                     // ***** get data
-                    for (BsonDocument obj : agrOutput) {
-                        _data.add(obj);
+                    if (stream == null) {
+                        for (BsonDocument obj : agrOutput) {
+                            data.add(obj);
+                        }
                     }
                     break;
                 default:
@@ -196,18 +234,23 @@ public class GetAggregationHandler extends PipelinedHandler {
 
         if (exchange.isComplete()) {
             // if an error occured getting data, the exchange is already closed
+            if (stream != null) {
+                stream.close();
+            }
+
             return;
         }
 
         try {
-            var data = new BsonArray();
-            
-            _data.stream().forEachOrdered(data::add);
-
-            response.setContent(data);
-            response.setCount(data.size());
-            
-            response.setContentTypeAsJson();
+            if (stream != null) {
+                response.setContentStream(stream, request.getStreamFormat());
+            } else {
+                response.setContent(data);
+                response.setCount(data.size());
+
+                response.setContentTypeAsJson();
+            }
+
             response.setStatusCode(HttpStatus.SC_OK);
 
             // call the ResponseTransformerMetadataHandler if piped in
@@ -218,4 +261,37 @@ public class GetAggregationHandler extends PipelinedHandler {
             next(exchange);
         }
     }
+
+    /**
+     * @param request
+     * @return the aggregation operations defined in the collection properties,
+     * parsed and compiled only once per _etag of the collection properties
+     * @throws InvalidMetadataException
+     */
+    private static List<AbstractAggregationOperation> getAggregations(
+            MongoRequest request) throws InvalidMetadataException {
+        var collProps = request.getCollectionProps();
+
+        var etag = collProps == null ? null : collProps.get("_etag");
+
+        if (etag == null) {
+            return AbstractAggregationOperation.getFromJson(collProps);
+        }
+
+        var key = request.getDBName()
+                + "/" + request.getCollectionName()
+                + "/" + etag.toString();
+
+        var cached = OPERATIONS_CACHE.get(key);
+
+        if (cached != null && cached.isPresent()) {
+            return cached.get();
+        }
+
+        var ret = AbstractAggregationOperation.getFromJson(collProps);
+
+        OPERATIONS_CACHE.put(key, ret);
+
+        return ret;
+    }
 }
@@ -25,7 +25,6 @@ import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.exchange.InvalidMetadataException;
 import org.restheart.exchange.QueryVariableNotBoundException;
-import org.restheart.utils.JsonUtils;
 
 /**
  * represents a map reduce.
@@ -51,6 +50,7 @@ public class MapReduce extends AbstractAggregationOperation {
     private final String map;
     private final String reduce;
     private final BsonValue query;
+    private final AggregationTemplate queryTemplate;
 
     /**
      * @param properties the json properties object. It must include the
@@ -112,6 +112,7 @@ public class MapReduce extends AbstractAggregationOperation {
         this.map = _map.asString().getValue();
         this.reduce = _reduce.asString().getValue();
         this.query = _query;
+        this.queryTemplate = AggregationTemplate.compile(_query);
     }
 
     /**
@@ -143,9 +144,7 @@ public class MapReduce extends AbstractAggregationOperation {
      */
     public BsonDocument getResolvedQuery(BsonDocument aVars)
             throws InvalidMetadataException, QueryVariableNotBoundException {
-        return bindAggregationVariables(
-                JsonUtils.unescapeKeys(query), aVars)
-                .asDocument();
+        return queryTemplate.bind(aVars).asDocument();
     }
 
     /**
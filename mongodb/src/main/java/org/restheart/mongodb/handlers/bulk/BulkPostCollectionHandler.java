@@ -20,24 +20,53 @@
  */
 package org.restheart.mongodb.handlers.bulk;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
 import io.undertow.server.HttpServerExchange;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
 import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
+import org.everit.json.schema.Schema;
+import org.json.JSONObject;
+import org.restheart.exchange.Exchange;
+import static org.restheart.exchange.Exchange.MAX_CONTENT_SIZE;
 import org.restheart.exchange.ExchangeKeys.DOC_ID_TYPE;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.handlers.PipelinedHandler;
+import org.restheart.plugins.InterceptPoint;
+import org.restheart.mongodb.MongoServiceConfiguration;
 import org.restheart.mongodb.db.BulkOperationResult;
 import org.restheart.mongodb.db.DocumentDAO;
+import org.restheart.mongodb.interceptors.JsonSchemaBeforeWriteChecker;
+import org.restheart.mongodb.utils.ContentInterceptors;
 import org.restheart.mongodb.utils.ResponseHelper;
 import org.restheart.utils.HttpStatus;
+import org.restheart.utils.JsonUtils;
 
 /**
+ * Handles bulk POST requests to collections, whose content is either an array
+ * of documents or, with Content-Type application/x-ndjson, one document per
+ * line read from the request channel as it arrives
  *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class BulkPostCollectionHandler extends PipelinedHandler {
 
+    private static final String JSON_SCHEMA_INTERCEPTOR = "jsonSchemaBeforeWrite";
+
     private final DocumentDAO documentDAO;
 
     /**
@@ -91,6 +120,11 @@ public class BulkPostCollectionHandler extends PipelinedHandler {
             return;
         }
 
+        if (request.isNdjsonPost()) {
+            handleNdjson(exchange);
+            return;
+        }
+
         BsonValue content = request.getContent();
 
         // expects an an array
@@ -130,6 +164,277 @@ public class BulkPostCollectionHandler extends PipelinedHandler {
         next(exchange);
     }
 
+    /**
+     * Reads the documents from the request channel, one per line, and writes
+     * them with unordered bulk writes of ndjson-batch-size documents. Lines
+     * that cannot be parsed, have a not valid _id or violate the json schema
+     * are reported in the response and skipped; the other ones are written.
+     * Each line is limited to MAX_CONTENT_SIZE characters, as the content of
+     * the other requests.
+     *
+     * @param exchange
+     * @throws Exception
+     */
+    private void handleNdjson(HttpServerExchange exchange) throws Exception {
+        var request = MongoRequest.of(exchange);
+        var response = MongoResponse.of(exchange);
+
+        if (isContentTransformed(request.getContent())) {
+            // a request interceptor transformed the placeholder content:
+            // writing the documents as read from the channel would bypass it
+            response.setInError(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE,
+                    Exchange.NDJSON_MEDIA_TYPE
+                    + " is not supported on this collection: "
+                    + "a request interceptor transforms the request content");
+            next(exchange);
+            return;
+        }
+
+        // the documents are not available to the request interceptors,
+        // apart from the json schema that is checked line by line
+        var interceptor = ContentInterceptors.requiringContent(request,
+                response,
+                Set.of(JSON_SCHEMA_INTERCEPTOR),
+                InterceptPoint.REQUEST_BEFORE_AUTH,
+                InterceptPoint.REQUEST_AFTER_AUTH);
+
+        if (interceptor != null) {
+            response.setInError(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE,
+                    Exchange.NDJSON_MEDIA_TYPE
+                    + " is not supported on this collection: "
+                    + "the request interceptor " + interceptor
+                    + " requires the request content");
+            next(exchange);
+            return;
+        }
+
+        Schema schema = null;
+
+        if (request.getCollectionProps() != null
+                && request.getCollectionProps().containsKey("jsonSchema")
+                && request.getCollectionProps().get("jsonSchema").isDocument()) {
+            schema = JsonSchemaBeforeWriteChecker.getSchema(request, response);
+
+            if (schema == null) {
+                // the response has been set in error
+                next(exchange);
+                return;
+            }
+        }
+
+        if (!exchange.isBlocking()) {
+            exchange.startBlocking();
+        }
+
+        var report = new NdjsonReport();
+        var batch = new BsonArray();
+        var batchLines = new ArrayList<Integer>();
+        var batchSize = MongoServiceConfiguration.get().getNdjsonBatchSize();
+
+        try (var reader = new BufferedReader(new InputStreamReader(
+                exchange.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+
+            while (true) {
+                try {
+                    line = readLine(reader, MAX_CONTENT_SIZE);
+                } catch (LineTooLongException ltle) {
+                    response.setInError(
+                            HttpStatus.SC_REQUEST_TOO_LONG,
+                            "line " + (lineNumber + 1)
+                            + " exceeds the limit of " + MAX_CONTENT_SIZE
+                            + " characters: it and the following lines have "
+                            + "not been processed");
+                    next(exchange);
+                    return;
+                }
+
+                if (line == null) {
+                    break;
+                }
+
+                lineNumber++;
+
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                BsonValue document;
+
+                try {
+                    document = JsonUtils.parse(line);
+                } catch (JsonParseException jpe) {
+                    report.addError(lineNumber, HttpStatus.SC_NOT_ACCEPTABLE,
+                            "Invalid JSON. " + jpe.getMessage());
+                    continue;
+                }
+
+                var error = checkNdjsonDocument(request, document, schema);
+
+                if (error != null) {
+                    report.addError(lineNumber, error.getKey(), error.getValue());
+                    continue;
+                }
+
+                batch.add(document);
+                batchLines.add(lineNumber);
+
+                if (batch.size() >= batchSize) {
+                    writeBatch(request, batch, batchLines, report);
+                    batch = new BsonArray();
+                    batchLines.clear();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            writeBatch(request, batch, batchLines, report);
+        }
+
+        response.setStatusCode(report.hasErrors()
+                ? HttpStatus.SC_MULTI_STATUS
+                : HttpStatus.SC_OK);
+
+        response.setContent(report.toBson());
+
+        next(exchange);
+    }
+
+    /**
+     * Reads a line terminated by \n or \r\n without buffering more than
+     * maxLength characters
+     *
+     * @param reader
+     * @param maxLength the maximum number of characters of the line
+     * @return the line without the line terminator, null at the end of the
+     * stream
+     * @throws LineTooLongException if the line exceeds maxLength characters
+     * @throws IOException
+     */
+    static String readLine(Reader reader, int maxLength) throws IOException {
+        var line = new StringBuilder();
+        int c;
+
+        while ((c = reader.read()) != -1) {
+            if (c == '\n') {
+                break;
+            }
+
+            // maxLength + 1 to allow the \r of the terminator
+            if (line.length() > maxLength) {
+                throw new LineTooLongException();
+            }
+
+            line.append((char) c);
+        }
+
+        if (c == -1 && line.length() == 0) {
+            return null;
+        }
+
+        var end = line.length();
+
+        if (end > 0 && line.charAt(end - 1) == '\r') {
+            line.setLength(end - 1);
+        } else if (end > maxLength) {
+            throw new LineTooLongException();
+        }
+
+        return line.toString();
+    }
+
+    static class LineTooLongException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * The content of ndjson requests is not injected: BsonRequestContentInjector
+     * sets an empty document as placeholder. If it is changed, a request
+     * interceptor that reads or modifies the request content (e.g.
+     * addRequestProperties) has been executed and its effect would be lost.
+     *
+     * @param content the request content
+     * @return true if the placeholder content has been transformed
+     */
+    static boolean isContentTransformed(BsonValue content) {
+        return content == null
+                || !content.isDocument()
+                || !content.asDocument().isEmpty();
+    }
+
+    /**
+     * @return null if the document can be written, otherwise the http status
+     * and the error message
+     */
+    private Map.Entry<Integer, String> checkNdjsonDocument(MongoRequest request,
+            BsonValue document,
+            Schema schema) {
+        if (document == null || !document.isDocument()) {
+            return Map.entry(HttpStatus.SC_NOT_ACCEPTABLE,
+                    "the line must be a json object");
+        }
+
+        var id = document.asDocument().get("_id");
+
+        if (id != null) {
+            if (id.isString()
+                    && MongoRequest.isReservedDocumentId(request.getType(), id)) {
+                return Map.entry(HttpStatus.SC_FORBIDDEN,
+                        "id is reserved: " + id.asString().getValue());
+            }
+
+            if (id.isArray()) {
+                return Map.entry(HttpStatus.SC_NOT_ACCEPTABLE,
+                        "the type of _id in request data is not supported: "
+                        + id.getBsonType().name());
+            }
+
+            if (!(request.getDocIdType() == DOC_ID_TYPE.OID
+                    || request.getDocIdType() == DOC_ID_TYPE.STRING_OID)) {
+                return Map.entry(HttpStatus.SC_NOT_ACCEPTABLE,
+                        "_id in content body is mandatory for documents with id type "
+                        + request.getDocIdType().name());
+            }
+        }
+
+        if (schema != null) {
+            var violations = JsonSchemaBeforeWriteChecker.violations(schema,
+                    new JSONObject(document.asDocument().toJson()));
+
+            if (violations != null) {
+                return Map.entry(HttpStatus.SC_BAD_REQUEST,
+                        "document violates schema: " + violations);
+            }
+        }
+
+        return null;
+    }
+
+    private void writeBatch(MongoRequest request,
+            BsonArray batch,
+            List<Integer> batchLines,
+            NdjsonReport report) {
+        try {
+            var result = this.documentDAO.bulkUpsertDocumentsPost(
+                    request.getClientSession(),
+                    request.getDBName(),
+                    request.getCollectionName(),
+                    batch,
+                    request.getFiltersDocument(),
+                    request.getShardKey());
+
+            report.add(result.getBulkResult());
+        } catch (MongoBulkWriteException mbwe) {
+            report.add(mbwe.getWriteResult());
+
+            mbwe.getWriteErrors().forEach(error -> report.addError(
+                    batchLines.get(error.getIndex()),
+                    ResponseHelper.getHttpStatusFromErrorCode(error.getCode()),
+                    ResponseHelper.getMessageFromErrorCode(error.getCode())));
+        }
+    }
+
     private boolean checkIds(HttpServerExchange exchange, BsonArray documents) throws Exception {
         boolean ret = true;
 
@@ -175,3 +480,60 @@ public class BulkPostCollectionHandler extends PipelinedHandler {
         return true;
     }
 }
+
+/**
+ * the aggregated result of a bulk POST with ndjson content
+ */
+class NdjsonReport {
+    /**
+     * the max number of errors listed in the report
+     */
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private int inserted = 0;
+    private int matched = 0;
+    private int modified = 0;
+    private int failed = 0;
+    private final BsonArray errors = new BsonArray();
+
+    void add(BulkWriteResult result) {
+        if (result != null && result.wasAcknowledged()) {
+            inserted += result.getUpserts().size();
+            matched += result.getMatchedCount();
+            modified += result.getModifiedCount();
+        }
+    }
+
+    void addError(int line, int httpStatus, String message) {
+        failed++;
+
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            var error = new BsonDocument();
+
+            error.put("line", new BsonInt32(line));
+            error.put("httpStatus", new BsonInt32(httpStatus));
+            error.put("message", new BsonString(message == null ? "" : message));
+
+            errors.add(error);
+        }
+    }
+
+    boolean hasErrors() {
+        return failed > 0;
+    }
+
+    BsonDocument toBson() {
+        var rep = new BsonDocument();
+
+        rep.put("inserted", new BsonInt32(inserted));
+        rep.put("modified", new BsonInt32(modified));
+        rep.put("matched", new BsonInt32(matched));
+
+        if (failed > 0) {
+            rep.put("failed", new BsonInt32(failed));
+            rep.put("errors", errors);
+        }
+
+        return rep;
+    }
+}
@@ -0,0 +1,134 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.restheart.exchange.InvalidMetadataException;
+
+/**
+ * The batching options of a change stream, defined in the batch property of
+ * the stream metadata.
+ *
+ * Example:      <code>
+ *
+ * streams: [
+ * {
+ *   "uri":"changes",
+ *   "stages": [],
+ *   "batch": { "maxCount": 100, "maxLatency": 50, "coalesce": true }
+ * }]
+ * </code>
+ *
+ * The notifications are sent as a JSON array, when maxCount notifications
+ * are collected or maxLatency milliseconds after the first one. If coalesce
+ * is true, only the last notification of each document is kept.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ChangeStreamBatching {
+
+    public static final String MAX_COUNT_ELEMENT_NAME = "maxCount";
+    public static final String MAX_LATENCY_ELEMENT_NAME = "maxLatency";
+    public static final String COALESCE_ELEMENT_NAME = "coalesce";
+
+    public static final int DEFAULT_MAX_COUNT = 100;
+    public static final long DEFAULT_MAX_LATENCY = 100; // milliseconds
+
+    private final int maxCount;
+    private final long maxLatency;
+    private final boolean coalesce;
+
+    /**
+     *
+     * @param uri the uri of the stream, for error messages
+     * @param properties the batch property of the stream metadata
+     * @throws InvalidMetadataException
+     */
+    public ChangeStreamBatching(String uri, BsonValue properties)
+            throws InvalidMetadataException {
+        if (properties == null || !properties.isDocument()) {
+            throw new InvalidMetadataException("stream /" + uri
+                    + " has invalid '" + ChangeStreamOperation.BATCH_ELEMENT_NAME
+                    + "': " + properties
+                    + "; must be an object");
+        }
+
+        var _properties = properties.asDocument();
+
+        this.maxCount = (int) getPositive(uri, _properties,
+                MAX_COUNT_ELEMENT_NAME, DEFAULT_MAX_COUNT);
+
+        this.maxLatency = getPositive(uri, _properties,
+                MAX_LATENCY_ELEMENT_NAME, DEFAULT_MAX_LATENCY);
+
+        var _coalesce = _properties.get(COALESCE_ELEMENT_NAME);
+
+        if (_coalesce != null && !_coalesce.isBoolean()) {
+            throw new InvalidMetadataException("stream /" + uri
+                    + " has invalid '" + COALESCE_ELEMENT_NAME
+                    + "': " + _coalesce
+                    + "; must be boolean");
+        }
+
+        this.coalesce = _coalesce != null && _coalesce.asBoolean().getValue();
+    }
+
+    private static long getPositive(String uri, BsonDocument properties,
+            String name, long defaultValue)
+            throws InvalidMetadataException {
+        var value = properties.get(name);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        if (!value.isInt32() || value.asInt32().getValue() < 1) {
+            throw new InvalidMetadataException("stream /" + uri
+                    + " has invalid '" + name
+                    + "': " + value
+                    + "; must be a positive integer");
+        }
+
+        return value.asInt32().getValue();
+    }
+
+    /**
+     * @return the max number of notifications in a batch
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * @return the max time in milliseconds a notification waits in a batch
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * @return true to keep only the last notification of each document
+     */
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+}
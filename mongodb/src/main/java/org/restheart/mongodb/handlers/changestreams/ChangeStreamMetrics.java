@@ -0,0 +1,93 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import org.restheart.mongodb.handlers.metrics.SharedMetricRegistryProxy;
+
+/**
+ * The metrics of a change stream, shared by all its sessions and
+ * exposed via the default metrics registry as change-streams.<stream-uri>.*
+ *
+ * <ul>
+ * <li>lag: the time from receiving the change event from MongoDB to sending
+ * it to the client</li>
+ * <li>queued: the size of the session queues when enqueuing</li>
+ * <li>dropped: notifications discarded because a session queue was full</li>
+ * <li>coalesced: queued notifications replaced by a newer one of the same
+ * document</li>
+ * <li>disconnected: sessions closed because their queue was full</li>
+ * </ul>
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ChangeStreamMetrics {
+    private final Timer lag;
+    private final Histogram queued;
+    private final Meter dropped;
+    private final Meter coalesced;
+    private final Meter disconnected;
+
+    private ChangeStreamMetrics(String prefix) {
+        MetricRegistry registry = new SharedMetricRegistryProxy().registry();
+
+        this.lag = registry.timer(prefix + ".lag");
+        this.queued = registry.histogram(prefix + ".queued");
+        this.dropped = registry.meter(prefix + ".dropped");
+        this.coalesced = registry.meter(prefix + ".coalesced");
+        this.disconnected = registry.meter(prefix + ".disconnected");
+    }
+
+    /**
+     * @param sessionKey
+     * @return the metrics of the stream, regardless of avars and jsonMode
+     */
+    public static ChangeStreamMetrics of(SessionKey sessionKey) {
+        return new ChangeStreamMetrics("change-streams."
+                + URLDecoder.decode(sessionKey.getUrl(),
+                        StandardCharsets.UTF_8));
+    }
+
+    public Timer getLag() {
+        return lag;
+    }
+
+    public Histogram getQueued() {
+        return queued;
+    }
+
+    public Meter getDropped() {
+        return dropped;
+    }
+
+    public Meter getCoalesced() {
+        return coalesced;
+    }
+
+    public Meter getDisconnected() {
+        return disconnected;
+    }
+}
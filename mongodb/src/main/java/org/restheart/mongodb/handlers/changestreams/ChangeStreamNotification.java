@@ -20,25 +20,189 @@
  */
 package org.restheart.mongodb.handlers.changestreams;
 
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.connector.PooledByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bson.BsonValue;
+import org.restheart.utils.JsonUtils;
+
 /**
+ * A change stream notification, encoded once to UTF-8 and sent to all the
+ * sessions watching the stream.
+ *
+ * The payload is reference counted: it is retained by each session queue it
+ * is added to and released when it has been sent or discarded. If allocated
+ * from a ByteBufferPool, the pooled buffer is returned to the pool when the
+ * last reference is released.
  *
  * @author omartrasatti
  */
 public class ChangeStreamNotification {
     
     private final SessionKey sessionKey;
-    private final String notificationMessage;
+    private final BsonValue documentKey;
+    private final BsonValue resumeToken;
+    private final long receivedAt = System.nanoTime();
+
+    private final ByteBuffer payload;
+    private final PooledByteBuffer pooled;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    // lazily decoded, for transports that send strings
+    private volatile String notificationMessage = null;
+    private volatile String eventId = null;
     
     public ChangeStreamNotification(SessionKey sessionKey, String notificationMessage) {
+        this(sessionKey, notificationMessage, null);
+    }
+
+    /**
+     * @param sessionKey
+     * @param notificationMessage
+     * @param documentKey the documentKey of the change event, used to
+     * coalesce queued notifications of the same document
+     */
+    public ChangeStreamNotification(SessionKey sessionKey,
+            String notificationMessage,
+            BsonValue documentKey) {
+        this(sessionKey, notificationMessage, documentKey, null);
+    }
+
+    /**
+     * @param sessionKey
+     * @param notificationMessage
+     * @param documentKey the documentKey of the change event, used to
+     * coalesce queued notifications of the same document
+     * @param pool the pool to allocate the payload from, if it fits in a
+     * pooled buffer; can be null
+     */
+    public ChangeStreamNotification(SessionKey sessionKey,
+            String notificationMessage,
+            BsonValue documentKey,
+            ByteBufferPool pool) {
+        this(sessionKey, notificationMessage, documentKey, null, pool);
+    }
+
+    /**
+     * @param sessionKey
+     * @param notificationMessage
+     * @param documentKey the documentKey of the change event, used to
+     * coalesce queued notifications of the same document
+     * @param resumeToken the resume token of the (last) change event, can be
+     * null
+     * @param pool the pool to allocate the payload from, if it fits in a
+     * pooled buffer; can be null
+     */
+    public ChangeStreamNotification(SessionKey sessionKey,
+            String notificationMessage,
+            BsonValue documentKey,
+            BsonValue resumeToken,
+            ByteBufferPool pool) {
         this.sessionKey = sessionKey;
-        this.notificationMessage = notificationMessage;
+        this.documentKey = documentKey;
+        this.resumeToken = resumeToken;
+
+        var bytes = notificationMessage.getBytes(StandardCharsets.UTF_8);
+
+        var _pooled = pool == null ? null : pool.allocate();
+
+        if (_pooled != null && _pooled.getBuffer().capacity() >= bytes.length) {
+            var buffer = _pooled.getBuffer();
+            buffer.clear();
+            buffer.put(bytes);
+            buffer.flip();
+
+            this.pooled = _pooled;
+            this.payload = buffer;
+        } else {
+            if (_pooled != null) {
+                _pooled.close();
+            }
+
+            this.pooled = null;
+            this.payload = ByteBuffer.wrap(bytes);
+        }
     }
     
     public SessionKey getSessionKey() {
         return this.sessionKey;
     }
     
+    /**
+     * @return the message; valid until the reference is released
+     */
     public String getNotificationMessage() {
-        return this.notificationMessage;
+        if (notificationMessage == null) {
+            notificationMessage = StandardCharsets.UTF_8
+                    .decode(payload.duplicate())
+                    .toString();
+        }
+
+        return notificationMessage;
+    }
+
+    /**
+     * @return the resume token of the (last) change event, null if not
+     * available
+     */
+    public BsonValue getResumeToken() {
+        return this.resumeToken;
+    }
+
+    /**
+     * @return the resume token as json, used as the id of Server-Sent Events;
+     * null if not available
+     */
+    public String getEventId() {
+        if (eventId == null && resumeToken != null && !resumeToken.isNull()) {
+            eventId = JsonUtils.toJson(resumeToken);
+        }
+
+        return eventId;
+    }
+
+    /**
+     * @return a view of the UTF-8 encoded message with its own position and
+     * limit; valid until the reference is released
+     */
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+    /**
+     * acquires a reference to the payload
+     *
+     * @return this notification
+     */
+    public ChangeStreamNotification retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * releases a reference to the payload; the pooled buffer is returned to
+     * the pool when the last reference is released
+     */
+    public void release() {
+        if (refCount.decrementAndGet() == 0 && pooled != null) {
+            pooled.close();
+        }
+    }
+
+    /**
+     * @return the documentKey of the change event, null if not available
+     */
+    public BsonValue getDocumentKey() {
+        return this.documentKey;
+    }
+
+    /**
+     * @return the System.nanoTime() when the change event was received
+     * from MongoDB
+     */
+    public long getReceivedAt() {
+        return this.receivedAt;
     }
 }
@@ -39,6 +39,7 @@ public class ChangeStreamOperation {
     public static final String STREAM_ELEMENT_NAME = "streams";
     public static final String URI_ELEMENT_NAME = "uri";
     public static final String STAGES_ELEMENT_NAME = "stages";
+    public static final String BATCH_ELEMENT_NAME = "batch";
 
     /**
      *
@@ -116,6 +117,7 @@ public class ChangeStreamOperation {
 
     private final String uri;
     private final BsonArray stages;
+    private final ChangeStreamBatching batching;
 
     /**
      *
@@ -153,6 +155,10 @@ public class ChangeStreamOperation {
 
         this.stages = _stages.asArray();
 
+        this.batching = properties.containsKey(BATCH_ELEMENT_NAME)
+                ? new ChangeStreamBatching(this.uri,
+                        properties.get(BATCH_ELEMENT_NAME))
+                : null;
     }
 
     /**
@@ -169,6 +175,13 @@ public class ChangeStreamOperation {
         return stages;
     }
 
+    /**
+     * @return the batching options, null if notifications are not batched
+     */
+    public ChangeStreamBatching getBatching() {
+        return batching;
+    }
+
     /**
      * @param vars RequestContext.getAggregationVars()
      * @return the stages, with unescaped operators and bound variables
@@ -191,6 +204,39 @@ public class ChangeStreamOperation {
         return ret;
     }
 
+    /**
+     * @return the number of leading stages that do not use aggregation
+     * variables; they resolve to the same stages for any avars
+     */
+    public int getVarsIndependentStagesCount() {
+        var unescaped = JsonUtils.unescapeKeys(stages).asArray();
+
+        int ret = 0;
+
+        while (ret < unescaped.size() && !usesVariables(unescaped.get(ret))) {
+            ret++;
+        }
+
+        return ret;
+    }
+
+    private static boolean usesVariables(BsonValue obj) {
+        if (obj.isDocument()) {
+            var _obj = obj.asDocument();
+
+            if (_obj.size() == 1 && _obj.get("$var") != null) {
+                return true;
+            }
+
+            return _obj.values().stream()
+                    .anyMatch(ChangeStreamOperation::usesVariables);
+        } else if (obj.isArray()) {
+            return obj.asArray().stream()
+                    .anyMatch(ChangeStreamOperation::usesVariables);
+        } else {
+            return false;
+        }
+    }
 
     /**
      * @param obj
@@ -0,0 +1,304 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.server.session.SecureRandomSessionIdGenerator;
+import io.undertow.websockets.core.CloseMessage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.MongoServiceConfiguration.CHANGE_STREAMS_OVERFLOW_POLICY;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A session watching a change stream, regardless of the transport.
+ *
+ * Notifications are queued in a bounded queue and sent one at a time: the
+ * next one is sent when the previous has been written to the connection. A
+ * slow client only fills its own queue; when it is full, the
+ * change-streams-overflow-policy applies.
+ *
+ * Subclasses write the notifications without blocking and call sent() or
+ * failed() when done.
+ *
+ * @author Omar Trasatti {@literal <omar@softinstigate.com>}
+ */
+public abstract class ChangeStreamSession {
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(ChangeStreamSession.class);
+
+    /**
+     * the close reason of the sessions that cannot be resumed, since some
+     * change events after their resume token are lost
+     */
+    public static final String HISTORY_LOST = "change events lost";
+
+    /**
+     * the close reason of the sessions whose resume token did not show up
+     * in the change events
+     */
+    public static final String RESUME_TOKEN_NOT_FOUND = "resume token not found";
+
+    private static final int QUEUE_SIZE = Math.max(1, MongoServiceConfiguration
+            .get()
+            .getChangeStreamsQueueSize());
+
+    private static final CHANGE_STREAMS_OVERFLOW_POLICY OVERFLOW_POLICY
+            = MongoServiceConfiguration
+                    .get()
+                    .getChangeStreamsOverflowPolicy();
+
+    private final String sessionId;
+    private final SessionKey sessionKey;
+    private final ChangeStreamMetrics metrics;
+
+    // guarded by queue
+    private final Deque<ChangeStreamNotification> queue = new ArrayDeque<>();
+    private boolean sending = false;
+    private boolean closed = false;
+
+    protected ChangeStreamSession(SessionKey sessionKey) {
+        this.sessionId = new SecureRandomSessionIdGenerator().createSessionId();
+        this.sessionKey = sessionKey;
+        this.metrics = ChangeStreamMetrics.of(sessionKey);
+    }
+
+    public String getId() {
+        return this.sessionId;
+    }
+
+    public SessionKey getSessionKey() {
+        return this.sessionKey;
+    }
+
+    /**
+     * @return the pool to allocate the encoded notifications from, can be
+     * null
+     */
+    public abstract ByteBufferPool getBufferPool();
+
+    /**
+     * @return true if the underlying connection is open
+     */
+    protected abstract boolean isOpen();
+
+    /**
+     * writes the notification without blocking; implementations must call
+     * sent() or failed() when done
+     *
+     * @param notification
+     */
+    protected abstract void write(ChangeStreamNotification notification);
+
+    /**
+     * closes the underlying connection
+     *
+     * @param code the close code
+     * @param reason the close reason, can be null
+     */
+    protected abstract void closeConnection(int code, String reason);
+
+    /**
+     * @return true if the session has been closed by the server or the client
+     */
+    public boolean isClosed() {
+        synchronized (queue) {
+            return closed || !isOpen();
+        }
+    }
+
+    /**
+     * Enqueues the notification and starts sending if the session is idle.
+     * It never blocks.
+     *
+     * @param notification
+     */
+    public void send(ChangeStreamNotification notification) {
+        ChangeStreamNotification next = null;
+        boolean disconnect = false;
+
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+
+            if (queue.size() >= QUEUE_SIZE) {
+                if (OVERFLOW_POLICY == CHANGE_STREAMS_OVERFLOW_POLICY.DISCONNECT) {
+                    disconnect = true;
+                } else {
+                    makeRoom(notification);
+                }
+            }
+
+            if (!disconnect) {
+                queue.addLast(notification.retain());
+                metrics.getQueued().update(queue.size());
+
+                if (!sending) {
+                    sending = true;
+                    next = queue.pollFirst();
+                }
+            }
+        }
+
+        if (disconnect) {
+            LOGGER.debug("Closing stream connection, notifications queue "
+                    + "is full, sessionkey={}", sessionKey);
+            metrics.getDisconnected().mark();
+            close(CloseMessage.MSG_VIOLATES_POLICY,
+                    "notifications not consumed");
+        } else if (next != null) {
+            write(next);
+        }
+    }
+
+    /**
+     * removes a notification from the full queue, according to the overflow
+     * policy
+     *
+     * @param notification the notification to enqueue
+     */
+    private void makeRoom(ChangeStreamNotification notification) {
+        if (OVERFLOW_POLICY == CHANGE_STREAMS_OVERFLOW_POLICY.COALESCE) {
+            var documentKey = notification.getDocumentKey();
+
+            if (documentKey != null) {
+                var coalesced = false;
+                var it = queue.iterator();
+
+                while (it.hasNext()) {
+                    var queued = it.next();
+
+                    if (documentKey.equals(queued.getDocumentKey())) {
+                        it.remove();
+                        queued.release();
+                        coalesced = true;
+                    }
+                }
+
+                if (coalesced) {
+                    metrics.getCoalesced().mark();
+                    return;
+                }
+            }
+        }
+
+        var dropped = queue.pollFirst();
+
+        if (dropped != null) {
+            dropped.release();
+        }
+
+        metrics.getDropped().mark();
+    }
+
+    /**
+     * releases the notification and writes the next one, if any
+     *
+     * @param notification the notification that has been written
+     */
+    protected void sent(ChangeStreamNotification notification) {
+        notification.release();
+
+        metrics.getLag().update(System.nanoTime()
+                - notification.getReceivedAt(), TimeUnit.NANOSECONDS);
+
+        ChangeStreamNotification next;
+
+        synchronized (queue) {
+            next = closed ? null : queue.pollFirst();
+            sending = next != null;
+        }
+
+        if (next != null) {
+            write(next);
+        }
+    }
+
+    /**
+     * releases the notification and closes the session
+     *
+     * @param notification the notification that could not be written
+     * @param t
+     */
+    protected void failed(ChangeStreamNotification notification, Throwable t) {
+        notification.release();
+
+        LOGGER.debug("Error sending notification, sessionkey={}",
+                sessionKey, t);
+        close(CloseMessage.UNEXPECTED_ERROR, null);
+    }
+
+    /**
+     * discards the queued notifications, removes the session from the
+     * watching sessions and closes the connection
+     *
+     * @param code the close code
+     * @param reason the close reason, can be null
+     */
+    public void close(int code, String reason) {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            sending = false;
+            clearQueue();
+        }
+
+        GuavaHashMultimapSingleton.remove(sessionKey, this);
+
+        if (isOpen()) {
+            closeConnection(code, reason);
+        }
+    }
+
+    /**
+     * discards the queued notifications and removes the session from the
+     * watching sessions, when the connection has been closed by the client
+     */
+    protected void connectionClosed() {
+        LOGGER.debug("Stream connection closed, sessionkey={}", sessionKey);
+
+        synchronized (queue) {
+            closed = true;
+            clearQueue();
+        }
+
+        GuavaHashMultimapSingleton.remove(sessionKey, this);
+    }
+
+    /**
+     * discards the queued notifications, releasing them; must be called
+     * holding the queue lock
+     */
+    private void clearQueue() {
+        ChangeStreamNotification queued;
+
+        while ((queued = queue.pollFirst()) != null) {
+            queued.release();
+        }
+    }
+}
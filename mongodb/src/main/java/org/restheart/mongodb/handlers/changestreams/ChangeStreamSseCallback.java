@@ -0,0 +1,69 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.sse.ServerSentEventConnection;
+import io.undertow.server.handlers.sse.ServerSentEventConnectionCallback;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds the Server-Sent Events connection to the upstream change stream
+ * prepared by GetChangeStreamHandler for the exchange.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ChangeStreamSseCallback implements ServerSentEventConnectionCallback {
+
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(ChangeStreamSseCallback.class);
+
+    private final SessionKey sessionKey;
+    private final StreamKey streamKey;
+    private final BsonArray filters;
+    private final ChangeStreamBatching batching;
+    private final BsonDocument resumeAfter;
+
+    public ChangeStreamSseCallback(HttpServerExchange exchange) {
+        this.sessionKey = new SessionKey(exchange);
+        this.streamKey = exchange.getAttachment(GetChangeStreamHandler.STREAM_KEY_ATTACHMENT_KEY);
+        this.filters = exchange.getAttachment(GetChangeStreamHandler.FILTERS_ATTACHMENT_KEY);
+        this.batching = exchange.getAttachment(GetChangeStreamHandler.BATCHING_ATTACHMENT_KEY);
+        this.resumeAfter = exchange.getAttachment(GetChangeStreamHandler.RESUME_AFTER_ATTACHMENT_KEY);
+    }
+
+    @Override
+    public void connected(ServerSentEventConnection connection,
+            String lastEventId) {
+        var newSession = new ChangeStreamSseSession(connection, sessionKey);
+
+        LOGGER.debug("New stream connection (SSE), sessionkey={}", sessionKey);
+
+        GetChangeStreamHandler.watch(streamKey,
+                newSession,
+                filters,
+                batching,
+                resumeAfter);
+    }
+}
@@ -0,0 +1,129 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.server.handlers.sse.ServerSentEventConnection;
+import java.io.IOException;
+
+/**
+ * A Server-Sent Events session watching a change stream.
+ *
+ * Each notification is sent as an event whose id is its resume token, so
+ * that a client reconnecting with the Last-Event-ID header resumes the
+ * stream. Events are written asynchronously by the connection.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ChangeStreamSseSession extends ChangeStreamSession {
+    /**
+     * the interval in milliseconds of the keep alive messages, that prevent
+     * proxies from closing idle connections
+     */
+    private static final long KEEP_ALIVE_TIME = 15_000;
+
+    /**
+     * the type of the event sent before closing the connection, with the
+     * close reason as data
+     */
+    private static final String CLOSE_EVENT = "close";
+
+    private final ServerSentEventConnection connection;
+
+    public ChangeStreamSseSession(ServerSentEventConnection connection,
+            SessionKey sessionKey) {
+        super(sessionKey);
+        this.connection = connection;
+
+        connection.setKeepAliveTime(KEEP_ALIVE_TIME);
+        connection.addCloseTask(c -> connectionClosed());
+    }
+
+    /**
+     * @return null, the connection encodes the events itself
+     */
+    @Override
+    public ByteBufferPool getBufferPool() {
+        return null;
+    }
+
+    @Override
+    protected boolean isOpen() {
+        return this.connection.isOpen();
+    }
+
+    @Override
+    protected void write(ChangeStreamNotification notification) {
+        connection.send(notification.getNotificationMessage(),
+                null,
+                notification.getEventId(),
+                new ServerSentEventConnection.EventCallback() {
+            @Override
+            public void done(ServerSentEventConnection connection,
+                    String data, String event, String id) {
+                sent(notification);
+            }
+
+            @Override
+            public void failed(ServerSentEventConnection connection,
+                    String data, String event, String id, IOException e) {
+                ChangeStreamSseSession.this.failed(notification, e);
+            }
+        });
+    }
+
+    /**
+     * Sends the close event with the reason, then closes the connection.
+     *
+     * If the session cannot be resumed, the close event has an empty id: it
+     * resets the last event id of the EventSource, that otherwise reconnects
+     * with the same unresumable Last-Event-ID over and over; it reconnects
+     * without it and gets the next notifications.
+     *
+     * @param code
+     * @param reason
+     */
+    @Override
+    protected void closeConnection(int code, String reason) {
+        if (reason == null) {
+            connection.shutdown();
+            return;
+        }
+
+        var unresumable = HISTORY_LOST.equals(reason)
+                || RESUME_TOKEN_NOT_FOUND.equals(reason);
+
+        connection.send(reason, CLOSE_EVENT, unresumable ? "" : null,
+                new ServerSentEventConnection.EventCallback() {
+            @Override
+            public void done(ServerSentEventConnection connection,
+                    String data, String event, String id) {
+                connection.shutdown();
+            }
+
+            @Override
+            public void failed(ServerSentEventConnection connection,
+                    String data, String event, String id, IOException e) {
+                connection.shutdown();
+            }
+        });
+    }
+}
@@ -20,134 +20,725 @@
  */
 package org.restheart.mongodb.handlers.changestreams;
 
-import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.model.changestream.FullDocument;
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.websockets.core.CloseMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.BsonNull;
-import org.bson.BsonString;
 import org.bson.BsonValue;
-import org.bson.Document;
-import org.bson.codecs.DocumentCodec;
-import org.bson.codecs.configuration.CodecRegistries;
-import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.json.JsonMode;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
+import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.db.MongoReactiveClientSingleton;
+import org.restheart.mongodb.utils.BsonMatcher;
 import org.restheart.utils.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Subscribes to an upstream change stream and dispatches its change events
+ * to all the sessions watching it.
+ *
+ * Sessions are grouped by SessionKey; each group can have $match filters
+ * that depend on its avars and are evaluated in-process. Each change event is
+ * rendered and encoded at most once for each JsonMode in use by the matching
+ * sessions.
+ *
+ * The resume token of the last change event is kept in the ResumeTokenStore:
+ * if the upstream change stream errors, or after a restart, it is resumed
+ * without missing events. The last change events are also kept in a bounded
+ * replay buffer: a session that passes the resume token of the last
+ * notification it received gets the missed ones replayed from it. The replay
+ * anchor is the resume token right before the oldest buffered event, i.e.
+ * the one the upstream was opened with or the last evicted one: a session
+ * resuming after it gets the whole buffer, a session resuming after an older
+ * one is closed since its events are lost.
+ *
+ * If the stream defines the batch option, the notifications of each
+ * SessionKey are collected and sent as a JSON array, see
+ * ChangeStreamBatching.
  *
  * @author omartrasatti
  */
-public class ChangeStreamSubscriber implements Subscriber<ChangeStreamDocument> {
+public class ChangeStreamSubscriber {
 
     private static final Logger LOGGER
             = LoggerFactory.getLogger(ChangeStreamSubscriber.class);
 
-    private final SessionKey sessionKey;
-    private Subscription sub;
+    private static final int REPLAY_BUFFER_SIZE = Math.max(0,
+            MongoServiceConfiguration
+                    .get()
+                    .getChangeStreamsReplayBufferSize());
+
+    private static final long RESUME_DELAY = 1000; // milliseconds
+
+    /**
+     * the error codes meaning that the change stream cannot be resumed:
+     * CappedPositionLost, ChangeStreamFatalError and ChangeStreamHistoryLost
+     */
+    private static final Set<Integer> HISTORY_LOST_CODES = Set.of(136, 280, 286);
+
+    // resumes the upstream change streams and flushes the batches
+    private static final ScheduledExecutorService SCHEDULER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("change-streams-scheduler-%d")
+                    .build());
 
-    public ChangeStreamSubscriber(SessionKey sessionKey) {
+    private final StreamKey streamKey;
+    private volatile Subscription sub;
+
+    // the session keys watching the stream and their filters, guarded by this
+    private final Map<SessionKey, BsonArray> sessionKeys = new HashMap<>();
+    // the last change events, guarded by this
+    private final ArrayDeque<BsonDocument> replayBuffer = new ArrayDeque<>();
+    // the resume token before the oldest buffered event, guarded by this
+    private BsonValue replayAnchor;
+    // the batches of the session keys with batching, guarded by this
+    private final Map<SessionKey, Batch> batches = new HashMap<>();
+    // the sessions whose resume token is not in the replay buffer, guarded by this
+    private final List<PendingSession> pendingSessions = new ArrayList<>();
+    private boolean stopped = false;
+
+    public ChangeStreamSubscriber(StreamKey streamKey) {
         super();
-        this.sessionKey = sessionKey;
+        this.streamKey = streamKey;
+        // the upstream is opened after it, see open()
+        this.replayAnchor = ResumeTokenStore.getInstance().get(streamKey);
     }
 
-    @Override
-    public void onSubscribe(final Subscription s) {
-        s.request(Long.MAX_VALUE);
-        this.sub = s;
-    }
+    /**
+     * Adds the session to the watching sessions.
+     *
+     * If resumeAfter is not null, the change events after it are replayed
+     * to the session before any new one. If resumeAfter is older than the
+     * replay buffer, the session is closed with HISTORY_LOST. Otherwise, if
+     * resumeAfter is not in the replay buffer, e.g. because the upstream
+     * change stream is being resumed after a restart, the session waits for
+     * it in the next change events and is closed if it does not show up.
+     *
+     * @param session
+     * @param filters the $match filters to evaluate in-process
+     * @param batching the batching options, null to send each notification
+     * as soon as possible
+     * @param resumeAfter the resume token of the last notification received
+     * by the client, can be null
+     * @return false if the subscriber has been stopped, since no sessions
+     * are watching it anymore
+     */
+    public synchronized boolean add(ChangeStreamSession session,
+            BsonArray filters,
+            ChangeStreamBatching batching,
+            BsonDocument resumeAfter) {
+        if (stopped) {
+            return false;
+        }
 
-    @Override
-    public void onNext(ChangeStreamDocument notification) {
-        if (!GuavaHashMultimapSingleton.get(sessionKey).isEmpty()) {
-            LOGGER.trace("[clients watching]: "
-                    + GuavaHashMultimapSingleton.get(sessionKey).size());
+        if (resumeAfter != null
+                && REPLAY_BUFFER_SIZE > 0
+                && !replay(session, filters, batching, resumeAfter)) {
+            if (isBeforeReplayBuffer(resumeAfter)) {
+                LOGGER.debug("Resume token {} is older than the replay buffer "
+                        + "of stream {}, closing session", resumeAfter, streamKey);
 
-            LOGGER.debug("Change stream notification for sessionKey={}: {}",
-                    sessionKey,
-                    notification);
+                session.close(CloseMessage.UNEXPECTED_ERROR,
+                        ChangeStreamSession.HISTORY_LOST);
+            } else {
+                LOGGER.debug("Resume token {} not in the replay buffer of "
+                        + "stream {}, waiting for it", resumeAfter, streamKey);
 
-            ChangeStreamWebsocketCallback.NOTIFICATION_PUBLISHER.submit(
-                    new ChangeStreamNotification(sessionKey,
-                            JsonUtils.toJson(
-                                    getDocument(notification),
-                                    sessionKey.getJsonMode())));
+                pendingSessions.add(new PendingSession(session, filters,
+                        batching, resumeAfter));
+            }
         } else {
+            register(session, filters, batching);
+        }
+
+        return true;
+    }
+
+    private void register(ChangeStreamSession session,
+            BsonArray filters,
+            ChangeStreamBatching batching) {
+        var sessionKey = session.getSessionKey();
+
+        if (batching != null) {
+            // the session must not get the notifications already collected
+            if (batches.containsKey(sessionKey)) {
+                flush(sessionKey);
+            } else {
+                batches.put(sessionKey, new Batch(batching));
+            }
+        }
+
+        GuavaHashMultimapSingleton.add(sessionKey, session);
+        sessionKeys.put(sessionKey, filters);
+    }
+
+    /**
+     * sends the change events in the replay buffer after resumeAfter
+     *
+     * @return false if resumeAfter is neither the replay anchor nor in the
+     * replay buffer
+     */
+    private boolean replay(ChangeStreamSession session,
+            BsonArray filters,
+            ChangeStreamBatching batching,
+            BsonDocument resumeAfter) {
+        // resumeAfter is exclusive: the anchor replays the whole buffer
+        var found = resumeAfter.equals(replayAnchor);
+        var replayed = 0;
+        var batch = batching == null ? null : new Batch(batching);
+
+        for (var event : replayBuffer) {
+            if (!found) {
+                found = resumeAfter.equals(event.get("_id"));
+            } else if (matches(filters, event)) {
+                replayed++;
+
+                if (batch == null) {
+                    var notification = notification(session.getSessionKey(),
+                            event,
+                            session.getBufferPool());
+
+                    session.send(notification);
+                    notification.release();
+                } else if (batch.add(event.get("documentKey"), getDocument(event))
+                        >= batching.getMaxCount()) {
+                    send(session.getSessionKey(), List.of(session), batch.drain());
+                }
+            }
+        }
+
+        if (batch != null && !batch.isEmpty()) {
+            send(session.getSessionKey(), List.of(session), batch.drain());
+        }
+
+        if (found) {
+            LOGGER.debug("Replayed {} notifications of stream {}, sessionkey={}",
+                    replayed, streamKey, session.getSessionKey());
+        }
+
+        return found;
+    }
+
+    /**
+     * Resume tokens with string _data (MongoDB 4.0.7+) are ordered by the
+     * time of their change events, so the ones of the same stream can be
+     * compared; the older ones cannot be found anymore.
+     *
+     * @return true if resumeToken is known to be older than the replay anchor
+     * or, if there is none, the oldest event in the replay buffer
+     */
+    private boolean isBeforeReplayBuffer(BsonDocument resumeToken) {
+        var oldest = replayAnchor != null
+                ? replayAnchor
+                : replayBuffer.isEmpty() ? null : replayBuffer.peekFirst().get("_id");
+
+        var data = data(resumeToken);
+        var oldestData = data(oldest);
+
+        return data != null && oldestData != null
+                && data.compareTo(oldestData) < 0;
+    }
+
+    private static String data(BsonValue resumeToken) {
+        if (resumeToken == null || !resumeToken.isDocument()) {
+            return null;
+        }
+
+        var data = resumeToken.asDocument().get("_data");
+
+        return data != null && data.isString()
+                ? data.asString().getValue()
+                : null;
+    }
+
+    /**
+     * subscribes to the upstream change stream, resuming it after the stored
+     * resume token, if any
+     */
+    void open() {
+        var publisher = MongoReactiveClientSingleton
+                .getInstance()
+                .getClient()
+                .getDatabase(streamKey.getDb())
+                .getCollection(streamKey.getCollection())
+                .watch(streamKey.getPipeline())
+                .fullDocument(FullDocument.UPDATE_LOOKUP);
+
+        var resumeToken = ResumeTokenStore.getInstance().get(streamKey);
+
+        if (resumeToken != null) {
+            LOGGER.debug("Resuming upstream change stream {} after {}",
+                    streamKey, resumeToken);
+
+            publisher = publisher.resumeAfter(resumeToken);
+        }
+
+        publisher
+                .withDocumentClass(BsonDocument.class)
+                .subscribe(new Upstream());
+    }
+
+    /**
+     * @param event the change event
+     * @return false if the subscriber has been stopped
+     */
+    private boolean onNext(BsonDocument event) {
+        if (!dispatch(event)) {
             this.stop();
-            LOGGER.debug("Closing unwatched stream, sessionKey=" + sessionKey);
-            GetChangeStreamHandler.OPENED_STREAMS.remove(sessionKey);
+            LOGGER.debug("Closing unwatched stream {}", streamKey);
+            GetChangeStreamHandler.OPENED_STREAMS.remove(streamKey, this);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * dispatches the change event to the watching sessions; holding the lock,
+     * the sessions being added cannot miss it or get it twice
+     *
+     * @param event the change event
+     * @return false if no sessions are watching the stream
+     */
+    private synchronized boolean dispatch(BsonDocument event) {
+        var watching = watchingSessionKeys();
+
+        if (stopped) {
+            return false;
+        }
+
+        LOGGER.debug("Change stream notification for stream {}: {}",
+                streamKey,
+                event);
+
+        var resumeToken = event.get("_id");
+
+        if (resumeToken != null && resumeToken.isDocument()) {
+            ResumeTokenStore.getInstance().put(streamKey,
+                    resumeToken.asDocument());
+        }
+
+        if (REPLAY_BUFFER_SIZE > 0) {
+            replayBuffer.addLast(event);
+
+            if (replayBuffer.size() > REPLAY_BUFFER_SIZE) {
+                replayAnchor = replayBuffer.pollFirst().get("_id");
+            }
+        }
+
+        var document = getDocument(event);
+
+        // the notification rendered for each JsonMode, null is the default
+        var rendered = new HashMap<JsonMode, ChangeStreamNotification>();
+        // the result of the filters, shared by sessions with the same avars
+        var matched = new HashMap<BsonArray, Boolean>();
+
+        watching.forEach((sessionKey, filters) -> {
+            var sessions = List.copyOf(GuavaHashMultimapSingleton.get(sessionKey));
+
+            if (sessions.isEmpty()
+                    || !matched.computeIfAbsent(filters, f -> matches(f, event))) {
+                return;
+            }
+
+            LOGGER.trace("[clients watching]: " + sessions.size());
+
+            var batch = batches.get(sessionKey);
+
+            if (batch != null) {
+                collect(sessionKey, batch, event.get("documentKey"), document);
+                return;
+            }
+
+            // encoded once and sent to all the sessions
+            var notification = rendered.computeIfAbsent(
+                    sessionKey.getJsonMode(),
+                    jsonMode -> new ChangeStreamNotification(sessionKey,
+                            JsonUtils.toJson(document, jsonMode),
+                            event.get("documentKey"),
+                            event.get("_id"),
+                            sessions.get(0).getBufferPool()));
+
+            // sessions never block: each one has its own bounded queue
+            sessions.forEach(session -> session.send(notification));
+        });
+
+        // the sessions retain the notifications they have enqueued
+        rendered.values().forEach(ChangeStreamNotification::release);
+
+        resumePendingSessions(event);
+
+        return true;
+    }
+
+    /**
+     * registers the pending sessions waiting for this change event, that
+     * will get the next ones, and closes the ones that waited too long
+     *
+     * @param event
+     */
+    private void resumePendingSessions(BsonDocument event) {
+        var it = pendingSessions.iterator();
+
+        while (it.hasNext()) {
+            var pending = it.next();
+
+            if (pending.resumeAfter.equals(event.get("_id"))) {
+                it.remove();
+                register(pending.session, pending.filters, pending.batching);
+            } else if (--pending.remaining <= 0) {
+                it.remove();
+
+                LOGGER.debug("Resume token {} not found in stream {}, "
+                        + "closing session", pending.resumeAfter, streamKey);
+
+                pending.session.close(CloseMessage.MSG_VIOLATES_POLICY,
+                        ChangeStreamSession.RESUME_TOKEN_NOT_FOUND);
+            }
+        }
+    }
+
+    /**
+     * removes the session keys without sessions and the closed pending
+     * sessions
+     *
+     * @return the session keys with their filters; if no sessions are
+     * watching the stream, the subscriber is marked as stopped
+     */
+    private synchronized Map<SessionKey, BsonArray> watchingSessionKeys() {
+        sessionKeys.keySet().removeIf(sessionKey
+                -> GuavaHashMultimapSingleton.get(sessionKey).isEmpty());
+
+        pendingSessions.removeIf(pending -> pending.session.isClosed());
+
+        batches.keySet().retainAll(sessionKeys.keySet());
+
+        if (sessionKeys.isEmpty() && pendingSessions.isEmpty()) {
+            stopped = true;
+        }
+
+        return new HashMap<>(sessionKeys);
+    }
+
+    /**
+     * adds the notification to the batch of the session key, flushing it
+     * when full; the first notification of the batch schedules its flush
+     * after maxLatency
+     */
+    private void collect(SessionKey sessionKey, Batch batch,
+            BsonValue documentKey, BsonDocument document) {
+        var wasEmpty = batch.isEmpty();
+
+        if (batch.add(documentKey, document) >= batch.batching.getMaxCount()) {
+            flush(sessionKey);
+        } else if (wasEmpty) {
+            var window = batch.window;
+
+            SCHEDULER.schedule(() -> flush(sessionKey, window),
+                    batch.batching.getMaxLatency(),
+                    TimeUnit.MILLISECONDS);
         }
     }
-    
 
-    @Override
-    public void onError(final Throwable t) {
-        LOGGER.warn("Error from stream: " + t.getMessage());
+    /**
+     * flushes the batch of the session key, if it is still collecting the
+     * notifications of the given window
+     */
+    private synchronized void flush(SessionKey sessionKey, long window) {
+        var batch = batches.get(sessionKey);
+
+        if (batch != null && batch.window == window) {
+            flush(sessionKey);
+        }
+    }
+
+    /**
+     * sends the collected notifications to the sessions of the session key
+     */
+    private synchronized void flush(SessionKey sessionKey) {
+        var batch = batches.get(sessionKey);
+
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+
+        var documents = batch.drain();
+        var sessions = List.copyOf(GuavaHashMultimapSingleton.get(sessionKey));
+
+        if (!sessions.isEmpty()) {
+            send(sessionKey, sessions, documents);
+        }
+    }
+
+    /**
+     * sends the documents as a JSON array, encoded once for all the sessions
+     */
+    private void send(SessionKey sessionKey,
+            List<ChangeStreamSession> sessions,
+            BsonArray documents) {
+        // the resume token of the last notification resumes the batch
+        var resumeToken = documents.get(documents.size() - 1)
+                .asDocument()
+                .get("resumeToken");
+
+        var notification = new ChangeStreamNotification(sessionKey,
+                JsonUtils.toJson(documents, sessionKey.getJsonMode()),
+                null,
+                resumeToken,
+                sessions.get(0).getBufferPool());
+
+        sessions.forEach(session -> session.send(notification));
+
+        notification.release();
     }
 
-    @Override
-    public void onComplete() {
-        LOGGER.debug("Stream completed, sessionKey=" + sessionKey);
+    private static boolean matches(BsonArray filters, BsonDocument event) {
+        return filters.stream()
+                .allMatch(filter -> BsonMatcher.matches(filter.asDocument(), event));
     }
 
+    private void onError(final Throwable t) {
+        if (t instanceof MongoServerException
+                && HISTORY_LOST_CODES.contains(((MongoServerException) t).getCode())) {
+            LOGGER.warn("Cannot resume stream {}, "
+                    + "change events lost: {}", streamKey, t.getMessage());
+
+            ResumeTokenStore.getInstance().remove(streamKey);
+
+            // the clients must know that they missed some notifications
+            closeSessions(CloseMessage.UNEXPECTED_ERROR,
+                    ChangeStreamSession.HISTORY_LOST);
+
+            GetChangeStreamHandler.OPENED_STREAMS.remove(streamKey, this);
+            return;
+        }
+
+        boolean resume;
+
+        synchronized (this) {
+            watchingSessionKeys();
+            resume = !stopped;
+        }
+
+        if (resume) {
+            LOGGER.warn("Error from stream {}, resuming it in {} ms: {}",
+                    streamKey, RESUME_DELAY, t.getMessage());
+
+            SCHEDULER.schedule(this::open, RESUME_DELAY, TimeUnit.MILLISECONDS);
+        } else {
+            LOGGER.warn("Error from stream: " + t.getMessage());
+
+            // the next session will open a new upstream change stream
+            GetChangeStreamHandler.OPENED_STREAMS.remove(streamKey, this);
+        }
+    }
+
+    private void onComplete() {
+        LOGGER.debug("Stream completed {}", streamKey);
+
+        synchronized (this) {
+            stopped = true;
+        }
+
+        // the stream has been invalidated, e.g. the collection was dropped
+        ResumeTokenStore.getInstance().remove(streamKey);
+
+        GetChangeStreamHandler.OPENED_STREAMS.remove(streamKey, this);
+    }
+
+    private void closeSessions(int code, String reason) {
+        var sessions = new ArrayList<ChangeStreamSession>();
+
+        synchronized (this) {
+            stopped = true;
+
+            sessionKeys.keySet().forEach(sessionKey
+                    -> sessions.addAll(GuavaHashMultimapSingleton.get(sessionKey)));
+
+            pendingSessions.forEach(pending -> sessions.add(pending.session));
+
+            sessionKeys.clear();
+            pendingSessions.clear();
+        }
+
+        sessions.forEach(session -> session.close(code, reason));
+    }
+
+    /**
+     * cancels the upstream change stream, since no sessions are watching it;
+     * its resume token is discarded
+     */
     public void stop() {
         this.sub.cancel();
+        ResumeTokenStore.getInstance().remove(streamKey);
     }
-    
-    private BsonDocument getDocument(ChangeStreamDocument notification) {
+
+    private ChangeStreamNotification notification(SessionKey sessionKey,
+            BsonDocument event,
+            ByteBufferPool pool) {
+        return new ChangeStreamNotification(sessionKey,
+                JsonUtils.toJson(getDocument(event), sessionKey.getJsonMode()),
+                event.get("documentKey"),
+                event.get("_id"),
+                pool);
+    }
+
+    /**
+     * @param event the change event
+     * @return the notification sent to the clients
+     */
+    private BsonDocument getDocument(BsonDocument event) {
         var doc = new BsonDocument();
 
-        if (notification == null) {
+        if (event == null) {
             return doc;
         }
-        
-        doc.put("fullDocument", toBson((Document) notification.getFullDocument()));
-        
-        doc.put("documentKey", notification.getDocumentKey());
 
-        if (notification.getUpdateDescription() != null) {
-            var updateDescription = new BsonDocument();
-            
-            var updatedFields = notification.getUpdateDescription()
-                    .getUpdatedFields();
+        doc.put("fullDocument", event.get("fullDocument", BsonNull.VALUE));
 
-            if (updatedFields != null) {
-                updateDescription.put("updatedFields", updatedFields);
-            } else {
-                updateDescription.put("updatedFields", BsonNull.VALUE);
-            }
+        doc.put("documentKey", event.get("documentKey", BsonNull.VALUE));
 
-            var removedFields = notification.getUpdateDescription()
-                    .getRemovedFields();
+        var _updateDescription = event.get("updateDescription");
 
-            if (removedFields == null) {
-                updateDescription.put("updatedFields", new BsonArray());
-            } else {
-                var _removedFields = new BsonArray();
-                removedFields.forEach(rf -> _removedFields
-                        .add(new BsonString(rf)));
+        if (_updateDescription != null && _updateDescription.isDocument()) {
+            var updateDescription = new BsonDocument();
 
-                updateDescription.put("removedFields", _removedFields);
-            }
+            updateDescription.put("updatedFields", _updateDescription
+                    .asDocument()
+                    .get("updatedFields", BsonNull.VALUE));
+
+            updateDescription.put("removedFields", _updateDescription
+                    .asDocument()
+                    .get("removedFields", new BsonArray()));
 
             doc.put("updateDescription", updateDescription);
         } else {
             doc.put("updateDescription", BsonNull.VALUE);
         }
 
-        doc.put("operationType", new BsonString(notification.getOperationType().getValue()));
+        doc.put("operationType", event.get("operationType", BsonNull.VALUE));
+
+        // to resume the stream with the resumeAfter query parameter
+        doc.put("resumeToken", event.get("_id", BsonNull.VALUE));
 
         return doc;
     }
-    
-    private static final CodecRegistry REGISTRY = CodecRegistries
-            .fromCodecs(new DocumentCodec());
 
-    private static BsonValue toBson(Document document) {
-        return document == null
-                ? BsonNull.VALUE
-                : document.toBsonDocument(BsonDocument.class, REGISTRY);
+    /**
+     * a subscription to the upstream change stream; a new one is created
+     * each time the change stream is resumed after an error
+     */
+    private class Upstream implements Subscriber<BsonDocument> {
+        private Subscription s;
+
+        @Override
+        public void onSubscribe(final Subscription s) {
+            this.s = s;
+            sub = s;
+            // one change event at a time, the next is requested once the
+            // notification has been handed to the sessions queues
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(BsonDocument event) {
+            if (ChangeStreamSubscriber.this.onNext(event)) {
+                this.s.request(1);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            ChangeStreamSubscriber.this.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+            ChangeStreamSubscriber.this.onComplete();
+        }
+    }
+
+    /**
+     * the notifications collected in the current window
+     */
+    private static class Batch {
+        private final ChangeStreamBatching batching;
+        // keyed by documentKey if coalescing, otherwise by a unique key
+        private final LinkedHashMap<Object, BsonDocument> documents
+                = new LinkedHashMap<>();
+        // incremented when the batch is flushed
+        private long window = 0;
+
+        Batch(ChangeStreamBatching batching) {
+            this.batching = batching;
+        }
+
+        /**
+         * @return the number of notifications in the batch
+         */
+        int add(BsonValue documentKey, BsonDocument document) {
+            var key = batching.isCoalesce() && documentKey != null
+                    ? documentKey
+                    : new Object();
+
+            // the last notification of a document takes its place in the
+            // order of the batch
+            documents.remove(key);
+            documents.put(key, document);
+
+            return documents.size();
+        }
+
+        boolean isEmpty() {
+            return documents.isEmpty();
+        }
+
+        BsonArray drain() {
+            var ret = new BsonArray(new ArrayList<>(documents.values()));
+
+            documents.clear();
+            window++;
+
+            return ret;
+        }
+    }
+
+    /**
+     * a session waiting for its resume token
+     */
+    private static class PendingSession {
+        private final ChangeStreamSession session;
+        private final BsonArray filters;
+        private final ChangeStreamBatching batching;
+        private final BsonDocument resumeAfter;
+        // the change events to wait for the resume token
+        private int remaining = REPLAY_BUFFER_SIZE;
+
+        PendingSession(ChangeStreamSession session,
+                BsonArray filters,
+                ChangeStreamBatching batching,
+                BsonDocument resumeAfter) {
+            this.session = session;
+            this.filters = filters;
+            this.batching = batching;
+            this.resumeAfter = resumeAfter;
+        }
     }
 }
@@ -20,30 +20,28 @@
  */
 package org.restheart.mongodb.handlers.changestreams;
 
-import io.undertow.server.session.SecureRandomSessionIdGenerator;
+import io.undertow.connector.ByteBufferPool;
 import io.undertow.websockets.core.AbstractReceiveListener;
 import io.undertow.websockets.core.StreamSourceFrameChannel;
+import io.undertow.websockets.core.WebSocketCallback;
 import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
 import java.io.IOException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+
 /**
+ * A websocket session watching a change stream.
+ *
+ * Each notification is sent as a text frame, written from a view of the
+ * payload encoded once for all the sessions.
  *
  * @author Omar Trasatti {@literal <omar@softinstigate.com>}
  */
-
-public class ChangeStreamWebSocketSession {
-    private static final Logger LOGGER
-            = LoggerFactory.getLogger(ChangeStreamWebSocketSession.class);
-    
-    private final String sessionId;
-    private final SessionKey sessionKey;
+public class ChangeStreamWebSocketSession extends ChangeStreamSession {
     private final WebSocketChannel webSocketChannel;
 
     public ChangeStreamWebSocketSession(WebSocketChannel channel, SessionKey sessionKey) {
-        this.sessionId = new SecureRandomSessionIdGenerator().createSessionId();
+        super(sessionKey);
         this.webSocketChannel = channel;
-        this.sessionKey = sessionKey;
         initChannelReceiveListener(webSocketChannel);
     }
 
@@ -54,18 +52,48 @@ public class ChangeStreamWebSocketSession {
         channel.resumeReceives();
     }
 
-    public String getId() {
-        return this.sessionId;
-    }
-    
-    public SessionKey getSessionKey() {
-        return this.sessionKey;
-    }
-    
     public WebSocketChannel getChannel() {
         return this.webSocketChannel;
     }
 
+    @Override
+    public ByteBufferPool getBufferPool() {
+        return this.webSocketChannel.getBufferPool();
+    }
+
+    @Override
+    protected boolean isOpen() {
+        return this.webSocketChannel.isOpen();
+    }
+
+    /**
+     * sends a view of the encoded payload, shared with the other sessions
+     *
+     * @param notification
+     */
+    @Override
+    protected void write(ChangeStreamNotification notification) {
+        WebSockets.sendText(notification.getPayload(),
+                webSocketChannel,
+                new WebSocketCallback<Void>() {
+            @Override
+            public void complete(WebSocketChannel channel, Void context) {
+                sent(notification);
+            }
+
+            @Override
+            public void onError(WebSocketChannel channel, Void context,
+                    Throwable throwable) {
+                failed(notification, throwable);
+            }
+        });
+    }
+
+    @Override
+    protected void closeConnection(int code, String reason) {
+        WebSockets.sendClose(code, reason, webSocketChannel, null);
+    }
+
     class ChangeStreamReceiveListener extends AbstractReceiveListener {
 
         private final ChangeStreamWebSocketSession session;
@@ -75,8 +103,7 @@ public class ChangeStreamWebSocketSession {
         }
         @Override
         protected void onClose(WebSocketChannel webSocketChannel, StreamSourceFrameChannel channel) throws IOException {
-            LOGGER.debug("Stream connection closed, sessionkey={}", sessionKey);
-            GuavaHashMultimapSingleton.remove(this.session.getSessionKey(), session);
+            session.connectionClosed();
             webSocketChannel.close();
         }
     }
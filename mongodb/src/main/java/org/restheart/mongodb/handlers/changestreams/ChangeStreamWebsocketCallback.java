@@ -23,7 +23,6 @@ package org.restheart.mongodb.handlers.changestreams;
 import io.undertow.websockets.WebSocketConnectionCallback;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.spi.WebSocketHttpExchange;
-import java.util.concurrent.SubmissionPublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,13 +33,10 @@ import org.slf4j.LoggerFactory;
  */
 public class ChangeStreamWebsocketCallback implements WebSocketConnectionCallback {
 
-    public static final SubmissionPublisher<ChangeStreamNotification> NOTIFICATION_PUBLISHER = new SubmissionPublisher<>();
-
     private static final Logger LOGGER
             = LoggerFactory.getLogger(ChangeStreamWebsocketCallback.class);
 
     public ChangeStreamWebsocketCallback() {
-        NOTIFICATION_PUBLISHER.subscribe(new WebSocketNotificationSubscriber());
     }
 
     @Override
@@ -51,8 +47,13 @@ public class ChangeStreamWebsocketCallback implements WebSocketConnectionCallbac
                 = createSession(channel, sessionKey);
 
         LOGGER.debug("New stream connection, sessionkey={}", sessionKey);
-        
-        GuavaHashMultimapSingleton.add(sessionKey, newSession);
+
+        GetChangeStreamHandler.watch(
+                exchange.getAttachment(GetChangeStreamHandler.STREAM_KEY_ATTACHMENT_KEY),
+                newSession,
+                exchange.getAttachment(GetChangeStreamHandler.FILTERS_ATTACHMENT_KEY),
+                exchange.getAttachment(GetChangeStreamHandler.BATCHING_ATTACHMENT_KEY),
+                exchange.getAttachment(GetChangeStreamHandler.RESUME_AFTER_ATTACHMENT_KEY));
     }
     
     private ChangeStreamWebSocketSession createSession(WebSocketChannel channel, SessionKey sessionKey) {
@@ -20,25 +20,27 @@
  */
 package org.restheart.mongodb.handlers.changestreams;
 
-import com.mongodb.client.model.changestream.FullDocument;
 import io.undertow.Handlers;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.sse.ServerSentEventHandler;
 import io.undertow.util.AttachmentKey;
-import java.util.Collections;
+import io.undertow.util.Headers;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import static org.restheart.exchange.ExchangeKeys.RESUME_AFTER_QPARAM_KEY;
 import org.restheart.exchange.InvalidMetadataException;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.exchange.QueryNotFoundException;
 import org.restheart.exchange.QueryVariableNotBoundException;
 import org.restheart.handlers.PipelinedHandler;
-import org.restheart.mongodb.db.MongoReactiveClientSingleton;
+import org.restheart.mongodb.utils.BsonMatcher;
 import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,14 +56,24 @@ public class GetChangeStreamHandler extends PipelinedHandler {
     private final String CONNECTION_HEADER_VALUE = "upgrade";
     private final String UPGRADE_HEADER_KEY = "upgrade";
     private final String UPGRADE_HEADER_VALUE = "websocket";
+    private final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+    private final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
 
-    public static final Set<SessionKey> OPENED_STREAMS = Collections.newSetFromMap(new ConcurrentHashMap<SessionKey, Boolean>());
+    /**
+     * the upstream change streams, shared by all sessions whose pipelines
+     * resolve to the same upstream pipeline
+     */
+    public static final ConcurrentHashMap<StreamKey, ChangeStreamSubscriber> OPENED_STREAMS = new ConcurrentHashMap<>();
     private static final Logger LOGGER = LoggerFactory.getLogger(GetChangeStreamHandler.class);
     private static final HttpHandler WEBSOCKET_HANDSHAKE_HANDLER
             = Handlers.websocket(new ChangeStreamWebsocketCallback());
 
     public static final AttachmentKey<BsonDocument> AVARS_ATTACHMENT_KEY = AttachmentKey.create(BsonDocument.class);
     public static final AttachmentKey<JsonMode> JSON_MODE_ATTACHMENT_KEY = AttachmentKey.create(JsonMode.class);
+    public static final AttachmentKey<StreamKey> STREAM_KEY_ATTACHMENT_KEY = AttachmentKey.create(StreamKey.class);
+    public static final AttachmentKey<BsonArray> FILTERS_ATTACHMENT_KEY = AttachmentKey.create(BsonArray.class);
+    public static final AttachmentKey<ChangeStreamBatching> BATCHING_ATTACHMENT_KEY = AttachmentKey.create(ChangeStreamBatching.class);
+    public static final AttachmentKey<BsonDocument> RESUME_AFTER_ATTACHMENT_KEY = AttachmentKey.create(BsonDocument.class);
 
     @Override
     public void handleRequest(HttpServerExchange exchange)
@@ -75,19 +87,58 @@ public class GetChangeStreamHandler extends PipelinedHandler {
         }
 
         try {
-            if (isWebSocketHandshakeRequest(exchange)) {
-                exchange.putAttachment(JSON_MODE_ATTACHMENT_KEY, request.getJsonMode());
-                exchange.putAttachment(AVARS_ATTACHMENT_KEY, request.getAggreationVars());
+            var webSocket = isWebSocketHandshakeRequest(exchange);
 
-                startStream(exchange);
-
-                WEBSOCKET_HANDSHAKE_HANDLER.handleRequest(exchange);
-            } else {
+            if (!webSocket && !isServerSentEventsRequest(exchange)) {
                 response.setInError(HttpStatus.SC_BAD_REQUEST,
-                        "The stream connection requires WebSocket, "
-                        + "no 'Upgrade' request header found");
+                        "The stream connection requires WebSocket or "
+                        + "Server-Sent Events, no 'Upgrade' or "
+                        + "'Accept: text/event-stream' request header found");
 
                 next(exchange);
+                return;
+            }
+
+            exchange.putAttachment(JSON_MODE_ATTACHMENT_KEY, request.getJsonMode());
+            exchange.putAttachment(AVARS_ATTACHMENT_KEY, request.getAggreationVars());
+
+            prepareStream(exchange);
+
+            // Server-Sent Events clients resume with the Last-Event-ID header
+            var resumeAfter = webSocket
+                    ? null
+                    : exchange.getRequestHeaders().getFirst(LAST_EVENT_ID_HEADER);
+
+            var _resumeAfter = exchange.getQueryParameters()
+                    .get(RESUME_AFTER_QPARAM_KEY);
+
+            if (resumeAfter == null
+                    && _resumeAfter != null
+                    && !_resumeAfter.isEmpty()) {
+                resumeAfter = _resumeAfter.getFirst();
+            }
+
+            if (resumeAfter != null) {
+                try {
+                    exchange.putAttachment(RESUME_AFTER_ATTACHMENT_KEY,
+                            BsonDocument.parse(resumeAfter));
+                } catch (JsonParseException jpe) {
+                    response.setInError(HttpStatus.SC_BAD_REQUEST,
+                            "illegal resumeAfter parameter, "
+                            + "it must be the resumeToken of a notification",
+                            jpe);
+
+                    next(exchange);
+                    return;
+                }
+            }
+
+            if (webSocket) {
+                WEBSOCKET_HANDSHAKE_HANDLER.handleRequest(exchange);
+            } else {
+                // the events are written asynchronously, no thread is held
+                new ServerSentEventHandler(new ChangeStreamSseCallback(exchange))
+                        .handleRequest(exchange);
             }
         } catch (QueryNotFoundException ex) {
             response.setInError(HttpStatus.SC_NOT_FOUND,
@@ -125,19 +176,28 @@ public class GetChangeStreamHandler extends PipelinedHandler {
     }
 
     private boolean isWebSocketHandshakeRequest(HttpServerExchange exchange) {
-        return exchange.getRequestHeaders()
-                .get(CONNECTION_HEADER_KEY)
-                .getFirst().toLowerCase()
-                .equals(CONNECTION_HEADER_VALUE)
-                && exchange.getRequestHeaders()
-                        .get(UPGRADE_HEADER_KEY)
-                        .getFirst().toLowerCase()
-                        .equals(UPGRADE_HEADER_VALUE);
+        var connection = exchange.getRequestHeaders()
+                .getFirst(CONNECTION_HEADER_KEY);
+
+        var upgrade = exchange.getRequestHeaders()
+                .getFirst(UPGRADE_HEADER_KEY);
+
+        return connection != null
+                && connection.toLowerCase().contains(CONNECTION_HEADER_VALUE)
+                && upgrade != null
+                && upgrade.toLowerCase().equals(UPGRADE_HEADER_VALUE);
     }
 
-    private List<BsonDocument> getResolvedStagesAsList(MongoRequest request)
+    private boolean isServerSentEventsRequest(HttpServerExchange exchange) {
+        var accept = exchange.getRequestHeaders().get(Headers.ACCEPT);
+
+        return accept != null && accept.stream()
+                .anyMatch(value -> value.toLowerCase()
+                        .contains(EVENT_STREAM_CONTENT_TYPE));
+    }
+
+    private ChangeStreamOperation getChangeStreamOperation(MongoRequest request)
             throws InvalidMetadataException,
-            QueryVariableNotBoundException,
             QueryNotFoundException {
         String changesStreamOperation = request.getChangeStreamOperation();
 
@@ -155,35 +215,107 @@ public class GetChangeStreamHandler extends PipelinedHandler {
                     + "  does not exist");
         }
 
-        ChangeStreamOperation pipeline = _query.get();
-
-        List<BsonDocument> resolvedStages = pipeline
-                .getResolvedStagesAsList(request.getAggreationVars());
-        return resolvedStages;
+        return _query.get();
     }
 
-    private boolean startStream(HttpServerExchange exchange)
+    /**
+     * Resolves the stages of the stream and splits them in the upstream
+     * pipeline, executed by MongoDB, and the $match filters that depend on
+     * the avars, evaluated in-process for each session. This way a single
+     * upstream change stream serves all the sessions regardless of their
+     * avars and jsonMode.
+     *
+     * If an avars-dependent stage is not a $match or uses operators not
+     * supported by BsonMatcher, all the stages are executed by MongoDB and
+     * the upstream change stream is shared only by the sessions with the
+     * same avars.
+     *
+     * The upstream change stream is opened when the websocket connection is
+     * established, see watch()
+     *
+     * @param exchange
+     */
+    private void prepareStream(HttpServerExchange exchange)
             throws QueryVariableNotBoundException,
             QueryNotFoundException,
             InvalidMetadataException {
-        SessionKey streamKey = new SessionKey(exchange);
         var request = MongoRequest.of(exchange);
 
-        List<BsonDocument> resolvedStages = getResolvedStagesAsList(request);
-
-        if (OPENED_STREAMS.add(streamKey)) {
-            MongoReactiveClientSingleton
-                    .getInstance()
-                    .getClient()
-                    .getDatabase(request.getDBName())
-                    .getCollection(request.getCollectionName())
-                    .watch(resolvedStages)
-                    .fullDocument(FullDocument.UPDATE_LOOKUP)
-                    .subscribe(new ChangeStreamSubscriber(streamKey));
-
-            return true;
-        } else {
-            return false;
+        var operation = getChangeStreamOperation(request);
+
+        var resolvedStages = operation
+                .getResolvedStagesAsList(request.getAggreationVars());
+
+        int varsIndependent = operation.getVarsIndependentStagesCount();
+
+        var filters = new BsonArray();
+
+        for (var stage : resolvedStages.subList(varsIndependent,
+                resolvedStages.size())) {
+            var match = stage.get("$match");
+
+            if (stage.size() == 1
+                    && match != null
+                    && match.isDocument()
+                    && BsonMatcher.isSupported(match.asDocument())) {
+                filters.add(match);
+            } else {
+                filters = null;
+                break;
+            }
+        }
+
+        var pipeline = filters == null
+                ? resolvedStages
+                : resolvedStages.subList(0, varsIndependent);
+
+        exchange.putAttachment(STREAM_KEY_ATTACHMENT_KEY,
+                new StreamKey(request.getUnmappedRequestUri(),
+                        request.getDBName(),
+                        request.getCollectionName(),
+                        pipeline));
+
+        exchange.putAttachment(FILTERS_ATTACHMENT_KEY,
+                filters == null ? new BsonArray() : filters);
+
+        if (operation.getBatching() != null) {
+            exchange.putAttachment(BATCHING_ATTACHMENT_KEY,
+                    operation.getBatching());
         }
     }
+
+    /**
+     * Adds the session to the upstream change stream identified by
+     * streamKey, opening it if needed
+     *
+     * @param streamKey
+     * @param session
+     * @param filters the $match filters evaluated in-process
+     * @param batching the batching options, can be null
+     * @param resumeAfter the resume token of the last notification received
+     * by the client, can be null
+     */
+    static void watch(StreamKey streamKey,
+            ChangeStreamSession session,
+            BsonArray filters,
+            ChangeStreamBatching batching,
+            BsonDocument resumeAfter) {
+        OPENED_STREAMS.compute(streamKey, (key, subscriber) -> {
+            if (subscriber != null
+                    && subscriber.add(session, filters, batching, resumeAfter)) {
+                return subscriber;
+            }
+
+            // no upstream change stream or it is being closed
+            var newSubscriber = new ChangeStreamSubscriber(key);
+
+            newSubscriber.add(session, filters, batching, resumeAfter);
+
+            newSubscriber.open();
+
+            LOGGER.debug("Opened upstream change stream {}", key);
+
+            return newSubscriber;
+        });
+    }
 }
@@ -33,24 +33,24 @@ import java.util.Set;
  */
 public class GuavaHashMultimapSingleton {
 
-    private final SetMultimap<SessionKey, ChangeStreamWebSocketSession> MULTIMAP = Multimaps
-            .synchronizedSetMultimap(Multimaps.synchronizedSetMultimap(HashMultimap.<SessionKey, ChangeStreamWebSocketSession>create()));
+    private final SetMultimap<SessionKey, ChangeStreamSession> MULTIMAP = Multimaps
+            .synchronizedSetMultimap(Multimaps.synchronizedSetMultimap(HashMultimap.<SessionKey, ChangeStreamSession>create()));
 
     public static GuavaHashMultimapSingleton getInstance() {
         return CacheManagerSingletonHolder.INSTANCE;
     }
 
-    public static Set<ChangeStreamWebSocketSession> get(SessionKey key) {
+    public static Set<ChangeStreamSession> get(SessionKey key) {
         return GuavaHashMultimapSingleton.getInstance().MULTIMAP.get(key);
     }
     
     
-    public static boolean add(SessionKey key, ChangeStreamWebSocketSession session) {
+    public static boolean add(SessionKey key, ChangeStreamSession session) {
         return GuavaHashMultimapSingleton.getInstance().MULTIMAP
                 .put(key, session);
     }
     
-    public static boolean remove(SessionKey key, ChangeStreamWebSocketSession session) {
+    public static boolean remove(SessionKey key, ChangeStreamSession session) {
         return GuavaHashMultimapSingleton.getInstance().MULTIMAP
                 .remove(key, session);
     }
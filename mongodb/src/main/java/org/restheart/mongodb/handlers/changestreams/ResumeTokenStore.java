@@ -0,0 +1,260 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import static com.mongodb.client.model.Filters.eq;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.MongoServiceConfiguration.CHANGE_STREAMS_RESUME_TOKENS_STORE;
+import org.restheart.mongodb.db.MongoClientSingleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the resume token of the last change event received by each upstream
+ * change stream, so that it can be resumed without missing events.
+ *
+ * The tokens are kept in memory and, with the FILE and MONGO stores,
+ * persisted once per second, so that the change streams can be resumed also
+ * after a restart.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ResumeTokenStore {
+    private static final Logger LOGGER
+            = LoggerFactory.getLogger(ResumeTokenStore.class);
+
+    private static final String COLLECTION = "_resume_tokens";
+
+    private static final String DEFAULT_FILE = "restheart-resume-tokens.json";
+
+    private static final long FLUSH_INTERVAL = 1000; // milliseconds
+
+    private static final JsonWriterSettings EXTENDED = JsonWriterSettings
+            .builder()
+            .outputMode(JsonMode.EXTENDED)
+            .build();
+
+    private final CHANGE_STREAMS_RESUME_TOKENS_STORE store;
+    private final Path file;
+    private final String db;
+
+    // the tokens by StreamKey.getId()
+    private final ConcurrentHashMap<String, BsonDocument> tokens
+            = new ConcurrentHashMap<>();
+
+    // the ids of the tokens changed or removed since the last flush
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    public static ResumeTokenStore getInstance() {
+        return ResumeTokenStoreHolder.INSTANCE;
+    }
+
+    private ResumeTokenStore() {
+        var conf = MongoServiceConfiguration.get();
+
+        this.store = conf.getChangeStreamsResumeTokensStore();
+
+        this.file = conf.getChangeStreamsResumeTokensFile() == null
+                ? Path.of(System.getProperty("java.io.tmpdir"), DEFAULT_FILE)
+                : Path.of(conf.getChangeStreamsResumeTokensFile());
+
+        this.db = conf.getChangeStreamsResumeTokensDb();
+
+        if (store != CHANGE_STREAMS_RESUME_TOKENS_STORE.MEMORY) {
+            load();
+
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("resume-tokens-flusher-%d")
+                    .build())
+                    .scheduleWithFixedDelay(this::flush,
+                            FLUSH_INTERVAL,
+                            FLUSH_INTERVAL,
+                            TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param streamKey
+     * @return the resume token of the upstream change stream, null if none
+     */
+    public BsonDocument get(StreamKey streamKey) {
+        return tokens.get(streamKey.getId());
+    }
+
+    /**
+     * @param streamKey
+     * @param token the _id of the last change event received
+     */
+    public void put(StreamKey streamKey, BsonDocument token) {
+        var id = streamKey.getId();
+
+        tokens.put(id, token);
+        dirty.add(id);
+    }
+
+    /**
+     * removes the resume token, when the upstream change stream is
+     * deliberately closed or cannot be resumed anymore
+     *
+     * @param streamKey
+     */
+    public void remove(StreamKey streamKey) {
+        var id = streamKey.getId();
+
+        if (tokens.remove(id) != null) {
+            dirty.add(id);
+        }
+    }
+
+    private void load() {
+        try {
+            switch (store) {
+                case FILE:
+                    if (Files.exists(file)) {
+                        var doc = BsonDocument.parse(Files
+                                .readString(file, StandardCharsets.UTF_8));
+
+                        doc.forEach((id, token) -> {
+                            if (token.isDocument()) {
+                                tokens.put(id, token.asDocument());
+                            }
+                        });
+                    }
+                    break;
+                case MONGO:
+                    for (var doc : collection().find()) {
+                        var id = doc.get("_id");
+                        var token = doc.get("token");
+
+                        if (id != null && id.isString()
+                                && token != null && token.isDocument()) {
+                            tokens.put(id.asString().getValue(),
+                                    token.asDocument());
+                        }
+                    }
+                    break;
+                default:
+            }
+
+            LOGGER.debug("Loaded {} change streams resume tokens",
+                    tokens.size());
+        } catch (Throwable t) {
+            LOGGER.warn("Cannot load the change streams resume tokens "
+                    + "from the {} store", store, t);
+        }
+    }
+
+    /**
+     * persists the tokens changed since the last flush
+     */
+    private synchronized void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        var ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+
+        try {
+            switch (store) {
+                case FILE:
+                    writeFile();
+                    break;
+                case MONGO:
+                    writeCollection(ids);
+                    break;
+                default:
+            }
+        } catch (Throwable t) {
+            // retry at next flush
+            dirty.addAll(ids);
+
+            LOGGER.warn("Cannot persist the change streams resume tokens "
+                    + "to the {} store", store, t);
+        }
+    }
+
+    private void writeFile() throws IOException {
+        var doc = new BsonDocument();
+
+        tokens.forEach(doc::put);
+
+        var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        Files.writeString(tmp, doc.toJson(EXTENDED), StandardCharsets.UTF_8);
+
+        Files.move(tmp, file,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeCollection(ArrayList<String> ids) {
+        var writes = new ArrayList<WriteModel<BsonDocument>>();
+
+        ids.forEach(id -> {
+            var token = tokens.get(id);
+
+            if (token == null) {
+                writes.add(new DeleteOneModel<>(eq("_id", id)));
+            } else {
+                writes.add(new ReplaceOneModel<>(eq("_id", id),
+                        new BsonDocument("_id", new BsonString(id))
+                                .append("token", token),
+                        new ReplaceOptions().upsert(true)));
+            }
+        });
+
+        collection().bulkWrite(writes, new BulkWriteOptions().ordered(false));
+    }
+
+    private MongoCollection<BsonDocument> collection() {
+        return MongoClientSingleton.getInstance()
+                .getClient()
+                .getDatabase(db)
+                .getCollection(COLLECTION, BsonDocument.class);
+    }
+
+    private static class ResumeTokenStoreHolder {
+        private static final ResumeTokenStore INSTANCE = new ResumeTokenStore();
+    }
+}
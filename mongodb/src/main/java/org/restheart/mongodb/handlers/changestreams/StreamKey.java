@@ -0,0 +1,118 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import java.util.List;
+import java.util.Objects;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.restheart.utils.JsonUtils;
+
+/**
+ * Identifies an upstream MongoDB change stream, i.e. a watch() on a
+ * namespace with a given pipeline. Sessions with different jsonMode or avars
+ * share the same upstream change stream if their pipelines are the same once
+ * the avars-dependent $match stages are evaluated in-process.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class StreamKey {
+    private final String url;
+    private final String db;
+    private final String collection;
+    private final List<BsonDocument> pipeline;
+
+    /**
+     * @param url the url of the stream, used for logging and metrics
+     * @param db
+     * @param collection
+     * @param pipeline the stages of the upstream change stream
+     */
+    public StreamKey(String url, String db, String collection,
+            List<BsonDocument> pipeline) {
+        this.url = url;
+        this.db = db;
+        this.collection = collection;
+        this.pipeline = List.copyOf(pipeline);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(db, collection, pipeline);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof StreamKey)) {
+            return false;
+        }
+
+        var other = (StreamKey) obj;
+
+        return Objects.equals(db, other.db)
+                && Objects.equals(collection, other.collection)
+                && Objects.equals(pipeline, other.pipeline);
+    }
+
+    @Override
+    public String toString() {
+        return url + " " + pipeline;
+    }
+
+    /**
+     * @return a stable identifier of the upstream change stream, used to
+     * persist its resume token
+     */
+    public String getId() {
+        return db + "." + collection + " "
+                + JsonUtils.toJson(new BsonArray(pipeline));
+    }
+
+    /**
+     * @return the url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the db
+     */
+    public String getDb() {
+        return db;
+    }
+
+    /**
+     * @return the collection
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return the pipeline
+     */
+    public List<BsonDocument> getPipeline() {
+        return pipeline;
+    }
+}
@@ -21,17 +21,39 @@
 package org.restheart.mongodb.handlers.collection;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.MongoException;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
 import org.bson.json.JsonParseException;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+import org.restheart.exchange.ExchangeKeys.EAGER_CURSOR_ALLOCATION_POLICY;
 import org.restheart.exchange.IllegalQueryParamenterException;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.handlers.PipelinedHandler;
+import org.restheart.mongodb.MongoServiceConfiguration;
 import org.restheart.mongodb.db.Database;
 import org.restheart.mongodb.db.DatabaseImpl;
+import org.restheart.mongodb.db.PageToken;
+import org.restheart.mongodb.utils.ContentInterceptors;
 import org.restheart.mongodb.utils.ResponseHelper;
+import org.restheart.mongodb.utils.SingleFlight;
 import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,8 +63,59 @@ import org.slf4j.LoggerFactory;
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class GetCollectionHandler extends PipelinedHandler {
+    /**
+     * the response header with the page_token of the next page
+     */
+    public static final HttpString NEXT_PAGE_TOKEN_HEADER
+            = HttpString.tryFromString("Next-Page-Token");
+
     private Database dbsDAO = new DatabaseImpl();
 
+    /**
+     * executes the count queries in parallel with the data queries if
+     * parallel-count is true, otherwise null. It has parallel-count-pool-size
+     * threads and queues as many counts, further counts are rejected and
+     * executed synchronously
+     */
+    private static final ExecutorService COUNT_EXECUTOR
+            = MongoServiceConfiguration.get().isParallelCount()
+            ? new ThreadPoolExecutor(
+                    MongoServiceConfiguration.get().getParallelCountPoolSize(),
+                    MongoServiceConfiguration.get().getParallelCountPoolSize(),
+                    0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(MongoServiceConfiguration.get()
+                            .getParallelCountPoolSize()),
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("collection-count-%d")
+                            .build())
+            : null;
+
+    /**
+     * caches the counts by namespace and filter for count-cache-ttl msecs,
+     * null if count-cache-ttl <= 0
+     */
+    private static final Cache<BsonDocument, Long> COUNT_CACHE
+            = MongoServiceConfiguration.get().getCountCacheTtl() > 0
+            ? CacheFactory.createLocalCache(1_000,
+                    Cache.EXPIRE_POLICY.AFTER_WRITE,
+                    MongoServiceConfiguration.get().getCountCacheTtl())
+            : null;
+
+    /**
+     * collapse identical concurrent counts and data queries if
+     * request-coalescing is true, otherwise null
+     */
+    private static final SingleFlight<BsonDocument, Long> COUNT_FLIGHTS
+            = MongoServiceConfiguration.get().isRequestCoalescing()
+            ? new SingleFlight<>(count -> count)
+            : null;
+
+    private static final SingleFlight<BsonDocument, BsonArray> DATA_FLIGHTS
+            = MongoServiceConfiguration.get().isRequestCoalescing()
+            ? new SingleFlight<>(BsonArray::clone)
+            : null;
+
     private static final Logger LOGGER = LoggerFactory
             .getLogger(GetCollectionHandler.class);
 
@@ -87,33 +160,154 @@ public class GetCollectionHandler extends PipelinedHandler {
             return;
         }
 
+        if (request.getStreamFormat() != null
+                && !ContentInterceptors.checkStreamable(request, response)) {
+            next(exchange);
+            return;
+        }
+
         var coll = dbsDAO.getCollection(request.getDBName(), 
                 request.getCollectionName());
 
         long size = -1;
+        Future<Long> parallelSize = null;
+
+        // streamed responses are plain arrays of documents, without count
+        if (request.isCount() && request.getStreamFormat() == null) {
+            var cs = request.getClientSession();
+            var filters = request.getFiltersDocument();
+
+            // counts are not cached nor run in parallel within client sessions:
+            // they can see uncommitted writes and sessions are not thread safe
+            var countCacheKey = COUNT_CACHE == null || cs != null
+                    ? null
+                    : new BsonDocument("ns",
+                            new BsonString(coll.getNamespace().getFullName()))
+                            .append("filter", filters);
+
+            var cached = countCacheKey == null
+                    ? null
+                    : COUNT_CACHE.get(countCacheKey);
 
-        if (request.isCount()) {
-            size = dbsDAO
-                    .getCollectionSize(request.getClientSession(),
-                            coll, request.getFiltersDocument());
+            if (cached != null && cached.isPresent()) {
+                size = cached.get();
+            } else if (COUNT_EXECUTOR != null
+                    && cs == null
+                    && request.getPagesize() > 0) {
+                try {
+                    parallelSize = COUNT_EXECUTOR.submit(()
+                            -> count(coll, filters, countCacheKey));
+                } catch (RejectedExecutionException ree) {
+                    // all threads busy and queue full
+                    LOGGER.debug("parallel count rejected, executing it synchronously");
+                    size = count(coll, filters, countCacheKey, cs);
+                }
+            } else {
+                size = count(coll, filters, countCacheKey, cs);
+            }
         }
 
         // ***** get data
         BsonArray data = null;
+        MongoCursor<BsonDocument> stream = null;
 
         if (request.getPagesize() > 0) {
 
             try {
-                data = dbsDAO.getCollectionData(
-                        request.getClientSession(),
-                        coll,
-                        request.getPage(),
-                        request.getPagesize(),
-                        request.getSortByDocument(),
-                        request.getFiltersDocument(),
-                        request.getHintDocument(),
-                        request.getProjectionDocument(),
-                        request.getCursorAllocationPolicy());
+                var sortBy = request.getSortByDocument();
+                var filters = request.getFiltersDocument();
+                var eager = request.getCursorAllocationPolicy();
+
+                // keyset pagination: the page_token is translated into a
+                // range filter and the page is counted from its position
+                if (request.getPageToken() != null) {
+                    PageToken token;
+
+                    try {
+                        token = PageToken.decode(request.getPageToken());
+                    } catch (IllegalArgumentException iae) {
+                        response.setInError(
+                                HttpStatus.SC_BAD_REQUEST,
+                                "illegal page_token paramenter",
+                                iae);
+                        cancel(parallelSize);
+                        next(exchange);
+                        return;
+                    }
+
+                    if (!token.matches(sortBy)) {
+                        response.setInError(
+                                HttpStatus.SC_BAD_REQUEST,
+                                "illegal page_token paramenter, "
+                                + "it does not match sort_by");
+                        cancel(parallelSize);
+                        next(exchange);
+                        return;
+                    }
+
+                    sortBy = token.getSort();
+                    filters = token.filter(filters);
+                    // pooled cursors are useless for range filters
+                    eager = EAGER_CURSOR_ALLOCATION_POLICY.NONE;
+                }
+
+                if (request.getStreamFormat() != null) {
+                    // the documents are sent while iterating the cursor
+                    stream = dbsDAO.getCollectionDataCursor(
+                            request.getClientSession(),
+                            coll,
+                            request.getPage(),
+                            request.getPagesize(),
+                            sortBy,
+                            filters,
+                            request.getHintDocument(),
+                            request.getProjectionDocument());
+                } else if (DATA_FLIGHTS != null
+                        && request.getClientSession() == null) {
+                    final var _sortBy = sortBy;
+                    final var _filters = filters;
+                    final var _eager = eager;
+
+                    // the filters include the read filter of the ACL;
+                    // sort and hint are keyed as json strings, since the
+                    // order of their keys matters and BsonDocument.equals()
+                    // ignores it
+                    var key = new BsonDocument("ns",
+                            new BsonString(coll.getNamespace().getFullName()))
+                            .append("filter", nullToEmpty(_filters))
+                            .append("sort", new BsonString(nullToEmpty(_sortBy).toJson()))
+                            .append("keys", nullToEmpty(request.getProjectionDocument()))
+                            .append("hint", new BsonString(nullToEmpty(request.getHintDocument()).toJson()))
+                            .append("page", new BsonInt32(request.getPage()))
+                            .append("pagesize", new BsonInt32(request.getPagesize()));
+
+                    data = DATA_FLIGHTS.execute(key, ()
+                            -> dbsDAO.getCollectionData(
+                                    null,
+                                    coll,
+                                    request.getPage(),
+                                    request.getPagesize(),
+                                    _sortBy,
+                                    _filters,
+                                    request.getHintDocument(),
+                                    request.getProjectionDocument(),
+                                    _eager));
+
+                    injectNextPageToken(exchange, data);
+                } else {
+                    data = dbsDAO.getCollectionData(
+                            request.getClientSession(),
+                            coll,
+                            request.getPage(),
+                            request.getPagesize(),
+                            sortBy,
+                            filters,
+                            request.getHintDocument(),
+                            request.getProjectionDocument(),
+                            eager);
+
+                    injectNextPageToken(exchange, data);
+                }
             } catch (JsonParseException jpe) {
                 // the filter expression is not a valid json string
                 LOGGER.debug("invalid filter expression {}",
@@ -122,6 +316,7 @@ public class GetCollectionHandler extends PipelinedHandler {
                         HttpStatus.SC_BAD_REQUEST,
                         "wrong request, filter expression is invalid",
                         jpe);
+                cancel(parallelSize);
                 next(exchange);
                 return;
             } catch (MongoException me) {
@@ -136,9 +331,11 @@ public class GetCollectionHandler extends PipelinedHandler {
                             HttpStatus.SC_BAD_REQUEST,
                             "wrong request, filter expression is invalid",
                             me);
+                    cancel(parallelSize);
                     next(exchange);
                     return;
                 } else {
+                    cancel(parallelSize);
                     throw me;
                 }
             }
@@ -146,14 +343,37 @@ public class GetCollectionHandler extends PipelinedHandler {
 
         if (exchange.isComplete()) {
             // if an error occured getting data, the exchange is already closed
+            cancel(parallelSize);
+
+            if (stream != null) {
+                stream.close();
+            }
+
             return;
         }
 
+        if (parallelSize != null) {
+            try {
+                size = parallelSize.get();
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ee.getCause();
+                } else {
+                    throw ee;
+                }
+            }
+        }
+
         try {
-            response.setContent(data);
-            response.setCount(size);
+            if (stream != null) {
+                response.setContentStream(stream, request.getStreamFormat());
+            } else {
+                response.setContent(data);
+                response.setCount(size);
+
+                response.setContentTypeAsJson();
+            }
 
-            response.setContentTypeAsJson();
             response.setStatusCode(HttpStatus.SC_OK);
 
             ResponseHelper
@@ -169,4 +389,83 @@ public class GetCollectionHandler extends PipelinedHandler {
             next(exchange);
         }
     }
+
+    private long count(MongoCollection<BsonDocument> coll,
+            BsonDocument filters,
+            BsonDocument countCacheKey) {
+        return count(coll, filters, countCacheKey, null);
+    }
+
+    private long count(MongoCollection<BsonDocument> coll,
+            BsonDocument filters,
+            BsonDocument countCacheKey,
+            ClientSession cs) {
+        long ret;
+
+        if (COUNT_FLIGHTS != null && cs == null) {
+            var key = new BsonDocument("ns",
+                    new BsonString(coll.getNamespace().getFullName()))
+                    .append("filter", nullToEmpty(filters));
+
+            try {
+                ret = COUNT_FLIGHTS.execute(key,
+                        () -> dbsDAO.getCollectionSize(null, coll, filters));
+            } catch (RuntimeException re) {
+                throw re;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            ret = dbsDAO.getCollectionSize(cs, coll, filters);
+        }
+
+        if (countCacheKey != null) {
+            COUNT_CACHE.put(countCacheKey, ret);
+        }
+
+        return ret;
+    }
+
+    private static BsonDocument nullToEmpty(BsonDocument doc) {
+        return doc == null ? new BsonDocument() : doc;
+    }
+
+    private static void cancel(Future<Long> parallelSize) {
+        if (parallelSize != null) {
+            parallelSize.cancel(false);
+        }
+    }
+
+    /**
+     * sets the Next-Page-Token response header when the page is full, i.e.
+     * there can be more documents to get with keyset pagination
+     *
+     * @param exchange
+     * @param data
+     */
+    private void injectNextPageToken(HttpServerExchange exchange,
+            BsonArray data) {
+        var request = MongoRequest.of(exchange);
+
+        if (data == null
+                || data.isEmpty()
+                || data.size() < request.getPagesize()) {
+            return;
+        }
+
+        var last = data.get(data.size() - 1);
+
+        if (!last.isDocument()) {
+            return;
+        }
+
+        var token = PageToken.after(request.getSortByDocument(),
+                request.getProjectionDocument(),
+                last.asDocument());
+
+        if (token != null) {
+            exchange.getResponseHeaders().put(NEXT_PAGE_TOKEN_HEADER,
+                    token.encode());
+        }
+    }
 }
@@ -25,6 +25,7 @@ import static com.mongodb.client.model.Filters.eq;
 import io.undertow.server.HttpServerExchange;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.Optional;
 import org.bson.BsonDocument;
 import org.bson.BsonObjectId;
 import org.bson.BsonString;
@@ -44,9 +45,11 @@ import static org.restheart.exchange.ExchangeKeys.TYPE.SCHEMA_STORE_META;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.handlers.PipelinedHandler;
+import org.restheart.mongodb.MongoServiceConfiguration;
 import org.restheart.mongodb.db.DatabaseImpl;
 import org.restheart.mongodb.utils.RequestHelper;
 import org.restheart.mongodb.utils.ResponseHelper;
+import org.restheart.mongodb.utils.SingleFlight;
 import org.restheart.utils.HttpStatus;
 import org.restheart.utils.JsonUtils;
 import org.slf4j.Logger;
@@ -59,6 +62,15 @@ import org.slf4j.LoggerFactory;
 public class GetDocumentHandler extends PipelinedHandler {
     private final DatabaseImpl dbsDAO = new DatabaseImpl();
     
+    /**
+     * collapses identical concurrent queries if request-coalescing is true,
+     * otherwise null
+     */
+    private static final SingleFlight<BsonDocument, Optional<BsonDocument>> FLIGHTS
+            = MongoServiceConfiguration.get().isRequestCoalescing()
+            ? new SingleFlight<>(doc -> doc.map(BsonDocument::clone))
+            : null;
+
     private static final Logger LOGGER =
             LoggerFactory.getLogger(GetDocumentHandler.class);
 
@@ -150,15 +162,39 @@ public class GetDocumentHandler extends PipelinedHandler {
                 request.getDBName(),
                 collName);
 
-        BsonDocument document = cs == null
-                ? coll
-                        .find(query)
-                        .projection(fieldsToReturn)
-                        .first()
-                : coll
-                        .find(cs, query)
-                        .projection(fieldsToReturn)
-                        .first();
+        final var _query = query;
+
+        BsonDocument document;
+
+        if (cs != null) {
+            document = coll
+                    .find(cs, query)
+                    .projection(fieldsToReturn)
+                    .first();
+        } else if (FLIGHTS != null) {
+            // the filters include the read filter of the ACL
+            var key = new BsonDocument("ns",
+                    new BsonString(coll.getNamespace().getFullName()))
+                    .append("_id", docId)
+                    .append("shardKey", request.getShardKey() == null
+                            ? new BsonDocument()
+                            : request.getShardKey())
+                    .append("filter", request.getFiltersDocument() == null
+                            ? new BsonDocument()
+                            : request.getFiltersDocument())
+                    .append("keys", fieldsToReturn);
+
+            document = FLIGHTS.execute(key, () -> Optional.ofNullable(coll
+                    .find(_query)
+                    .projection(fieldsToReturn)
+                    .first()))
+                    .orElse(null);
+        } else {
+            document = coll
+                    .find(query)
+                    .projection(fieldsToReturn)
+                    .first();
+        }
 
         if (document == null) {
             String errMsg = request.getDocumentId() == null
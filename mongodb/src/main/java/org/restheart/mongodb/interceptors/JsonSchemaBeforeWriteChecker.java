@@ -50,6 +50,11 @@ import org.slf4j.LoggerFactory;
  * This intercetor is able to check PUT and POST requests that don't use update
  * operators. PATCH requests are checked by jsonSchemaAfterWrite
  * <br><br>
+ * The documents of bulk POST requests with Content-Type application/x-ndjson
+ * are read from the request channel after this interceptor is executed; they
+ * are checked one by one by BulkPostCollectionHandler using getSchema() and
+ * violations()
+ * <br><br>
  * Note that checking bulk PATCH, i.e. PATCH /coll/*, is not supported. In this
  * case the optional metadata property 'skipNotSuppored' controls the behaviour:
  * if true, the request is not checked and executed, if false the request fails.
@@ -114,6 +119,45 @@ public class JsonSchemaBeforeWriteChecker implements MongoInterceptor {
             }
         }
 
+        var theschema = getSchema(request, response);
+
+        if (theschema == null) {
+            return;
+        }
+
+        var schemaId = args.get(SCHEMA_ID_PROPERTY);
+
+        documentsToCheck(request, response)
+                .stream()
+                .forEachOrdered(doc -> {
+                    var errMsg = violations(theschema, doc);
+
+                    if (errMsg != null) {
+                        response.setInError(HttpStatus.SC_BAD_REQUEST,
+                                "Request content violates schema "
+                                + JsonUtils.getIdAsString(schemaId, true)
+                                + ": "
+                                + errMsg);
+                    }
+                });
+    }
+
+    /**
+     * Gets the JSON schema specified by the 'jsonSchema' collection metadata
+     *
+     * Also used by BulkPostCollectionHandler to check the documents of bulk
+     * POST requests with ndjson content, that are read one by one from the
+     * request channel and are not available to this interceptor.
+     *
+     * @param request
+     * @param response
+     * @return the schema or null, in this case the response is set in error
+     */
+    public static Schema getSchema(MongoRequest request, MongoResponse response) {
+        var args = request.getCollectionProps()
+                .get("jsonSchema")
+                .asDocument();
+
         BsonValue _schemaStoreDb = args.get(SCHEMA_STORE_DB_PROPERTY);
         String schemaStoreDb;
 
@@ -123,7 +167,7 @@ public class JsonSchemaBeforeWriteChecker implements MongoInterceptor {
             response.setInError(HttpStatus.SC_INTERNAL_SERVER_ERROR,
                     "wrong 'jsonSchema': missing property "
                     + SCHEMA_ID_PROPERTY);
-            return;
+            return null;
         }
 
         if (_schemaStoreDb == null) {
@@ -137,7 +181,7 @@ public class JsonSchemaBeforeWriteChecker implements MongoInterceptor {
                     + "property "
                     + SCHEMA_STORE_DB_PROPERTY
                     + " must be a string");
-            return;
+            return null;
         }
 
         try {
@@ -146,7 +190,7 @@ public class JsonSchemaBeforeWriteChecker implements MongoInterceptor {
             response.setInError(HttpStatus.SC_INTERNAL_SERVER_ERROR,
                     "wrong 'jsonSchema': "
                     + "schema 'id' is not valid", ex);
-            return;
+            return null;
         }
 
         Schema theschema;
@@ -156,12 +200,7 @@ public class JsonSchemaBeforeWriteChecker implements MongoInterceptor {
                     .getInstance()
                     .get(schemaStoreDb, schemaId);
         } catch (JsonSchemaNotFoundException ex) {
-            response.setInError(HttpStatus.SC_INTERNAL_SERVER_ERROR,
-                    "wrong 'jsonSchema': schema "
-                    + schemaStoreDb + "/" + _SCHEMAS + "/"
-                    + JsonUtils.getIdAsString(schemaId, false)
-                    + " not found");
-            return;
+            theschema = null;
         }
 
         if (Objects.isNull(theschema)) {
@@ -170,45 +209,46 @@ public class JsonSchemaBeforeWriteChecker implements MongoInterceptor {
                     + schemaStoreDb + "/" + _SCHEMAS + "/"
                     + JsonUtils.getIdAsString(schemaId, false)
                     + " not found");
-            return;
+            return null;
         }
 
-        documentsToCheck(request, response)
-                .stream()
-                .forEachOrdered(doc -> {
+        return theschema;
+    }
 
-                    try {
-                        theschema.validate(doc);
-                    } catch (ValidationException ve) {
-                        var errors = new ArrayList<String>();
+    /**
+     * @param schema
+     * @param doc
+     * @return null if doc is valid, otherwise the violations of the schema
+     */
+    public static String violations(Schema schema, JSONObject doc) {
+        try {
+            schema.validate(doc);
+            return null;
+        } catch (ValidationException ve) {
+            var errors = new ArrayList<String>();
 
-                        errors.add(ve.getMessage().replaceAll("#: ", ""));
+            errors.add(ve.getMessage().replaceAll("#: ", ""));
 
-                        ve.getCausingExceptions().stream()
-                                .map(ValidationException::getMessage)
-                                .forEach(errors::add);
+            ve.getCausingExceptions().stream()
+                    .map(ValidationException::getMessage)
+                    .forEach(errors::add);
 
-                        var errMsgBuilder = new StringBuilder();
+            var errMsgBuilder = new StringBuilder();
 
-                        errors.stream()
-                                .map(e -> e.replaceAll("#: ", ""))
-                                .forEachOrdered(e -> errMsgBuilder.append(e).append(", "));
+            errors.stream()
+                    .map(e -> e.replaceAll("#: ", ""))
+                    .forEachOrdered(e -> errMsgBuilder.append(e).append(", "));
 
-                        var errMsg = errMsgBuilder.toString();
+            var errMsg = errMsgBuilder.toString();
 
-                        if (errMsg.length() > 2
-                                && ", ".equals(errMsg.substring(errMsg.length() - 2, errMsg.length()))) {
-                            errMsg = errMsg.substring(0, errMsg.length() - 2);
+            if (errMsg.length() > 2
+                    && ", ".equals(errMsg.substring(errMsg.length() - 2, errMsg.length()))) {
+                errMsg = errMsg.substring(0, errMsg.length() - 2);
 
-                        }
+            }
 
-                        response.setInError(HttpStatus.SC_BAD_REQUEST,
-                                "Request content violates schema "
-                                + JsonUtils.getIdAsString(schemaId, true)
-                                + ": "
-                                + errMsg);
-                    }
-                });
+            return errMsg;
+        }
     }
 
     List<JSONObject> documentsToCheck(MongoRequest request, MongoResponse response) {
@@ -234,7 +274,10 @@ public class JsonSchemaBeforeWriteChecker implements MongoInterceptor {
 
     @Override
     public boolean resolve(MongoRequest request, MongoResponse response) {
+        // the documents of ndjson bulk POST requests are checked
+        // one by one by BulkPostCollectionHandler
         return request.isHandledBy("mongo")
+                && !request.isNdjsonPost()
                 && ((request.isWriteDocument() && !request.isPatch())
                 || (request.isPatch() && request.isBulkDocuments()))
                 && request.getCollectionProps() != null
@@ -20,20 +20,41 @@
  */
 package org.restheart.mongodb.services;
 
-import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
 import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.json.JsonParseException;
 import org.restheart.exchange.BsonFromCsvRequest;
 import org.restheart.exchange.BsonResponse;
+import org.restheart.mongodb.MongoServiceConfiguration;
 import org.restheart.mongodb.db.MongoClientSingleton;
 import org.restheart.plugins.RegisterPlugin;
 import org.restheart.plugins.Service;
@@ -54,7 +75,19 @@ import org.restheart.utils.JsonUtils;
  * - values=&lt;values&gt; optional (default: no values) values of additional
  * props to add to each row<br>
  * defined in conf file) of a tranformer to apply to imported data - update
- * optional (default: no).use data to update matching documents");
+ * optional (default: no).use data to update matching documents");<br>
+ * - batchSize=&lt;value&gt; optional (default: 1000) when update=true, number
+ * of rows written by each unordered bulk write, capped to
+ * csv-loader-max-batch-size<br>
+ * - parallelism=&lt;value&gt; optional (default: 1, max: 8) when update=true,
+ * number of bulk writes executed concurrently, capped to csv-loader-pool-size
+ * that is the number of threads shared by all the requests<br>
+ * - stream=&lt;value&gt; optional (default: false) if true, the csv is parsed
+ * from the request channel and the documents are written in batches while
+ * it is uploaded, with constant memory and no content size limit; batchSize
+ * and parallelism apply to inserts as well<br>
+ * when update=true or stream=true, the response reports the matched, modified and upserted
+ * rows and the errors, if any (with status 207 Multi-Status)
  *
  * @author Andrea Di Cesare <andrea@softinstigate.com>
  */
@@ -76,7 +109,10 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
             + "values=<values> optional (default: no values) values of additional props to add to each row, "
             + "transformer=<tname> optional (default: no transformer). name of an interceptor to transform data, "
             + "update=<value> optional (default: false). if true, update matching documents (requires id to be set), "
-            + "upsert=<value> optional (default: true). when update=true, create new documents when not matching existing ones.";
+            + "upsert=<value> optional (default: true). when update=true, create new documents when not matching existing ones, "
+            + "batchSize=<value> optional (default: " + CsvRequestParams.DEFAULT_BATCH_SIZE + ", max: csv-loader-max-batch-size). when update=true, number of rows per bulk write, "
+            + "parallelism=<value> optional (default: 1, max: " + CsvRequestParams.MAX_PARALLELISM + "). when update=true, number of bulk writes executed concurrently, "
+            + "stream=<value> optional (default: false). if true, documents are written while the csv is uploaded, with no content size limit.";
 
     private static final String ERROR_NO_ID = "id must be set when update=true";
 
@@ -86,9 +122,29 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
 
     private static final String ERROR_PARSING_DATA = "Error parsing CSV, see logs for more information";
 
-    private final static FindOneAndUpdateOptions FAU_NO_UPSERT_OPS = new FindOneAndUpdateOptions().upsert(false);
+    private final static UpdateOptions U_NO_UPSERT_OPS = new UpdateOptions().upsert(false);
 
-    private final static FindOneAndUpdateOptions FAU_WITH_UPSERT_OPS = new FindOneAndUpdateOptions().upsert(true);
+    private final static UpdateOptions U_WITH_UPSERT_OPS = new UpdateOptions().upsert(true);
+
+    /**
+     * writes the batches of the parallel updates with csv-loader-pool-size
+     * threads shared by all the requests; created on first use, after the
+     * configuration has been loaded
+     */
+    private static class ExecutorHolder {
+        private static final int POOL_SIZE = Math.max(1,
+                MongoServiceConfiguration.get().getCsvLoaderPoolSize());
+
+        private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(
+                POOL_SIZE,
+                POOL_SIZE,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(POOL_SIZE),
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("csv-loader-%d")
+                        .build());
+    }
 
     /**
      *
@@ -119,47 +175,29 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
                     if (params.update && params.idIdx < 0) {
                         response.setInError(HttpStatus.SC_BAD_REQUEST, ERROR_NO_ID);
                     } else {
+                        var mcoll = MongoClientSingleton.getInstance().getClient()
+                                .getDatabase(params.db).getCollection(params.coll, BsonDocument.class);
+
+                        if (request.isStreaming()) {
+                            var report = streamingLoad(request, mcoll, params);
+
+                            response.setContent(report.toBson());
+                            response.setStatusCode(report.errors.isEmpty()
+                                    ? HttpStatus.SC_OK
+                                    : HttpStatus.SC_MULTI_STATUS);
+                            return;
+                        }
+
                         BsonArray documents = request.getContent();
 
                         if (documents != null && documents.size() > 0) {
-                            var mcoll = MongoClientSingleton.getInstance().getClient()
-                                    .getDatabase(params.db).getCollection(params.coll, BsonDocument.class);
-
-                            if (params.update && !params.upsert) {
-                                documents.stream()
-                                        .map(doc -> doc.asDocument())
-                                        // add props specified via keys and values qparams
-                                        .map(doc -> addProps(params, doc))
-                                        .forEach(doc -> {
-                                            BsonDocument updateQuery = new BsonDocument("_id", doc.remove("_id"));
-
-                                            // for upate import, take _filter property into account
-                                            // for instance, a filter allows to use $ positional array operator
-                                            BsonValue _filter = doc.remove(FILTER_PROPERTY);
-
-                                            if (_filter != null && _filter.isDocument()) {
-                                                updateQuery.putAll(_filter.asDocument());
-                                            }
-                                            if (params.upsert) {
-                                                mcoll.findOneAndUpdate(updateQuery, new BsonDocument("$set", doc),
-                                                        FAU_WITH_UPSERT_OPS);
-                                            } else {
-
-                                                mcoll.findOneAndUpdate(updateQuery, new BsonDocument("$set", doc),
-                                                        FAU_NO_UPSERT_OPS);
-                                            }
-                                        });
-                            } else if (params.update && params.upsert) {
-                                documents.stream()
-                                        .map(doc -> doc.asDocument())
-                                        // add props specified via keys and values qparams
-                                        .map(doc -> addProps(params, doc))
-                                        .forEach(doc -> {
-                                            var updateQuery = new BsonDocument("_id", doc.remove("_id"));
+                            if (params.update) {
+                                var report = bulkUpdate(mcoll, documents, params);
 
-                                            mcoll.findOneAndUpdate(updateQuery, new BsonDocument("$set", doc),
-                                                    FAU_WITH_UPSERT_OPS);
-                                        });
+                                response.setContent(report.toBson());
+                                response.setStatusCode(report.errors.isEmpty()
+                                        ? HttpStatus.SC_OK
+                                        : HttpStatus.SC_MULTI_STATUS);
                             } else {
                                 var docList = documents.stream()
                                         .map(doc -> doc.asDocument())
@@ -168,8 +206,8 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
                                         .collect(Collectors.toList());
 
                                 mcoll.insertMany(docList);
+                                response.setStatusCode(HttpStatus.SC_OK);
                             }
-                            response.setStatusCode(HttpStatus.SC_OK);
                         } else {
                             response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
                         }
@@ -185,6 +223,94 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
         }
     }
 
+    /**
+     * updates the documents with unordered bulk writes of params.batchSize
+     * rows; up to params.parallelism batches are written concurrently
+     *
+     * @param mcoll
+     * @param documents
+     * @param params
+     * @return the aggregated report of the bulk writes
+     */
+    private BulkReport bulkUpdate(MongoCollection<BsonDocument> mcoll,
+            BsonArray documents,
+            CsvRequestParams params) {
+        var writer = new BatchWriter(mcoll,
+                params.batchSize,
+                Math.min(params.parallelism, ExecutorHolder.POOL_SIZE),
+                ExecutorHolder.EXECUTOR);
+
+        documents.stream()
+                .map(doc -> doc.asDocument())
+                .forEach(doc -> writer.add(writeModel(params, doc)));
+
+        return writer.close();
+    }
+
+    /**
+     * writes the documents as they are parsed from the request channel, so
+     * that at most params.batchSize * (params.parallelism + 1) rows are held
+     * in memory
+     *
+     * @param request
+     * @param mcoll
+     * @param params
+     * @return the aggregated report of the bulk writes
+     * @throws IOException
+     */
+    private BulkReport streamingLoad(BsonFromCsvRequest request,
+            MongoCollection<BsonDocument> mcoll,
+            CsvRequestParams params) throws IOException {
+        var writer = new BatchWriter(mcoll,
+                params.batchSize,
+                Math.min(params.parallelism, ExecutorHolder.POOL_SIZE),
+                ExecutorHolder.EXECUTOR);
+
+        try {
+            request.streamDocuments(doc -> writer.add(writeModel(params, doc)));
+        } catch (IOException | RuntimeException e) {
+            // the rows already parsed are written anyway
+            try {
+                writer.close();
+            } catch (RuntimeException re) {
+                e.addSuppressed(re);
+            }
+
+            throw e;
+        }
+
+        return writer.close();
+    }
+
+    /**
+     * @param params
+     * @param doc
+     * @return the UpdateOneModel if update=true, otherwise the InsertOneModel
+     */
+    private WriteModel<BsonDocument> writeModel(CsvRequestParams params,
+            BsonDocument doc) {
+        // add props specified via keys and values qparams
+        addProps(params, doc);
+
+        if (!params.update) {
+            return new InsertOneModel<>(doc);
+        }
+
+        var updateQuery = new BsonDocument("_id", doc.remove("_id"));
+
+        // for upate import, take _filter property into account
+        // for instance, a filter allows to use $ positional array operator
+        BsonValue _filter = doc.remove(FILTER_PROPERTY);
+
+        if (_filter != null && _filter.isDocument()) {
+            updateQuery.putAll(_filter.asDocument());
+        }
+
+        return new UpdateOneModel<>(updateQuery,
+                new BsonDocument("$set", doc),
+                params.upsert ? U_WITH_UPSERT_OPS : U_NO_UPSERT_OPS);
+    }
+
     private boolean doesApply(BsonFromCsvRequest request) {
         return request.isPost();
     }
@@ -232,7 +358,183 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
     }
 }
 
+/**
+ * the aggregated result of the bulk writes of an import
+ */
+class BulkReport {
+    int inserted = 0;
+    int matched = 0;
+    int modified = 0;
+    int upserted = 0;
+    final List<BsonDocument> errors = new ArrayList<>();
+
+    synchronized void add(BulkWriteResult result) {
+        if (result.wasAcknowledged()) {
+            inserted += result.getInsertedCount();
+            matched += result.getMatchedCount();
+            modified += result.getModifiedCount();
+            upserted += result.getUpserts().size();
+        }
+    }
+
+    /**
+     * @param wes
+     * @param offset the index of the first row of the batch
+     */
+    synchronized void addErrors(List<BulkWriteError> wes, int offset) {
+        wes.forEach(error -> {
+            var errorDoc = new BsonDocument();
+
+            errorDoc.put("index", new BsonInt32(offset + error.getIndex()));
+            errorDoc.put("mongodbErrorCode", new BsonInt32(error.getCode()));
+            errorDoc.put("message", new BsonString(error.getMessage()));
+
+            errors.add(errorDoc);
+        });
+    }
+
+    synchronized BsonDocument toBson() {
+        var rep = new BsonDocument();
+
+        rep.put("inserted", new BsonInt32(inserted));
+        rep.put("matched", new BsonInt32(matched));
+        rep.put("modified", new BsonInt32(modified));
+        rep.put("upserted", new BsonInt32(upserted));
+
+        if (!errors.isEmpty()) {
+            var _errors = new BsonArray();
+            errors.sort((e1, e2) -> Integer.compare(
+                    e1.getInt32("index").getValue(),
+                    e2.getInt32("index").getValue()));
+            _errors.addAll(errors);
+            rep.put("errors", _errors);
+        }
+
+        return rep;
+    }
+}
+
+/**
+ * writes the models with unordered bulk writes of batchSize models; up to
+ * parallelism batches are written concurrently by the executor. add() blocks
+ * while parallelism batches are being written; if the executor rejects a
+ * batch, it is written by the calling thread. Not thread safe.
+ */
+class BatchWriter {
+    private final static BulkWriteOptions UNORDERED_OPS = new BulkWriteOptions().ordered(false);
+
+    private final MongoCollection<BsonDocument> coll;
+    private final int batchSize;
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final BulkReport report = new BulkReport();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    private List<WriteModel<BsonDocument>> batch;
+
+    // the index of the first model of the current batch
+    private int offset = 0;
+
+    BatchWriter(MongoCollection<BsonDocument> coll,
+            int batchSize,
+            int parallelism,
+            ExecutorService executor) {
+        this.coll = coll;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.executor = executor;
+        this.permits = new Semaphore(parallelism);
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    void add(WriteModel<BsonDocument> model) {
+        batch.add(model);
+
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * writes the last batch and waits for the pending ones
+     *
+     * @return the aggregated report
+     */
+    BulkReport close() {
+        flush();
+
+        permits.acquireUninterruptibly(parallelism);
+        permits.release(parallelism);
+
+        checkFailure();
+
+        return report;
+    }
+
+    private void flush() {
+        checkFailure();
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        var _batch = batch;
+        var _offset = offset;
+
+        batch = new ArrayList<>(batchSize);
+        offset += _batch.size();
+
+        if (parallelism == 1) {
+            write(_batch, _offset);
+            return;
+        }
+
+        permits.acquireUninterruptibly();
+
+        try {
+            executor.execute(() -> {
+                try {
+                    write(_batch, _offset);
+                } catch (RuntimeException re) {
+                    failure.compareAndSet(null, re);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            // the threads shared by all the requests are busy and the
+            // queue is full: the caller writes the batch itself
+            try {
+                write(_batch, _offset);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void write(List<WriteModel<BsonDocument>> _batch, int _offset) {
+        try {
+            report.add(coll.bulkWrite(_batch, UNORDERED_OPS));
+        } catch (MongoBulkWriteException mbwe) {
+            report.add(mbwe.getWriteResult());
+            report.addErrors(mbwe.getWriteErrors(), _offset);
+        }
+    }
+
+    private void checkFailure() {
+        var f = failure.get();
+
+        if (f != null) {
+            throw f;
+        }
+    }
+}
+
 class CsvRequestParams {
+    static final int DEFAULT_BATCH_SIZE = 1000;
+    static final int MAX_PARALLELISM = 8;
+
     private static final String ID_IDX_QPARAM_NAME = "id";
     private static final String SEPARATOR_QPARAM_NAME = "sep";
     private static final String DB_QPARAM_NAME = "db";
@@ -241,6 +543,8 @@ class CsvRequestParams {
     private static final String PROP_VALUES_NAME = "values";
     private static final String UPDATE_QPARAM_NAME = "update";
     private static final String UPSERT_QPARAM_NAME = "upsert";
+    private static final String BATCH_SIZE_QPARAM_NAME = "batchSize";
+    private static final String PARALLELISM_QPARAM_NAME = "parallelism";
 
     public final int idIdx;
     public final String db;
@@ -248,6 +552,8 @@ class CsvRequestParams {
     public final String sep;
     public final boolean update;
     public final boolean upsert;
+    public final int batchSize;
+    public final int parallelism;
 
     public final Deque<String> props;
     public final Deque<String> values;
@@ -259,6 +565,8 @@ class CsvRequestParams {
         Deque<String> _id = exchange.getQueryParameters().get(ID_IDX_QPARAM_NAME);
         Deque<String> _update = exchange.getQueryParameters().get(UPDATE_QPARAM_NAME);
         Deque<String> _upsert = exchange.getQueryParameters().get(UPSERT_QPARAM_NAME);
+        Deque<String> _batchSize = exchange.getQueryParameters().get(BATCH_SIZE_QPARAM_NAME);
+        Deque<String> _parallelism = exchange.getQueryParameters().get(PARALLELISM_QPARAM_NAME);
 
         this.props = exchange.getQueryParameters().get(PROP_KEYS_NAME);
         this.values = exchange.getQueryParameters().get(PROP_VALUES_NAME);
@@ -269,12 +577,29 @@ class CsvRequestParams {
         sep = _sep != null ? _sep.size() > 0 ? _sep.getFirst() : "" : ",";
         String _idIdx = _id != null ? _id.size() > 0 ? _id.getFirst() : "-1" : "-1";
 
+        String __batchSize = _batchSize != null && _batchSize.size() > 0
+                ? _batchSize.getFirst()
+                : "" + DEFAULT_BATCH_SIZE;
+
+        String __parallelism = _parallelism != null && _parallelism.size() > 0
+                ? _parallelism.getFirst()
+                : "1";
+
         try {
             idIdx = Integer.parseInt(_idIdx);
+            // each batch is held in memory, up to parallelism + 1 of them
+            batchSize = Math.min(Integer.parseInt(__batchSize),
+                    Math.max(1, MongoServiceConfiguration.get()
+                            .getCsvLoaderMaxBatchSize()));
+            parallelism = Integer.parseInt(__parallelism);
         } catch (NumberFormatException nfe) {
             throw new IllegalArgumentException(nfe);
         }
 
+        if (batchSize < 1 || parallelism < 1 || parallelism > MAX_PARALLELISM) {
+            throw new IllegalArgumentException("wrong batchSize or parallelism");
+        }
+
         update = _update != null && (_update.isEmpty() || "true".equalsIgnoreCase(_update.getFirst()));
 
         upsert = _upsert == null
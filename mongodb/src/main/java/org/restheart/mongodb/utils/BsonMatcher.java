@@ -0,0 +1,390 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.BsonValue;
+
+/**
+ * Evaluates MongoDB query filters, as used in $match stages, against a
+ * BsonDocument in-process.
+ *
+ * Only a subset of the query language is supported: implicit equality on
+ * dotted paths, the comparison operators $eq, $ne, $gt, $gte, $lt, $lte, $in,
+ * $nin, the element operator $exists and the logical operators $and, $or,
+ * $nor and $not. Use isSupported() to check a filter before evaluating it
+ * with matches().
+ *
+ * Numbers are compared by value regardless of their type; values of
+ * different types are never ordered, as with the type bracketing of MongoDB.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class BsonMatcher {
+    private static final Set<String> LOGICAL_OPERATORS
+            = Set.of("$and", "$or", "$nor");
+
+    private static final Set<String> FIELD_OPERATORS
+            = Set.of("$eq", "$ne", "$gt", "$gte", "$lt", "$lte",
+                    "$in", "$nin", "$exists", "$not");
+
+    private BsonMatcher() {
+    }
+
+    /**
+     * @param filter
+     * @return true if the filter only uses the supported operators
+     */
+    public static boolean isSupported(BsonDocument filter) {
+        if (filter == null) {
+            return false;
+        }
+
+        for (var entry : filter.entrySet()) {
+            var key = entry.getKey();
+            var value = entry.getValue();
+
+            if (LOGICAL_OPERATORS.contains(key)) {
+                if (!value.isArray() || value.asArray().isEmpty()) {
+                    return false;
+                }
+
+                for (var sub : value.asArray()) {
+                    if (!sub.isDocument() || !isSupported(sub.asDocument())) {
+                        return false;
+                    }
+                }
+            } else if (key.startsWith("$")) {
+                return false;
+            } else if (isOperatorExpression(value)) {
+                if (!isSupportedExpression(value.asDocument())) {
+                    return false;
+                }
+            } else if (!isSupportedValue(value)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isSupportedExpression(BsonDocument expression) {
+        for (var entry : expression.entrySet()) {
+            var op = entry.getKey();
+            var arg = entry.getValue();
+
+            if (!FIELD_OPERATORS.contains(op)) {
+                return false;
+            }
+
+            switch (op) {
+                case "$in":
+                case "$nin":
+                    if (!arg.isArray()
+                            || !arg.asArray().stream()
+                                    .allMatch(BsonMatcher::isSupportedValue)) {
+                        return false;
+                    }
+                    break;
+                case "$not":
+                    if (!isOperatorExpression(arg)
+                            || !isSupportedExpression(arg.asDocument())) {
+                        return false;
+                    }
+                    break;
+                case "$exists":
+                    break;
+                default:
+                    if (!isSupportedValue(arg)) {
+                        return false;
+                    }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isSupportedValue(BsonValue value) {
+        return !value.isRegularExpression()
+                && !value.isJavaScript()
+                && !value.isJavaScriptWithScope();
+    }
+
+    /**
+     * @param value
+     * @return true if value is a document whose keys are all operators
+     */
+    private static boolean isOperatorExpression(BsonValue value) {
+        return value.isDocument()
+                && !value.asDocument().isEmpty()
+                && value.asDocument().keySet().stream()
+                        .allMatch(k -> k.startsWith("$"));
+    }
+
+    /**
+     * @param filter a filter for which isSupported() returns true
+     * @param doc
+     * @return true if doc matches the filter
+     */
+    public static boolean matches(BsonDocument filter, BsonDocument doc) {
+        for (var entry : filter.entrySet()) {
+            var key = entry.getKey();
+            var value = entry.getValue();
+
+            boolean ret;
+
+            switch (key) {
+                case "$and":
+                    ret = value.asArray().stream()
+                            .allMatch(sub -> matches(sub.asDocument(), doc));
+                    break;
+                case "$or":
+                    ret = value.asArray().stream()
+                            .anyMatch(sub -> matches(sub.asDocument(), doc));
+                    break;
+                case "$nor":
+                    ret = value.asArray().stream()
+                            .noneMatch(sub -> matches(sub.asDocument(), doc));
+                    break;
+                default:
+                    var values = resolve(doc, key);
+
+                    ret = isOperatorExpression(value)
+                            ? matchesExpression(values, value.asDocument())
+                            : equals(values, value);
+            }
+
+            if (!ret) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean matchesExpression(List<BsonValue> values,
+            BsonDocument expression) {
+        for (var entry : expression.entrySet()) {
+            var arg = entry.getValue();
+
+            boolean ret;
+
+            switch (entry.getKey()) {
+                case "$eq":
+                    ret = equals(values, arg);
+                    break;
+                case "$ne":
+                    ret = !equals(values, arg);
+                    break;
+                case "$gt":
+                    ret = compares(values, arg, c -> c > 0);
+                    break;
+                case "$gte":
+                    ret = compares(values, arg, c -> c >= 0);
+                    break;
+                case "$lt":
+                    ret = compares(values, arg, c -> c < 0);
+                    break;
+                case "$lte":
+                    ret = compares(values, arg, c -> c <= 0);
+                    break;
+                case "$in":
+                    ret = arg.asArray().stream()
+                            .anyMatch(el -> equals(values, el));
+                    break;
+                case "$nin":
+                    ret = arg.asArray().stream()
+                            .noneMatch(el -> equals(values, el));
+                    break;
+                case "$exists":
+                    ret = values.isEmpty() != isTruthy(arg);
+                    break;
+                case "$not":
+                    ret = !matchesExpression(values, arg.asDocument());
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported operator "
+                            + entry.getKey());
+            }
+
+            if (!ret) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param doc
+     * @param path the dotted path
+     * @return the values at path, traversing arrays; empty if missing
+     */
+    static List<BsonValue> resolve(BsonDocument doc, String path) {
+        var ret = new ArrayList<BsonValue>();
+
+        resolve(doc, path.split("\\."), 0, ret);
+
+        return ret;
+    }
+
+    private static void resolve(BsonValue current, String[] path, int idx,
+            List<BsonValue> values) {
+        if (idx == path.length) {
+            values.add(current);
+        } else if (current.isDocument()) {
+            var next = current.asDocument().get(path[idx]);
+
+            if (next != null) {
+                resolve(next, path, idx + 1, values);
+            }
+        } else if (current.isArray()) {
+            var array = current.asArray();
+
+            if (path[idx].chars().allMatch(Character::isDigit)) {
+                int pos = Integer.parseInt(path[idx]);
+
+                if (pos < array.size()) {
+                    resolve(array.get(pos), path, idx + 1, values);
+                }
+            }
+
+            array.stream()
+                    .filter(BsonValue::isDocument)
+                    .forEach(el -> resolve(el, path, idx, values));
+        }
+    }
+
+    /**
+     * @return the values to compare: each value and, for arrays, also their
+     * elements
+     */
+    private static List<BsonValue> candidates(List<BsonValue> values) {
+        var ret = new ArrayList<BsonValue>(values);
+
+        values.stream()
+                .filter(BsonValue::isArray)
+                .forEach(v -> ret.addAll(v.asArray()));
+
+        return ret;
+    }
+
+    private static boolean equals(List<BsonValue> values, BsonValue arg) {
+        if (arg.isNull() && values.isEmpty()) {
+            // {field: null} matches missing fields
+            return true;
+        }
+
+        return candidates(values).stream()
+                .anyMatch(v -> equal(v, arg));
+    }
+
+    private static boolean equal(BsonValue v1, BsonValue v2) {
+        if (isNumeric(v1) && isNumeric(v2)) {
+            var c = compareNumbers(v1, v2);
+            return c != null && c == 0;
+        }
+
+        return v1.equals(v2);
+    }
+
+    private static boolean compares(List<BsonValue> values, BsonValue arg,
+            IntPredicate test) {
+        return candidates(values).stream()
+                .anyMatch(v -> {
+                    var c = compare(v, arg);
+                    return c != null && test.test(c);
+                });
+    }
+
+    /**
+     * @return the comparison of v1 and v2 or null if they are not comparable
+     */
+    private static Integer compare(BsonValue v1, BsonValue v2) {
+        if (isNumeric(v1) && isNumeric(v2)) {
+            return compareNumbers(v1, v2);
+        } else if (v1.isString() && v2.isString()) {
+            return v1.asString().getValue().compareTo(v2.asString().getValue());
+        } else if (v1.isObjectId() && v2.isObjectId()) {
+            return v1.asObjectId().getValue().compareTo(v2.asObjectId().getValue());
+        } else if (v1.isDateTime() && v2.isDateTime()) {
+            return v1.asDateTime().compareTo(v2.asDateTime());
+        } else if (v1.isTimestamp() && v2.isTimestamp()) {
+            return v1.asTimestamp().compareTo(v2.asTimestamp());
+        } else if (v1.isBoolean() && v2.isBoolean()) {
+            return v1.asBoolean().compareTo(v2.asBoolean());
+        } else {
+            return null;
+        }
+    }
+
+    private static boolean isNumeric(BsonValue v) {
+        return v.isNumber() || v.isDecimal128();
+    }
+
+    /**
+     * @return the comparison of the numbers or null if one is a Decimal128 NaN
+     */
+    private static Integer compareNumbers(BsonValue v1, BsonValue v2) {
+        if (v1.isDecimal128() || v2.isDecimal128()) {
+            var d1 = toBigDecimal(v1);
+            var d2 = toBigDecimal(v2);
+
+            return d1 == null || d2 == null ? null : d1.compareTo(d2);
+        } else if (v1.isDouble() || v2.isDouble()) {
+            return Double.compare(v1.asNumber().doubleValue(),
+                    v2.asNumber().doubleValue());
+        } else {
+            return Long.compare(v1.asNumber().longValue(),
+                    v2.asNumber().longValue());
+        }
+    }
+
+    private static BigDecimal toBigDecimal(BsonValue v) {
+        if (v.isDecimal128()) {
+            var d = v.asDecimal128().getValue();
+
+            return d.isNaN() || d.isInfinite() ? null : d.bigDecimalValue();
+        } else if (v.isDouble()) {
+            var d = v.asDouble().getValue();
+
+            return Double.isFinite(d) ? BigDecimal.valueOf(d) : null;
+        } else {
+            return BigDecimal.valueOf(v.asNumber().longValue());
+        }
+    }
+
+    private static boolean isTruthy(BsonValue v) {
+        if (v.isBoolean()) {
+            return v.asBoolean().getValue();
+        } else if (v.isNumber()) {
+            return v.asNumber().doubleValue() != 0;
+        } else {
+            return !v.equals(BsonNull.VALUE);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.utils;
+
+import java.util.Arrays;
+import java.util.Set;
+import org.bson.BsonArray;
+import org.restheart.exchange.MongoRequest;
+import org.restheart.exchange.MongoResponse;
+import org.restheart.plugins.InterceptPoint;
+import org.restheart.plugins.Interceptor;
+import org.restheart.plugins.PluginRecord;
+import org.restheart.plugins.PluginsRegistry;
+import org.restheart.utils.HttpStatus;
+import org.restheart.utils.PluginUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the interceptors that require the content and apply to a request.
+ *
+ * Streamed responses and ndjson requests don't make the content available to
+ * interceptors: the handlers use this class to refuse them when an interceptor
+ * that requires the content (i.e. declares requiresContent = true) would be
+ * silently skipped.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ContentInterceptors {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(ContentInterceptors.class);
+
+    private static PluginsRegistry registry = null;
+
+    /**
+     * @param pluginsRegistry the registry of the interceptors
+     */
+    public static void init(PluginsRegistry pluginsRegistry) {
+        registry = pluginsRegistry;
+    }
+
+    /**
+     * @param request
+     * @param response
+     * @param excluded the names of the interceptors not to check
+     * @param interceptPoints
+     * @return the name of the first enabled interceptor that requires the
+     * content and resolves for the request at one of the intercept points,
+     * null if none
+     */
+    public static String requiringContent(MongoRequest request,
+            MongoResponse response,
+            Set<String> excluded,
+            InterceptPoint... interceptPoints) {
+        return registry == null
+                ? null
+                : requiringContent(registry.getInterceptors(), request,
+                        response, excluded, interceptPoints);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static String requiringContent(Set<PluginRecord<Interceptor>> interceptors,
+            MongoRequest request,
+            MongoResponse response,
+            Set<String> excluded,
+            InterceptPoint... interceptPoints) {
+        var points = Arrays.asList(interceptPoints);
+
+        for (var record : interceptors) {
+            if (!record.isEnabled() || excluded.contains(record.getName())) {
+                continue;
+            }
+
+            Interceptor interceptor = record.getInstance();
+
+            if (!points.contains(PluginUtils.interceptPoint(interceptor))
+                    || !PluginUtils.requiresContent(interceptor)
+                    || !MongoRequest.type().equals(PluginUtils.cachedRequestType(interceptor))
+                    || !MongoResponse.type().equals(PluginUtils.cachedResponseType(interceptor))) {
+                continue;
+            }
+
+            boolean resolved;
+
+            try {
+                resolved = interceptor.resolve(request, response);
+            } catch (Throwable t) {
+                // fail closed
+                LOGGER.debug("error resolving interceptor {}", record.getName(), t);
+                resolved = true;
+            }
+
+            if (resolved) {
+                return record.getName();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks that the response can be streamed, i.e. that no response
+     * interceptor requiring the content applies to the request, otherwise
+     * sets the response in error
+     *
+     * @param request
+     * @param response
+     * @return true if the response can be streamed
+     */
+    public static boolean checkStreamable(MongoRequest request,
+            MongoResponse response) {
+        return registry == null
+                || checkStreamable(registry.getInterceptors(), request, response);
+    }
+
+    static boolean checkStreamable(Set<PluginRecord<Interceptor>> interceptors,
+            MongoRequest request,
+            MongoResponse response) {
+        String interceptor;
+
+        // resolve the interceptors as for a not streamed response
+        response.setContent(new BsonArray());
+
+        try {
+            interceptor = requiringContent(interceptors, request, response,
+                    Set.of(),
+                    InterceptPoint.RESPONSE,
+                    InterceptPoint.RESPONSE_ASYNC);
+        } finally {
+            response.setContent(null);
+        }
+
+        if (interceptor != null) {
+            response.setInError(HttpStatus.SC_BAD_REQUEST,
+                    "the stream query parameter is not allowed: "
+                    + "the response interceptor " + interceptor
+                    + " requires the content");
+            return false;
+        } else {
+            return true;
+        }
+    }
+
+    private ContentInterceptors() {
+    }
+}
@@ -0,0 +1,143 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collapses concurrent executions of the same computation, identified by a
+ * key, into a single one whose result is shared by all callers.
+ *
+ * The first caller executes the computation, the callers that request the same
+ * key while it is in flight wait for its result. Since results can be
+ * modified by the callers, each waiter gets a copy of the result; the first
+ * caller gets the result itself if nobody waited for it.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    private final UnaryOperator<V> copier;
+
+    /**
+     * @param copier the function that copies the result for the waiters
+     */
+    public SingleFlight(UnaryOperator<V> copier) {
+        this.copier = copier;
+    }
+
+    /**
+     * Executes computation, or waits for the result of the execution in
+     * flight with the same key
+     *
+     * @param key
+     * @param computation
+     * @return the result of computation
+     * @throws Exception the exception thrown by computation
+     */
+    public V execute(K key, Callable<V> computation) throws Exception {
+        while (true) {
+            var flight = new Flight<V>();
+            var inFlight = flights.putIfAbsent(key, flight);
+
+            if (inFlight == null) {
+                return lead(key, flight, computation);
+            } else if (inFlight.join()) {
+                try {
+                    return copier.apply(inFlight.result.get());
+                } catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof Exception) {
+                        throw (Exception) ee.getCause();
+                    } else {
+                        throw ee;
+                    }
+                }
+            }
+            // the flight landed before joining it, try again
+        }
+    }
+
+    /**
+     * @return the number of computations in flight
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private V lead(K key, Flight<V> flight, Callable<V> computation)
+            throws Exception {
+        V ret;
+
+        try {
+            ret = computation.call();
+        } catch (Throwable t) {
+            flights.remove(key, flight);
+            flight.land();
+            flight.result.completeExceptionally(t);
+            throw t;
+        }
+
+        flights.remove(key, flight);
+
+        var waited = flight.land();
+
+        // the waiters get a copy of the result, so copy it also for the
+        // leader before they can access it
+        var leaderCopy = waited ? copier.apply(ret) : ret;
+
+        flight.result.complete(ret);
+
+        return leaderCopy;
+    }
+
+    private static class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private int waiters = 0;
+        private boolean landed = false;
+
+        /**
+         * @return true if joined, false if the flight already landed
+         */
+        synchronized boolean join() {
+            if (landed) {
+                return false;
+            }
+
+            waiters++;
+            return true;
+        }
+
+        /**
+         * @return true if anybody joined the flight
+         */
+        synchronized boolean land() {
+            landed = true;
+            return waiters > 0;
+        }
+    }
+}
@@ -47,6 +47,8 @@ public class HttpServerExchange extends AbstractAttachable {
     private String relativePath;
     private HttpString requestMethod;
     private Map<String, Deque<String>> queryParameters;
+    private final HeaderMap requestHeaders = new HeaderMap();
+    private final HeaderMap responseHeaders = new HeaderMap();
 
     /**
      *
@@ -175,7 +177,11 @@ public class HttpServerExchange extends AbstractAttachable {
      * @return
      */
     public HeaderMap getRequestHeaders() {
-        return null;
+        return requestHeaders;
+    }
+
+    public HeaderMap getResponseHeaders() {
+        return responseHeaders;
     }
 
     /**
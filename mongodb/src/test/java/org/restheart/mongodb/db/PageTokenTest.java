@@ -0,0 +1,122 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import org.bson.BsonDocument;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class PageTokenTest {
+
+    @Test
+    public void testKeysetSort() {
+        assertEquals(BsonDocument.parse("{a:1, b:-1, _id:1}"),
+                PageToken.keysetSort(BsonDocument.parse("{a:1, b:-1}")));
+
+        assertEquals(BsonDocument.parse("{_id:-1}"),
+                PageToken.keysetSort(BsonDocument.parse("{_id:-1}")));
+
+        assertNull(PageToken.keysetSort(
+                BsonDocument.parse("{score: {$meta: 'textScore'}}")));
+
+        assertNull(PageToken.keysetSort(BsonDocument.parse("{$natural:1}")));
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        var sort = BsonDocument.parse("{'a.b':1, c:-1}");
+        var last = BsonDocument.parse("{_id: 3, a: {b: 'x'}, c: 2}");
+
+        var token = PageToken.after(sort, null, last);
+
+        assertNotNull(token);
+
+        var decoded = PageToken.decode(token.encode());
+
+        assertTrue(decoded.matches(sort));
+        assertFalse(decoded.matches(BsonDocument.parse("{c:-1}")));
+        // same keys in a different order
+        assertFalse(decoded.matches(BsonDocument.parse("{c:-1, 'a.b':1}")));
+        assertEquals(token.filter(null), decoded.filter(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeInvalid() {
+        PageToken.decode("bm90IGEgdG9rZW4");
+    }
+
+    @Test
+    public void testFilter() {
+        var token = PageToken.after(BsonDocument.parse("{a:1, b:-1}"),
+                null,
+                BsonDocument.parse("{_id: 3, a: 1, b: 2}"));
+
+        assertEquals(BsonDocument.parse("{$and: [{x: 1}, {$or: ["
+                + "{a: {$gt: 1}}, "
+                + "{a: {$eq: 1}, b: {$lt: 2}}, "
+                + "{a: {$eq: 1}, b: {$eq: null}}, "
+                + "{a: {$eq: 1}, b: {$eq: 2}, _id: {$gt: 3}}]}]}"),
+                token.filter(BsonDocument.parse("{x: 1}")));
+    }
+
+    @Test
+    public void testFilterWithNulls() {
+        // b is missing and sorted descending: nothing is after null
+        var token = PageToken.after(BsonDocument.parse("{a:1, b:-1}"),
+                null,
+                BsonDocument.parse("{_id: 3, a: null}"));
+
+        assertEquals(BsonDocument.parse("{$or: ["
+                + "{a: {$ne: null}}, "
+                + "{a: {$eq: null}, b: {$eq: null}, _id: {$gt: 3}}]}"),
+                token.filter(null));
+    }
+
+    @Test
+    public void testFilterWithDescendingNulls() {
+        // null and missing values of a follow 1 in descending order
+        var token = PageToken.after(BsonDocument.parse("{a:-1}"),
+                null,
+                BsonDocument.parse("{_id: 3, a: 1}"));
+
+        assertEquals(BsonDocument.parse("{$or: ["
+                + "{a: {$lt: 1}}, "
+                + "{a: {$eq: null}}, "
+                + "{a: {$eq: 1}, _id: {$gt: 3}}]}"),
+                token.filter(null));
+    }
+
+    @Test
+    public void testProjection() {
+        var sort = BsonDocument.parse("{a:1}");
+        var last = BsonDocument.parse("{_id: 3, a: 1}");
+
+        assertNotNull(PageToken.after(sort, BsonDocument.parse("{a:1}"), last));
+        assertNotNull(PageToken.after(sort, BsonDocument.parse("{b:0}"), last));
+        assertNull(PageToken.after(sort, BsonDocument.parse("{b:1}"), last));
+        assertNull(PageToken.after(sort, BsonDocument.parse("{a:0}"), last));
+        assertNull(PageToken.after(sort, BsonDocument.parse("{a:1, _id:0}"), last));
+    }
+}
@@ -0,0 +1,85 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.aggregation;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.restheart.exchange.InvalidMetadataException;
+import org.restheart.exchange.QueryVariableNotBoundException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AggregationTemplateTest {
+
+    @Test
+    public void testBind() throws Exception {
+        var stages = BsonArray.parse("[{'_$match': {'name': {'$var': 'n'}}},"
+                + "{'_$group': {'_id': '$name', 'avg': {'_$avg': '$age'}}},"
+                + "{'_$limit': {'$var': '@limit'}}]");
+
+        var template = AggregationTemplate.compile(stages);
+
+        assertEquals(2, template.getVariables().size());
+
+        var bound = template.bind(BsonDocument.parse("{n: 'foo', '@limit': 5}"));
+
+        assertEquals(BsonArray.parse("[{'$match': {'name': 'foo'}},"
+                + "{'$group': {'_id': '$name', 'avg': {'$avg': '$age'}}},"
+                + "{'$limit': 5}]"), bound);
+
+        // the escaped definition is not modified
+        assertTrue(stages.get(0).asDocument().containsKey("_$match"));
+
+        var other = template.bind(BsonDocument.parse("{n: 'bar', '@limit': 1}"));
+
+        assertEquals(BsonDocument.parse("{'$match': {'name': 'bar'}}"),
+                other.asArray().get(0));
+        assertEquals(BsonDocument.parse("{'$match': {'name': 'foo'}}"),
+                bound.asArray().get(0));
+    }
+
+    @Test
+    public void testNoVariables() throws Exception {
+        var query = BsonDocument.parse("{'name': {'_$exists': true}}");
+
+        var template = AggregationTemplate.compile(query);
+
+        assertTrue(template.getVariables().isEmpty());
+        assertEquals(BsonDocument.parse("{'name': {'$exists': true}}"),
+                template.bind(null));
+    }
+
+    @Test(expected = QueryVariableNotBoundException.class)
+    public void testNotBound() throws Exception {
+        AggregationTemplate.compile(BsonDocument.parse("{'a': {'$var': 'a'}}"))
+                .bind(new BsonDocument());
+    }
+
+    @Test(expected = InvalidMetadataException.class)
+    public void testWrongVariableName() throws Exception {
+        AggregationTemplate.compile(BsonDocument.parse("{'a': {'$var': 1}}"))
+                .bind(new BsonDocument());
+    }
+}
@@ -0,0 +1,97 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.bulk;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import java.io.StringReader;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.restheart.exchange.MongoRequest;
+import org.restheart.exchange.MongoResponse;
+import org.restheart.utils.HttpStatus;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class BulkPostCollectionHandlerTest {
+
+    @Test
+    public void testIsContentTransformed() {
+        assertFalse(BulkPostCollectionHandler.isContentTransformed(new BsonDocument()));
+        assertTrue(BulkPostCollectionHandler.isContentTransformed(null));
+        assertTrue(BulkPostCollectionHandler.isContentTransformed(new BsonArray()));
+        assertTrue(BulkPostCollectionHandler.isContentTransformed(
+                new BsonDocument("_props", new BsonDocument())));
+    }
+
+    @Test
+    public void testRejectNdjsonWithTransformedContent() throws Exception {
+        var request = createNdjsonRequest("/db/coll");
+        var response = MongoResponse.init(request.getExchange());
+
+        // e.g. addRequestProperties adds its properties to the placeholder
+        request.setContent(new BsonDocument("_props",
+                new BsonDocument("user", new BsonString("admin"))));
+
+        new BulkPostCollectionHandler(null, null)
+                .handleRequest(request.getExchange());
+
+        assertTrue(response.isInError());
+        assertEquals(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE,
+                response.getStatusCode());
+    }
+
+    @Test
+    public void testReadLine() throws Exception {
+        var reader = new StringReader("{\"a\":1}\r\n\n{\"b\":2}");
+
+        assertEquals("{\"a\":1}", BulkPostCollectionHandler.readLine(reader, 7));
+        assertEquals("", BulkPostCollectionHandler.readLine(reader, 7));
+        assertEquals("{\"b\":2}", BulkPostCollectionHandler.readLine(reader, 7));
+        assertNull(BulkPostCollectionHandler.readLine(reader, 7));
+    }
+
+    @Test(expected = BulkPostCollectionHandler.LineTooLongException.class)
+    public void testReadLineTooLong() throws Exception {
+        var reader = new StringReader("{\"a\":12}\n");
+
+        BulkPostCollectionHandler.readLine(reader, 7);
+    }
+
+    private MongoRequest createNdjsonRequest(String requestPath) {
+        var exchange = new HttpServerExchange();
+        exchange.setRequestPath(requestPath);
+        exchange.setRequestMethod(new HttpString("POST"));
+        exchange.getRequestHeaders().put(Headers.CONTENT_TYPE,
+                "application/x-ndjson");
+
+        return MongoRequest.init(exchange, "/", "*");
+    }
+}
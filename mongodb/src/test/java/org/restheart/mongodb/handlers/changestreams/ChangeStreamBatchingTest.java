@@ -0,0 +1,78 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import org.bson.BsonDocument;
+import org.restheart.exchange.InvalidMetadataException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ChangeStreamBatchingTest {
+
+    @Test
+    public void testDefaults() throws Exception {
+        var op = new ChangeStreamOperation(BsonDocument.parse(
+                "{uri: 's', stages: [], batch: {coalesce: true}}"));
+
+        var batching = op.getBatching();
+
+        assertNotNull(batching);
+        assertEquals(ChangeStreamBatching.DEFAULT_MAX_COUNT, batching.getMaxCount());
+        assertEquals(ChangeStreamBatching.DEFAULT_MAX_LATENCY, batching.getMaxLatency());
+        assertTrue(batching.isCoalesce());
+
+        assertNull(new ChangeStreamOperation(BsonDocument.parse(
+                "{uri: 's', stages: []}")).getBatching());
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        var batching = new ChangeStreamBatching("s",
+                BsonDocument.parse("{maxCount: 10, maxLatency: 50}"));
+
+        assertEquals(10, batching.getMaxCount());
+        assertEquals(50, batching.getMaxLatency());
+        assertFalse(batching.isCoalesce());
+    }
+
+    @Test
+    public void testInvalid() {
+        var invalid = new String[]{
+            "{uri: 's', stages: [], batch: true}",
+            "{uri: 's', stages: [], batch: {maxCount: 0}}",
+            "{uri: 's', stages: [], batch: {maxLatency: 'a'}}",
+            "{uri: 's', stages: [], batch: {coalesce: 1}}"
+        };
+
+        for (var props : invalid) {
+            try {
+                new ChangeStreamOperation(BsonDocument.parse(props));
+                fail("invalid batch accepted: " + props);
+            } catch (InvalidMetadataException ime) {
+                // expected
+            }
+        }
+    }
+}
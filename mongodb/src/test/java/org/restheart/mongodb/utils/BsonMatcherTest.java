@@ -0,0 +1,82 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.utils;
+
+import org.bson.BsonDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class BsonMatcherTest {
+    private static final BsonDocument EVENT = BsonDocument.parse("{"
+            + "'operationType': 'update', "
+            + "'documentKey': {'_id': 1}, "
+            + "'fullDocument': {'_id': 1, 'owner': 'alice', 'n': 3, "
+            + "'tags': ['a', 'b'], 'items': [{'q': 1}, {'q': 5}]}}");
+
+    private static boolean matches(String filter) {
+        var _filter = BsonDocument.parse(filter);
+
+        Assert.assertTrue(filter, BsonMatcher.isSupported(_filter));
+
+        return BsonMatcher.matches(_filter, EVENT);
+    }
+
+    @Test
+    public void testEquality() {
+        Assert.assertTrue(matches("{'fullDocument.owner': 'alice'}"));
+        Assert.assertFalse(matches("{'fullDocument.owner': 'bob'}"));
+        Assert.assertTrue(matches("{'fullDocument.n': 3.0}"));
+        Assert.assertTrue(matches("{'fullDocument.n': {'$numberLong': '3'}}"));
+        Assert.assertTrue(matches("{'fullDocument.tags': 'b'}"));
+        Assert.assertTrue(matches("{'fullDocument.items.q': 5}"));
+        Assert.assertTrue(matches("{'fullDocument.missing': null}"));
+        Assert.assertTrue(matches("{'documentKey': {'_id': 1}}"));
+    }
+
+    @Test
+    public void testOperators() {
+        Assert.assertTrue(matches("{'fullDocument.n': {'$gt': 2, '$lte': 3}}"));
+        Assert.assertFalse(matches("{'fullDocument.n': {'$gt': 'a'}}"));
+        Assert.assertTrue(matches("{'operationType': {'$in': ['insert', 'update']}}"));
+        Assert.assertFalse(matches("{'operationType': {'$nin': ['update']}}"));
+        Assert.assertTrue(matches("{'fullDocument.x': {'$exists': false}}"));
+        Assert.assertTrue(matches("{'fullDocument.n': {'$not': {'$gt': 5}}}"));
+        Assert.assertTrue(matches("{'fullDocument.owner': {'$ne': 'bob'}}"));
+    }
+
+    @Test
+    public void testLogical() {
+        Assert.assertTrue(matches("{'$or': [{'fullDocument.owner': 'bob'}, {'fullDocument.n': 3}]}"));
+        Assert.assertFalse(matches("{'$and': [{'fullDocument.owner': 'alice'}, {'fullDocument.n': 4}]}"));
+        Assert.assertTrue(matches("{'$nor': [{'operationType': 'delete'}]}"));
+    }
+
+    @Test
+    public void testNotSupported() {
+        Assert.assertFalse(BsonMatcher.isSupported(BsonDocument.parse("{'a': {'$regex': 'x'}}")));
+        Assert.assertFalse(BsonMatcher.isSupported(BsonDocument.parse("{'$expr': {'$eq': ['$a', 1]}}")));
+        Assert.assertFalse(BsonMatcher.isSupported(BsonDocument.parse("{'a': {'$elemMatch': {'q': 1}}}")));
+    }
+}
@@ -0,0 +1,161 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.utils;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.restheart.exchange.MongoRequest;
+import org.restheart.exchange.MongoResponse;
+import org.restheart.plugins.InterceptPoint;
+import org.restheart.plugins.Interceptor;
+import org.restheart.plugins.MongoInterceptor;
+import org.restheart.plugins.PluginRecord;
+import org.restheart.plugins.RegisterPlugin;
+import org.restheart.utils.HttpStatus;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ContentInterceptorsTest {
+
+    @Test
+    public void testStreamRefusedByContentInterceptor() {
+        var request = createRequest("/db/coll", "GET");
+        var response = MongoResponse.init(request.getExchange());
+
+        var interceptors = interceptors(new Redactor(), true);
+
+        assertFalse(ContentInterceptors.checkStreamable(interceptors,
+                request, response));
+        assertTrue(response.isInError());
+        assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void testStreamAllowed() {
+        var request = createRequest("/db/coll", "GET");
+        var response = MongoResponse.init(request.getExchange());
+
+        // disabled or not requiring the content
+        var interceptors = interceptors(new Redactor(), false);
+        interceptors.addAll(interceptors(new Logger(), true));
+
+        assertTrue(ContentInterceptors.checkStreamable(interceptors,
+                request, response));
+        assertFalse(response.isInError());
+        assertNull(response.getContent());
+    }
+
+    @Test
+    public void testRequiringContent() {
+        var request = createRequest("/db/coll", "POST");
+        var response = MongoResponse.init(request.getExchange());
+
+        var interceptors = interceptors(new Validator(), true);
+
+        assertEquals("validator", ContentInterceptors.requiringContent(
+                interceptors, request, response, Set.of(),
+                InterceptPoint.REQUEST_AFTER_AUTH));
+
+        assertNull(ContentInterceptors.requiringContent(
+                interceptors, request, response, Set.of("validator"),
+                InterceptPoint.REQUEST_AFTER_AUTH));
+
+        assertNull(ContentInterceptors.requiringContent(
+                interceptors, request, response, Set.of(),
+                InterceptPoint.RESPONSE));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Set<PluginRecord<Interceptor>> interceptors(
+            MongoInterceptor interceptor, boolean enabled) {
+        var ret = new LinkedHashSet<PluginRecord<Interceptor>>();
+        var name = interceptor.getClass()
+                .getDeclaredAnnotation(RegisterPlugin.class).name();
+
+        ret.add(new PluginRecord<>(name, "", true,
+                interceptor.getClass().getName(), interceptor,
+                Map.of("enabled", enabled)));
+
+        return ret;
+    }
+
+    private static MongoRequest createRequest(String requestPath,
+            String httpMethod) {
+        var exchange = new HttpServerExchange();
+        exchange.setRequestPath(requestPath);
+        exchange.setRequestMethod(new HttpString(httpMethod));
+        return MongoRequest.init(exchange, "/", "*");
+    }
+
+    @RegisterPlugin(name = "redactor",
+            description = "removes a property from the response",
+            interceptPoint = InterceptPoint.RESPONSE,
+            requiresContent = true)
+    public static class Redactor implements MongoInterceptor {
+        @Override
+        public void handle(MongoRequest request, MongoResponse response) {
+        }
+
+        @Override
+        public boolean resolve(MongoRequest request, MongoResponse response) {
+            return request.isGet() && response.getContent() != null;
+        }
+    }
+
+    @RegisterPlugin(name = "logger",
+            description = "does not require the content",
+            interceptPoint = InterceptPoint.RESPONSE)
+    public static class Logger implements MongoInterceptor {
+        @Override
+        public void handle(MongoRequest request, MongoResponse response) {
+        }
+
+        @Override
+        public boolean resolve(MongoRequest request, MongoResponse response) {
+            return true;
+        }
+    }
+
+    @RegisterPlugin(name = "validator",
+            description = "checks the request content",
+            interceptPoint = InterceptPoint.REQUEST_AFTER_AUTH,
+            requiresContent = true)
+    public static class Validator implements MongoInterceptor {
+        @Override
+        public void handle(MongoRequest request, MongoResponse response) {
+        }
+
+        @Override
+        public boolean resolve(MongoRequest request, MongoResponse response) {
+            return request.isPost();
+        }
+    }
+}
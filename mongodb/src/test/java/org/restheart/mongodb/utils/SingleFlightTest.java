@@ -0,0 +1,102 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentExecutionsAreCollapsed() throws Exception {
+        var flights = new SingleFlight<String, BsonDocument>(BsonDocument::clone);
+        var executions = new AtomicInteger(0);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        var executor = Executors.newFixedThreadPool(4);
+
+        try {
+            var results = new ArrayList<Future<BsonDocument>>();
+
+            results.add(executor.submit(() -> flights.execute("key", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new BsonDocument("a", new BsonInt32(1));
+            })));
+
+            started.await();
+
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> flights.execute("key", () -> {
+                    executions.incrementAndGet();
+                    return new BsonDocument("a", new BsonInt32(1));
+                })));
+            }
+
+            // wait for the waiters to join the flight
+            Thread.sleep(200);
+            release.countDown();
+
+            var first = results.get(0).get(5, TimeUnit.SECONDS);
+
+            for (var result : results) {
+                var doc = result.get(5, TimeUnit.SECONDS);
+                Assert.assertEquals(1, doc.getInt32("a").getValue());
+                Assert.assertTrue(result == results.get(0) || doc != first);
+            }
+
+            Assert.assertEquals(1, executions.get());
+            Assert.assertEquals(0, flights.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExceptionIsPropagated() throws Exception {
+        var flights = new SingleFlight<String, String>(s -> s);
+
+        try {
+            flights.execute("key", () -> {
+                throw new IllegalStateException("boom");
+            });
+            Assert.fail("exception expected");
+        } catch (IllegalStateException ise) {
+            Assert.assertEquals("boom", ise.getMessage());
+        }
+
+        Assert.assertEquals("ok", flights.execute("key", () -> "ok"));
+    }
+}
@@ -37,6 +37,7 @@ import com.jayway.jsonpath.PathNotFoundException;
 import org.bson.BsonString;
 import org.mindrot.jbcrypt.BCrypt;
 import org.restheart.ConfigurationException;
+import org.restheart.exchange.Exchange;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.plugins.InjectPluginsRegistry;
@@ -46,6 +47,7 @@ import org.restheart.plugins.PluginRecord;
 import org.restheart.plugins.PluginsRegistry;
 import org.restheart.plugins.RegisterPlugin;
 import org.restheart.plugins.security.Authenticator;
+import org.restheart.utils.HttpStatus;
 import org.restheart.utils.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +71,24 @@ public class UserPwdHasher implements MongoInterceptor {
 
     private boolean enabled = false;
 
+    public UserPwdHasher() {
+    }
+
+    /**
+     * used by tests to create an enabled instance without the plugins
+     * registry
+     */
+    UserPwdHasher(String usersDb,
+            String usersCollection,
+            String propNamePassword,
+            Integer complexity) {
+        this.usersDb = usersDb;
+        this.usersCollection = usersCollection;
+        this.propNamePassword = propNamePassword;
+        this.complexity = complexity;
+        this.enabled = true;
+    }
+
     @InjectPluginsRegistry
     public void init(PluginsRegistry registry) {
         PluginRecord<Authenticator> _mra;
@@ -115,6 +135,15 @@ public class UserPwdHasher implements MongoInterceptor {
 
     @Override
     public void handle(MongoRequest request, MongoResponse response) throws Exception {
+        if (request.isNdjsonPost()) {
+            // the documents are read from the request channel by the bulk
+            // post handler, the passwords cannot be hashed here
+            response.setInError(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE,
+                    "Passwords cannot be hashed in "
+                    + Exchange.NDJSON_MEDIA_TYPE + " requests");
+            return;
+        }
+
         var content = request.getContent();
 
         if (content == null) {
@@ -166,7 +195,7 @@ public class UserPwdHasher implements MongoInterceptor {
         return enabled
                 && request.isHandledBy("mongo")
                 && request.isWriteDocument()
-                && request.isContentTypeJson()
+                && (request.isContentTypeJson() || request.isNdjsonPost())
                 && this.usersDb.equalsIgnoreCase(request.getDBName())
                 && this.usersCollection.equalsIgnoreCase(request.getCollectionName());
     }
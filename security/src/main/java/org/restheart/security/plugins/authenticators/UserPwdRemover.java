@@ -43,6 +43,7 @@ import org.restheart.plugins.PluginRecord;
 import org.restheart.plugins.PluginsRegistry;
 import org.restheart.plugins.RegisterPlugin;
 import org.restheart.plugins.security.Authenticator;
+import org.restheart.utils.HttpStatus;
 import org.restheart.utils.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -98,6 +99,14 @@ public class UserPwdRemover implements MongoInterceptor {
 
     @Override
     public void handle(MongoRequest request, MongoResponse response) throws Exception {
+        if (response.isContentStreamed()) {
+            // streamed documents cannot be filtered
+            response.setInError(HttpStatus.SC_BAD_REQUEST,
+                    "the stream query parameter is not allowed "
+                    + "on the users collection");
+            return;
+        }
+
         DocumentContext dc = JsonPath.parse(response.readContent());
 
         JsonElement content = dc.json();
@@ -137,6 +146,7 @@ public class UserPwdRemover implements MongoInterceptor {
                 && request.isGet()
                 && this.usersDb.equalsIgnoreCase(request.getDBName())
                 && this.usersCollection.equalsIgnoreCase(request.getCollectionName())
-                && response.getContent() != null;
+                && (response.getContent() != null
+                || response.isContentStreamed());
     }
 }
@@ -0,0 +1,95 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-security
+ * %%
+ * Copyright (C) 2018 - 2020 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.security.plugins.authenticators;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import org.bson.BsonDocument;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.restheart.exchange.MongoRequest;
+import org.restheart.exchange.MongoResponse;
+import org.restheart.exchange.PipelineInfo;
+import org.restheart.utils.HttpStatus;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class UserPwdHasherTest {
+
+    private final UserPwdHasher hasher = new UserPwdHasher("userbase",
+            "users", "password", 4);
+
+    @Test
+    public void testResolveJsonPost() {
+        var request = createRequest("/userbase/users", "POST",
+                "application/json");
+        var response = MongoResponse.init(request.getExchange());
+
+        assertTrue(hasher.resolve(request, response));
+    }
+
+    @Test
+    public void testRejectNdjsonPost() throws Exception {
+        var request = createRequest("/userbase/users", "POST",
+                "application/x-ndjson");
+        var response = MongoResponse.init(request.getExchange());
+
+        // placeholder set by the content injector for ndjson requests
+        request.setContent(new BsonDocument());
+
+        assertTrue(hasher.resolve(request, response));
+
+        hasher.handle(request, response);
+
+        assertTrue(response.isInError());
+        assertEquals(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE,
+                response.getStatusCode());
+    }
+
+    @Test
+    public void testIgnoreOtherCollections() {
+        var request = createRequest("/userbase/others", "POST",
+                "application/x-ndjson");
+        var response = MongoResponse.init(request.getExchange());
+
+        assertFalse(hasher.resolve(request, response));
+    }
+
+    private MongoRequest createRequest(String requestPath,
+            String httpMethod,
+            String contentType) {
+        var exchange = new HttpServerExchange();
+        exchange.setRequestPath(requestPath);
+        exchange.setRequestMethod(new HttpString(httpMethod));
+        exchange.getRequestHeaders().put(Headers.CONTENT_TYPE, contentType);
+
+        var request = MongoRequest.init(exchange, "/", "*");
+        request.setPipelineInfo(new PipelineInfo(
+                PipelineInfo.PIPELINE_TYPE.SERVICE, "/", "mongo"));
+
+        return request;
+    }
+}